@@ -0,0 +1,308 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Builds the objects measured by the JMH benchmarks in the benchmarks package. JMH does not allow benchmarks in the
+ * default package, and classes in a named package cannot refer to the simulator classes, so the benchmarks load
+ * these fixtures reflectively during setup and only call the returned Suppliers while measuring.
+ * @author Rajiv Thamburaj
+ */
+public final class BenchmarkFixtures
+{
+	// Constants
+	private static final String RANDOM_PREFIX = "random-";
+	private static final String RANDOM_3D_PREFIX = "random3d-";
+	private static final String[] GENERATOR_TYPES = {"plummer", "disk", "colliding", "uniform"};
+	private static final long RANDOM_SEED = 42L;
+	private static final double TIME_STEP = 0.0005;
+
+	/**
+	 * Constructor (the class only has static methods)
+	 */
+	private BenchmarkFixtures()
+	{
+	}
+
+	/**
+	 * Creates a Cluster from a preset name in the configurations file, "random-N" for N randomly placed Bodies,
+	 * "random3d-N" for N Bodies placed randomly in three dimensions, or "TYPE-N" for N Bodies from a ClusterGenerator
+	 * type (e.g. "plummer-100000")
+	 * @param configuration
+	 * @return Cluster corresponding to the configuration
+	 */
+	public static Cluster createCluster(String configuration)
+	{
+		int separator = configuration.lastIndexOf('-');
+		String type = separator > 0 ? configuration.substring(0, separator) : "";
+
+		if (Arrays.asList(GENERATOR_TYPES).contains(type))
+			return ClusterGenerator.generate(type, Integer.parseInt(configuration.substring(separator + 1)), RANDOM_SEED);
+
+		boolean threeDimensional = configuration.startsWith(RANDOM_3D_PREFIX);
+
+		if (!configuration.startsWith(RANDOM_PREFIX) && !threeDimensional)
+		{
+			String configurationsFile = System.getProperty("configurations", "src/ClusterConfigurations.xml");
+			Cluster cluster = ConfigurationLoader.loadConfiguration(configurationsFile, configuration);
+
+			if (cluster.getBodies().length == 0)
+				throw new IllegalArgumentException("Configuration \"" + configuration + "\" not found in "
+						+ configurationsFile);
+
+			return cluster;
+		}
+
+		int numBodies = Integer.parseInt(configuration.substring(separator + 1));
+		Random random = new Random(RANDOM_SEED);
+		Body[] bodies = new Body[numBodies];
+
+		// Spread the Bodies so that the density (and so the typical acceleration) is similar for every size
+		double radius = 300.0 * Math.sqrt(numBodies / 1000.0);
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			SpaceVector position = new SpaceVector(random.nextGaussian() * radius, random.nextGaussian() * radius);
+			SpaceVector velocity = new SpaceVector(random.nextGaussian() * 10.0, random.nextGaussian() * 10.0);
+
+			// The same planar draws with a z-component added, so that the two kinds differ only in the dimension
+			if (threeDimensional)
+			{
+				double[] planarPosition = position.getComponents();
+				double[] planarVelocity = velocity.getComponents();
+				position = new SpaceVector(planarPosition[0], planarPosition[1], random.nextGaussian() * radius);
+				velocity = new SpaceVector(planarVelocity[0], planarVelocity[1], random.nextGaussian() * 10.0);
+			}
+
+			bodies[i] = new Body(2.0, 1.0, position, velocity, Color.WHITE);
+		}
+
+		return new Cluster(bodies);
+	}
+
+	/**
+	 * Prepares a Cluster and returns an operation that advances it by one step
+	 * @param configuration
+	 * @param solver
+	 * @param threads
+	 * @return Supplier that steps the Cluster
+	 */
+	public static Supplier<Object> clusterStep(String configuration, String solver, int threads)
+	{
+		final Cluster cluster = createCluster(configuration);
+		cluster.setForceSolver(ConfigurationLoader.createForceSolver(solver, 0.5));
+		cluster.setParallelism(threads);
+		cluster.adjustForCenterOfMassVelocity();
+		cluster.computeInitialAccelerations();
+
+		return () ->
+		{
+			cluster.updatePositions(TIME_STEP);
+			return cluster;
+		};
+	}
+
+	/**
+	 * Prepares a Cluster and returns an operation that computes the acceleration of every Body once
+	 * @param configuration
+	 * @param kernel spacevector (the original per-pair force on SpaceVectors), vec2 (the same force on Vec2s), or the
+	 * name of a ForceSolver
+	 * @return Supplier that computes the accelerations
+	 */
+	public static Supplier<Object> forceKernel(String configuration, String kernel)
+	{
+		final Cluster cluster = createCluster(configuration);
+
+		if ("spacevector".equals(kernel))
+		{
+			final Body[] bodies = cluster.getBodies();
+			final double G = cluster.getGravitationalConstant();
+
+			return () ->
+			{
+				for (Body body : bodies)
+				{
+					body.setAcceleration(getSpaceVectorAcceleration(body, bodies, G));
+				}
+
+				return bodies;
+			};
+		}
+		else if ("vec2".equals(kernel))
+		{
+			final Body[] bodies = cluster.getBodies();
+			final double G = cluster.getGravitationalConstant();
+			final Vec2.Accumulator acceleration = new Vec2.Accumulator();
+
+			return () ->
+			{
+				for (Body body : bodies)
+				{
+					body.setAcceleration(getVec2Acceleration(body, bodies, G, acceleration));
+				}
+
+				return bodies;
+			};
+		}
+
+		cluster.setForceSolver(ConfigurationLoader.createForceSolver(kernel, 0.5));
+
+		return () ->
+		{
+			cluster.computeAccelerations();
+			return cluster;
+		};
+	}
+
+	/**
+	 * Finds the acceleration of a Body the way the simulator originally did, by summing a SpaceVector force for
+	 * every pair (kept as the reference point for the force kernels)
+	 * @param body
+	 * @param bodies
+	 * @param G
+	 * @return Acceleration of the Body
+	 */
+	private static SpaceVector getSpaceVectorAcceleration(Body body, Body[] bodies, double G)
+	{
+		SpaceVector position = body.getPosition();
+		double mass = body.getMass();
+		SpaceVector[] forceVectors = new SpaceVector[bodies.length - 1];
+		int currentForceVector = 0;
+
+		for (Body otherBody : bodies)
+		{
+			if (otherBody == body)
+				continue;
+
+			// F = G * m_1 * m_2 / r^2 in the direction of r
+			SpaceVector r = SpaceVector.add(otherBody.getPosition(), position.negative());
+			double scalarPortion = G * mass * otherBody.getMass() / Math.pow(r.getNorm(), 2.0);
+			forceVectors[currentForceVector++] = r.normalized().scalarProduct(scalarPortion);
+		}
+
+		return SpaceVector.add(forceVectors).scalarProduct(1 / mass);
+	}
+
+	/**
+	 * Finds the acceleration of a Body with the same per-pair force as getSpaceVectorAcceleration, but on Vec2s and a
+	 * Vec2.Accumulator, whose temporaries escape analysis can eliminate
+	 * @param body
+	 * @param bodies
+	 * @param G
+	 * @param acceleration Accumulator to sum into
+	 * @return Acceleration of the Body
+	 */
+	private static Vec2 getVec2Acceleration(Body body, Body[] bodies, double G, Vec2.Accumulator acceleration)
+	{
+		Vec2 position = body.getPositionVec2();
+		acceleration.reset();
+
+		for (Body otherBody : bodies)
+		{
+			if (otherBody == body)
+				continue;
+
+			// a = G * m_2 / r^2 in the direction of r
+			Vec2 r = otherBody.getPositionVec2().subtract(position);
+			double inverseNorm = r.inverseNorm();
+			acceleration.addScaled(r, G * otherBody.getMass() * inverseNorm * inverseNorm * inverseNorm);
+		}
+
+		return acceleration.toVec2();
+	}
+
+	/**
+	 * Returns an operation on a pair of two-dimensional vectors
+	 * @param type spacevector or vec2
+	 * @param operation add, addAll, scalarProduct, normalized, or getNorm
+	 * @return Supplier that performs the operation
+	 */
+	public static Supplier<Object> spaceVectorOperation(String type, String operation)
+	{
+		if ("vec2".equals(type))
+			return vec2Operation(operation);
+
+
+		final SpaceVector u = new SpaceVector(3.0, -4.0);
+		final SpaceVector v = new SpaceVector(-1.5, 2.5);
+		final SpaceVector w = new SpaceVector(0.25, 0.75);
+
+		if ("add".equals(operation))
+			return () -> u.add(v);
+		else if ("addAll".equals(operation))
+			return () -> SpaceVector.add(u, v, w);
+		else if ("scalarProduct".equals(operation))
+			return () -> u.scalarProduct(0.5);
+		else if ("normalized".equals(operation))
+			return () -> u.normalized();
+		else if ("getNorm".equals(operation))
+			return () -> u.getNorm();
+
+		throw new IllegalArgumentException("Unknown operation " + operation);
+	}
+
+	/**
+	 * Returns the Vec2 counterpart of a SpaceVector operation (addAll sums into a Vec2.Accumulator)
+	 * @param operation add, addAll, scalarProduct, normalized, or getNorm
+	 * @return Supplier that performs the operation
+	 */
+	private static Supplier<Object> vec2Operation(String operation)
+	{
+		final Vec2 u = new Vec2(3.0, -4.0);
+		final Vec2 v = new Vec2(-1.5, 2.5);
+		final Vec2 w = new Vec2(0.25, 0.75);
+
+		if ("add".equals(operation))
+			return () -> u.add(v);
+		else if ("addAll".equals(operation))
+			return () -> new Vec2.Accumulator().add(u).add(v).add(w).toVec2();
+		else if ("scalarProduct".equals(operation))
+			return () -> u.scale(0.5);
+		else if ("normalized".equals(operation))
+			return () -> u.normalized();
+		else if ("getNorm".equals(operation))
+			return () -> u.getNorm();
+
+		throw new IllegalArgumentException("Unknown operation " + operation);
+	}
+
+	/**
+	 * Prepares a Canvas painting offscreen into a BufferedImage, and returns two operations: the first advances the
+	 * simulation (so that the motion paths grow as they would on screen), and the second paints a frame
+	 * @param configuration
+	 * @param width
+	 * @param height
+	 * @param rasterThreshold Number of bodies above which the Canvas rasterizes them
+	 * @return Suppliers that advance the simulation and paint a frame
+	 */
+	@SuppressWarnings("unchecked")
+	public static Supplier<Object>[] canvasPaint(String configuration, int width, int height, int rasterThreshold)
+	{
+		final int STEPS_PER_FRAME = 10;
+
+		final Canvas canvas = new Canvas();
+		canvas.setSize(width, height);
+		canvas.setRasterThreshold(rasterThreshold);
+		canvas.prepareSimulation(createCluster(configuration));
+
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D graphics = image.createGraphics();
+
+		Supplier<Object> advance = () ->
+		{
+			canvas.advanceSimulation(STEPS_PER_FRAME);
+			return canvas;
+		};
+
+		Supplier<Object> paint = () ->
+		{
+			canvas.paint(graphics);
+			return image;
+		};
+
+		return new Supplier[] { advance, paint };
+	}
+}
\ No newline at end of file
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command-line options, but defaults to JSON results in
+ * target/jmh-result.json and to the gc profiler (for allocation rates), so that runs on different commits can be
+ * compared directly
+ * @author Rajiv Thamburaj
+ */
+public final class BenchmarkRunner
+{
+	/**
+	 * Constructor (the class only has a main method)
+	 */
+	private BenchmarkRunner()
+	{
+	}
+
+	/**
+	 * Main method
+	 * @param args
+	 * @throws CommandLineOptionException
+	 * @throws RunnerException
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException
+	{
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+				|| commandLine.shouldListResultFormats())
+		{
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+		if (!commandLine.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if (!commandLine.getResult().hasValue())
+			options.result("target/jmh-result.json");
+		if (commandLine.getProfilers().isEmpty())
+			options.addProfiler(GCProfiler.class);
+
+		new Runner(options.build()).run();
+	}
+}
\ No newline at end of file
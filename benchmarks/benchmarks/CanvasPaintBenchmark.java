@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the cost of painting one frame of the Canvas offscreen (the simulation is advanced between frames, outside
+ * of the measurement, so that the motion paths fill up as they would on screen)
+ * @author Rajiv Thamburaj
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class CanvasPaintBenchmark
+{
+	@Param({ "Solar System", "Binary Star with Planets", "random-1000", "random-10000", "random3d-1000" })
+	public String configuration;
+
+	@Param({ "800" })
+	public int width;
+
+	@Param({ "600" })
+	public int height;
+
+	// Clusters of more bodies than this are rasterized (-p rasterThreshold=2147483647 paints every body as shapes)
+	@Param({ "1000" })
+	public int rasterThreshold;
+
+	private Supplier<Object> advance;
+	private Supplier<Object> paint;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp()
+	{
+		Supplier<Object>[] suppliers = (Supplier<Object>[]) Fixtures.create("canvasPaint",
+				new Class<?>[] { String.class, int.class, int.class, int.class }, this.configuration, this.width,
+				this.height, this.rasterThreshold);
+		this.advance = suppliers[0];
+		this.paint = suppliers[1];
+	}
+
+	@Setup(Level.Invocation)
+	public void advance()
+	{
+		this.advance.get();
+	}
+
+	@Benchmark
+	public Object paintComponent()
+	{
+		return this.paint.get();
+	}
+}
\ No newline at end of file
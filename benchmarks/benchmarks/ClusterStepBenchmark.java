@@ -0,0 +1,48 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the cost of Cluster.updatePositions (ns/step) for the presets in ClusterConfigurations.xml and for
+ * synthetic random clusters of 1k bodies (random3d-1000 is the three-dimensional counterpart of random-1000), with the
+ * exact and Barnes-Hut solvers. The approximate solvers are measured on large clusters by LargeClusterStepBenchmark.
+ * Run with the gc profiler to see the allocation rate per step.
+ * @author Rajiv Thamburaj
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClusterStepBenchmark
+{
+	@Param({ "Star and Planet", "Star, Planet, and Moon", "Star and Comets", "Solar System", "Gravitational Slingshot",
+			"Figure Eight", "Binary Star", "Binary Star with Planets", "Binary Slingshot",
+			"random-1000", "random3d-1000" })
+	public String configuration;
+
+	@Param({ "symmetric", "barnes-hut" })
+	public String solver;
+
+	@Param({ "1" })
+	public int threads;
+
+	private Supplier<Object> step;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp()
+	{
+		this.step = (Supplier<Object>) Fixtures.create("clusterStep",
+				new Class<?>[] { String.class, String.class, int.class }, this.configuration, this.solver, this.threads);
+	}
+
+	@Benchmark
+	public Object updatePositions()
+	{
+		return this.step.get();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls the static factory methods of BenchmarkFixtures (in the default package, alongside the simulator classes)
+ * @author Rajiv Thamburaj
+ */
+final class Fixtures
+{
+	/**
+	 * Constructor (the class only has static methods)
+	 */
+	private Fixtures()
+	{
+	}
+
+	/**
+	 * Invokes a factory method on BenchmarkFixtures
+	 * @param methodName
+	 * @param parameterTypes
+	 * @param args
+	 * @return Object returned by the factory method
+	 */
+	static Object create(String methodName, Class<?>[] parameterTypes, Object ... args)
+	{
+		try
+		{
+			Class<?> fixtures = Class.forName("BenchmarkFixtures");
+			Method method = fixtures.getMethod(methodName, parameterTypes);
+			return method.invoke(null, args);
+		}
+
+		catch (InvocationTargetException e)
+		{
+			throw new IllegalStateException(e.getCause());
+		}
+
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+}
\ No newline at end of file
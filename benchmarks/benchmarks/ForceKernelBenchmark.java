@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the cost of computing every acceleration once (us/op) with each force kernel: the original per-pair
+ * SpaceVector force, the same force on Vec2, the scalar direct-sum solvers, and the SIMD solver on the Vector API
+ * (with and without the Newton's method reciprocal square root), the Fast Multipole Method, and the Particle-Mesh
+ * solvers (with and without the short-range correction). The forked JVM is given the jdk.incubator.vector module.
+ * @author Rajiv Thamburaj
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Benchmark)
+public class ForceKernelBenchmark
+{
+	@Param({ "random-1000", "random-10000" })
+	public String configuration;
+
+	@Param({ "spacevector", "vec2", "direct", "symmetric", "vector", "vector-rsqrt", "fmm", "pm", "p3m" })
+	public String kernel;
+
+	private Supplier<Object> accelerations;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp()
+	{
+		this.accelerations = (Supplier<Object>) Fixtures.create("forceKernel",
+				new Class<?>[] { String.class, String.class }, this.configuration, this.kernel);
+	}
+
+	@Benchmark
+	public Object computeAccelerations()
+	{
+		return this.accelerations.get();
+	}
+}
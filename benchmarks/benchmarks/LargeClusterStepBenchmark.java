@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the cost of Cluster.updatePositions (ms/step) for synthetic clusters of 10k to 100k bodies (random-N, or
+ * generated, e.g. plummer-100000) with the approximate solvers: Barnes-Hut, the Fast Multipole Method, and
+ * Particle-Mesh. Direct summation is left out, since a single step of 100k bodies takes seconds.
+ * @author Rajiv Thamburaj
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LargeClusterStepBenchmark
+{
+	@Param({ "random-10000", "random-100000", "plummer-100000" })
+	public String configuration;
+
+	@Param({ "barnes-hut", "fmm", "pm" })
+	public String solver;
+
+	@Param({ "1" })
+	public int threads;
+
+	private Supplier<Object> step;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp()
+	{
+		this.step = (Supplier<Object>) Fixtures.create("clusterStep",
+				new Class<?>[] { String.class, String.class, int.class }, this.configuration, this.solver, this.threads);
+	}
+
+	@Benchmark
+	public Object updatePositions()
+	{
+		return this.step.get();
+	}
+}
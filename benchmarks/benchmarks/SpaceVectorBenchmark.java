@@ -0,0 +1,40 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the throughput of the SpaceVector operations, and of the same operations on Vec2
+ * @author Rajiv Thamburaj
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpaceVectorBenchmark
+{
+	@Param({ "spacevector", "vec2" })
+	public String type;
+
+	@Param({ "add", "addAll", "scalarProduct", "normalized", "getNorm" })
+	public String operation;
+
+	private Supplier<Object> supplier;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp()
+	{
+		this.supplier = (Supplier<Object>) Fixtures.create("spaceVectorOperation",
+				new Class<?>[] { String.class, String.class }, this.type, this.operation);
+	}
+
+	@Benchmark
+	public Object apply()
+	{
+		return this.supplier.get();
+	}
+}
\ No newline at end of file
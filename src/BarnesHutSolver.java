@@ -0,0 +1,460 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes accelerations with the Barnes-Hut approximation (O(n log n) per step). The particles are sorted into a
+ * quadtree (an octree if they move in three dimensions), and a distant group of particles is treated as a single mass
+ * at its center of mass whenever the ratio of the group's cell size to its distance is less than the opening angle
+ * theta. The same code builds and walks both trees: a planar store has z = 0 everywhere, so its z terms add nothing.
+ *
+ * The tree is rebuilt on every step into node arrays that are kept between steps, so no objects are allocated once
+ * the arrays have grown to fit the cluster.
+ * @author Rajiv Thamburaj
+ */
+public class BarnesHutSolver implements ForceSolver
+{
+	// Instance variables
+	private double theta;
+	private Softening softening = Softening.NONE;
+	private boolean computePotential;
+	private int numNodes;
+	// 4 for a quadtree, 8 for an octree
+	private int numChildren = 4;
+	// Node geometry (center and half the side length of the square or cubic cell)
+	private double[] centerX;
+	private double[] centerY;
+	private double[] centerZ;
+	private double[] halfSize;
+	// Node mass distribution
+	private double[] nodeMass;
+	private double[] massCenterX;
+	private double[] massCenterY;
+	private double[] massCenterZ;
+	// Index of the first of the children of a node (-1 for a leaf)
+	private int[] firstChild;
+	// Index of the first particle in a leaf (-1 for an empty leaf); further particles are chained through nextParticle
+	private int[] firstParticle;
+	private int[] nextParticle;
+	// Constants
+	private static final double DEFAULT_THETA = 0.5;
+	private static final int INITIAL_NODE_CAPACITY = 64;
+	// Beyond this depth, particles share a leaf (this guards against coincident positions)
+	private static final int MAX_DEPTH = 48;
+
+	/**
+	 * Constructor
+	 */
+	public BarnesHutSolver()
+	{
+		this(DEFAULT_THETA);
+	}
+
+	/**
+	 * Constructor
+	 * @param theta
+	 */
+	public BarnesHutSolver(double theta)
+	{
+		this.theta = theta;
+		allocateNodes(INITIAL_NODE_CAPACITY);
+		this.nextParticle = new int[0];
+	}
+
+	/**
+	 * Rebuilds the tree from the current particle positions
+	 * @param particles
+	 * @param pool
+	 */
+	@Override
+	public void prepare(ParticleStore particles, ForkJoinPool pool)
+	{
+		int numParticles = particles.getSize();
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		this.numChildren = particles.isThreeDimensional() ? 8 : 4;
+
+		if (this.nextParticle.length < numParticles)
+			this.nextParticle = new int[numParticles];
+
+		// Find the bounding square (or cube) of the cluster
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double minZ = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		double maxZ = Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < numParticles; i++)
+		{
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			minZ = Math.min(minZ, z[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+			maxZ = Math.max(maxZ, z[i]);
+		}
+
+		this.numNodes = 0;
+		if (numParticles == 0)
+			return;
+
+		// Pad the root cell slightly so that particles on the boundary fall strictly inside it
+		double half = Math.max(Math.max(maxX - minX, maxY - minY), maxZ - minZ) / 2 * 1.0001 + Double.MIN_NORMAL;
+		newNode((minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2, half);
+
+		for (int i = 0; i < numParticles; i++)
+		{
+			insert(i, x, y, z);
+		}
+
+		// Children are always created after their parents, so a reverse sweep visits every child before its parent
+		double[] mass = particles.getMass();
+
+		for (int node = this.numNodes - 1; node >= 0; node--)
+		{
+			double totalMass = 0.0;
+			double weightedX = 0.0;
+			double weightedY = 0.0;
+			double weightedZ = 0.0;
+			int child = this.firstChild[node];
+
+			if (child == -1)
+			{
+				for (int p = this.firstParticle[node]; p != -1; p = this.nextParticle[p])
+				{
+					totalMass += mass[p];
+					weightedX += mass[p] * x[p];
+					weightedY += mass[p] * y[p];
+					weightedZ += mass[p] * z[p];
+				}
+			}
+
+			else
+			{
+				for (int c = child; c < child + this.numChildren; c++)
+				{
+					totalMass += this.nodeMass[c];
+					weightedX += this.nodeMass[c] * this.massCenterX[c];
+					weightedY += this.nodeMass[c] * this.massCenterY[c];
+					weightedZ += this.nodeMass[c] * this.massCenterZ[c];
+				}
+			}
+
+			this.nodeMass[node] = totalMass;
+			this.massCenterX[node] = totalMass > 0 ? weightedX / totalMass : this.centerX[node];
+			this.massCenterY[node] = totalMass > 0 ? weightedY / totalMass : this.centerY[node];
+			this.massCenterZ[node] = totalMass > 0 ? weightedZ / totalMass : this.centerZ[node];
+		}
+	}
+
+	/**
+	 * Finds the acceleration of each particle in [start, end) by walking the tree
+	 * @param particles
+	 * @param G
+	 * @param start
+	 * @param end
+	 */
+	@Override
+	public void computeAccelerations(ParticleStore particles, double G, int start, int end)
+	{
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] az = particles.getAz();
+		double[] mass = particles.getMass();
+		double[] phi = particles.getPotential();
+		// x-, y- and z-components of the acceleration, and the potential
+		double[] acceleration = new double[4];
+
+		for (int i = start; i < end; i++)
+		{
+			acceleration[0] = 0.0;
+			acceleration[1] = 0.0;
+			acceleration[2] = 0.0;
+			acceleration[3] = 0.0;
+
+			if (this.numNodes > 0)
+				accumulate(0, i, x, y, z, mass, acceleration);
+
+			ax[i] = G * acceleration[0];
+			ay[i] = G * acceleration[1];
+			az[i] = G * acceleration[2];
+
+			if (this.computePotential)
+				phi[i] = G * acceleration[3];
+		}
+	}
+
+	/**
+	 * Adds the acceleration (divided by G) of a particle due to the contents of a node
+	 * @param node
+	 * @param i
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param mass
+	 * @param acceleration
+	 */
+	private void accumulate(int node, int i, double[] x, double[] y, double[] z, double[] mass,
+			double[] acceleration)
+	{
+		if (this.nodeMass[node] == 0.0)
+			return;
+
+		int child = this.firstChild[node];
+
+		// Leaves are summed directly
+		if (child == -1)
+		{
+			for (int p = this.firstParticle[node]; p != -1; p = this.nextParticle[p])
+			{
+				if (p != i)
+					addNewtonianTerm(x[p] - x[i], y[p] - y[i], z[p] - z[i], mass[p], acceleration);
+			}
+
+			return;
+		}
+
+		double rx = this.massCenterX[node] - x[i];
+		double ry = this.massCenterY[node] - y[i];
+		double rz = this.massCenterZ[node] - z[i];
+		double size = 2 * this.halfSize[node];
+
+		// A cell that contains the particle itself is always opened
+		boolean containsParticle = Math.abs(x[i] - this.centerX[node]) <= this.halfSize[node]
+				&& Math.abs(y[i] - this.centerY[node]) <= this.halfSize[node]
+				&& Math.abs(z[i] - this.centerZ[node]) <= this.halfSize[node];
+
+		// s / d < theta, compared without taking a square root
+		if (!containsParticle && size * size < this.theta * this.theta * (rx*rx + ry*ry + rz*rz))
+		{
+			addNewtonianTerm(rx, ry, rz, this.nodeMass[node], acceleration);
+			return;
+		}
+
+		for (int c = child; c < child + this.numChildren; c++)
+		{
+			accumulate(c, i, x, y, z, mass, acceleration);
+		}
+	}
+
+	/**
+	 * Adds m * r / |r|^3 (softened) to the acceleration, and -m / |r| to the potential if it is being computed
+	 * @param rx
+	 * @param ry
+	 * @param rz
+	 * @param otherMass
+	 * @param acceleration
+	 */
+	private void addNewtonianTerm(double rx, double ry, double rz, double otherMass, double[] acceleration)
+	{
+		double magnitudeSquared = rx*rx + ry*ry + rz*rz;
+		double inverseMagnitude = 1.0 / Math.sqrt(magnitudeSquared + this.softening.getEpsilonSquared());
+		double scalarPortion = otherMass * inverseMagnitude * inverseMagnitude * inverseMagnitude;
+
+		if (magnitudeSquared < this.softening.getSplineRadiusSquared())
+			scalarPortion = otherMass * this.softening.getForceFactor(magnitudeSquared);
+
+		acceleration[0] += scalarPortion * rx;
+		acceleration[1] += scalarPortion * ry;
+		acceleration[2] += scalarPortion * rz;
+
+		if (this.computePotential)
+		{
+			acceleration[3] -= otherMass * (magnitudeSquared < this.softening.getSplineRadiusSquared()
+					? this.softening.getPotentialFactor(magnitudeSquared) : inverseMagnitude);
+		}
+	}
+
+	/**
+	 * Inserts a particle into the tree, subdividing leaves as necessary
+	 * @param particle
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	private void insert(int particle, double[] x, double[] y, double[] z)
+	{
+		int node = 0;
+		int depth = 0;
+
+		while (true)
+		{
+			int child = this.firstChild[node];
+
+			// Descend into the quadrant (or octant) containing the particle
+			if (child != -1)
+			{
+				node = child + quadrant(node, x[particle], y[particle], z[particle]);
+				depth++;
+				continue;
+			}
+
+			// An empty leaf (or one at the maximum depth) takes the particle
+			if (this.firstParticle[node] == -1 || depth >= MAX_DEPTH)
+			{
+				this.nextParticle[particle] = this.firstParticle[node];
+				this.firstParticle[node] = particle;
+				return;
+			}
+
+			// An occupied leaf is split, and its particle moves down a level
+			subdivide(node, x, y, z);
+		}
+	}
+
+	/**
+	 * Splits a leaf holding a single particle into four (or eight) children
+	 * @param node
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	private void subdivide(int node, double[] x, double[] y, double[] z)
+	{
+		double quarter = this.halfSize[node] / 2;
+		double cx = this.centerX[node];
+		double cy = this.centerY[node];
+		double cz = this.centerZ[node];
+		int child = this.numNodes;
+
+		// Children are numbered by the bits of quadrant: 1 for +x, 2 for +y and 4 for +z (e.g. 3 = (+x, +y, -z))
+		for (int c = 0; c < this.numChildren; c++)
+		{
+			double childZ = this.numChildren == 8 ? ((c & 4) != 0 ? cz + quarter : cz - quarter) : cz;
+			newNode((c & 1) != 0 ? cx + quarter : cx - quarter, (c & 2) != 0 ? cy + quarter : cy - quarter, childZ,
+					quarter);
+		}
+
+		this.firstChild[node] = child;
+
+		int particle = this.firstParticle[node];
+		this.firstParticle[node] = -1;
+
+		int target = child + quadrant(node, x[particle], y[particle], z[particle]);
+		this.nextParticle[particle] = -1;
+		this.firstParticle[target] = particle;
+	}
+
+	/**
+	 * Finds the quadrant (or octant) of a node that contains a point
+	 * @param node
+	 * @param px
+	 * @param py
+	 * @param pz
+	 * @return Offset of the child containing the point (0-3, or 0-7 in an octree)
+	 */
+	private int quadrant(int node, double px, double py, double pz)
+	{
+		int quadrant = 0;
+
+		if (px >= this.centerX[node])
+			quadrant += 1;
+		if (py >= this.centerY[node])
+			quadrant += 2;
+		if (this.numChildren == 8 && pz >= this.centerZ[node])
+			quadrant += 4;
+
+		return quadrant;
+	}
+
+	/**
+	 * Creates an empty leaf, growing the node arrays if they are full
+	 * @param cx
+	 * @param cy
+	 * @param cz
+	 * @param half
+	 * @return Index of the new node
+	 */
+	private int newNode(double cx, double cy, double cz, double half)
+	{
+		if (this.numNodes == this.centerX.length)
+			growNodes(2 * this.centerX.length);
+
+		int node = this.numNodes++;
+		this.centerX[node] = cx;
+		this.centerY[node] = cy;
+		this.centerZ[node] = cz;
+		this.halfSize[node] = half;
+		this.firstChild[node] = -1;
+		this.firstParticle[node] = -1;
+		return node;
+	}
+
+	/**
+	 * Allocates the node arrays
+	 * @param capacity
+	 */
+	private void allocateNodes(int capacity)
+	{
+		this.centerX = new double[capacity];
+		this.centerY = new double[capacity];
+		this.centerZ = new double[capacity];
+		this.halfSize = new double[capacity];
+		this.nodeMass = new double[capacity];
+		this.massCenterX = new double[capacity];
+		this.massCenterY = new double[capacity];
+		this.massCenterZ = new double[capacity];
+		this.firstChild = new int[capacity];
+		this.firstParticle = new int[capacity];
+	}
+
+	/**
+	 * Grows the node arrays, keeping the nodes built so far
+	 * @param capacity
+	 */
+	private void growNodes(int capacity)
+	{
+		this.centerX = Arrays.copyOf(this.centerX, capacity);
+		this.centerY = Arrays.copyOf(this.centerY, capacity);
+		this.centerZ = Arrays.copyOf(this.centerZ, capacity);
+		this.halfSize = Arrays.copyOf(this.halfSize, capacity);
+		this.nodeMass = Arrays.copyOf(this.nodeMass, capacity);
+		this.massCenterX = Arrays.copyOf(this.massCenterX, capacity);
+		this.massCenterY = Arrays.copyOf(this.massCenterY, capacity);
+		this.massCenterZ = Arrays.copyOf(this.massCenterZ, capacity);
+		this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+		this.firstParticle = Arrays.copyOf(this.firstParticle, capacity);
+	}
+
+	/**
+	 * Sets softening (Softening)
+	 * @param softening
+	 */
+	@Override
+	public void setSoftening(Softening softening)
+	{
+		this.softening = softening;
+	}
+
+	/**
+	 * Sets computePotential (boolean)
+	 * @param computePotential
+	 */
+	@Override
+	public void setComputePotential(boolean computePotential)
+	{
+		this.computePotential = computePotential;
+	}
+
+	/**
+	 * Gets theta (double)
+	 * @return Opening angle of the approximation
+	 */
+	public double getTheta()
+	{
+		return this.theta;
+	}
+
+	/**
+	 * Sets theta (double)
+	 * @param theta
+	 */
+	public void setTheta(double theta)
+	{
+		this.theta = theta;
+	}
+}
\ No newline at end of file
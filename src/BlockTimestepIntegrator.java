@@ -0,0 +1,391 @@
+import java.util.Arrays;
+
+/**
+ * Advances a ParticleStore with a hierarchical (block) timestep scheme. Each Body is given its own step size, a
+ * power-of-two fraction of the step requested by the Cluster, chosen from its acceleration and its derivatives
+ * (Aarseth's criterion). At every substep only the Bodies whose steps end there are active: their forces are
+ * recomputed, and the positions of all other Bodies are extrapolated. The active Bodies are advanced with a
+ * fourth-order Hermite predictor-corrector, which needs the jerk (the time derivative of the acceleration).
+ *
+ * In a hierarchical system such as a star with distant planets and a close moon, only the few Bodies in close
+ * encounters take small steps, so far fewer force evaluations are needed than with one global step. Every Body is
+ * synchronized again at the end of each call to step.
+ *
+ * Time inside a step is counted in integer ticks of the smallest allowed substep, so block boundaries are exact.
+ * @author Rajiv Thamburaj
+ */
+public class BlockTimestepIntegrator implements Integrator
+{
+	// Instance variables
+	private double eta;
+	private double initialEta;
+	private boolean initialized;
+	private double maxStep;
+	private long forceEvaluations;
+	// Jerk of each Body
+	private double[] jx;
+	private double[] jy;
+	private double[] jz;
+	// Time (in ticks since the start of the current step) and step size (in ticks) of each Body
+	private long[] time;
+	private long[] stepTicks;
+	// Predicted positions and velocities of every Body at the current substep
+	private Softening softening;
+	private boolean threeDimensional;
+	private double[] px;
+	private double[] py;
+	private double[] pz;
+	private double[] pvx;
+	private double[] pvy;
+	private double[] pvz;
+	// Accelerations and jerks computed for the active Bodies
+	private int[] active;
+	private double[] newAx;
+	private double[] newAy;
+	private double[] newAz;
+	private double[] newJx;
+	private double[] newJy;
+	private double[] newJz;
+	// Constants
+	private static final double DEFAULT_ETA = 0.02;
+	private static final double DEFAULT_INITIAL_ETA = 0.01;
+	// The smallest substep is the requested step divided by 2^MAX_LEVEL
+	private static final int MAX_LEVEL = 24;
+	private static final long TICKS_PER_STEP = 1L << MAX_LEVEL;
+
+	/**
+	 * Constructor
+	 */
+	public BlockTimestepIntegrator()
+	{
+		this(DEFAULT_ETA);
+	}
+
+	/**
+	 * Constructor
+	 * @param eta Accuracy parameter of the timestep criterion (smaller values give smaller steps)
+	 */
+	public BlockTimestepIntegrator(double eta)
+	{
+		this.eta = eta;
+		this.initialEta = DEFAULT_INITIAL_ETA * eta / DEFAULT_ETA;
+	}
+
+	/**
+	 * Discards the step sizes and jerks, so that they are recomputed from the current state on the next step
+	 */
+	@Override
+	public void reset()
+	{
+		this.initialized = false;
+	}
+
+	/**
+	 * Advances every Body by dt, using as many substeps as each Body needs
+	 * @param cluster
+	 * @param dt
+	 */
+	@Override
+	public void step(Cluster cluster, double dt)
+	{
+		ParticleStore particles = cluster.getParticles();
+		double G = cluster.getGravitationalConstant();
+		int numBodies = particles.getSize();
+		this.softening = cluster.getSoftening();
+		this.threeDimensional = particles.isThreeDimensional();
+
+		if (!this.initialized || dt != this.maxStep || this.time.length != numBodies)
+			initialize(particles, G, dt);
+
+		double tick = dt / TICKS_PER_STEP;
+
+		// Every Body is synchronized at the start of a step
+		Arrays.fill(this.time, 0, numBodies, 0L);
+		long now = 0;
+
+		while (now < TICKS_PER_STEP)
+		{
+			// The next block time is the earliest time at which some Body's step ends
+			long next = Long.MAX_VALUE;
+
+			for (int i = 0; i < numBodies; i++)
+			{
+				next = Math.min(next, this.time[i] + this.stepTicks[i]);
+			}
+
+			// Predict the state of every Body at the block time, and collect the active Bodies
+			int numActive = 0;
+
+			for (int i = 0; i < numBodies; i++)
+			{
+				double delta = (next - this.time[i]) * tick;
+				predict(i, delta, particles);
+
+				if (this.time[i] + this.stepTicks[i] == next)
+					this.active[numActive++] = i;
+			}
+
+			// Find the new accelerations and jerks of the active Bodies from the predicted state
+			for (int k = 0; k < numActive; k++)
+			{
+				computeAccelerationAndJerk(this.active[k], particles.getMass(), G, numBodies);
+			}
+
+			this.forceEvaluations += numActive;
+
+			// Correct the active Bodies and choose their next step sizes
+			for (int k = 0; k < numActive; k++)
+			{
+				correct(this.active[k], next, tick, particles);
+			}
+
+			now = next;
+		}
+	}
+
+	/**
+	 * Computes the accelerations and jerks of every Body and picks initial step sizes
+	 * @param particles
+	 * @param G
+	 * @param dt
+	 */
+	private void initialize(ParticleStore particles, double G, double dt)
+	{
+		int numBodies = particles.getSize();
+		allocate(numBodies);
+
+		System.arraycopy(particles.getX(), 0, this.px, 0, numBodies);
+		System.arraycopy(particles.getY(), 0, this.py, 0, numBodies);
+		System.arraycopy(particles.getZ(), 0, this.pz, 0, numBodies);
+		System.arraycopy(particles.getVx(), 0, this.pvx, 0, numBodies);
+		System.arraycopy(particles.getVy(), 0, this.pvy, 0, numBodies);
+		System.arraycopy(particles.getVz(), 0, this.pvz, 0, numBodies);
+
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] az = particles.getAz();
+		double tick = dt / TICKS_PER_STEP;
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			computeAccelerationAndJerk(i, particles.getMass(), G, numBodies);
+		}
+
+		this.forceEvaluations += numBodies;
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			ax[i] = this.newAx[i];
+			ay[i] = this.newAy[i];
+			az[i] = this.newAz[i];
+			this.jx[i] = this.newJx[i];
+			this.jy[i] = this.newJy[i];
+			this.jz[i] = this.newJz[i];
+
+			// dt_i = eta_s * |a| / |j|
+			double a = Math.sqrt(ax[i]*ax[i] + ay[i]*ay[i] + az[i]*az[i]);
+			double j = Math.sqrt(this.jx[i]*this.jx[i] + this.jy[i]*this.jy[i] + this.jz[i]*this.jz[i]);
+			double desiredStep = j > 0.0 ? this.initialEta * a / j : dt;
+			this.stepTicks[i] = quantize(desiredStep / tick, TICKS_PER_STEP);
+		}
+
+		this.maxStep = dt;
+		this.initialized = true;
+	}
+
+	/**
+	 * Extrapolates the position and velocity of a Body with its acceleration and jerk
+	 * @param i
+	 * @param delta
+	 * @param particles
+	 */
+	private void predict(int i, double delta, ParticleStore particles)
+	{
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		double[] vx = particles.getVx();
+		double[] vy = particles.getVy();
+		double[] vz = particles.getVz();
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] az = particles.getAz();
+		double delta2 = delta * delta / 2;
+		double delta3 = delta2 * delta / 3;
+
+		// s_p = s + v*dt + a*dt^2/2 + j*dt^3/6, v_p = v + a*dt + j*dt^2/2
+		this.px[i] = x[i] + vx[i] * delta + ax[i] * delta2 + this.jx[i] * delta3;
+		this.py[i] = y[i] + vy[i] * delta + ay[i] * delta2 + this.jy[i] * delta3;
+		this.pz[i] = z[i] + vz[i] * delta + az[i] * delta2 + this.jz[i] * delta3;
+		this.pvx[i] = vx[i] + ax[i] * delta + this.jx[i] * delta2;
+		this.pvy[i] = vy[i] + ay[i] * delta + this.jy[i] * delta2;
+		this.pvz[i] = vz[i] + az[i] * delta + this.jz[i] * delta2;
+	}
+
+	/**
+	 * Applies the Hermite corrector to an active Body and chooses its next step size
+	 * @param i
+	 * @param next
+	 * @param tick
+	 * @param particles
+	 */
+	private void correct(int i, long next, double tick, ParticleStore particles)
+	{
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		double[] vx = particles.getVx();
+		double[] vy = particles.getVy();
+		double[] vz = particles.getVz();
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] az = particles.getAz();
+		double dt = this.stepTicks[i] * tick;
+		double dt2 = dt * dt;
+
+		double ax1 = this.newAx[i];
+		double ay1 = this.newAy[i];
+		double az1 = this.newAz[i];
+		double jx1 = this.newJx[i];
+		double jy1 = this.newJy[i];
+		double jz1 = this.newJz[i];
+
+		// v_1 = v_0 + (a_0 + a_1)*dt/2 + (j_0 - j_1)*dt^2/12
+		double vx1 = vx[i] + (ax[i] + ax1) * dt / 2 + (this.jx[i] - jx1) * dt2 / 12;
+		double vy1 = vy[i] + (ay[i] + ay1) * dt / 2 + (this.jy[i] - jy1) * dt2 / 12;
+		double vz1 = vz[i] + (az[i] + az1) * dt / 2 + (this.jz[i] - jz1) * dt2 / 12;
+
+		// s_1 = s_0 + (v_0 + v_1)*dt/2 + (a_0 - a_1)*dt^2/12
+		x[i] += (vx[i] + vx1) * dt / 2 + (ax[i] - ax1) * dt2 / 12;
+		y[i] += (vy[i] + vy1) * dt / 2 + (ay[i] - ay1) * dt2 / 12;
+		z[i] += (vz[i] + vz1) * dt / 2 + (az[i] - az1) * dt2 / 12;
+
+		// Second and third derivatives of the acceleration, from the Hermite interpolant
+		double a2x = (-6 * (ax[i] - ax1) - dt * (4 * this.jx[i] + 2 * jx1)) / dt2;
+		double a2y = (-6 * (ay[i] - ay1) - dt * (4 * this.jy[i] + 2 * jy1)) / dt2;
+		double a2z = (-6 * (az[i] - az1) - dt * (4 * this.jz[i] + 2 * jz1)) / dt2;
+		double a3x = (12 * (ax[i] - ax1) + 6 * dt * (this.jx[i] + jx1)) / (dt2 * dt);
+		double a3y = (12 * (ay[i] - ay1) + 6 * dt * (this.jy[i] + jy1)) / (dt2 * dt);
+		double a3z = (12 * (az[i] - az1) + 6 * dt * (this.jz[i] + jz1)) / (dt2 * dt);
+
+		// Evaluate the second derivative at the end of the step
+		a2x += dt * a3x;
+		a2y += dt * a3y;
+		a2z += dt * a3z;
+
+		vx[i] = vx1;
+		vy[i] = vy1;
+		vz[i] = vz1;
+		ax[i] = ax1;
+		ay[i] = ay1;
+		az[i] = az1;
+		this.jx[i] = jx1;
+		this.jy[i] = jy1;
+		this.jz[i] = jz1;
+		this.time[i] = next;
+
+		// Aarseth's criterion: dt = sqrt(eta * (|a||a2| + |j|^2) / (|j||a3| + |a2|^2))
+		double a = Math.sqrt(ax1*ax1 + ay1*ay1 + az1*az1);
+		double j = Math.sqrt(jx1*jx1 + jy1*jy1 + jz1*jz1);
+		double a2 = Math.sqrt(a2x*a2x + a2y*a2y + a2z*a2z);
+		double a3 = Math.sqrt(a3x*a3x + a3y*a3y + a3z*a3z);
+		double denominator = j * a3 + a2 * a2;
+		double desiredTicks = denominator > 0.0
+				? Math.sqrt(this.eta * (a * a2 + j * j) / denominator) / tick
+				: TICKS_PER_STEP;
+
+		// A step may shrink freely, but may only double when the Body is at a boundary of the larger block
+		long ticks = this.stepTicks[i];
+
+		while (ticks > 1 && ticks > desiredTicks)
+		{
+			ticks /= 2;
+		}
+
+		if (ticks == this.stepTicks[i] && 2 * ticks <= TICKS_PER_STEP && 2 * ticks <= desiredTicks
+				&& next % (2 * ticks) == 0)
+			ticks *= 2;
+
+		this.stepTicks[i] = ticks;
+	}
+
+	/**
+	 * Computes the acceleration and jerk of a Body from the predicted state of all Bodies
+	 * @param i
+	 * @param mass
+	 * @param G
+	 * @param numBodies
+	 */
+	private void computeAccelerationAndJerk(int i, double[] mass, double G, int numBodies)
+	{
+		HermiteIntegrator.computeAccelerationAndJerk(i, this.px, this.py, this.pz, this.pvx, this.pvy, this.pvz, mass,
+				G, this.softening, numBodies, this.threeDimensional, this.newAx, this.newAy, this.newAz, this.newJx,
+				this.newJy, this.newJz);
+	}
+
+	/**
+	 * Rounds a step size down to a power-of-two number of ticks
+	 * @param desiredTicks
+	 * @param maxTicks
+	 * @return Largest power of two no larger than desiredTicks (between 1 and maxTicks)
+	 */
+	private static long quantize(double desiredTicks, long maxTicks)
+	{
+		long ticks = maxTicks;
+
+		while (ticks > 1 && ticks > desiredTicks)
+		{
+			ticks /= 2;
+		}
+
+		return ticks;
+	}
+
+	/**
+	 * Allocates the per-Body arrays (reusing them if they are large enough)
+	 * @param numBodies
+	 */
+	private void allocate(int numBodies)
+	{
+		if (this.time != null && this.time.length == numBodies)
+			return;
+
+		this.jx = new double[numBodies];
+		this.jy = new double[numBodies];
+		this.jz = new double[numBodies];
+		this.time = new long[numBodies];
+		this.stepTicks = new long[numBodies];
+		this.px = new double[numBodies];
+		this.py = new double[numBodies];
+		this.pz = new double[numBodies];
+		this.pvx = new double[numBodies];
+		this.pvy = new double[numBodies];
+		this.pvz = new double[numBodies];
+		this.active = new int[numBodies];
+		this.newAx = new double[numBodies];
+		this.newAy = new double[numBodies];
+		this.newAz = new double[numBodies];
+		this.newJx = new double[numBodies];
+		this.newJy = new double[numBodies];
+		this.newJz = new double[numBodies];
+	}
+
+	/**
+	 * Gets forceEvaluations (long)
+	 * @return Number of times the force on a single Body has been computed
+	 */
+	public long getForceEvaluations()
+	{
+		return this.forceEvaluations;
+	}
+
+	/**
+	 * Gets the step size of a Body
+	 * @param i
+	 * @return Current step size of the Body, in simulated time
+	 */
+	public double getStepSize(int i)
+	{
+		return this.stepTicks[i] * this.maxStep / TICKS_PER_STEP;
+	}
+}
\ No newline at end of file
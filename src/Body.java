@@ -1,18 +1,23 @@
 import java.awt.Color;
 
 /**
- * Models a celestial body (such as a star, planet, or moon)
+ * Models a celestial body (such as a star, planet, or moon). The dynamic state of the Body lives in a ParticleStore;
+ * the SpaceVector, Vec2, and Vec3 accessors are a view on top of it. The SpaceVectors have as many components as the
+ * store has dimensions; the Vec2 accessors are only for a two-dimensional Body, while the Vec3 accessors read a
+ * two-dimensional Body with a z of 0.
  * @author Rajiv Thamburaj
  */
 public class Body
 {
 	// Instance variables
 	private double diameter;
-	private double mass;
-	private SpaceVector position;
-	private SpaceVector velocity;
-	private SpaceVector acceleration;
+	private ParticleStore store;
+	private int index;
 	private Color color;
+	private int trailLength = SHARED_TRAIL_LENGTH;
+	// Constants
+	// Trail length of a Body whose motion path fades with the length set on the Canvas
+	public static final int SHARED_TRAIL_LENGTH = -1;
 
 	/**
 	 * Constructor
@@ -25,11 +30,63 @@ public class Body
 	public Body(double diameter, double mass, SpaceVector position, SpaceVector velocity, Color color)
 	{
 		this.diameter = diameter;
-		this.mass = mass;
-		this.position = position;
-		this.velocity = velocity;
 		this.color = color;
 
+		// A Body given three components keeps them in a three-dimensional store of its own
+		int dimension = Math.max(position.getDimension(), velocity.getDimension()) > 2 ? 3 : 2;
+		this.store = new ParticleStore(1, dimension);
+		this.index = 0;
+		this.store.getMass()[0] = mass;
+		setPosition(position);
+		setVelocity(velocity);
+	}
+
+	/**
+	 * Constructor
+	 * @param diameter
+	 * @param mass
+	 * @param position
+	 * @param velocity
+	 * @param color
+	 */
+	public Body(double diameter, double mass, Vec2 position, Vec2 velocity, Color color)
+	{
+		this.diameter = diameter;
+		this.color = color;
+
+		// Until the Body is added to a Cluster, its state is kept in a store of its own
+		this.store = new ParticleStore(1);
+		this.index = 0;
+		this.store.getMass()[0] = mass;
+		setPosition(position);
+		setVelocity(velocity);
+	}
+
+	/**
+	 * Constructor (creates a view on a particle whose state is already in the given store)
+	 * @param diameter
+	 * @param color
+	 * @param store
+	 * @param index
+	 */
+	Body(double diameter, Color color, ParticleStore store, int index)
+	{
+		this.diameter = diameter;
+		this.color = color;
+		this.store = store;
+		this.index = index;
+	}
+
+	/**
+	 * Moves the state of the Body into the given store, which becomes the backing storage for this view
+	 * @param store
+	 * @param index
+	 */
+	void bind(ParticleStore store, int index)
+	{
+		store.copyParticle(index, this.store, this.index);
+		this.store = store;
+		this.index = index;
 	}
 
 	/**
@@ -41,13 +98,22 @@ public class Body
 		return this.diameter;
 	}
 
+	/**
+	 * Gets the dimension of the Body (int)
+	 * @return Number of dimensions the Body moves in (2 or 3)
+	 */
+	public int getDimension()
+	{
+		return this.store.getDimension();
+	}
+
 	/**
 	 * Gets mass (double)
 	 * @return Mass of the Body
 	 */
 	public double getMass()
 	{
-		return this.mass;
+		return this.store.getMass()[this.index];
 	}
 
 	/**
@@ -56,7 +122,13 @@ public class Body
 	 */
 	public SpaceVector getPosition()
 	{
-		return this.position;
+		if (this.store.isThreeDimensional())
+		{
+			return new SpaceVector(this.store.getX()[this.index], this.store.getY()[this.index],
+					this.store.getZ()[this.index]);
+		}
+
+		return new SpaceVector(this.store.getX()[this.index], this.store.getY()[this.index]);
 	}
 
 	/**
@@ -65,7 +137,56 @@ public class Body
 	 */
 	public void setPosition(SpaceVector position)
 	{
-		this.position = position;
+		double[] components = position.getComponents();
+		this.store.getX()[this.index] = components[0];
+		this.store.getY()[this.index] = components[1];
+
+		// A third component is dropped by a two-dimensional store
+		if (components.length > 2 && this.store.isThreeDimensional())
+			this.store.getZ()[this.index] = components[2];
+	}
+
+	/**
+	 * Gets position (Vec2)
+	 * @return Position of the Body
+	 */
+	public Vec2 getPositionVec2()
+	{
+		checkTwoDimensional();
+		return new Vec2(this.store.getX()[this.index], this.store.getY()[this.index]);
+	}
+
+	/**
+	 * Sets position (Vec2)
+	 * @param position
+	 */
+	public void setPosition(Vec2 position)
+	{
+		checkTwoDimensional();
+		this.store.getX()[this.index] = position.getX();
+		this.store.getY()[this.index] = position.getY();
+	}
+
+	/**
+	 * Gets position (Vec3)
+	 * @return Position of the Body
+	 */
+	public Vec3 getPositionVec3()
+	{
+		return new Vec3(this.store.getX()[this.index], this.store.getY()[this.index],
+				this.store.getZ()[this.index]);
+	}
+
+	/**
+	 * Sets position (Vec3)
+	 * @param position
+	 */
+	public void setPosition(Vec3 position)
+	{
+		checkComponentZ(position.getZ());
+		this.store.getX()[this.index] = position.getX();
+		this.store.getY()[this.index] = position.getY();
+		this.store.getZ()[this.index] = position.getZ();
 	}
 
 	/**
@@ -74,7 +195,13 @@ public class Body
 	 */
 	public SpaceVector getVelocity()
 	{
-		return this.velocity;
+		if (this.store.isThreeDimensional())
+		{
+			return new SpaceVector(this.store.getVx()[this.index], this.store.getVy()[this.index],
+					this.store.getVz()[this.index]);
+		}
+
+		return new SpaceVector(this.store.getVx()[this.index], this.store.getVy()[this.index]);
 	}
 
 	/**
@@ -83,7 +210,55 @@ public class Body
 	 */
 	public void setVelocity(SpaceVector velocity)
 	{
-		this.velocity = velocity;
+		double[] components = velocity.getComponents();
+		this.store.getVx()[this.index] = components[0];
+		this.store.getVy()[this.index] = components[1];
+
+		if (components.length > 2 && this.store.isThreeDimensional())
+			this.store.getVz()[this.index] = components[2];
+	}
+
+	/**
+	 * Gets velocity (Vec2)
+	 * @return Velocity of the Body
+	 */
+	public Vec2 getVelocityVec2()
+	{
+		checkTwoDimensional();
+		return new Vec2(this.store.getVx()[this.index], this.store.getVy()[this.index]);
+	}
+
+	/**
+	 * Sets velocity (Vec2)
+	 * @param velocity
+	 */
+	public void setVelocity(Vec2 velocity)
+	{
+		checkTwoDimensional();
+		this.store.getVx()[this.index] = velocity.getX();
+		this.store.getVy()[this.index] = velocity.getY();
+	}
+
+	/**
+	 * Gets velocity (Vec3)
+	 * @return Velocity of the Body
+	 */
+	public Vec3 getVelocityVec3()
+	{
+		return new Vec3(this.store.getVx()[this.index], this.store.getVy()[this.index],
+				this.store.getVz()[this.index]);
+	}
+
+	/**
+	 * Sets velocity (Vec3)
+	 * @param velocity
+	 */
+	public void setVelocity(Vec3 velocity)
+	{
+		checkComponentZ(velocity.getZ());
+		this.store.getVx()[this.index] = velocity.getX();
+		this.store.getVy()[this.index] = velocity.getY();
+		this.store.getVz()[this.index] = velocity.getZ();
 	}
 
 	/**
@@ -92,7 +267,13 @@ public class Body
 	 */
 	public SpaceVector getAcceleration()
 	{
-		return acceleration;
+		if (this.store.isThreeDimensional())
+		{
+			return new SpaceVector(this.store.getAx()[this.index], this.store.getAy()[this.index],
+					this.store.getAz()[this.index]);
+		}
+
+		return new SpaceVector(this.store.getAx()[this.index], this.store.getAy()[this.index]);
 	}
 
 	/**
@@ -101,7 +282,74 @@ public class Body
 	 */
 	public void setAcceleration(SpaceVector acceleration)
 	{
-		this.acceleration = acceleration;
+		double[] components = acceleration.getComponents();
+		this.store.getAx()[this.index] = components[0];
+		this.store.getAy()[this.index] = components[1];
+
+		if (components.length > 2 && this.store.isThreeDimensional())
+			this.store.getAz()[this.index] = components[2];
+	}
+
+	/**
+	 * Gets acceleration (Vec2)
+	 * @return Acceleration of the Body
+	 */
+	public Vec2 getAccelerationVec2()
+	{
+		checkTwoDimensional();
+		return new Vec2(this.store.getAx()[this.index], this.store.getAy()[this.index]);
+	}
+
+	/**
+	 * Sets acceleration (Vec2)
+	 * @param acceleration
+	 */
+	public void setAcceleration(Vec2 acceleration)
+	{
+		checkTwoDimensional();
+		this.store.getAx()[this.index] = acceleration.getX();
+		this.store.getAy()[this.index] = acceleration.getY();
+	}
+
+	/**
+	 * Gets acceleration (Vec3)
+	 * @return Acceleration of the Body
+	 */
+	public Vec3 getAccelerationVec3()
+	{
+		return new Vec3(this.store.getAx()[this.index], this.store.getAy()[this.index],
+				this.store.getAz()[this.index]);
+	}
+
+	/**
+	 * Sets acceleration (Vec3)
+	 * @param acceleration
+	 */
+	public void setAcceleration(Vec3 acceleration)
+	{
+		checkComponentZ(acceleration.getZ());
+		this.store.getAx()[this.index] = acceleration.getX();
+		this.store.getAy()[this.index] = acceleration.getY();
+		this.store.getAz()[this.index] = acceleration.getZ();
+	}
+
+	/**
+	 * Checks that the Body moves in a plane, so that a Vec2 holds all of its state
+	 */
+	private void checkTwoDimensional()
+	{
+		if (this.store.isThreeDimensional())
+			throw new IllegalStateException("A three-dimensional Body has no Vec2 state; use the Vec3 accessors");
+	}
+
+	/**
+	 * Checks that a z component can be kept by the store of the Body
+	 * @param z
+	 */
+	private void checkComponentZ(double z)
+	{
+		if (z != 0.0 && !this.store.isThreeDimensional())
+			throw new IllegalArgumentException("A two-dimensional Body cannot be given a z component");
 	}
 
 	/**
@@ -112,4 +360,27 @@ public class Body
 	{
 		return color;
 	}
+
+	/**
+	 * Gets trailLength (int)
+	 * @return Number of snapshots the motion path of the Body takes to fade away (SHARED_TRAIL_LENGTH if the Body
+	 * follows the length set on the Canvas)
+	 */
+	public int getTrailLength()
+	{
+		return this.trailLength;
+	}
+
+	/**
+	 * Sets trailLength (int). This is the number of snapshots the motion path of the Body takes to fade away (0 for
+	 * no path), or SHARED_TRAIL_LENGTH to follow the length set on the Canvas.
+	 * @param trailLength
+	 */
+	public void setTrailLength(int trailLength)
+	{
+		if (trailLength < 0 && trailLength != SHARED_TRAIL_LENGTH)
+			throw new IllegalArgumentException("The length of a path must not be negative");
+
+		this.trailLength = trailLength;
+	}
 }
\ No newline at end of file
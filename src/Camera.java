@@ -0,0 +1,198 @@
+/**
+ * Viewpoint from which a three-dimensional Cluster is painted. The camera turns about the origin: the positions are
+ * rotated by the yaw (about the y-axis) and then the pitch (about the x-axis), and projected onto the screen either
+ * orthographically or in perspective from a point at the given distance in front of the origin. With no rotation,
+ * the screen shows the x-y plane as a planar Cluster is painted, with z pointing towards the viewer.
+ *
+ * Positions are projected a whole array at a time into arrays supplied by the caller, so painting allocates nothing.
+ * @author Rajiv Thamburaj
+ */
+public class Camera
+{
+	// Instance variables
+	private double yaw;
+	private double pitch;
+	private double distance;
+	private double zoom;
+	private String projection;
+	private boolean perspective;
+	// Rows of the rotation matrix (pitch after yaw)
+	private double xx;
+	private double xy;
+	private double xz;
+	private double yx;
+	private double yy;
+	private double yz;
+	private double zx;
+	private double zy;
+	private double zz;
+	// Constants
+	private static final double MAX_PITCH = Math.PI / 2;
+	// Points closer to the eye than this fraction of the distance are not drawn in perspective
+	private static final double NEAR_PLANE = 0.05;
+
+	/**
+	 * Constructor
+	 * @param distance Distance from the eye to the origin (in the units of the positions)
+	 */
+	public Camera(double distance)
+	{
+		this.distance = distance;
+		this.zoom = 1.0;
+		setProjection("perspective");
+		setOrientation(0.0, 0.0);
+	}
+
+	/**
+	 * Projects positions onto the screen (in Canvas coordinates, with the origin at the center and y pointing up)
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param numPoints
+	 * @param screenX Receives the x-coordinate on screen (NaN for a point behind the eye)
+	 * @param screenY Receives the y-coordinate on screen (NaN for a point behind the eye)
+	 * @param scale Receives the factor that lengths at the point are multiplied by on screen (null if not needed)
+	 * @param depth Receives the distance of the point towards the eye (larger is nearer; null if not needed)
+	 */
+	public void project(double[] x, double[] y, double[] z, int numPoints, double[] screenX, double[] screenY,
+			double[] scale, double[] depth)
+	{
+		double near = NEAR_PLANE * this.distance;
+
+		for (int i = 0; i < numPoints; i++)
+		{
+			double viewX = this.xx * x[i] + this.xy * y[i] + this.xz * z[i];
+			double viewY = this.yx * x[i] + this.yy * y[i] + this.yz * z[i];
+			double viewZ = this.zx * x[i] + this.zy * y[i] + this.zz * z[i];
+			double factor = this.zoom;
+
+			// s = zoom * d / (d - z), so that the plane through the origin keeps its size
+			if (this.perspective)
+			{
+				double fromEye = this.distance - viewZ;
+				factor = fromEye > near ? this.zoom * this.distance / fromEye : Double.NaN;
+			}
+
+			screenX[i] = factor * viewX;
+			screenY[i] = factor * viewY;
+
+			if (scale != null)
+				scale[i] = Double.isNaN(factor) ? 0.0 : factor;
+			if (depth != null)
+				depth[i] = viewZ;
+		}
+	}
+
+	/**
+	 * Turns the camera
+	 * @param deltaYaw Angle to turn about the vertical axis of the screen
+	 * @param deltaPitch Angle to tilt about the horizontal axis of the screen (the pitch stays within a quarter turn)
+	 */
+	public void rotate(double deltaYaw, double deltaPitch)
+	{
+		setOrientation(this.yaw + deltaYaw, this.pitch + deltaPitch);
+	}
+
+	/**
+	 * Sets the yaw and the pitch, and rebuilds the rotation matrix
+	 * @param yaw
+	 * @param pitch
+	 */
+	public void setOrientation(double yaw, double pitch)
+	{
+		this.yaw = Math.IEEEremainder(yaw, 2 * Math.PI);
+		this.pitch = Math.max(-MAX_PITCH, Math.min(MAX_PITCH, pitch));
+
+		double cosYaw = Math.cos(this.yaw);
+		double sinYaw = Math.sin(this.yaw);
+		double cosPitch = Math.cos(this.pitch);
+		double sinPitch = Math.sin(this.pitch);
+
+		// R = R_x(pitch) * R_y(yaw)
+		this.xx = cosYaw;
+		this.xy = 0.0;
+		this.xz = sinYaw;
+		this.yx = sinPitch * sinYaw;
+		this.yy = cosPitch;
+		this.yz = -sinPitch * cosYaw;
+		this.zx = -cosPitch * sinYaw;
+		this.zy = sinPitch;
+		this.zz = cosPitch * cosYaw;
+	}
+
+	/**
+	 * Gets yaw (double)
+	 * @return Angle the camera has turned about the vertical axis (in radians)
+	 */
+	public double getYaw()
+	{
+		return this.yaw;
+	}
+
+	/**
+	 * Gets pitch (double)
+	 * @return Angle the camera has tilted about the horizontal axis (in radians)
+	 */
+	public double getPitch()
+	{
+		return this.pitch;
+	}
+
+	/**
+	 * Gets distance (double)
+	 * @return Distance from the eye to the origin
+	 */
+	public double getDistance()
+	{
+		return this.distance;
+	}
+
+	/**
+	 * Sets distance (double)
+	 * @param distance
+	 */
+	public void setDistance(double distance)
+	{
+		this.distance = distance;
+	}
+
+	/**
+	 * Gets zoom (double)
+	 * @return Magnification of the plane through the origin
+	 */
+	public double getZoom()
+	{
+		return this.zoom;
+	}
+
+	/**
+	 * Sets zoom (double)
+	 * @param zoom
+	 */
+	public void setZoom(double zoom)
+	{
+		this.zoom = zoom;
+	}
+
+	/**
+	 * Gets projection (String)
+	 * @return perspective or orthographic
+	 */
+	public String getProjection()
+	{
+		return this.projection;
+	}
+
+	/**
+	 * Sets projection (String)
+	 * @param projection perspective or orthographic
+	 */
+	public void setProjection(String projection)
+	{
+		if (!"perspective".equals(projection) && !"orthographic".equals(projection))
+			throw new IllegalArgumentException("Unknown projection " + projection);
+
+		this.projection = projection;
+		this.perspective = "perspective".equals(projection);
+	}
+}
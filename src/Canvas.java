@@ -2,17 +2,19 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.GeneralPath;
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.*;
-import org.w3c.dom.*;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * Inherits from JPanel - the "view" class for the Cluster "model"
+ * Inherits from JPanel - the "view" class for the Cluster "model". A three-dimensional Cluster is seen through a
+ * Camera, which is turned by dragging the mouse and zoomed with the mouse wheel; its Bodies are projected onto the
+ * screen, scaled by their distance in perspective, and painted from the farthest to the nearest.
  * @author Rajiv Thamburaj
  */
 public final class Canvas extends JPanel implements ActionListener
@@ -20,14 +22,50 @@ public final class Canvas extends JPanel implements ActionListener
 	// Instance variables
 	private Timer timer;
 	private Cluster cluster;
-	private ArrayList<Point2D.Double[]> points;
+	private SnapshotBuffer snapshots;
+	private SimulationThread simulationThread;
+	private long step;
+	private long lastPaintedStep;
+	// Copies of the last two snapshots painted, which the painted positions are interpolated between
+	private double[] previousX;
+	private double[] previousY;
+	private double[] previousZ;
+	private Body[] previousBodies;
+	private long previousDueTime;
+	private double[] heldX;
+	private double[] heldY;
+	private double[] heldZ;
+	private Body[] heldBodies;
+	private long heldDueTime;
+	// Screen positions of the held and previous snapshots of a three-dimensional Cluster
+	private Camera camera;
+	private double[] projectedX;
+	private double[] projectedY;
+	private double[] projectedScale;
+	private double[] projectedDepth;
+	private double[] projectedPreviousX;
+	private double[] projectedPreviousY;
+	// Depth of each Body (upper half) and its index (lower half), sorted into the order of painting
+	private long[] paintOrder;
+	private boolean cameraMoved;
+	private int dragX;
+	private int dragY;
+	private TrailLayer trails;
+	private Line2D.Double segment;
+	private Ellipse2D.Double disc;
+	private RasterRenderer renderer;
+	private int rasterThreshold;
+	private boolean parallelRendering;
+	private int trailLength;
 	private String configurationsFile;
-	private int frameNumber = 0;
 	private boolean showPaths;
+	private boolean showDiagnostics;
+	private int diagnosticsInterval;
+	private SimulationMetrics metrics;
+	private long lastFrameNanos;
 	private double timeStep = 0.0005;
-	// Constants
-	private final int MAX_TRACE_POINTS = 200;
-	private final int VIEW_UPDATE_RATE = 10;
+	private double timeScale;
+	private double framesPerSecond;
 
 	/**
 	 * Constructor
@@ -35,191 +73,506 @@ public final class Canvas extends JPanel implements ActionListener
 	public Canvas()
 	{
 		double DEFAULT_TIME_STEP = 0.0005;
+		double DEFAULT_TIME_SCALE = 0.5;
+		double DEFAULT_FRAMES_PER_SECOND = 100.0;
+		int DEFAULT_TRAIL_LENGTH = 200;
+		int DEFAULT_DIAGNOSTICS_INTERVAL = 100;
+		int DEFAULT_RASTER_THRESHOLD = 1000;
+		double DEFAULT_CAMERA_DISTANCE = 1500.0;
 
 		this.setOpaque(true);
 		setBackground(new Color(0, 0, 40));
 
-		this.timer = new Timer(1, this);
-		this.points = new ArrayList<Point2D.Double[]>();
+		this.trailLength = DEFAULT_TRAIL_LENGTH;
+		this.rasterThreshold = DEFAULT_RASTER_THRESHOLD;
+		this.segment = new Line2D.Double();
+		this.disc = new Ellipse2D.Double();
 		this.showPaths = true;
+		this.showDiagnostics = true;
+		this.diagnosticsInterval = DEFAULT_DIAGNOSTICS_INTERVAL;
 		this.timeStep = DEFAULT_TIME_STEP;
+		this.timeScale = DEFAULT_TIME_SCALE;
+		this.previousX = new double[0];
+		this.previousY = new double[0];
+		this.previousZ = new double[0];
+		this.heldX = new double[0];
+		this.heldY = new double[0];
+		this.heldZ = new double[0];
+		this.camera = new Camera(DEFAULT_CAMERA_DISTANCE);
+		this.projectedX = new double[0];
+		this.paintOrder = new long[0];
+		this.timer = new Timer(0, this);
+		setFramesPerSecond(DEFAULT_FRAMES_PER_SECOND);
+
+		MouseAdapter cameraControl = new MouseAdapter()
+		{
+			@Override
+			public void mousePressed(MouseEvent event)
+			{
+				Canvas.this.dragX = event.getX();
+				Canvas.this.dragY = event.getY();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent event)
+			{
+				// Half a degree per pixel, turning the Cluster the way the mouse moves
+				double radiansPerPixel = Math.toRadians(0.5);
+				turnCamera((event.getX() - Canvas.this.dragX) * radiansPerPixel,
+						(event.getY() - Canvas.this.dragY) * radiansPerPixel);
+				Canvas.this.dragX = event.getX();
+				Canvas.this.dragY = event.getY();
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent event)
+			{
+				zoomCamera(Math.pow(1.1, -event.getPreciseWheelRotation()));
+			}
+		};
+
+		addMouseListener(cameraControl);
+		addMouseMotionListener(cameraControl);
+		addMouseWheelListener(cameraControl);
 	}
 
 	/**
-	 * Paints bodies and paths to the JPanel
+	 * Paints bodies and paths to the JPanel from the latest complete snapshot of the Cluster (the Cluster itself
+	 * belongs to the simulation thread while the simulation is running). While the simulation runs, the Bodies are
+	 * painted where they were at the time of the frame, interpolated between the last two snapshots, so that motion
+	 * stays smooth whatever the frame rate and the time step. The paths are kept in a TrailLayer, which only has to be
+	 * extended when a new snapshot comes in.
 	 * @param g
 	 */
 	@Override
 	public void paintComponent(Graphics g)
 	{
+		SimulationMetrics metrics = this.metrics;
+		long startNanos = metrics != null ? System.nanoTime() : 0L;
+		long startBytes = metrics != null ? SimulationMetrics.currentThreadAllocatedBytes() : 0L;
+
 		super.paintComponent(g);
 		Graphics2D g2d = (Graphics2D) g;
 
 		// Translate the coordinate system
 		g2d.translate(this.getWidth() / 2, this.getHeight() / 2);
 
-		Body[] bodies = this.cluster.getBodies();
-		int numBodies = bodies.length;
-		Point2D.Double[] pointArray = new Point2D.Double[numBodies];
+		// Diameters and colors never change, so they can still be read from the Bodies of the snapshot
+		ClusterSnapshot snapshot = this.snapshots.getLatest();
+		Body[] bodies = snapshot.getBodies();
+		double[] xs = snapshot.getX();
+		double[] ys = snapshot.getY();
+		int numBodies = snapshot.getSize();
 
-		// Paint each body
-		for (int i = 0; i < numBodies; i++)
+		boolean running = this.simulationThread != null;
+		int width = Math.max(1, this.getWidth());
+		int height = Math.max(1, this.getHeight());
+
+		// The paths are lost when the Canvas is resized
+		if (this.trails == null || this.trails.getWidth() != width || this.trails.getHeight() != height)
+			this.trails = new TrailLayer(width, height, this.trailLength);
+
+		boolean newSnapshot = snapshot.getStep() != this.lastPaintedStep;
+		boolean continuous = false;
+
+		if (newSnapshot)
 		{
-			SpaceVector position = bodies[i].getPosition();
-			double[] components = position.getComponents();
-			double x = components[0];
-			double y = components[1];
-			double diameter = bodies[i].getDiameter();
+			continuous = holdSnapshot(snapshot) && running;
+			this.lastPaintedStep = snapshot.getStep();
+		}
 
-			// This ArrayList keeps track of the position of the body at fixed intervals to
-			// paint the motion path
-			pointArray[i] = new Point2D.Double(x, -y);
+		double[] fromX = this.previousX;
+		double[] fromY = this.previousY;
+		double[] scale = null;
 
-			// Paint the body
-			g2d.setColor(bodies[i].getColor());
-			g2d.fill(new Ellipse2D.Double(x - diameter / 2, -y - diameter / 2, diameter, diameter));
+		// A three-dimensional Cluster is painted from its positions on screen, which change whenever the camera moves
+		if (snapshot.isThreeDimensional())
+		{
+			projectSnapshots(numBodies);
+			xs = this.projectedX;
+			ys = this.projectedY;
+			fromX = this.projectedPreviousX;
+			fromY = this.projectedPreviousY;
+			scale = this.projectedScale;
+		}
+
+		// The paths on screen no longer match the Bodies once the camera has moved
+		if (this.cameraMoved)
+		{
+			clearPoints();
+			this.cameraMoved = false;
+		}
+
+		// Extend the motion paths at fixed intervals (once per new snapshot, to the positions the Bodies are now being
+		// moved away from)
+		if (newSnapshot && this.showPaths)
+			this.trails.append(bodies, continuous ? fromX : xs, continuous ? fromY : ys, numBodies);
 
-			// Remove earlier points from the ArrayList
-			if (this.points.size() > this.MAX_TRACE_POINTS)
+		// Undo the translation to the center
+		if (this.showPaths)
+			this.trails.paint(g2d, -this.getWidth() / 2, -this.getHeight() / 2);
+
+		double alpha = running && this.previousBodies == bodies ? interpolationFactor() : 1.0;
+
+		if (isRasterized(numBodies))
+			paintRaster(g2d, bodies, xs, ys, fromX, fromY, scale, alpha, numBodies);
+		else
+			paintShapes(g2d, bodies, xs, ys, fromX, fromY, scale, alpha, numBodies);
+
+		if (this.showDiagnostics && snapshot.getDiagnostics() != null)
+			paintDiagnostics(g2d, snapshot.getDiagnostics());
+
+		if (metrics != null)
+		{
+			long allocatedBytes = SimulationMetrics.currentThreadAllocatedBytes() - startBytes;
+			metrics.recordPaint(System.nanoTime() - startNanos, allocatedBytes);
+		}
+	}
+
+	/**
+	 * Paints each body as Java2D shapes, along with the last segment of its motion path (from the end of the path in
+	 * the TrailLayer to the body)
+	 * @param g2d
+	 * @param bodies
+	 * @param xs
+	 * @param ys
+	 * @param fromX x-components of the previous positions
+	 * @param fromY y-components of the previous positions
+	 * @param scale Factor each diameter is multiplied by (null to paint the bodies at their own size, in their order)
+	 * @param alpha How far the bodies have moved from the previous snapshot towards these positions
+	 * @param numBodies
+	 */
+	private void paintShapes(Graphics2D g2d, Body[] bodies, double[] xs, double[] ys, double[] fromX, double[] fromY,
+			double[] scale, double alpha, int numBodies)
+	{
+		boolean connect = this.showPaths && this.simulationThread != null && this.previousBodies == bodies;
+
+		if (scale != null)
+			sortByDepth(numBodies);
+
+		// Paint each body
+		for (int k = 0; k < numBodies; k++)
+		{
+			int i = scale != null ? (int) this.paintOrder[k] : k;
+			double x = xs[i];
+			double y = ys[i];
+			double diameter = bodies[i].getDiameter();
+
+			if (alpha < 1.0)
 			{
-				points.remove(0);
+				x = fromX[i] + alpha * (x - fromX[i]);
+				y = fromY[i] + alpha * (y - fromY[i]);
 			}
 
-			// Create a GeneralPath that passes through each point in the ArrayList
-			if (this.showPaths && points.size() >= 2)
+			if (scale != null)
 			{
-				GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD, this.points.size());
-				path.moveTo(this.points.get(0)[i].getX(), this.points.get(0)[i].getY());
+				// Behind the camera
+				if (Double.isNaN(x) || Double.isNaN(y))
+					continue;
+
+				diameter *= scale[i];
+			}
 
-				for (int j = 1; j < this.points.size(); j++)
-				{
-					path.lineTo(this.points.get(j)[i].getX(), this.points.get(j)[i].getY());
-				}
+			// Paint the body (the Ellipse2D and the Line2D are reused between bodies and frames)
+			this.disc.setFrame(x - diameter / 2, -y - diameter / 2, diameter, diameter);
+			g2d.setColor(bodies[i].getColor());
+			g2d.fill(this.disc);
 
-				g2d.draw(path);
+			if (connect)
+			{
+				this.segment.setLine(fromX[i], -fromY[i], x, -y);
+				g2d.draw(this.segment);
 			}
 
 			// Create a light border around the body
 			g2d.setColor(Color.LIGHT_GRAY);
-			g2d.draw(new Ellipse2D.Double(x - diameter / 2, -y - diameter / 2, diameter, diameter));
+			g2d.draw(this.disc);
+		}
+	}
+
+	/**
+	 * Sorts the bodies of a three-dimensional Cluster from the farthest from the camera to the nearest, so that the
+	 * nearer ones are painted over the farther ones. Each key packs the depth into its upper 32 bits (as the bits of a
+	 * double, flipped so that they sort as signed longs in the same order as the doubles) and the index of the body
+	 * into its lower 32 bits, so that sorting the primitive keys needs no comparator or boxing.
+	 * @param numBodies
+	 */
+	private void sortByDepth(int numBodies)
+	{
+		if (this.paintOrder.length < numBodies)
+			this.paintOrder = new long[numBodies];
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			long bits = Double.doubleToLongBits(this.projectedDepth[i]);
+			bits ^= (bits >> 63) & Long.MAX_VALUE;
+			this.paintOrder[i] = (bits & 0xFFFFFFFF00000000L) | i;
 		}
 
-		// Add the array corresponding to the locations of each body to the ArrayList
-		this.points.add(pointArray);
+		Arrays.sort(this.paintOrder, 0, numBodies);
 	}
 
 	/**
-	 * Loads the desired configuration and computes initial conditions
-	 * @param configurationName
+	 * Projects the held snapshot (and the previous one, if it holds the same Bodies) onto the screen through the
+	 * camera
+	 * @param numBodies
 	 */
-	public void prepareSimulation(String configurationName)
+	private void projectSnapshots(int numBodies)
 	{
-		this.cluster = loadConfiguration(configurationName);
-		this.cluster.adjustForCenterOfMassVelocity();
-		this.cluster.computeInitialAccelerations();
+		if (this.projectedX.length != numBodies)
+		{
+			this.projectedX = new double[numBodies];
+			this.projectedY = new double[numBodies];
+			this.projectedScale = new double[numBodies];
+			this.projectedDepth = new double[numBodies];
+			this.projectedPreviousX = new double[numBodies];
+			this.projectedPreviousY = new double[numBodies];
+		}
+
+		this.camera.project(this.heldX, this.heldY, this.heldZ, numBodies, this.projectedX, this.projectedY,
+				this.projectedScale, this.projectedDepth);
+
+		if (this.previousBodies == this.heldBodies)
+		{
+			this.camera.project(this.previousX, this.previousY, this.previousZ, numBodies, this.projectedPreviousX,
+					this.projectedPreviousY, null, null);
+		}
 	}
 
 	/**
-	 * Reads the configuration information from the XML file
-	 * @param configurationName
-	 * @return Cluster corresponding to the configuration name
+	 * Turns the camera and repaints (the paths start over from the new viewpoint)
+	 * @param deltaYaw
+	 * @param deltaPitch
+	 */
+	private void turnCamera(double deltaYaw, double deltaPitch)
+	{
+		this.camera.rotate(deltaYaw, deltaPitch);
+		this.cameraMoved = true;
+		repaint();
+	}
+
+	/**
+	 * Zooms the camera and repaints (the paths start over from the new viewpoint)
+	 * @param factor
+	 */
+	private void zoomCamera(double factor)
+	{
+		this.camera.setZoom(this.camera.getZoom() * factor);
+		this.cameraMoved = true;
+		repaint();
+	}
+
+	/**
+	 * Rasterizes the bodies into an image the size of the Canvas and paints it in one go
+	 * @param g2d
+	 * @param bodies
+	 * @param xs
+	 * @param ys
+	 * @param fromX x-components of the previous positions
+	 * @param fromY y-components of the previous positions
+	 * @param scale Factor each diameter is multiplied by (null to paint the bodies at their own size, in their order)
+	 * @param alpha How far the bodies have moved from the previous snapshot towards these positions
+	 * @param numBodies
 	 */
-	private Cluster loadConfiguration(String configurationName)
+	private void paintRaster(Graphics2D g2d, Body[] bodies, double[] xs, double[] ys, double[] fromX, double[] fromY,
+			double[] scale, double alpha, int numBodies)
 	{
-		try
+		int width = Math.max(1, this.getWidth());
+		int height = Math.max(1, this.getHeight());
+
+		if (this.renderer == null || this.renderer.getWidth() != width || this.renderer.getHeight() != height)
 		{
-			// Get the document element from the XML file
-			File file = new File(this.configurationsFile);
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document doc = db.parse(file);
-			doc.getDocumentElement().normalize();
-
-			// Create the list of nodes
-			NodeList nodeList = doc.getElementsByTagName("configuration");
-			int numNodes = nodeList.getLength();
-
-			for (int i = 0; i < numNodes; i++)
-			{
-				Node node = nodeList.item(i);
+			this.renderer = new RasterRenderer(width, height);
+			this.renderer.setParallelism(this.parallelRendering ? ForkJoinPool.getCommonPoolParallelism() : 1);
+		}
 
-				if (node.getNodeType() != Node.ELEMENT_NODE)
-					continue;
+		if (scale != null)
+			sortByDepth(numBodies);
 
-				Element element = (Element) node;
+		BufferedImage image = this.renderer.render(bodies, xs, ys, alpha < 1.0 ? fromX : xs, alpha < 1.0 ? fromY : ys,
+				scale, scale != null ? this.paintOrder : null, alpha, numBodies);
 
-				String name = element.getElementsByTagName("name").item(0).getChildNodes().item(0).getNodeValue();
+		// Undo the translation to the center
+		g2d.drawImage(image, -this.getWidth() / 2, -this.getHeight() / 2, null);
+	}
 
-				// Verify that the current configuration has the desired name
-				if (!name.equals(configurationName))
-					continue;
+	/**
+	 * Finds whether a number of bodies is too many to paint as shapes
+	 * @param numBodies
+	 * @return Whether the bodies are rasterized
+	 */
+	private boolean isRasterized(int numBodies)
+	{
+		return numBodies > this.rasterThreshold;
+	}
 
-				// Get the list of bodies in the configuration
-				NodeList bodiesList = element.getElementsByTagName("body");
-				int numBodies = bodiesList.getLength();
-				Body[] bodies = new Body[numBodies];
-
-				// Extract the information for each body
-				for (int j = 0; j < numBodies; j++)
-				{
-					Node bodyNode = bodiesList.item(j);
-
-					if (bodyNode.getNodeType() != Node.ELEMENT_NODE)
-						continue;
-
-					Element bodyElement = (Element) bodyNode;
-
-					// Find the body's diameter, mass, position, and velocity
-					Double diameter = Double.parseDouble(bodyElement.getElementsByTagName("diameter").item(0).getChildNodes().item(0).getNodeValue());
-					Double mass = Double.parseDouble(bodyElement.getElementsByTagName("mass").item(0).getChildNodes().item(0).getNodeValue());
-					Double s_x = Double.parseDouble(bodyElement.getElementsByTagName("s_x").item(0).getChildNodes().item(0).getNodeValue());
-					Double s_y = Double.parseDouble(bodyElement.getElementsByTagName("s_y").item(0).getChildNodes().item(0).getNodeValue());
-					Double v_x = Double.parseDouble(bodyElement.getElementsByTagName("v_x").item(0).getChildNodes().item(0).getNodeValue());
-					Double v_y = Double.parseDouble(bodyElement.getElementsByTagName("v_y").item(0).getChildNodes().item(0).getNodeValue());
-					String RGB = bodyElement.getElementsByTagName("RGB").item(0).getChildNodes().item(0).getNodeValue();
-
-					SpaceVector position = new SpaceVector(s_x, s_y);
-					SpaceVector velocity = new SpaceVector(v_x, v_y);
-
-					// Find the planet's color
-					String[] colorValues = RGB.split("-");
-					int r = Integer.parseInt(colorValues[0]);
-					int g = Integer.parseInt(colorValues[1]);
-					int b = Integer.parseInt(colorValues[2]);
-					Color color = new Color(r, g, b);
-
-					Body body = new Body(diameter, mass, position, velocity, color);
-					bodies[j] = body;
-				}
-
-				// Return the desired Cluster
-				Cluster cluster = new Cluster(bodies);
-				return cluster;
-			}
+	/**
+	 * Copies a new snapshot, which becomes the end of the interpolation (the snapshot before it becoming the start)
+	 * @param snapshot
+	 * @return Whether the Bodies are the same as in the snapshot before, so that their positions can be interpolated
+	 */
+	private boolean holdSnapshot(ClusterSnapshot snapshot)
+	{
+		double[] x = this.previousX;
+		double[] y = this.previousY;
+		double[] z = this.previousZ;
+		int size = snapshot.getSize();
+
+		this.previousX = this.heldX;
+		this.previousY = this.heldY;
+		this.previousZ = this.heldZ;
+		this.previousBodies = this.heldBodies;
+		this.previousDueTime = this.heldDueTime;
+
+		if (x.length != size)
+		{
+			x = new double[size];
+			y = new double[size];
+		}
+
+		System.arraycopy(snapshot.getX(), 0, x, 0, size);
+		System.arraycopy(snapshot.getY(), 0, y, 0, size);
+
+		if (snapshot.isThreeDimensional())
+		{
+			if (z.length != size)
+				z = new double[size];
+
+			System.arraycopy(snapshot.getZ(), 0, z, 0, size);
+		}
+
+		this.heldX = x;
+		this.heldY = y;
+		this.heldZ = z;
+		this.heldBodies = snapshot.getBodies();
+		this.heldDueTime = snapshot.getDueTime();
+
+		return this.previousBodies == this.heldBodies;
+	}
+
+	/**
+	 * Finds how far the current frame is from the previous snapshot to the latest one. The view runs one snapshot
+	 * behind the simulation, so that there is always a later state to move towards.
+	 * @return Between 0 (at the previous snapshot) and 1 (at the latest snapshot)
+	 */
+	private double interpolationFactor()
+	{
+		long interval = this.heldDueTime - this.previousDueTime;
+
+		if (interval <= 0)
+			return 1.0;
+
+		return Math.min(1.0, Math.max(0.0, (System.nanoTime() - this.heldDueTime) / (double) interval));
+	}
+
+	/**
+	 * Paints the latest diagnostics sample in the top-left corner
+	 * @param g2d
+	 * @param diagnostics
+	 */
+	private void paintDiagnostics(Graphics2D g2d, ClusterDiagnostics diagnostics)
+	{
+		String[] lines = {
+				String.format("E = %.6g (drift %+.2e)", diagnostics.getTotalEnergy(), diagnostics.getEnergyDrift()),
+				String.format("2K/|W| = %.3f", diagnostics.getVirialRatio()),
+				String.format("p drift %.2e, L drift %+.2e", diagnostics.getMomentumDrift(),
+						diagnostics.getAngularMomentumDrift())
+		};
+
+		// Undo the translation to the center
+		int left = 8 - this.getWidth() / 2;
+		int top = -this.getHeight() / 2;
+		int lineHeight = g2d.getFontMetrics().getHeight();
+
+		g2d.setColor(Color.LIGHT_GRAY);
+
+		for (int i = 0; i < lines.length; i++)
+		{
+			g2d.drawString(lines[i], left, top + (i + 1) * lineHeight);
 		}
+	}
+
+	/**
+	 * Loads the desired configuration and computes initial conditions
+	 * @param configurationName
+	 */
+	public void prepareSimulation(String configurationName)
+	{
+		prepareSimulation(ConfigurationLoader.loadConfiguration(this.configurationsFile, configurationName));
+	}
+
+	/**
+	 * Computes initial conditions for the given Cluster and makes it the model for the Canvas
+	 * @param cluster
+	 */
+	public void prepareSimulation(Cluster cluster)
+	{
+		this.cluster = cluster;
+		this.cluster.setDiagnosticsInterval(this.diagnosticsInterval);
+		this.cluster.setMetrics(this.metrics);
+		this.cluster.adjustForCenterOfMassVelocity();
+		this.cluster.computeInitialAccelerations();
+
+		// Publish the initial state so that there is something to paint before the simulation starts
+		this.step = 0;
+		this.lastPaintedStep = -1;
+		this.previousBodies = null;
+		this.heldBodies = null;
+		this.snapshots = new SnapshotBuffer(this.cluster.getBodies().length);
+		clearPoints();
+		this.snapshots.publish(this.cluster, this.step);
+	}
+
+	/**
+	 * Steps the Cluster on the calling thread and publishes the result (only while the simulation is paused; this
+	 * is used to drive the Canvas without a simulation thread, e.g. when benchmarking)
+	 * @param numSteps
+	 */
+	void advanceSimulation(int numSteps)
+	{
+		if (this.simulationThread != null)
+			throw new IllegalStateException("The simulation is running");
 
-		catch (Exception e)
+		for (int i = 0; i < numSteps; i++)
 		{
-			System.out.println(e.getMessage());
+			this.cluster.updatePositions(this.timeStep);
+			this.step++;
 		}
 
-		return new Cluster();
+		this.snapshots.publish(this.cluster, this.step);
 	}
 
 	/**
-	 * Begins the simulation by starting the timer
+	 * Begins the simulation by starting the simulation thread and the repaint timer
 	 */
 	public void beginSimulation()
 	{
+		if (this.simulationThread != null)
+			return;
+
+		this.simulationThread = new SimulationThread(this.cluster, this.snapshots, this.step);
+		this.simulationThread.setTimeStep(this.timeStep);
+		this.simulationThread.setTimeScale(this.timeScale);
+		this.simulationThread.setSnapshotsPerSecond(this.framesPerSecond);
+		this.simulationThread.start();
+		this.lastFrameNanos = 0L;
 		this.timer.start();
 	}
 
 	/**
-	 * Pauses the simulation by stopping the timer
+	 * Pauses the simulation by stopping the simulation thread and the repaint timer
 	 */
 	public void pauseSimulation()
 	{
 		this.timer.stop();
+
+		if (this.simulationThread == null)
+			return;
+
+		this.simulationThread.stopSimulation();
+		this.step = this.simulationThread.getStep();
+		this.simulationThread = null;
+		repaint();
 	}
 
 	/**
@@ -227,24 +580,28 @@ public final class Canvas extends JPanel implements ActionListener
 	 */
 	public void clearPoints()
 	{
-		this.points = new ArrayList<Point2D.Double[]>();
+		if (this.trails != null)
+			this.trails.clear();
 	}
 
 	/**
-	 * Listener for timer events (telling the Canvas to update the model and the view)
+	 * Listener for timer events (telling the Canvas to paint the latest state of the model)
 	 * @param event
 	 */
 	public void actionPerformed(ActionEvent event)
 	{
-		// Update the model
-		this.cluster.updatePositions(this.timeStep);
-		this.frameNumber++;
-
-		// Update the view (less frequently)
-		if (this.frameNumber % this.VIEW_UPDATE_RATE == 0)
+		// The time between timer events shows how far behind the event thread is running
+		if (this.metrics != null)
 		{
-			repaint();
+			long now = System.nanoTime();
+
+			if (this.lastFrameNanos != 0L)
+				this.metrics.recordFrame(now - this.lastFrameNanos, this.timer.getDelay() * 1000000L);
+
+			this.lastFrameNanos = now;
 		}
+
+		repaint();
 	}
 
 	// Mutator methods
@@ -264,7 +621,55 @@ public final class Canvas extends JPanel implements ActionListener
 	 */
 	public void setShowPaths(boolean showPaths)
 	{
+		// The paths are not extended while they are hidden, so they start over
 		this.showPaths = showPaths;
+		clearPoints();
+	}
+
+	/**
+	 * Sets showDiagnostics (boolean)
+	 * @param showDiagnostics
+	 */
+	public void setShowDiagnostics(boolean showDiagnostics)
+	{
+		this.showDiagnostics = showDiagnostics;
+	}
+
+	/**
+	 * Sets diagnosticsInterval (int). This is the number of steps between diagnostics samples (0 for none).
+	 * @param diagnosticsInterval
+	 */
+	public void setDiagnosticsInterval(int diagnosticsInterval)
+	{
+		this.diagnosticsInterval = diagnosticsInterval;
+
+		if (this.cluster != null)
+			this.cluster.setDiagnosticsInterval(diagnosticsInterval);
+	}
+
+	/**
+	 * Sets metrics (SimulationMetrics). The Canvas records its paint times into them, and its Cluster its step times.
+	 * @param metrics null to stop recording
+	 */
+	public void setMetrics(SimulationMetrics metrics)
+	{
+		this.metrics = metrics;
+
+		if (this.cluster != null)
+			this.cluster.setMetrics(metrics);
+	}
+
+	/**
+	 * Sets trailLength (int). This is the number of snapshots it takes the motion paths to fade away, for every Body
+	 * without a length of its own (Body.setTrailLength).
+	 * @param trailLength
+	 */
+	public void setTrailLength(int trailLength)
+	{
+		this.trailLength = trailLength;
+
+		if (this.trails != null)
+			this.trails.setLength(trailLength);
 	}
 
 	/**
@@ -274,5 +679,74 @@ public final class Canvas extends JPanel implements ActionListener
 	public void setTimeStep(double timeStep)
 	{
 		this.timeStep = timeStep;
+
+		if (this.simulationThread != null)
+			this.simulationThread.setTimeStep(timeStep);
+	}
+
+	/**
+	 * Sets timeScale (double). This is the number of simulated seconds per second of real time, independent of the
+	 * time step; a non-positive scale steps as fast as possible.
+	 * @param timeScale
+	 */
+	public void setTimeScale(double timeScale)
+	{
+		this.timeScale = timeScale;
+
+		if (this.simulationThread != null)
+			this.simulationThread.setTimeScale(timeScale);
+	}
+
+	/**
+	 * Sets framesPerSecond (double). This is the repaint rate, independent of the physics rate.
+	 * @param framesPerSecond
+	 */
+	public void setFramesPerSecond(double framesPerSecond)
+	{
+		this.framesPerSecond = framesPerSecond;
+		this.timer.setDelay((int) Math.max(1, Math.round(1000 / framesPerSecond)));
+
+		if (this.simulationThread != null)
+			this.simulationThread.setSnapshotsPerSecond(framesPerSecond);
+	}
+
+	/**
+	 * Sets the projection of the camera (String), which only matters for a three-dimensional Cluster
+	 * @param projection perspective or orthographic
+	 */
+	public void setProjection(String projection)
+	{
+		this.camera.setProjection(projection);
+		this.cameraMoved = true;
+		repaint();
+	}
+
+	/**
+	 * Gets camera (Camera)
+	 * @return Camera a three-dimensional Cluster is seen through
+	 */
+	public Camera getCamera()
+	{
+		return this.camera;
+	}
+
+	/**
+	 * Sets rasterThreshold (int). Clusters of more bodies than this are rasterized into an image rather than painted
+	 * as a shape per body (0 to always rasterize, Integer.MAX_VALUE to never).
+	 * @param rasterThreshold
+	 */
+	public void setRasterThreshold(int rasterThreshold)
+	{
+		this.rasterThreshold = rasterThreshold;
+	}
+
+	/**
+	 * Sets parallelRendering (boolean). Rasterized bodies are then drawn on the common ForkJoinPool.
+	 * @param parallelRendering
+	 */
+	public void setParallelRendering(boolean parallelRendering)
+	{
+		this.parallelRendering = parallelRendering;
+		this.renderer = null;
 	}
 }
\ No newline at end of file
@@ -1,13 +1,41 @@
+import java.util.concurrent.ForkJoinPool;
+
 /**
- * Models a group of Bodies, calculating forces and keeping track of positions
+ * Models a group of Bodies, calculating forces and keeping track of positions. The Bodies move in a plane, or in
+ * space if any of them was given three components (see ParticleStore.getDimension).
  * @author Rajiv Thamburaj
  */
 public class Cluster
 {
 	// Instance variables
 	private Body[] bodies;
+	private ParticleStore particles;
+	private ForceSolver forceSolver;
+	private Integrator integrator;
+	private Softening softening;
+	private CollisionHandler collisionHandler;
+	// Diagnostics are sampled every diagnosticsInterval steps (never if 0), from the potential of the last force pass
+	private int diagnosticsInterval;
+	private int stepsSinceSample;
+	private double time;
+	private boolean potentialRequested;
+	private boolean potentialCurrent;
+	private ClusterDiagnostics initialDiagnostics;
+	private volatile ClusterDiagnostics diagnostics;
+	private double[] savedAx;
+	private double[] savedAy;
+	private double[] savedAz;
+	// Hot-path timings are only recorded while this is set
+	private SimulationMetrics metrics;
+	private ForkJoinPool pool;
+	private int parallelism = 1;
+	// Created once so that stepping does not allocate
+	private final ParticleRangeTask.Operation accelerate = this::accelerate;
 	// Constants
 	private final double G = 10000.0;
+	// Below this many Bodies, splitting the work costs more than it saves
+	private final int PARALLEL_THRESHOLD = 2048;
+	private final int MIN_GRAIN_SIZE = 256;
 
 
 	/**
@@ -15,118 +43,190 @@ public class Cluster
 	 * @param bodies
 	 */
 	public Cluster(Body ... bodies)
+	{
+		this(bodies, new ParticleStore(bodies.length, dimensionOf(bodies)));
+
+		// Move the state of each Body into the Cluster's store (the Bodies become views on top of it)
+		for (int i = 0; i < bodies.length; i++)
+		{
+			bodies[i].bind(this.particles, i);
+		}
+	}
+
+	/**
+	 * Constructor (the Bodies must already be views on the given store)
+	 * @param bodies
+	 * @param particles
+	 */
+	Cluster(Body[] bodies, ParticleStore particles)
 	{
 		this.bodies = bodies;
+		this.particles = particles;
+		this.forceSolver = new SymmetricDirectSumSolver();
+		this.integrator = new VerletIntegrator();
+		this.softening = Softening.NONE;
+		this.savedAx = new double[0];
+		this.savedAy = new double[0];
+		this.savedAz = new double[0];
 	}
 
 	/**
-	 * Updates the position of each Body with Verlet integration by calculating velocities and accelerations
+	 * Finds the dimension a group of Bodies needs
+	 * @param bodies
+	 * @return 3 if any of the Bodies moves in three dimensions, 2 otherwise
+	 */
+	private static int dimensionOf(Body[] bodies)
+	{
+		for (Body body : bodies)
+		{
+			if (body.getDimension() == 3)
+				return 3;
+		}
+
+		return 2;
+	}
+
+	/**
+	 * Advances the state of each Body by dt with the Cluster's Integrator
 	 * @param dt
 	 */
 	public void updatePositions(double dt)
 	{
-		int numBodies = this.bodies.length;
+		SimulationMetrics metrics = this.metrics;
+		long startNanos = metrics != null ? System.nanoTime() : 0L;
+		long startBytes = metrics != null ? SimulationMetrics.currentThreadAllocatedBytes() : 0L;
 
-		// First, find and update the position of each body
-		for (int i = 0; i < numBodies; i++)
-		{
-			SpaceVector position = this.bodies[i].getPosition();
-			SpaceVector velocity = this.bodies[i].getVelocity();
-			SpaceVector acceleration = this.bodies[i].getAcceleration();
-
-			// s(t+dt) = s(t) + dt*v(t) + 0.5*dt^2*a(t)
-			SpaceVector newPosition = SpaceVector.add(position,
-					velocity.scalarProduct(dt),
-					acceleration.scalarProduct(dt*dt/2)
-			);
-			this.bodies[i].setPosition(newPosition);
-		}
+		// On the steps where diagnostics are sampled, the force passes also find the potential of each Body
+		boolean sample = this.diagnosticsInterval > 0 && ++this.stepsSinceSample >= this.diagnosticsInterval;
+		this.potentialRequested = sample;
+		this.potentialCurrent = false;
 
-		// Next, find and update the velocity and acceleration of each body (we must do this after calculating all positions)
-		for (int i = 0; i < numBodies; i++)
+		this.integrator.step(this, dt);
+
+		// Collisions change the velocities (or the Bodies themselves), so the integrator starts over afterwards
+		if (this.collisionHandler != null && this.collisionHandler.handleCollisions(this))
+			restartIntegrator();
+
+		this.time += dt;
+
+		if (sample)
+			sampleDiagnostics();
+
+		this.potentialRequested = false;
+
+		if (metrics != null)
 		{
-			SpaceVector velocity = this.bodies[i].getVelocity();
-			SpaceVector acceleration = this.bodies[i].getAcceleration();
-
-			// a(t) is determined from the potential function for the system
-			SpaceVector newAcceleration = getAcceleration(this.bodies[i]);
-			this.bodies[i].setAcceleration(newAcceleration);
-
-			// v(t+dt) = v(t) + 0.5*dt*[a(t) + a(t+dt)]
-			SpaceVector newVelocity = SpaceVector.add(velocity,
-					SpaceVector.add(acceleration, newAcceleration).scalarProduct(dt/2)
-			);
-			this.bodies[i].setVelocity(newVelocity);
+			long allocatedBytes = SimulationMetrics.currentThreadAllocatedBytes() - startBytes;
+			metrics.recordStep(System.nanoTime() - startNanos, allocatedBytes);
 		}
 	}
 
 	/**
-	 * Finds the acceleration of a Body due to all other Bodies
-	 * @param body
-	 * @return SpaceVector corresponding to the Body's acceleration
+	 * Finds the acceleration of every Body due to all other Bodies, storing the results in the ParticleStore
 	 */
-	private SpaceVector getAcceleration(Body body)
+	public void computeAccelerations()
 	{
-		// Get the body's position and mass
-		SpaceVector position = body.getPosition();
-		double mass = body.getMass();
+		SimulationMetrics metrics = this.metrics;
+		long startNanos = metrics != null ? System.nanoTime() : 0L;
 
-		// Create an array of SpaceVectors
-		int numBodies = this.bodies.length;
-		SpaceVector[] forceVectors = new SpaceVector[numBodies-1];
-		// We need to skip the Body whose acceleration we are calculating, so we must use a second index
-		int currentForceVector = 0;
+		this.forceSolver.setComputePotential(this.potentialRequested);
+		this.forceSolver.prepare(this.particles, isParallel() ? this.pool : null);
+		long preparedNanos = metrics != null ? System.nanoTime() : 0L;
+		forEachParticle(this.accelerate);
 
+		if (metrics != null)
+			metrics.recordForceEvaluation(preparedNanos - startNanos, System.nanoTime() - startNanos);
 
-		// Find all force vectors
-		for (int i = 0; i < numBodies; i++)
-		{
-			Body otherBody = this.bodies[i];
+		this.potentialCurrent = this.potentialRequested;
+	}
 
-			// A Body does not exert a gravitational force on itself
-			if (otherBody == body)
-				continue;
+	/**
+	 * Measures the conserved quantities of the Cluster now (this is done every diagnosticsInterval steps anyway). The
+	 * integrators that use the ForceSolver end each step with a force pass at the final positions, so the potential
+	 * usually comes from that pass; otherwise (e.g. with the Hermite integrators, which find their own forces) an extra
+	 * force pass is made, leaving the accelerations as they were.
+	 * @return New sample, whose drifts are measured from the sample taken with the initial accelerations
+	 */
+	public ClusterDiagnostics sampleDiagnostics()
+	{
+		if (!this.potentialCurrent)
+			computePotential();
+
+		ClusterDiagnostics sample = ClusterDiagnostics.measure(this.particles, this.time, this.initialDiagnostics);
+
+		if (this.initialDiagnostics == null)
+			this.initialDiagnostics = sample;
 
-			SpaceVector otherPosition = otherBody.getPosition();
-			double otherMass = otherBody.getMass();
+		this.diagnostics = sample;
+		this.stepsSinceSample = 0;
+		return sample;
+	}
 
-			// Find the force due to the current Body
-			forceVectors[currentForceVector] = getNewtonianForce(mass, otherMass, position, otherPosition);
+	/**
+	 * Makes a force pass to find the potential of each Body without disturbing the accelerations
+	 */
+	private void computePotential()
+	{
+		int numBodies = this.particles.getSize();
 
-			currentForceVector++;
+		if (this.savedAx.length < numBodies)
+		{
+			this.savedAx = new double[numBodies];
+			this.savedAy = new double[numBodies];
+			this.savedAz = new double[numBodies];
 		}
 
+		System.arraycopy(this.particles.getAx(), 0, this.savedAx, 0, numBodies);
+		System.arraycopy(this.particles.getAy(), 0, this.savedAy, 0, numBodies);
+		System.arraycopy(this.particles.getAz(), 0, this.savedAz, 0, numBodies);
 
-		SpaceVector netForce = SpaceVector.add(forceVectors);
+		boolean requested = this.potentialRequested;
+		this.potentialRequested = true;
+		computeAccelerations();
+		this.potentialRequested = requested;
 
-		// a = (1/m)*F
-		SpaceVector acceleration = netForce.scalarProduct(1 / body.getMass());
-		return acceleration;
+		System.arraycopy(this.savedAx, 0, this.particles.getAx(), 0, numBodies);
+		System.arraycopy(this.savedAy, 0, this.particles.getAy(), 0, numBodies);
+		System.arraycopy(this.savedAz, 0, this.particles.getAz(), 0, numBodies);
 	}
 
 	/**
-	 * Calculates the Newtonian gravitational force between two massive Bodies
-	 * @param mass
-	 * @param otherMass
-	 * @param position
-	 * @param otherPosition
-	 * @return SpaceVector corresponding to the Newtonian force between two Bodies
+	 * Finds the accelerations of the particles in [start, end)
+	 * @param start
+	 * @param end
 	 */
-	private SpaceVector getNewtonianForce(double mass, double otherMass, SpaceVector position, SpaceVector otherPosition)
+	private void accelerate(int start, int end)
 	{
-		// Since the scale of this simulation is much smaller (in terms of both distances and times), the value of G
-		// must differ significantly from our universe's value of 6.67E-11
+		this.forceSolver.computeAccelerations(this.particles, this.G, start, end);
+	}
+
+	/**
+	 * Checks whether the Cluster is running in parallel and is large enough to benefit from it
+	 * @return Whether work should be split across the ForkJoinPool
+	 */
+	private boolean isParallel()
+	{
+		return this.pool != null && this.particles.getSize() >= this.PARALLEL_THRESHOLD;
+	}
 
-		// Scalar portion: G * m_1 * m_2 / r^2
-		SpaceVector r = SpaceVector.add(otherPosition, position.negative());
-		double magnitudeSquared = Math.pow(r.getNorm(), 2.0);
-		double scalarPortion = this.G * mass * otherMass / magnitudeSquared;
+	/**
+	 * Applies an operation to every particle, splitting the work across the ForkJoinPool when the Cluster is
+	 * running in parallel and is large enough to benefit from it
+	 * @param operation
+	 */
+	public void forEachParticle(ParticleRangeTask.Operation operation)
+	{
+		int numBodies = this.particles.getSize();
 
-		// Vector portion: r_u
-		SpaceVector vectorPortion = r.normalized();
+		if (!isParallel())
+		{
+			operation.apply(0, numBodies);
+			return;
+		}
 
-		SpaceVector newtonianForce = vectorPortion.scalarProduct(scalarPortion);
-		return newtonianForce;
+		// Split into a few pieces per worker so that uneven pieces (e.g. deep tree walks) balance out
+		int grainSize = Math.max(this.MIN_GRAIN_SIZE, numBodies / (4 * this.parallelism));
+		this.pool.invoke(new ParticleRangeTask(operation, 0, numBodies, grainSize));
 	}
 
 	/**
@@ -135,49 +235,77 @@ public class Cluster
 	 */
 	public void adjustForCenterOfMassVelocity()
 	{
-		int numBodies = this.bodies.length;
-		// These SpaceVectors corresponding to the momentum of each Body
-		SpaceVector[] weightedVelocityVectors = new SpaceVector[numBodies];
+		int numBodies = this.particles.getSize();
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] mass = this.particles.getMass();
+		double momentumX = 0.0;
+		double momentumY = 0.0;
+		double momentumZ = 0.0;
 		double totalMass = 0;
 
-		// Find the weighted velocity vectors (momentum vectors) for the system
+		// Find the momentum of the system (p = m * v for each Body)
 		for (int i = 0; i < numBodies; i++)
 		{
-			Body currentBody = this.bodies[i];
-
-			// p = m * v
-			SpaceVector weightedVelocity = currentBody.getVelocity().scalarProduct(currentBody.getMass());
-			weightedVelocityVectors[i] = weightedVelocity;
-
-			totalMass += currentBody.getMass();
+			momentumX += mass[i] * vx[i];
+			momentumY += mass[i] * vy[i];
+			momentumZ += mass[i] * vz[i];
+			totalMass += mass[i];
 		}
 
 		// v_com = (∑ m_i * v_i) / (∑ m_i)
-		SpaceVector velocity_com = SpaceVector.add(weightedVelocityVectors).scalarProduct(1.0 / totalMass);
+		double velocityX_com = momentumX / totalMass;
+		double velocityY_com = momentumY / totalMass;
+		double velocityZ_com = momentumZ / totalMass;
 
 		// Adjust each Body's velocity by subtracting the center-of-mass velocity
 		for (int i = 0; i < numBodies; i++)
 		{
-			SpaceVector currentVelocity = this.bodies[i].getVelocity();
-			SpaceVector adjustedVelocity = SpaceVector.add(currentVelocity, velocity_com.negative());
-			this.bodies[i].setVelocity(adjustedVelocity);
+			vx[i] -= velocityX_com;
+			vy[i] -= velocityY_com;
+			vz[i] -= velocityZ_com;
 		}
+
+		this.integrator.reset();
 	}
 
 	/**
-	 * Finds and updates the initial accelerations for all Bodies
+	 * Finds and updates the initial accelerations for all Bodies, and takes the first diagnostics sample (which later
+	 * samples measure their drift from)
 	 */
 	public void computeInitialAccelerations()
 	{
-		int numBodies = this.bodies.length;
+		this.potentialRequested = true;
+		restartIntegrator();
+		this.potentialRequested = false;
 
-		// Find and update each Body's acceleration SpaceVector
-		for (int i = 0; i < numBodies; i++)
-		{
-			SpaceVector acceleration = getAcceleration(bodies[i]);
+		this.time = 0.0;
+		this.initialDiagnostics = null;
+		sampleDiagnostics();
+	}
 
-			bodies[i].setAcceleration(acceleration);
-		}
+	/**
+	 * Finds the accelerations and starts the integrator over (keeping the first diagnostics sample)
+	 */
+	private void restartIntegrator()
+	{
+		computeAccelerations();
+
+		this.integrator.reset();
+	}
+
+	/**
+	 * Replaces the Bodies of the Cluster (e.g. after some have merged). The Bodies must already be views on the
+	 * given store. The previous array is left untouched, so it can still be read by whoever holds it.
+	 * @param bodies
+	 * @param particles
+	 */
+	void replaceBodies(Body[] bodies, ParticleStore particles)
+	{
+		this.bodies = bodies;
+		this.particles = particles;
+		this.potentialCurrent = false;
 	}
 
 	/**
@@ -188,4 +316,180 @@ public class Cluster
 	{
 		return this.bodies;
 	}
+
+	/**
+	 * Gets particles (ParticleStore)
+	 * @return Primitive-backed store holding the state of every Body
+	 */
+	public ParticleStore getParticles()
+	{
+		return this.particles;
+	}
+
+	/**
+	 * Checks whether the Bodies move in three dimensions
+	 * @return Whether the ParticleStore is three-dimensional
+	 */
+	public boolean isThreeDimensional()
+	{
+		return this.particles.isThreeDimensional();
+	}
+
+	/**
+	 * Gets forceSolver (ForceSolver)
+	 * @return Solver used to compute the accelerations of the Bodies
+	 */
+	public ForceSolver getForceSolver()
+	{
+		return this.forceSolver;
+	}
+
+	/**
+	 * Sets forceSolver (ForceSolver)
+	 * @param forceSolver
+	 */
+	public void setForceSolver(ForceSolver forceSolver)
+	{
+		this.forceSolver = forceSolver;
+		this.forceSolver.setSoftening(this.softening);
+		this.potentialCurrent = false;
+	}
+
+	/**
+	 * Gets integrator (Integrator)
+	 * @return Integrator used to advance the Bodies
+	 */
+	public Integrator getIntegrator()
+	{
+		return this.integrator;
+	}
+
+	/**
+	 * Sets integrator (Integrator)
+	 * @param integrator
+	 */
+	public void setIntegrator(Integrator integrator)
+	{
+		this.integrator = integrator;
+		this.integrator.reset();
+	}
+
+	/**
+	 * Gets softening (Softening)
+	 * @return Softening of the force between close Bodies
+	 */
+	public Softening getSoftening()
+	{
+		return this.softening;
+	}
+
+	/**
+	 * Sets softening (Softening)
+	 * @param softening
+	 */
+	public void setSoftening(Softening softening)
+	{
+		this.softening = softening;
+		this.forceSolver.setSoftening(softening);
+		this.integrator.reset();
+		this.potentialCurrent = false;
+	}
+
+	/**
+	 * Gets metrics (SimulationMetrics)
+	 * @return Metrics the Cluster records its step and force-evaluation times into (null if none)
+	 */
+	public SimulationMetrics getMetrics()
+	{
+		return this.metrics;
+	}
+
+	/**
+	 * Sets metrics (SimulationMetrics)
+	 * @param metrics null to stop recording
+	 */
+	public void setMetrics(SimulationMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets diagnostics (ClusterDiagnostics)
+	 * @return Latest diagnostics sample (null until the initial accelerations have been computed)
+	 */
+	public ClusterDiagnostics getDiagnostics()
+	{
+		return this.diagnostics;
+	}
+
+	/**
+	 * Gets diagnosticsInterval (int)
+	 * @return Number of steps between diagnostics samples (0 if they are only taken on request)
+	 */
+	public int getDiagnosticsInterval()
+	{
+		return this.diagnosticsInterval;
+	}
+
+	/**
+	 * Sets diagnosticsInterval (int)
+	 * @param diagnosticsInterval 0 to only take samples on request
+	 */
+	public void setDiagnosticsInterval(int diagnosticsInterval)
+	{
+		this.diagnosticsInterval = diagnosticsInterval;
+	}
+
+	/**
+	 * Gets collisionHandler (CollisionHandler)
+	 * @return CollisionHandler applied after each step (null if Bodies pass through each other)
+	 */
+	public CollisionHandler getCollisionHandler()
+	{
+		return this.collisionHandler;
+	}
+
+	/**
+	 * Sets collisionHandler (CollisionHandler)
+	 * @param collisionHandler null to let Bodies pass through each other
+	 */
+	public void setCollisionHandler(CollisionHandler collisionHandler)
+	{
+		this.collisionHandler = collisionHandler;
+	}
+
+	/**
+	 * Gets G (double)
+	 * @return Gravitational constant of the simulation
+	 */
+	public double getGravitationalConstant()
+	{
+		return this.G;
+	}
+
+	/**
+	 * Gets parallelism (int)
+	 * @return Number of worker threads used to step the Cluster
+	 */
+	public int getParallelism()
+	{
+		return this.parallelism;
+	}
+
+	/**
+	 * Sets parallelism (int). A parallelism of 1 steps the Cluster on the calling thread. Since every particle is
+	 * updated independently of how the work is split, the results are identical for any parallelism.
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+
+		if (this.pool != null)
+			this.pool.shutdown();
+
+		this.parallelism = parallelism;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,304 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves and restores the complete state of a Cluster in a compact binary format, so that a run can be stopped and
+ * resumed later. The file consists of a header followed by one column of values per field (little-endian):
+ *
+ *   int    magic ("GSCK")
+ *   int    version
+ *   int    number of Bodies (n)
+ *   int    dimension (2 or 3)
+ *   long   step
+ *   double time
+ *   double[n] x, y, [z,] v_x, v_y, [v_z,] a_x, a_y, [a_z,] mass, diameter
+ *   int[n]    color (RGB)
+ *
+ * The z columns are only present in a three-dimensional checkpoint. Version 1 files, which held a reserved 0 in place
+ * of the dimension and were always planar, can still be read.
+ * @author Rajiv Thamburaj
+ */
+public class ClusterCheckpoint
+{
+	// Instance variables
+	private Cluster cluster;
+	private long step;
+	private double time;
+	// Constants
+	private static final int MAGIC = 0x4753434B;
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 32;
+	// Size of the buffer that the columns are streamed through (a multiple of 8)
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	/**
+	 * Constructor
+	 * @param cluster
+	 * @param step
+	 * @param time
+	 */
+	public ClusterCheckpoint(Cluster cluster, long step, double time)
+	{
+		this.cluster = cluster;
+		this.step = step;
+		this.time = time;
+	}
+
+	/**
+	 * Writes the checkpoint to a file, streaming each column through a fixed-size buffer (so that the size of the
+	 * Cluster is not limited by the size of a single buffer)
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(Path path) throws IOException
+	{
+		ParticleStore particles = this.cluster.getParticles();
+		Body[] bodies = this.cluster.getBodies();
+		int numBodies = particles.getSize();
+		int dimension = particles.getDimension();
+		boolean threeDimensional = particles.isThreeDimensional();
+
+		double[] diameters = new double[numBodies];
+		int[] colors = new int[numBodies];
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			diameters[i] = bodies[i].getDiameter();
+			colors[i] = bodies[i].getColor().getRGB();
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(numBodies).putInt(dimension);
+			buffer.putLong(this.step).putDouble(this.time);
+			buffer.flip();
+			writeFully(channel, buffer);
+
+			putColumn(channel, buffer, particles.getX(), numBodies);
+			putColumn(channel, buffer, particles.getY(), numBodies);
+			if (threeDimensional)
+				putColumn(channel, buffer, particles.getZ(), numBodies);
+			putColumn(channel, buffer, particles.getVx(), numBodies);
+			putColumn(channel, buffer, particles.getVy(), numBodies);
+			if (threeDimensional)
+				putColumn(channel, buffer, particles.getVz(), numBodies);
+			putColumn(channel, buffer, particles.getAx(), numBodies);
+			putColumn(channel, buffer, particles.getAy(), numBodies);
+			if (threeDimensional)
+				putColumn(channel, buffer, particles.getAz(), numBodies);
+			putColumn(channel, buffer, particles.getMass(), numBodies);
+			putColumn(channel, buffer, diameters, numBodies);
+
+			for (int start = 0; start < numBodies; start += BUFFER_BYTES / 4)
+			{
+				int length = Math.min(BUFFER_BYTES / 4, numBodies - start);
+				buffer.clear();
+				buffer.asIntBuffer().put(colors, start, length);
+				buffer.limit(4 * length);
+				writeFully(channel, buffer);
+			}
+		}
+	}
+
+	/**
+	 * Reads a checkpoint from a file, streaming each column through a fixed-size buffer. The restored Cluster uses
+	 * the default ForceSolver and Integrator.
+	 * @param path
+	 * @return ClusterCheckpoint holding the restored Cluster
+	 * @throws IOException
+	 */
+	public static ClusterCheckpoint read(Path path) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			buffer.limit(HEADER_BYTES);
+
+			if (channel.size() < HEADER_BYTES || !readFully(channel, buffer) || buffer.flip().getInt() != MAGIC)
+				throw new IOException(path + " is not a cluster checkpoint");
+
+			int version = buffer.getInt();
+
+			if (version != 1 && version != VERSION)
+				throw new IOException(path + " has an unsupported checkpoint version");
+
+			int numBodies = buffer.getInt();
+			int dimension = version == 1 ? 2 : buffer.getInt();
+			if (version == 1)
+				buffer.getInt();
+			long step = buffer.getLong();
+			double time = buffer.getDouble();
+
+			if (dimension != 2 && dimension != 3)
+				throw new IOException(path + " has an unsupported dimension");
+			if (numBodies < 0 || channel.size() - HEADER_BYTES < (long) numBodies * bodyBytes(dimension))
+				throw new IOException(path + " is truncated");
+
+			// The columns are read straight into the store that the restored Bodies are views on
+			ParticleStore particles = new ParticleStore(numBodies, dimension);
+			boolean threeDimensional = particles.isThreeDimensional();
+
+			getColumn(channel, buffer, particles.getX(), numBodies);
+			getColumn(channel, buffer, particles.getY(), numBodies);
+			if (threeDimensional)
+				getColumn(channel, buffer, particles.getZ(), numBodies);
+			getColumn(channel, buffer, particles.getVx(), numBodies);
+			getColumn(channel, buffer, particles.getVy(), numBodies);
+			if (threeDimensional)
+				getColumn(channel, buffer, particles.getVz(), numBodies);
+			getColumn(channel, buffer, particles.getAx(), numBodies);
+			getColumn(channel, buffer, particles.getAy(), numBodies);
+			if (threeDimensional)
+				getColumn(channel, buffer, particles.getAz(), numBodies);
+			getColumn(channel, buffer, particles.getMass(), numBodies);
+
+			double[] diameters = new double[numBodies];
+			getColumn(channel, buffer, diameters, numBodies);
+			int[] colors = new int[numBodies];
+
+			for (int start = 0; start < numBodies; start += BUFFER_BYTES / 4)
+			{
+				int length = Math.min(BUFFER_BYTES / 4, numBodies - start);
+				buffer.clear().limit(4 * length);
+
+				if (!readFully(channel, buffer))
+					throw new IOException(path + " is truncated");
+
+				buffer.flip();
+				buffer.asIntBuffer().get(colors, start, length);
+			}
+
+			Body[] bodies = new Body[numBodies];
+
+			for (int i = 0; i < numBodies; i++)
+			{
+				bodies[i] = new Body(diameters[i], new Color(colors[i]), particles, i);
+			}
+
+			return new ClusterCheckpoint(new Cluster(bodies, particles), step, time);
+		}
+	}
+
+	/**
+	 * Writes a column of doubles to the channel, a buffer at a time
+	 * @param channel
+	 * @param buffer
+	 * @param column
+	 * @param length
+	 * @throws IOException
+	 */
+	private static void putColumn(FileChannel channel, ByteBuffer buffer, double[] column, int length)
+			throws IOException
+	{
+		for (int start = 0; start < length; start += BUFFER_BYTES / 8)
+		{
+			int count = Math.min(BUFFER_BYTES / 8, length - start);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(column, start, count);
+			buffer.limit(8 * count);
+			writeFully(channel, buffer);
+		}
+	}
+
+	/**
+	 * Reads a column of doubles from the channel, a buffer at a time
+	 * @param channel
+	 * @param buffer
+	 * @param column Receives the values
+	 * @param length
+	 * @throws IOException
+	 */
+	private static void getColumn(FileChannel channel, ByteBuffer buffer, double[] column, int length)
+			throws IOException
+	{
+		for (int start = 0; start < length; start += BUFFER_BYTES / 8)
+		{
+			int count = Math.min(BUFFER_BYTES / 8, length - start);
+			buffer.clear().limit(8 * count);
+
+			if (!readFully(channel, buffer))
+				throw new IOException("The checkpoint is truncated");
+
+			buffer.flip();
+			buffer.asDoubleBuffer().get(column, start, count);
+		}
+	}
+
+	/**
+	 * Writes everything between the position and the limit of the buffer to the channel
+	 * @param channel
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Fills the buffer up to its limit from the channel
+	 * @param channel
+	 * @param buffer
+	 * @return Whether the buffer was filled (false if the file ended first)
+	 * @throws IOException
+	 */
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer) < 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds the number of bytes each Body takes up in a checkpoint
+	 * @param dimension
+	 * @return Size of the columns of one Body in bytes
+	 */
+	private static int bodyBytes(int dimension)
+	{
+		return 8 * (3 * dimension + 2) + 4;
+	}
+
+	/**
+	 * Gets cluster (Cluster)
+	 * @return Cluster held by the checkpoint
+	 */
+	public Cluster getCluster()
+	{
+		return this.cluster;
+	}
+
+	/**
+	 * Gets step (long)
+	 * @return Number of steps the Cluster had taken
+	 */
+	public long getStep()
+	{
+		return this.step;
+	}
+
+	/**
+	 * Gets time (double)
+	 * @return Simulated time of the Cluster
+	 */
+	public double getTime()
+	{
+		return this.time;
+	}
+}
\ No newline at end of file
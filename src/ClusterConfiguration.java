@@ -0,0 +1,238 @@
+import java.awt.Color;
+
+/**
+ * Holds a parsed cluster configuration as primitive arrays, so that a fresh Cluster can be created from it with a
+ * few array copies rather than by reading the XML file again. A configuration may instead name a ClusterGenerator
+ * type, in which case its Bodies are generated from the seed whenever a Cluster is created. Either kind is planar
+ * unless it is given a third dimension (see setZComponents and setDimension).
+ * @author Rajiv Thamburaj
+ */
+public class ClusterConfiguration
+{
+	// Instance variables
+	private String name;
+	private String integratorName;
+	private int numBodies;
+	private double[] diameter;
+	private double[] mass;
+	private double[] x;
+	private double[] y;
+	private double[] vx;
+	private double[] vy;
+	// z-components (null for a planar configuration)
+	private double[] z;
+	private double[] vz;
+	private int dimension = 2;
+	private Color[] color;
+	private String generatorType;
+	private long seed;
+	private Softening softening;
+	private String collisionMode;
+
+	/**
+	 * Constructor
+	 * @param name
+	 * @param integratorName Name of the Integrator (null for the default)
+	 * @param numBodies
+	 * @param diameter
+	 * @param mass
+	 * @param x
+	 * @param y
+	 * @param vx
+	 * @param vy
+	 * @param color
+	 */
+	public ClusterConfiguration(String name, String integratorName, int numBodies, double[] diameter, double[] mass,
+			double[] x, double[] y, double[] vx, double[] vy, Color[] color)
+	{
+		this.name = name;
+		this.integratorName = integratorName;
+		this.numBodies = numBodies;
+		this.diameter = diameter;
+		this.mass = mass;
+		this.x = x;
+		this.y = y;
+		this.vx = vx;
+		this.vy = vy;
+		this.color = color;
+	}
+
+	/**
+	 * Constructor (for a generated configuration)
+	 * @param name
+	 * @param integratorName Name of the Integrator (null for the default)
+	 * @param generatorType
+	 * @param numBodies
+	 * @param seed
+	 */
+	public ClusterConfiguration(String name, String integratorName, String generatorType, int numBodies, long seed)
+	{
+		this.name = name;
+		this.integratorName = integratorName;
+		this.generatorType = generatorType;
+		this.numBodies = numBodies;
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates a new Cluster in the initial state of the configuration
+	 * @return Cluster whose Bodies are views on a copy of the configuration's arrays
+	 */
+	public Cluster createCluster()
+	{
+		Cluster cluster = this.generatorType != null
+				? ClusterGenerator.generate(this.generatorType, this.numBodies, this.seed, this.dimension)
+				: copyCluster();
+
+		// The integrator is optional (velocity Verlet is used by default)
+		if (this.integratorName != null)
+			cluster.setIntegrator(ConfigurationLoader.createIntegrator(this.integratorName));
+
+		// So are softening and collisions (Newtonian gravity between Bodies that pass through each other)
+		if (this.softening != null)
+			cluster.setSoftening(this.softening);
+		if (this.collisionMode != null)
+			cluster.setCollisionHandler(new CollisionHandler(this.collisionMode));
+
+		return cluster;
+	}
+
+	/**
+	 * Copies the configuration's arrays into a new Cluster
+	 * @return Cluster whose Bodies are views on a copy of the configuration's arrays
+	 */
+	private Cluster copyCluster()
+	{
+		ParticleStore particles = new ParticleStore(this.numBodies, this.dimension);
+		System.arraycopy(this.x, 0, particles.getX(), 0, this.numBodies);
+		System.arraycopy(this.y, 0, particles.getY(), 0, this.numBodies);
+		System.arraycopy(this.vx, 0, particles.getVx(), 0, this.numBodies);
+		System.arraycopy(this.vy, 0, particles.getVy(), 0, this.numBodies);
+		System.arraycopy(this.mass, 0, particles.getMass(), 0, this.numBodies);
+
+		if (this.z != null)
+		{
+			System.arraycopy(this.z, 0, particles.getZ(), 0, this.numBodies);
+			System.arraycopy(this.vz, 0, particles.getVz(), 0, this.numBodies);
+		}
+
+		Body[] bodies = new Body[this.numBodies];
+
+		for (int i = 0; i < this.numBodies; i++)
+		{
+			bodies[i] = new Body(this.diameter[i], this.color[i], particles, i);
+		}
+
+		return new Cluster(bodies, particles);
+	}
+
+	/**
+	 * Gets name (String)
+	 * @return Name of the configuration
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+
+	/**
+	 * Gets integratorName (String)
+	 * @return Name of the Integrator (null for the default)
+	 */
+	public String getIntegratorName()
+	{
+		return this.integratorName;
+	}
+
+	/**
+	 * Gets generatorType (String)
+	 * @return Type of ClusterGenerator the Bodies come from (null if they are listed in the file)
+	 */
+	public String getGeneratorType()
+	{
+		return this.generatorType;
+	}
+
+	/**
+	 * Gets softening (Softening)
+	 * @return Softening of the force between close Bodies (null for Newtonian gravity)
+	 */
+	public Softening getSoftening()
+	{
+		return this.softening;
+	}
+
+	/**
+	 * Sets softening (Softening)
+	 * @param softening null for Newtonian gravity
+	 */
+	public void setSoftening(Softening softening)
+	{
+		this.softening = softening;
+	}
+
+	/**
+	 * Gets collisionMode (String)
+	 * @return merge or bounce (null if Bodies pass through each other)
+	 */
+	public String getCollisionMode()
+	{
+		return this.collisionMode;
+	}
+
+	/**
+	 * Sets collisionMode (String)
+	 * @param collisionMode merge or bounce (null if Bodies pass through each other)
+	 */
+	public void setCollisionMode(String collisionMode)
+	{
+		this.collisionMode = collisionMode;
+	}
+
+	/**
+	 * Sets the z-components of the positions and velocities of the listed Bodies, which makes the configuration
+	 * three-dimensional
+	 * @param z
+	 * @param vz
+	 */
+	public void setZComponents(double[] z, double[] vz)
+	{
+		this.z = z;
+		this.vz = vz;
+		this.dimension = 3;
+	}
+
+	/**
+	 * Gets dimension (int)
+	 * @return Number of dimensions the Bodies move in (2 or 3)
+	 */
+	public int getDimension()
+	{
+		return this.dimension;
+	}
+
+	/**
+	 * Sets dimension (int). Listed Bodies without z-components start in the plane z = 0, and a planar configuration
+	 * drops any z-components it was given.
+	 * @param dimension 2 or 3
+	 */
+	public void setDimension(int dimension)
+	{
+		this.dimension = dimension;
+
+		if (dimension == 2)
+		{
+			this.z = null;
+			this.vz = null;
+		}
+	}
+
+	/**
+	 * Gets numBodies (int)
+	 * @return Number of Bodies in the configuration
+	 */
+	public int getNumBodies()
+	{
+		return this.numBodies;
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ * Holds the conserved quantities of a Cluster at one sample: kinetic and potential energy, linear and angular
+ * momentum, and the virial ratio, along with their drift since the first sample (taken when the initial accelerations
+ * are computed). A sample is never changed once it is made, so it can be handed to another thread as it is.
+ *
+ * The drifts are relative: the energy drift is (E - E0) / |E0|, and since the Cluster is usually at rest in its
+ * center-of-mass frame (p0 = 0), the momentum drifts are measured against the scale of the initial motion, sum(m|v|)
+ * for linear momentum and sum(m|r x v|) for angular momentum. For a planar Cluster, the angular momentum is the
+ * z-component alone (the other two are always 0).
+ * @author Rajiv Thamburaj
+ */
+public final class ClusterDiagnostics
+{
+	// Instance variables
+	private double time;
+	private double kineticEnergy;
+	private double potentialEnergy;
+	private double momentumX;
+	private double momentumY;
+	private double momentumZ;
+	private double angularMomentumX;
+	private double angularMomentumY;
+	private double angularMomentum;
+	private double momentumScale;
+	private double angularMomentumScale;
+	private ClusterDiagnostics initial;
+
+	/**
+	 * Constructor
+	 * @param time
+	 * @param kineticEnergy
+	 * @param potentialEnergy
+	 * @param momentumX
+	 * @param momentumY
+	 * @param momentumZ
+	 * @param angularMomentumX
+	 * @param angularMomentumY
+	 * @param angularMomentum z-component of the angular momentum
+	 * @param momentumScale
+	 * @param angularMomentumScale
+	 * @param initial Sample the drifts are measured from (null if this is the first sample)
+	 */
+	private ClusterDiagnostics(double time, double kineticEnergy, double potentialEnergy, double momentumX,
+			double momentumY, double momentumZ, double angularMomentumX, double angularMomentumY,
+			double angularMomentum, double momentumScale, double angularMomentumScale, ClusterDiagnostics initial)
+	{
+		this.time = time;
+		this.kineticEnergy = kineticEnergy;
+		this.potentialEnergy = potentialEnergy;
+		this.momentumX = momentumX;
+		this.momentumY = momentumY;
+		this.momentumZ = momentumZ;
+		this.angularMomentumX = angularMomentumX;
+		this.angularMomentumY = angularMomentumY;
+		this.angularMomentum = angularMomentum;
+		this.momentumScale = momentumScale;
+		this.angularMomentumScale = angularMomentumScale;
+		this.initial = initial != null ? initial : this;
+	}
+
+	/**
+	 * Measures the conserved quantities of the particles, whose potentials must be up to date
+	 * @param particles
+	 * @param time Simulated time since the first sample
+	 * @param initial First sample (null to make this the first sample)
+	 * @return New sample
+	 */
+	static ClusterDiagnostics measure(ParticleStore particles, double time, ClusterDiagnostics initial)
+	{
+		int numParticles = particles.getSize();
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		double[] vx = particles.getVx();
+		double[] vy = particles.getVy();
+		double[] vz = particles.getVz();
+		double[] mass = particles.getMass();
+		double[] phi = particles.getPotential();
+		double kineticEnergy = 0.0;
+		double potentialEnergy = 0.0;
+		double momentumX = 0.0;
+		double momentumY = 0.0;
+		double momentumZ = 0.0;
+		double angularMomentumX = 0.0;
+		double angularMomentumY = 0.0;
+		double angularMomentum = 0.0;
+		double momentumScale = 0.0;
+		double angularMomentumScale = 0.0;
+
+		for (int i = 0; i < numParticles; i++)
+		{
+			double speedSquared = vx[i]*vx[i] + vy[i]*vy[i] + vz[i]*vz[i];
+			// r x v
+			double momentX = y[i] * vz[i] - z[i] * vy[i];
+			double momentY = z[i] * vx[i] - x[i] * vz[i];
+			double moment = x[i] * vy[i] - y[i] * vx[i];
+
+			// K = sum(m*v^2/2), and W = sum(m*phi)/2 (every pair appears in the potential of both of its particles)
+			kineticEnergy += 0.5 * mass[i] * speedSquared;
+			potentialEnergy += 0.5 * mass[i] * phi[i];
+			momentumX += mass[i] * vx[i];
+			momentumY += mass[i] * vy[i];
+			momentumZ += mass[i] * vz[i];
+			angularMomentumX += mass[i] * momentX;
+			angularMomentumY += mass[i] * momentY;
+			angularMomentum += mass[i] * moment;
+			momentumScale += mass[i] * Math.sqrt(speedSquared);
+			angularMomentumScale += mass[i] * Math.sqrt(momentX*momentX + momentY*momentY + moment*moment);
+		}
+
+		return new ClusterDiagnostics(time, kineticEnergy, potentialEnergy, momentumX, momentumY, momentumZ,
+				angularMomentumX, angularMomentumY, angularMomentum, momentumScale, angularMomentumScale, initial);
+	}
+
+	/**
+	 * Divides a change by a scale, unless the scale is 0
+	 * @param change
+	 * @param scale
+	 * @return Relative change
+	 */
+	private static double relative(double change, double scale)
+	{
+		return scale > 0.0 ? change / scale : change;
+	}
+
+	/**
+	 * Gets time (double)
+	 * @return Simulated time since the first sample
+	 */
+	public double getTime()
+	{
+		return this.time;
+	}
+
+	/**
+	 * Gets kineticEnergy (double)
+	 * @return Total kinetic energy K
+	 */
+	public double getKineticEnergy()
+	{
+		return this.kineticEnergy;
+	}
+
+	/**
+	 * Gets potentialEnergy (double)
+	 * @return Total potential energy W (negative for a bound Cluster)
+	 */
+	public double getPotentialEnergy()
+	{
+		return this.potentialEnergy;
+	}
+
+	/**
+	 * Gets the total energy (double)
+	 * @return K + W
+	 */
+	public double getTotalEnergy()
+	{
+		return this.kineticEnergy + this.potentialEnergy;
+	}
+
+	/**
+	 * Gets momentumX (double)
+	 * @return x-component of the total linear momentum
+	 */
+	public double getMomentumX()
+	{
+		return this.momentumX;
+	}
+
+	/**
+	 * Gets momentumY (double)
+	 * @return y-component of the total linear momentum
+	 */
+	public double getMomentumY()
+	{
+		return this.momentumY;
+	}
+
+	/**
+	 * Gets momentumZ (double)
+	 * @return z-component of the total linear momentum
+	 */
+	public double getMomentumZ()
+	{
+		return this.momentumZ;
+	}
+
+	/**
+	 * Gets angularMomentumX (double)
+	 * @return x-component of the total angular momentum about the origin
+	 */
+	public double getAngularMomentumX()
+	{
+		return this.angularMomentumX;
+	}
+
+	/**
+	 * Gets angularMomentumY (double)
+	 * @return y-component of the total angular momentum about the origin
+	 */
+	public double getAngularMomentumY()
+	{
+		return this.angularMomentumY;
+	}
+
+	/**
+	 * Gets angularMomentum (double)
+	 * @return z-component of the total angular momentum about the origin (all of it for a planar Cluster)
+	 */
+	public double getAngularMomentum()
+	{
+		return this.angularMomentum;
+	}
+
+	/**
+	 * Gets the virial ratio (double)
+	 * @return 2K / |W| (1 for a Cluster in virial equilibrium)
+	 */
+	public double getVirialRatio()
+	{
+		return 2 * this.kineticEnergy / Math.abs(this.potentialEnergy);
+	}
+
+	/**
+	 * Gets the energy drift (double)
+	 * @return (E - E0) / |E0|
+	 */
+	public double getEnergyDrift()
+	{
+		double initialEnergy = this.initial.getTotalEnergy();
+		return relative(getTotalEnergy() - initialEnergy, Math.abs(initialEnergy));
+	}
+
+	/**
+	 * Gets the linear momentum drift (double)
+	 * @return |p - p0| / sum(m|v|) of the first sample
+	 */
+	public double getMomentumDrift()
+	{
+		double changeX = this.momentumX - this.initial.momentumX;
+		double changeY = this.momentumY - this.initial.momentumY;
+		double changeZ = this.momentumZ - this.initial.momentumZ;
+		return relative(Math.sqrt(changeX*changeX + changeY*changeY + changeZ*changeZ), this.initial.momentumScale);
+	}
+
+	/**
+	 * Gets the angular momentum drift (double). Its sign is that of the change in the z-component, so a planar Cluster
+	 * gets the signed (L - L0) / sum(m|r x v|).
+	 * @return |L - L0| / sum(m|r x v|) of the first sample
+	 */
+	public double getAngularMomentumDrift()
+	{
+		double changeX = this.angularMomentumX - this.initial.angularMomentumX;
+		double changeY = this.angularMomentumY - this.initial.angularMomentumY;
+		double change = this.angularMomentum - this.initial.angularMomentum;
+		double magnitude = Math.sqrt(changeX*changeX + changeY*changeY + change*change);
+		return relative(Math.copySign(magnitude, change), this.initial.angularMomentumScale);
+	}
+
+	/**
+	 * Gets initial (ClusterDiagnostics)
+	 * @return First sample, which the drifts are measured from
+	 */
+	public ClusterDiagnostics getInitial()
+	{
+		return this.initial;
+	}
+}
@@ -0,0 +1,354 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Steps many small Clusters at once, for parameter sweeps over thousands of perturbed initial conditions. The Bodies
+ * of every member are packed into a single ParticleStore, one member after another, so each member's state is a
+ * contiguous slice of the arrays. The members are dealt out to the ForkJoinPool in contiguous ranges, and each is run
+ * for the whole number of steps before the next is started, so that its few Bodies stay in cache (or in registers)
+ * throughout, and its final state is handed to the Listener as soon as it finishes.
+ *
+ * Each member is integrated with the kick-drift-kick leapfrog (as LeapfrogIntegrator) and direct summation over each
+ * pair of its Bodies (the pair pass of SymmetricDirectSumSolver, run over the member's slice), with its own softening,
+ * so it follows exactly the path it would as a Cluster of its own with those. The ForceSolver, Integrator, and
+ * CollisionHandler of the member Clusters are not used. Every member only reads and writes its own slice, so the
+ * results do not depend on the number of threads.
+ * @author Rajiv Thamburaj
+ */
+public class ClusterEnsemble
+{
+	/**
+	 * Receives each member as it finishes. This is called on the thread that stepped the member, so the members of
+	 * different ranges may arrive concurrently and out of order.
+	 */
+	public interface Listener
+	{
+		void memberFinished(int member, Cluster cluster);
+	}
+
+	// Instance variables
+	private Cluster[] members;
+	private ParticleStore particles;
+	// Bodies of member m are at [memberStart[m], memberStart[m + 1]) in the packed store
+	private int[] memberStart;
+	private Softening[] softening;
+	private long numSteps;
+	private double timeStep;
+	private Listener listener;
+	private ForkJoinPool pool;
+	private int parallelism = 1;
+	private final ParticleRangeTask.Operation runMembers = this::runMembers;
+
+	/**
+	 * Constructor (the state of each member is copied into the ensemble, and copied back when it finishes)
+	 * @param members
+	 */
+	public ClusterEnsemble(Cluster ... members)
+	{
+		this.members = members;
+		this.memberStart = new int[members.length + 1];
+		this.softening = new Softening[members.length];
+		int dimension = 2;
+
+		for (int m = 0; m < members.length; m++)
+		{
+			this.memberStart[m + 1] = this.memberStart[m] + members[m].getParticles().getSize();
+			this.softening[m] = members[m].getSoftening();
+
+			if (members[m].isThreeDimensional())
+				dimension = 3;
+		}
+
+		// Planar members keep their z-components at 0 in a three-dimensional store
+		this.particles = new ParticleStore(this.memberStart[members.length], dimension);
+
+		for (int m = 0; m < members.length; m++)
+		{
+			ParticleStore source = members[m].getParticles();
+
+			for (int i = 0; i < source.getSize(); i++)
+			{
+				this.particles.copyParticle(this.memberStart[m] + i, source, i);
+			}
+		}
+	}
+
+	/**
+	 * Creates an ensemble of copies of a Cluster, each with its positions and velocities perturbed by Gaussian
+	 * offsets. The offsets are scaled by the root mean square distance of the Bodies from their center of mass and
+	 * by their root mean square speed, so that the scale is relative, and the center-of-mass velocity of each copy is
+	 * removed afterwards. The same seed always gives the same ensemble.
+	 * @param base
+	 * @param numMembers
+	 * @param seed
+	 * @param scale Standard deviation of the offsets, relative to the size and speed of the Cluster
+	 * @return Ensemble of perturbed copies (with the softening of the base Cluster)
+	 */
+	public static ClusterEnsemble perturb(Cluster base, int numMembers, long seed, double scale)
+	{
+		if (numMembers < 1)
+			throw new IllegalArgumentException("An ensemble needs at least one member");
+
+		ParticleStore source = base.getParticles();
+		Body[] baseBodies = base.getBodies();
+		int numBodies = source.getSize();
+		boolean threeDimensional = source.isThreeDimensional();
+		double[] mass = source.getMass();
+		double totalMass = 0.0;
+		double centerX = 0.0;
+		double centerY = 0.0;
+		double centerZ = 0.0;
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			totalMass += mass[i];
+			centerX += mass[i] * source.getX()[i];
+			centerY += mass[i] * source.getY()[i];
+			centerZ += mass[i] * source.getZ()[i];
+		}
+
+		centerX /= totalMass;
+		centerY /= totalMass;
+		centerZ /= totalMass;
+
+		double squaredRadius = 0.0;
+		double squaredSpeed = 0.0;
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			double dx = source.getX()[i] - centerX;
+			double dy = source.getY()[i] - centerY;
+			double dz = source.getZ()[i] - centerZ;
+			squaredRadius += dx*dx + dy*dy + dz*dz;
+			squaredSpeed += source.getVx()[i] * source.getVx()[i] + source.getVy()[i] * source.getVy()[i]
+					+ source.getVz()[i] * source.getVz()[i];
+		}
+
+		double positionScale = scale * Math.sqrt(squaredRadius / numBodies);
+		double velocityScale = scale * Math.sqrt(squaredSpeed / numBodies);
+		SplittableRandom random = new SplittableRandom(seed);
+		Cluster[] members = new Cluster[numMembers];
+
+		for (int m = 0; m < numMembers; m++)
+		{
+			ParticleStore particles = new ParticleStore(numBodies, source.getDimension());
+			Body[] bodies = new Body[numBodies];
+
+			for (int i = 0; i < numBodies; i++)
+			{
+				particles.copyParticle(i, source, i);
+				bodies[i] = new Body(baseBodies[i].getDiameter(), baseBodies[i].getColor(), particles, i);
+
+				particles.getX()[i] += positionScale * random.nextGaussian();
+				particles.getY()[i] += positionScale * random.nextGaussian();
+				particles.getVx()[i] += velocityScale * random.nextGaussian();
+				particles.getVy()[i] += velocityScale * random.nextGaussian();
+
+				if (threeDimensional)
+				{
+					particles.getZ()[i] += positionScale * random.nextGaussian();
+					particles.getVz()[i] += velocityScale * random.nextGaussian();
+				}
+			}
+
+			members[m] = new Cluster(bodies, particles);
+			members[m].setSoftening(base.getSoftening());
+			members[m].adjustForCenterOfMassVelocity();
+		}
+
+		return new ClusterEnsemble(members);
+	}
+
+	/**
+	 * Advances every member by numSteps steps of dt, copying the final state of each back into its Cluster and
+	 * handing it to the listener as soon as it finishes
+	 * @param numSteps
+	 * @param dt
+	 * @param listener null if the members are only read afterwards
+	 */
+	public void run(long numSteps, double dt, Listener listener)
+	{
+		this.numSteps = numSteps;
+		this.timeStep = dt;
+		this.listener = listener;
+		int numMembers = this.members.length;
+
+		if (this.pool == null)
+		{
+			runMembers(0, numMembers);
+		}
+
+		else
+		{
+			// Small ranges keep the workers balanced (members differ in size) and the results streaming
+			int grainSize = Math.max(1, numMembers / (8 * this.parallelism));
+			this.pool.invoke(new ParticleRangeTask(this.runMembers, 0, numMembers, grainSize));
+		}
+
+		this.listener = null;
+	}
+
+	/**
+	 * Runs the members in [start, end) one after another
+	 * @param start
+	 * @param end
+	 */
+	private void runMembers(int start, int end)
+	{
+		// Stripe accumulators, sized for the largest member in the range
+		int maxBodies = 0;
+
+		for (int m = start; m < end; m++)
+		{
+			maxBodies = Math.max(maxBodies, this.memberStart[m + 1] - this.memberStart[m]);
+		}
+
+		int maxStripes = SymmetricDirectSumSolver.numStripes(maxBodies);
+		double[][] stripeAx = new double[maxStripes][maxBodies];
+		double[][] stripeAy = new double[maxStripes][maxBodies];
+		double[][] stripeAz = new double[maxStripes][maxBodies];
+
+		for (int m = start; m < end; m++)
+		{
+			int first = this.memberStart[m];
+			int last = this.memberStart[m + 1];
+			double G = this.members[m].getGravitationalConstant();
+			SymmetricDirectSumSolver.computeAccelerations(this.particles, G, first, last, this.softening[m],
+					stripeAx, stripeAy, stripeAz);
+
+			for (long step = 0; step < this.numSteps; step++)
+			{
+				kickAndDrift(first, last);
+				SymmetricDirectSumSolver.computeAccelerations(this.particles, G, first, last, this.softening[m],
+						stripeAx, stripeAy, stripeAz);
+				kick(first, last);
+			}
+
+			ParticleStore target = this.members[m].getParticles();
+
+			for (int i = first; i < last; i++)
+			{
+				target.copyParticle(i - first, this.particles, i);
+			}
+
+			if (this.listener != null)
+				this.listener.memberFinished(m, this.members[m]);
+		}
+	}
+
+	/**
+	 * Applies half a velocity kick and a full position drift to the Bodies in [first, last)
+	 * @param first
+	 * @param last
+	 */
+	private void kickAndDrift(int first, int last)
+	{
+		double[] x = this.particles.getX();
+		double[] y = this.particles.getY();
+		double[] z = this.particles.getZ();
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double dt = this.timeStep;
+		double halfStep = dt / 2;
+
+		for (int i = first; i < last; i++)
+		{
+			vx[i] += halfStep * ax[i];
+			vy[i] += halfStep * ay[i];
+			vz[i] += halfStep * az[i];
+			x[i] += dt * vx[i];
+			y[i] += dt * vy[i];
+			z[i] += dt * vz[i];
+		}
+	}
+
+	/**
+	 * Applies half a velocity kick to the Bodies in [first, last)
+	 * @param first
+	 * @param last
+	 */
+	private void kick(int first, int last)
+	{
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double halfStep = this.timeStep / 2;
+
+		for (int i = first; i < last; i++)
+		{
+			vx[i] += halfStep * ax[i];
+			vy[i] += halfStep * ay[i];
+			vz[i] += halfStep * az[i];
+		}
+	}
+
+	/**
+	 * Gets the number of members (int)
+	 * @return Number of Clusters in the ensemble
+	 */
+	public int getNumMembers()
+	{
+		return this.members.length;
+	}
+
+	/**
+	 * Gets a member (Cluster)
+	 * @param member
+	 * @return Cluster holding the member's state as of the last time it finished
+	 */
+	public Cluster getMember(int member)
+	{
+		return this.members[member];
+	}
+
+	/**
+	 * Gets particles (ParticleStore)
+	 * @return Packed store holding the Bodies of every member, one member after another
+	 */
+	public ParticleStore getParticles()
+	{
+		return this.particles;
+	}
+
+	/**
+	 * Gets the start of a member in the packed store (int)
+	 * @param member
+	 * @return Index of the member's first Body (for the member getNumMembers(), the total number of Bodies)
+	 */
+	public int getMemberStart(int member)
+	{
+		return this.memberStart[member];
+	}
+
+	/**
+	 * Gets parallelism (int)
+	 * @return Number of worker threads used to run the members
+	 */
+	public int getParallelism()
+	{
+		return this.parallelism;
+	}
+
+	/**
+	 * Sets parallelism (int). A parallelism of 1 runs the members on the calling thread.
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+
+		if (this.pool != null)
+			this.pool.shutdown();
+
+		this.parallelism = parallelism;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+}
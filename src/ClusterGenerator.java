@@ -0,0 +1,376 @@
+import java.awt.Color;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Generates large Clusters procedurally from a seed, writing the Bodies directly into the Cluster's ParticleStore.
+ * The Bodies are generated in fixed-size chunks on the common ForkJoinPool, and each chunk draws from its own random
+ * stream derived from the seed and the chunk's index, so a given seed always produces the same Cluster no matter
+ * how many threads do the work. The available types are:
+ *
+ *   plummer    Plummer sphere (sampled in three dimensions, and projected onto the plane for a planar Cluster)
+ *   disk       Exponential disk of stars in circular orbits around a central mass
+ *   colliding  Two counter-rotating disks on a collision course (inclined to each other in three dimensions)
+ *   uniform    Uniform random square (or cube), nearly at rest (a cold collapse)
+ *
+ * A three-dimensional Cluster draws its extra components after the planar ones, so each type starts from the same
+ * planar layout in either dimension, and a planar Cluster is unchanged by the option of a third dimension.
+ * @author Rajiv Thamburaj
+ */
+public final class ClusterGenerator
+{
+	/**
+	 * Writes the state of Body i, drawing from the given random stream
+	 */
+	private interface Sampler
+	{
+		void sample(int i, SplittableRandom random);
+	}
+
+	// Constants
+	private static final int CHUNK_SIZE = 4096;
+	private static final long CHUNK_SEED_STRIDE = 0x9E3779B97F4A7C15L;
+	private static final double TOTAL_MASS = 6000.0;
+	private static final double SCALE_RADIUS = 100.0;
+	private static final double STAR_DIAMETER = 2.0;
+	private static final double CENTRAL_DIAMETER = 16.0;
+	// Plummer spheres are truncated at this many scale radii (which leaves out about 0.1% of the mass)
+	private static final double PLUMMER_CUTOFF = 20.0;
+	private static final double DISK_SCALE_LENGTH = 80.0;
+	// Disks have a central hole of this many scale lengths, where orbits would be too fast to integrate
+	private static final double DISK_INNER_RADIUS = 0.25;
+	private static final double DISK_CENTRAL_FRACTION = 0.75;
+	private static final double DISK_DISPERSION = 0.05;
+	// Half the thickness of a three-dimensional disk
+	private static final double DISK_SCALE_HEIGHT = 0.1 * DISK_SCALE_LENGTH;
+	// Angle between the planes of the colliding disks in three dimensions
+	private static final double COLLISION_INCLINATION = Math.toRadians(60.0);
+	private static final Color PLUMMER_COLOR = new Color(255, 230, 180);
+	private static final Color DISK_COLOR = new Color(170, 200, 255);
+	private static final Color SECOND_DISK_COLOR = new Color(255, 190, 150);
+	private static final Color UNIFORM_COLOR = Color.WHITE;
+
+	/**
+	 * Constructor (the class only has static methods)
+	 */
+	private ClusterGenerator()
+	{
+	}
+
+	/**
+	 * Generates a planar Cluster of the given type, with its center-of-mass velocity removed
+	 * @param type plummer, disk, colliding, or uniform
+	 * @param numBodies
+	 * @param seed
+	 * @return Generated Cluster
+	 */
+	public static Cluster generate(String type, int numBodies, long seed)
+	{
+		return generate(type, numBodies, seed, 2);
+	}
+
+	/**
+	 * Generates a Cluster of the given type, with its center-of-mass velocity removed
+	 * @param type plummer, disk, colliding, or uniform
+	 * @param numBodies
+	 * @param seed
+	 * @param dimension 2 or 3
+	 * @return Generated Cluster
+	 */
+	public static Cluster generate(String type, int numBodies, long seed, int dimension)
+	{
+		if (numBodies < 1)
+			throw new IllegalArgumentException("A generated cluster needs at least one body");
+
+		ParticleStore particles = new ParticleStore(numBodies, dimension);
+		Body[] bodies = new Body[numBodies];
+
+		// The Bodies are filled in below; the Cluster is created first to find G
+		Cluster cluster = new Cluster(bodies, particles);
+		double G = cluster.getGravitationalConstant();
+
+		if ("plummer".equals(type))
+		{
+			fill(numBodies, seed, (i, random) -> samplePlummer(i, random, particles, bodies, numBodies, G));
+		}
+
+		else if ("disk".equals(type))
+		{
+			Disk disk = new Disk(0, numBodies, 0.0, 0.0, 0.0, 0.0, 1, 0.0, TOTAL_MASS, DISK_COLOR);
+			fill(numBodies, seed, (i, random) -> disk.sample(i, random, particles, bodies, G));
+		}
+
+		else if ("colliding".equals(type))
+		{
+			// Each disk has half the mass; they approach each other on slightly offset paths
+			int half = (numBodies + 1) / 2;
+			double offsetX = 3.0 * SCALE_RADIUS;
+			double offsetY = 0.6 * SCALE_RADIUS;
+			double speed = 0.25 * Math.sqrt(G * TOTAL_MASS / SCALE_RADIUS);
+
+			Disk first = new Disk(0, half, -offsetX, -offsetY, speed, 0.0, 1, 0.0, TOTAL_MASS / 2, DISK_COLOR);
+			Disk second = new Disk(half, numBodies - half, offsetX, offsetY, -speed, 0.0, -1, COLLISION_INCLINATION,
+					TOTAL_MASS / 2, SECOND_DISK_COLOR);
+			fill(numBodies, seed, (i, random) -> (i < half ? first : second).sample(i, random, particles, bodies, G));
+		}
+
+		else if ("uniform".equals(type))
+		{
+			fill(numBodies, seed, (i, random) -> sampleUniform(i, random, particles, bodies, numBodies, G));
+		}
+
+		else
+		{
+			throw new IllegalArgumentException("Unknown generator " + type);
+		}
+
+		cluster.adjustForCenterOfMassVelocity();
+		return cluster;
+	}
+
+	/**
+	 * Samples every Body, one chunk of Bodies per task
+	 * @param numBodies
+	 * @param seed
+	 * @param sampler
+	 */
+	private static void fill(int numBodies, long seed, Sampler sampler)
+	{
+		int numChunks = (numBodies + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		ParticleRangeTask.Operation operation = (startChunk, endChunk) ->
+		{
+			for (int chunk = startChunk; chunk < endChunk; chunk++)
+			{
+				SplittableRandom random = new SplittableRandom(mix(seed + CHUNK_SEED_STRIDE * chunk));
+				int end = Math.min(numBodies, (chunk + 1) * CHUNK_SIZE);
+
+				for (int i = chunk * CHUNK_SIZE; i < end; i++)
+				{
+					sampler.sample(i, random);
+				}
+			}
+		};
+
+		if (numChunks == 1)
+			operation.apply(0, 1);
+		else
+			ForkJoinPool.commonPool().invoke(new ParticleRangeTask(operation, 0, numChunks, 1));
+	}
+
+	/**
+	 * Scrambles the bits of a seed (the finalizer of MurmurHash3). SplittableRandom advances its state by the same
+	 * stride that separates the chunk seeds, so without this the chunks would draw shifted copies of one stream.
+	 * @param z
+	 * @return Scrambled seed
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return z ^ (z >>> 33);
+	}
+
+	/**
+	 * Samples a star of a Plummer sphere (Aarseth, Henon & Wielen 1974)
+	 * @param i
+	 * @param random
+	 * @param particles
+	 * @param bodies
+	 * @param numBodies
+	 * @param G
+	 */
+	private static void samplePlummer(int i, SplittableRandom random, ParticleStore particles, Body[] bodies,
+			int numBodies, double G)
+	{
+		// The radius follows from inverting the enclosed mass M(r) = r^3 / (1 + r^2)^(3/2) (with G = M = a = 1)
+		double r;
+		do
+		{
+			r = 1.0 / Math.sqrt(Math.pow(random.nextDouble(Double.MIN_NORMAL, 1.0), -2.0 / 3.0) - 1.0);
+		}
+		while (r > PLUMMER_CUTOFF);
+
+		// The speed, as a fraction q of the escape speed, is drawn from g(q) = q^2 (1 - q^2)^(7/2) by rejection
+		double q;
+		do
+		{
+			q = random.nextDouble();
+		}
+		while (0.1 * random.nextDouble() > q * q * Math.pow(1.0 - q * q, 3.5));
+
+		double speed = q * Math.sqrt(2.0) * Math.pow(1.0 + r * r, -0.25);
+		double velocityScale = Math.sqrt(G * TOTAL_MASS / SCALE_RADIUS);
+
+		// Both are pointed in random directions in space, and a planar Body keeps their components in the plane
+		double positionZ = 2.0 * random.nextDouble() - 1.0;
+		double positionAngle = 2.0 * Math.PI * random.nextDouble();
+		double positionPlanar = Math.sqrt(1.0 - positionZ * positionZ);
+		double velocityZ = 2.0 * random.nextDouble() - 1.0;
+		double velocityAngle = 2.0 * Math.PI * random.nextDouble();
+		double velocityPlanar = Math.sqrt(1.0 - velocityZ * velocityZ);
+
+		particles.getX()[i] = SCALE_RADIUS * r * positionPlanar * Math.cos(positionAngle);
+		particles.getY()[i] = SCALE_RADIUS * r * positionPlanar * Math.sin(positionAngle);
+		particles.getVx()[i] = velocityScale * speed * velocityPlanar * Math.cos(velocityAngle);
+		particles.getVy()[i] = velocityScale * speed * velocityPlanar * Math.sin(velocityAngle);
+		particles.getMass()[i] = TOTAL_MASS / numBodies;
+		bodies[i] = new Body(STAR_DIAMETER, PLUMMER_COLOR, particles, i);
+
+		if (particles.isThreeDimensional())
+		{
+			particles.getZ()[i] = SCALE_RADIUS * r * positionZ;
+			particles.getVz()[i] = velocityScale * speed * velocityZ;
+		}
+	}
+
+	/**
+	 * Samples a Body of a uniform random square (or cube), with small random velocities
+	 * @param i
+	 * @param random
+	 * @param particles
+	 * @param bodies
+	 * @param numBodies
+	 * @param G
+	 */
+	private static void sampleUniform(int i, SplittableRandom random, ParticleStore particles, Body[] bodies,
+			int numBodies, double G)
+	{
+		double side = 6.0 * SCALE_RADIUS;
+		double velocityScale = 0.1 * Math.sqrt(G * TOTAL_MASS / side);
+
+		particles.getX()[i] = side * (random.nextDouble() - 0.5);
+		particles.getY()[i] = side * (random.nextDouble() - 0.5);
+		particles.getVx()[i] = velocityScale * (2.0 * random.nextDouble() - 1.0);
+		particles.getVy()[i] = velocityScale * (2.0 * random.nextDouble() - 1.0);
+		particles.getMass()[i] = TOTAL_MASS / numBodies;
+		bodies[i] = new Body(STAR_DIAMETER, UNIFORM_COLOR, particles, i);
+
+		if (particles.isThreeDimensional())
+		{
+			particles.getZ()[i] = side * (random.nextDouble() - 0.5);
+			particles.getVz()[i] = velocityScale * (2.0 * random.nextDouble() - 1.0);
+		}
+	}
+
+	/**
+	 * An exponential disk of stars around a central mass, occupying a range of the Cluster's Bodies (the first of
+	 * which is the central mass)
+	 */
+	private static class Disk
+	{
+		// Instance variables
+		private final int first;
+		private final int count;
+		private final double centerX;
+		private final double centerY;
+		private final double velocityX;
+		private final double velocityY;
+		private final int sense;
+		// Tilt of the disk about the x-axis through its center (only in three dimensions)
+		private final double cosInclination;
+		private final double sinInclination;
+		private final double centralMass;
+		private final double diskMass;
+		private final Color color;
+
+		/**
+		 * Constructor
+		 * @param first Index of the central mass
+		 * @param count Number of Bodies in the disk (including the central mass)
+		 * @param centerX
+		 * @param centerY
+		 * @param velocityX
+		 * @param velocityY
+		 * @param sense 1 for counterclockwise rotation, -1 for clockwise
+		 * @param inclination Angle the disk is tilted by out of the x-y plane, if the Cluster is three-dimensional
+		 * @param totalMass
+		 * @param color
+		 */
+		Disk(int first, int count, double centerX, double centerY, double velocityX, double velocityY, int sense,
+				double inclination, double totalMass, Color color)
+		{
+			this.first = first;
+			this.count = count;
+			this.centerX = centerX;
+			this.centerY = centerY;
+			this.velocityX = velocityX;
+			this.velocityY = velocityY;
+			this.sense = sense;
+			this.cosInclination = Math.cos(inclination);
+			this.sinInclination = Math.sin(inclination);
+			this.centralMass = count > 1 ? DISK_CENTRAL_FRACTION * totalMass : totalMass;
+			this.diskMass = totalMass - this.centralMass;
+			this.color = color;
+		}
+
+		/**
+		 * Samples Body i of the disk
+		 * @param i
+		 * @param random
+		 * @param particles
+		 * @param bodies
+		 * @param G
+		 */
+		void sample(int i, SplittableRandom random, ParticleStore particles, Body[] bodies, double G)
+		{
+			if (i == this.first)
+			{
+				particles.getX()[i] = this.centerX;
+				particles.getY()[i] = this.centerY;
+				particles.getVx()[i] = this.velocityX;
+				particles.getVy()[i] = this.velocityY;
+				particles.getMass()[i] = this.centralMass;
+				bodies[i] = new Body(CENTRAL_DIAMETER, Color.WHITE, particles, i);
+				return;
+			}
+
+			// The surface density falls off as exp(-R / R_d), so R / R_d follows a gamma distribution of shape 2
+			double radius = DISK_SCALE_LENGTH
+					* (DISK_INNER_RADIUS - Math.log((1.0 - random.nextDouble()) * (1.0 - random.nextDouble())));
+			double angle = 2.0 * Math.PI * random.nextDouble();
+			double cos = Math.cos(angle);
+			double sin = Math.sin(angle);
+
+			// Circular speed due to the central mass and the disk inside the orbit (treated as a point mass)
+			double inner = radius / DISK_SCALE_LENGTH - DISK_INNER_RADIUS;
+			double enclosedMass = this.centralMass + this.diskMass * (1.0 - (1.0 + inner) * Math.exp(-inner));
+			double speed = Math.sqrt(G * enclosedMass / radius);
+			double dispersion = DISK_DISPERSION * speed;
+
+			particles.getX()[i] = this.centerX + radius * cos;
+			particles.getY()[i] = this.centerY + radius * sin;
+			particles.getVx()[i] = this.velocityX - this.sense * speed * sin
+					+ dispersion * (2.0 * random.nextDouble() - 1.0);
+			particles.getVy()[i] = this.velocityY + this.sense * speed * cos
+					+ dispersion * (2.0 * random.nextDouble() - 1.0);
+			particles.getMass()[i] = this.diskMass / (this.count - 1);
+			bodies[i] = new Body(STAR_DIAMETER, this.color, particles, i);
+
+			if (particles.isThreeDimensional())
+				thicken(i, random, particles, dispersion);
+		}
+
+		/**
+		 * Gives Body i of the disk a random height and vertical velocity, and tilts it with the disk
+		 * @param i
+		 * @param random
+		 * @param particles
+		 * @param dispersion Random speed in the plane of the disk, which the vertical speed matches
+		 */
+		private void thicken(int i, SplittableRandom random, ParticleStore particles, double dispersion)
+		{
+			double height = DISK_SCALE_HEIGHT * (2.0 * random.nextDouble() - 1.0);
+			double verticalVelocity = dispersion * (2.0 * random.nextDouble() - 1.0);
+			double offsetY = particles.getY()[i] - this.centerY;
+			double relativeVy = particles.getVy()[i] - this.velocityY;
+
+			// Rotate the offset from the center (and the velocity relative to it) about the x-axis
+			particles.getY()[i] = this.centerY + offsetY * this.cosInclination - height * this.sinInclination;
+			particles.getZ()[i] = offsetY * this.sinInclination + height * this.cosInclination;
+			particles.getVy()[i] = this.velocityY + relativeVy * this.cosInclination
+					- verticalVelocity * this.sinInclination;
+			particles.getVz()[i] = relativeVy * this.sinInclination + verticalVelocity * this.cosInclination;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * Holds the positions of the Bodies of a Cluster at one step, for painting, along with the Bodies themselves (whose
+ * diameters and colors never change, though the set of Bodies does when some of them merge). A snapshot is only
+ * written by the simulation while it is not visible to the reader (see SnapshotBuffer), so readers can treat it as
+ * immutable.
+ * @author Rajiv Thamburaj
+ */
+public class ClusterSnapshot
+{
+	// Instance variables
+	private Body[] bodies;
+	private ClusterDiagnostics diagnostics;
+	private double[] x;
+	private double[] y;
+	// z-components (only kept up to date while the Cluster is three-dimensional)
+	private double[] z;
+	private boolean threeDimensional;
+	private long step;
+	private long dueTime;
+
+	/**
+	 * Constructor
+	 * @param size
+	 */
+	public ClusterSnapshot(int size)
+	{
+		this.bodies = new Body[0];
+		this.x = new double[size];
+		this.y = new double[size];
+		this.z = new double[0];
+		this.step = -1;
+	}
+
+	/**
+	 * Copies the current positions from a Cluster
+	 * @param cluster
+	 * @param step
+	 * @param dueTime
+	 */
+	void copyFrom(Cluster cluster, long step, long dueTime)
+	{
+		ParticleStore particles = cluster.getParticles();
+		int size = particles.getSize();
+
+		if (this.x.length != size)
+		{
+			this.x = new double[size];
+			this.y = new double[size];
+		}
+
+		System.arraycopy(particles.getX(), 0, this.x, 0, size);
+		System.arraycopy(particles.getY(), 0, this.y, 0, size);
+
+		this.threeDimensional = particles.isThreeDimensional();
+
+		if (this.threeDimensional)
+		{
+			if (this.z.length != size)
+				this.z = new double[size];
+
+			System.arraycopy(particles.getZ(), 0, this.z, 0, size);
+		}
+
+		// The Cluster replaces its array of Bodies rather than changing it, so the reference is enough
+		this.bodies = cluster.getBodies();
+		this.diagnostics = cluster.getDiagnostics();
+		this.step = step;
+		this.dueTime = dueTime;
+	}
+
+	/**
+	 * Gets size (int)
+	 * @return Number of Bodies in the snapshot
+	 */
+	public int getSize()
+	{
+		return this.x.length;
+	}
+
+	/**
+	 * Gets bodies (Body[])
+	 * @return Bodies whose positions are held (only their diameters and colors should be read)
+	 */
+	public Body[] getBodies()
+	{
+		return this.bodies;
+	}
+
+	/**
+	 * Gets diagnostics (ClusterDiagnostics)
+	 * @return Latest diagnostics sample of the Cluster when the snapshot was made (null if none had been taken)
+	 */
+	public ClusterDiagnostics getDiagnostics()
+	{
+		return this.diagnostics;
+	}
+
+	/**
+	 * Gets x (double[])
+	 * @return x-components of the Body positions
+	 */
+	public double[] getX()
+	{
+		return this.x;
+	}
+
+	/**
+	 * Gets y (double[])
+	 * @return y-components of the Body positions
+	 */
+	public double[] getY()
+	{
+		return this.y;
+	}
+
+	/**
+	 * Gets z (double[])
+	 * @return z-components of the Body positions (not to be read for a planar Cluster)
+	 */
+	public double[] getZ()
+	{
+		return this.z;
+	}
+
+	/**
+	 * Checks whether the snapshot holds z-components
+	 * @return Whether the Cluster was three-dimensional when the snapshot was made
+	 */
+	public boolean isThreeDimensional()
+	{
+		return this.threeDimensional;
+	}
+
+	/**
+	 * Gets step (long)
+	 * @return Number of steps the Cluster had taken when the snapshot was made (-1 for an empty snapshot)
+	 */
+	public long getStep()
+	{
+		return this.step;
+	}
+
+	/**
+	 * Gets dueTime (long)
+	 * @return Value of System.nanoTime at which the state is due on screen
+	 */
+	public long getDueTime()
+	{
+		return this.dueTime;
+	}
+}
\ No newline at end of file
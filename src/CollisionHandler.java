@@ -0,0 +1,349 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Detects Bodies that touch (their centers are closer than the sum of their radii, from Body.getDiameter) after a
+ * step, and either merges them into a single Body or bounces them off each other elastically. Touching pairs are
+ * found with a uniform grid hashed into arrays that are kept between steps, so the cost is O(n) per step.
+ *
+ * Merging conserves mass and momentum, places the merged Body at the center of mass of the pair, and keeps the
+ * combined volume of the two (the color is taken from the heavier Body). Bouncing reverses the relative velocity
+ * along the line of centers of a pair that is approaching, which conserves both momentum and kinetic energy.
+ * @author Rajiv Thamburaj
+ */
+public class CollisionHandler
+{
+	// Instance variables
+	private String mode;
+	private boolean merge;
+	private long[] cellX;
+	private long[] cellY;
+	private long[] cellZ;
+	private int[] bucketStart;
+	private int[] bucketBodies;
+	private boolean[] removed;
+	private double[] diameters;
+	private Color[] colors;
+	private boolean[] merged;
+
+	/**
+	 * Constructor
+	 * @param mode merge or bounce
+	 */
+	public CollisionHandler(String mode)
+	{
+		if (!"merge".equals(mode) && !"bounce".equals(mode))
+			throw new IllegalArgumentException("Unknown collision mode " + mode);
+
+		this.mode = mode;
+		this.merge = "merge".equals(mode);
+		this.cellX = new long[0];
+		this.cellY = new long[0];
+		this.cellZ = new long[0];
+		this.bucketStart = new int[0];
+		this.bucketBodies = new int[0];
+		this.removed = new boolean[0];
+		this.diameters = new double[0];
+		this.colors = new Color[0];
+		this.merged = new boolean[0];
+	}
+
+	/**
+	 * Merges or bounces every pair of touching Bodies in the Cluster
+	 * @param cluster
+	 * @return Whether any collision was handled (the accelerations are then out of date)
+	 */
+	public boolean handleCollisions(Cluster cluster)
+	{
+		Body[] bodies = cluster.getBodies();
+		ParticleStore particles = cluster.getParticles();
+		int numBodies = particles.getSize();
+		double cellSize = 0.0;
+
+		if (this.diameters.length < numBodies)
+			allocate(numBodies);
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			this.diameters[i] = bodies[i].getDiameter();
+			this.colors[i] = bodies[i].getColor();
+			this.removed[i] = false;
+			this.merged[i] = false;
+			cellSize = Math.max(cellSize, this.diameters[i]);
+		}
+
+		// Bodies can only touch if their cells are adjacent, since no Body is wider than a cell
+		if (cellSize <= 0.0 || numBodies < 2)
+			return false;
+
+		buildGrid(particles, cellSize);
+
+		boolean collided = false;
+		int mask = this.bucketStart.length - 2;
+		// Planar Bodies all lie in the layer of cells at z = 0
+		long layers = particles.isThreeDimensional() ? 1 : 0;
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			for (long dx = -1; dx <= 1 && !this.removed[i]; dx++)
+			{
+				for (long dy = -1; dy <= 1 && !this.removed[i]; dy++)
+				{
+					for (long dz = -layers; dz <= layers && !this.removed[i]; dz++)
+					{
+						long neighborX = this.cellX[i] + dx;
+						long neighborY = this.cellY[i] + dy;
+						long neighborZ = this.cellZ[i] + dz;
+						int bucket = hash(neighborX, neighborY, neighborZ) & mask;
+
+						for (int k = this.bucketStart[bucket]; k < this.bucketStart[bucket + 1]; k++)
+						{
+							int j = this.bucketBodies[k];
+
+							// Each pair is visited once, from the cell it actually lies in (buckets can be shared)
+							if (j <= i || this.removed[j] || this.cellX[j] != neighborX || this.cellY[j] != neighborY
+									|| this.cellZ[j] != neighborZ)
+								continue;
+
+							if (touching(particles, i, j))
+							{
+								if (this.merge)
+									collided |= mergeBodies(particles, i, j);
+								else
+									collided |= bounce(particles, i, j);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		if (this.merge && collided)
+			removeMergedBodies(cluster, bodies, particles);
+
+		return collided;
+	}
+
+	/**
+	 * Sorts the Bodies into grid cells, and the cells into hash buckets (a counting sort into bucketBodies)
+	 * @param particles
+	 * @param cellSize
+	 */
+	private void buildGrid(ParticleStore particles, double cellSize)
+	{
+		int numBodies = particles.getSize();
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		int mask = this.bucketStart.length - 2;
+
+		Arrays.fill(this.bucketStart, 0);
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			this.cellX[i] = (long) Math.floor(x[i] / cellSize);
+			this.cellY[i] = (long) Math.floor(y[i] / cellSize);
+			this.cellZ[i] = (long) Math.floor(z[i] / cellSize);
+			this.bucketStart[hash(this.cellX[i], this.cellY[i], this.cellZ[i]) & mask]++;
+		}
+
+		// Each count becomes the end of its bucket
+		for (int b = 1; b <= mask; b++)
+		{
+			this.bucketStart[b] += this.bucketStart[b - 1];
+		}
+
+		// Filling each bucket backwards from its end leaves bucketStart[b] at the start of bucket b
+		for (int i = numBodies - 1; i >= 0; i--)
+		{
+			int bucket = hash(this.cellX[i], this.cellY[i], this.cellZ[i]) & mask;
+			this.bucketBodies[--this.bucketStart[bucket]] = i;
+		}
+
+		this.bucketStart[mask + 1] = numBodies;
+	}
+
+	/**
+	 * Checks whether two Bodies overlap
+	 * @param particles
+	 * @param i
+	 * @param j
+	 * @return Whether the distance between their centers is less than the sum of their radii
+	 */
+	private boolean touching(ParticleStore particles, int i, int j)
+	{
+		double rx = particles.getX()[j] - particles.getX()[i];
+		double ry = particles.getY()[j] - particles.getY()[i];
+		double rz = particles.getZ()[j] - particles.getZ()[i];
+		double contact = (this.diameters[i] + this.diameters[j]) / 2;
+		return rx*rx + ry*ry + rz*rz < contact * contact;
+	}
+
+	/**
+	 * Merges Body j into Body i
+	 * @param particles
+	 * @param i
+	 * @param j
+	 * @return Always true
+	 */
+	private boolean mergeBodies(ParticleStore particles, int i, int j)
+	{
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		double[] vx = particles.getVx();
+		double[] vy = particles.getVy();
+		double[] vz = particles.getVz();
+		double[] mass = particles.getMass();
+		double totalMass = mass[i] + mass[j];
+
+		// The heavier Body lends its color to the merged one
+		if (mass[j] > mass[i])
+			this.colors[i] = this.colors[j];
+
+		x[i] = (mass[i] * x[i] + mass[j] * x[j]) / totalMass;
+		y[i] = (mass[i] * y[i] + mass[j] * y[j]) / totalMass;
+		z[i] = (mass[i] * z[i] + mass[j] * z[j]) / totalMass;
+		vx[i] = (mass[i] * vx[i] + mass[j] * vx[j]) / totalMass;
+		vy[i] = (mass[i] * vy[i] + mass[j] * vy[j]) / totalMass;
+		vz[i] = (mass[i] * vz[i] + mass[j] * vz[j]) / totalMass;
+		mass[i] = totalMass;
+
+		double di = this.diameters[i];
+		double dj = this.diameters[j];
+		this.diameters[i] = Math.cbrt(di * di * di + dj * dj * dj);
+		this.merged[i] = true;
+		this.removed[j] = true;
+		return true;
+	}
+
+	/**
+	 * Bounces two touching Bodies off each other if they are approaching
+	 * @param particles
+	 * @param i
+	 * @param j
+	 * @return Whether the velocities were changed
+	 */
+	private boolean bounce(ParticleStore particles, int i, int j)
+	{
+		double[] vx = particles.getVx();
+		double[] vy = particles.getVy();
+		double[] vz = particles.getVz();
+		double[] mass = particles.getMass();
+		double rx = particles.getX()[j] - particles.getX()[i];
+		double ry = particles.getY()[j] - particles.getY()[i];
+		double rz = particles.getZ()[j] - particles.getZ()[i];
+		double distance = Math.sqrt(rx*rx + ry*ry + rz*rz);
+
+		if (distance == 0.0)
+			return false;
+
+		double nx = rx / distance;
+		double ny = ry / distance;
+		double nz = rz / distance;
+		double normalVelocity = (vx[j] - vx[i]) * nx + (vy[j] - vy[i]) * ny + (vz[j] - vz[i]) * nz;
+
+		// Bodies that are already separating are left alone
+		if (normalVelocity >= 0.0)
+			return false;
+
+		double totalMass = mass[i] + mass[j];
+		double impulseI = 2 * mass[j] / totalMass * normalVelocity;
+		double impulseJ = 2 * mass[i] / totalMass * normalVelocity;
+
+		vx[i] += impulseI * nx;
+		vy[i] += impulseI * ny;
+		vz[i] += impulseI * nz;
+		vx[j] -= impulseJ * nx;
+		vy[j] -= impulseJ * ny;
+		vz[j] -= impulseJ * nz;
+		return true;
+	}
+
+	/**
+	 * Replaces the Cluster's Bodies and ParticleStore with ones that leave out the merged Bodies
+	 * @param cluster
+	 * @param bodies
+	 * @param particles
+	 */
+	private void removeMergedBodies(Cluster cluster, Body[] bodies, ParticleStore particles)
+	{
+		int numBodies = particles.getSize();
+		int numRemaining = 0;
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			if (!this.removed[i])
+				numRemaining++;
+		}
+
+		ParticleStore remainingParticles = new ParticleStore(numRemaining, particles.getDimension());
+		Body[] remainingBodies = new Body[numRemaining];
+		int k = 0;
+
+		for (int i = 0; i < numBodies; i++)
+		{
+			if (this.removed[i])
+				continue;
+
+			// A merged Body is a new Body (its diameter has changed); the others move into the new store
+			if (this.merged[i])
+			{
+				remainingParticles.copyParticle(k, particles, i);
+				remainingBodies[k] = new Body(this.diameters[i], this.colors[i], remainingParticles, k);
+				remainingBodies[k].setTrailLength(bodies[i].getTrailLength());
+			}
+
+			else
+			{
+				remainingBodies[k] = bodies[i];
+				remainingBodies[k].bind(remainingParticles, k);
+			}
+
+			k++;
+		}
+
+		cluster.replaceBodies(remainingBodies, remainingParticles);
+	}
+
+	/**
+	 * Hashes the coordinates of a grid cell
+	 * @param cellX
+	 * @param cellY
+	 * @param cellZ
+	 * @return Hash of the cell (to be masked to the number of buckets)
+	 */
+	private static int hash(long cellX, long cellY, long cellZ)
+	{
+		long h = cellX * 0x9E3779B97F4A7C15L + cellY * 0xC2B2AE3D27D4EB4FL + cellZ * 0x165667B19E3779F9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Allocates the per-Body arrays, and a power-of-two number of buckets (at least twice the number of Bodies)
+	 * @param numBodies
+	 */
+	private void allocate(int numBodies)
+	{
+		int numBuckets = Integer.highestOneBit(Math.max(1, numBodies)) * 4;
+
+		this.cellX = new long[numBodies];
+		this.cellY = new long[numBodies];
+		this.cellZ = new long[numBodies];
+		this.bucketStart = new int[numBuckets + 1];
+		this.bucketBodies = new int[numBodies];
+		this.removed = new boolean[numBodies];
+		this.diameters = new double[numBodies];
+		this.colors = new Color[numBodies];
+		this.merged = new boolean[numBodies];
+	}
+
+	/**
+	 * Gets mode (String)
+	 * @return merge or bounce
+	 */
+	public String getMode()
+	{
+		return this.mode;
+	}
+}
@@ -0,0 +1,363 @@
+import java.awt.Color;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads cluster configurations from an XML file (see ClusterConfigurations.xml). Each file is read once in a single
+ * streaming pass into an index of parsed configurations, which is kept until the file changes on disk, so loading
+ * a configuration again (e.g. on every Reset) only copies a few arrays.
+ * @author Rajiv Thamburaj
+ */
+public final class ConfigurationLoader
+{
+	// Parsed configurations of each file, keyed by absolute path
+	private static final Map<String, ParsedFile> cache = new HashMap<String, ParsedFile>();
+	// Constants
+	private static final String[] COLUMN_TAGS = {"diameter", "mass", "s_x", "s_y", "v_x", "v_y", "s_z", "v_z"};
+	// Index of the first z-component in COLUMN_TAGS
+	private static final int FIRST_Z_COLUMN = 6;
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Constructor (the class only has static methods)
+	 */
+	private ConfigurationLoader()
+	{
+	}
+
+	/**
+	 * Loads the names of the cluster configurations from the given XML file
+	 * @param configurationsFile
+	 * @return Names of the configurations, in file order
+	 */
+	public static String[] loadConfigurationNames(String configurationsFile)
+	{
+		try
+		{
+			return getConfigurations(configurationsFile).keySet().toArray(new String[0]);
+		}
+
+		catch (Exception e)
+		{
+			System.out.println(e.getMessage());
+		}
+
+		return new String[0];
+	}
+
+	/**
+	 * Reads the configuration information from the XML file
+	 * @param configurationsFile
+	 * @param configurationName
+	 * @return Cluster corresponding to the configuration name (an empty Cluster if it cannot be found)
+	 */
+	public static Cluster loadConfiguration(String configurationsFile, String configurationName)
+	{
+		try
+		{
+			ClusterConfiguration configuration = getConfigurations(configurationsFile).get(configurationName);
+
+			if (configuration != null)
+				return configuration.createCluster();
+		}
+
+		catch (Exception e)
+		{
+			System.out.println(e.getMessage());
+		}
+
+		return new Cluster();
+	}
+
+	/**
+	 * Creates an Integrator by name
+	 * @param name verlet, leapfrog, forest-ruth, hermite, or block
+	 * @return Integrator corresponding to the name
+	 */
+	public static Integrator createIntegrator(String name)
+	{
+		if ("verlet".equals(name))
+			return new VerletIntegrator();
+		else if ("leapfrog".equals(name))
+			return new LeapfrogIntegrator();
+		else if ("forest-ruth".equals(name))
+			return new ForestRuthIntegrator();
+		else if ("hermite".equals(name))
+			return new HermiteIntegrator();
+		else if ("block".equals(name))
+			return new BlockTimestepIntegrator();
+
+		throw new IllegalArgumentException("Unknown integrator " + name);
+	}
+
+	/**
+	 * Creates a ForceSolver by name
+	 * @param name symmetric, direct, barnes-hut, fmm, pm, p3m, vector, or vector-rsqrt
+	 * @param theta Opening angle (only used by barnes-hut)
+	 * @return ForceSolver corresponding to the name
+	 */
+	public static ForceSolver createForceSolver(String name, double theta)
+	{
+		if ("symmetric".equals(name))
+			return new SymmetricDirectSumSolver();
+		else if ("direct".equals(name))
+			return new DirectSumSolver();
+		else if ("barnes-hut".equals(name))
+			return new BarnesHutSolver(theta);
+		else if ("fmm".equals(name))
+			return new FastMultipoleSolver();
+		else if ("pm".equals(name))
+			return new ParticleMeshSolver();
+		else if ("p3m".equals(name))
+			return new ParticleMeshSolver(ParticleMeshSolver.DEFAULT_GRID_SIZE, true);
+		else if ("vector".equals(name))
+			return createVectorSolver(false);
+		else if ("vector-rsqrt".equals(name))
+			return createVectorSolver(true);
+
+		throw new IllegalArgumentException("Unknown solver " + name);
+	}
+
+	/**
+	 * Creates a VectorDirectSumSolver, or the scalar SymmetricDirectSumSolver if the Vector API is not available.
+	 * The class is only loaded reflectively, so the simulator still runs without the jdk.incubator.vector module.
+	 * @param fastInverseSqrt
+	 * @return ForceSolver for direct summation
+	 */
+	private static ForceSolver createVectorSolver(boolean fastInverseSqrt)
+	{
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+		{
+			try
+			{
+				return (ForceSolver) Class.forName("VectorDirectSumSolver").getConstructor(boolean.class)
+						.newInstance(fastInverseSqrt);
+			}
+
+			catch (ReflectiveOperationException | LinkageError e)
+			{
+				System.out.println(e.getMessage());
+			}
+		}
+
+		System.out.println("The Vector API is not available (run with --add-modules jdk.incubator.vector); "
+				+ "using the scalar solver");
+		return new SymmetricDirectSumSolver();
+	}
+
+	/**
+	 * Finds the parsed configurations of a file, parsing it again if it has changed since it was last read
+	 * @param configurationsFile
+	 * @return Configurations keyed by name, in file order
+	 * @throws IOException
+	 * @throws XMLStreamException
+	 */
+	private static synchronized Map<String, ClusterConfiguration> getConfigurations(String configurationsFile)
+			throws IOException, XMLStreamException
+	{
+		File file = new File(configurationsFile).getAbsoluteFile();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		ParsedFile parsed = cache.get(file.getPath());
+
+		if (parsed == null || parsed.lastModified != lastModified || parsed.length != length)
+		{
+			parsed = new ParsedFile(lastModified, length, parse(file));
+			cache.put(file.getPath(), parsed);
+		}
+
+		return parsed.configurations;
+	}
+
+	/**
+	 * Parses the XML file in a single streaming pass
+	 * @param file
+	 * @return Configurations keyed by name, in file order (the first of several with the same name is kept)
+	 * @throws IOException
+	 * @throws XMLStreamException
+	 */
+	private static Map<String, ClusterConfiguration> parse(File file) throws IOException, XMLStreamException
+	{
+		Map<String, ClusterConfiguration> configurations = new LinkedHashMap<String, ClusterConfiguration>();
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file)))
+		{
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+
+			// State of the configuration being read (one column per COLUMN_TAGS entry)
+			String name = null;
+			String integratorName = null;
+			String generatorType = null;
+			int numGenerated = 0;
+			long seed = 0L;
+			String softeningKernel = null;
+			double softeningLength = 0.0;
+			String collisionMode = null;
+			// 0 until a dimensions element is read (a configuration with any z-component is then three-dimensional)
+			int dimension = 0;
+			boolean hasZ = false;
+			int numBodies = 0;
+			// Fields of a body are only read inside its body element (they are ignored anywhere else)
+			boolean inBody = false;
+			double[][] columns = new double[COLUMN_TAGS.length][INITIAL_CAPACITY];
+			Color[] colors = new Color[INITIAL_CAPACITY];
+
+			while (reader.hasNext())
+			{
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.END_ELEMENT && "configuration".equals(reader.getLocalName()))
+				{
+					for (int c = 0; c < columns.length; c++)
+					{
+						columns[c] = Arrays.copyOf(columns[c], numBodies);
+					}
+
+					ClusterConfiguration configuration;
+
+					if (generatorType != null)
+						configuration = new ClusterConfiguration(name, integratorName, generatorType, numGenerated, seed);
+					else
+					{
+						configuration = new ClusterConfiguration(name, integratorName, numBodies, columns[0], columns[1],
+								columns[2], columns[3], columns[4], columns[5], Arrays.copyOf(colors, numBodies));
+					}
+
+					if (softeningKernel != null)
+						configuration.setSoftening(new Softening(softeningKernel, softeningLength));
+					configuration.setCollisionMode(collisionMode);
+
+					// An explicitly planar configuration ignores any z-components
+					if (hasZ && generatorType == null && dimension != 2)
+						configuration.setZComponents(columns[FIRST_Z_COLUMN], columns[FIRST_Z_COLUMN + 1]);
+					if (dimension != 0 || hasZ)
+						configuration.setDimension(dimension != 0 ? dimension : 3);
+
+					configurations.putIfAbsent(name, configuration);
+
+					columns = new double[COLUMN_TAGS.length][INITIAL_CAPACITY];
+					colors = new Color[INITIAL_CAPACITY];
+					continue;
+				}
+
+				if (event == XMLStreamConstants.END_ELEMENT && "body".equals(reader.getLocalName()))
+					inBody = false;
+
+				if (event != XMLStreamConstants.START_ELEMENT)
+					continue;
+
+				String tag = reader.getLocalName();
+
+				if ("configuration".equals(tag))
+				{
+					name = null;
+					integratorName = null;
+					generatorType = null;
+					numGenerated = 0;
+					seed = 0L;
+					softeningKernel = null;
+					softeningLength = 0.0;
+					collisionMode = null;
+					dimension = 0;
+					hasZ = false;
+					numBodies = 0;
+					inBody = false;
+				}
+
+				else if ("body".equals(tag))
+				{
+					// Grow the columns when they are full
+					if (numBodies == colors.length)
+					{
+						for (int c = 0; c < columns.length; c++)
+						{
+							columns[c] = Arrays.copyOf(columns[c], 2 * numBodies);
+						}
+
+						colors = Arrays.copyOf(colors, 2 * numBodies);
+					}
+
+					numBodies++;
+					inBody = true;
+				}
+
+				else if ("name".equals(tag))
+					name = reader.getElementText().trim();
+				else if ("integrator".equals(tag))
+					integratorName = reader.getElementText().trim();
+				else if ("generator".equals(tag))
+					generatorType = reader.getElementText().trim();
+				else if ("bodies".equals(tag))
+					numGenerated = Integer.parseInt(reader.getElementText().trim());
+				else if ("seed".equals(tag))
+					seed = Long.parseLong(reader.getElementText().trim());
+				else if ("softening".equals(tag))
+					softeningKernel = reader.getElementText().trim();
+				else if ("softeningLength".equals(tag))
+					softeningLength = Double.parseDouble(reader.getElementText().trim());
+				else if ("collisions".equals(tag))
+					collisionMode = reader.getElementText().trim();
+				else if ("dimensions".equals(tag))
+					dimension = Integer.parseInt(reader.getElementText().trim());
+				else if ("RGB".equals(tag) && inBody)
+					colors[numBodies - 1] = parseColor(reader.getElementText().trim());
+				else if (inBody)
+				{
+					int column = Arrays.asList(COLUMN_TAGS).indexOf(tag);
+
+					if (column >= 0)
+						columns[column][numBodies - 1] = Double.parseDouble(reader.getElementText().trim());
+					if (column >= FIRST_Z_COLUMN)
+						hasZ = true;
+				}
+			}
+
+			reader.close();
+		}
+
+		return configurations;
+	}
+
+	/**
+	 * Parses a color written as "R-G-B"
+	 * @param RGB
+	 * @return Color with the given components
+	 */
+	private static Color parseColor(String RGB)
+	{
+		String[] colorValues = RGB.split("-");
+		int r = Integer.parseInt(colorValues[0]);
+		int g = Integer.parseInt(colorValues[1]);
+		int b = Integer.parseInt(colorValues[2]);
+		return new Color(r, g, b);
+	}
+
+	/**
+	 * Parsed contents of a file, along with the modification time and length it had when it was read
+	 */
+	private static class ParsedFile
+	{
+		// Instance variables
+		private final long lastModified;
+		private final long length;
+		private final Map<String, ClusterConfiguration> configurations;
+
+		/**
+		 * Constructor
+		 * @param lastModified
+		 * @param length
+		 * @param configurations
+		 */
+		ParsedFile(long lastModified, long length, Map<String, ClusterConfiguration> configurations)
+		{
+			this.lastModified = lastModified;
+			this.length = length;
+			this.configurations = configurations;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes accelerations by summing the Newtonian force between every pair of particles (O(n^2) per step)
+ * @author Rajiv Thamburaj
+ */
+public class DirectSumSolver implements ForceSolver
+{
+	// Instance variables
+	private Softening softening = Softening.NONE;
+	private boolean computePotential;
+
+	/**
+	 * Nothing needs to be prepared for direct summation
+	 * @param particles
+	 * @param pool
+	 */
+	@Override
+	public void prepare(ParticleStore particles, ForkJoinPool pool)
+	{
+	}
+
+	/**
+	 * Finds the acceleration of each particle in [start, end) due to all other particles
+	 * @param particles
+	 * @param G
+	 * @param start
+	 * @param end
+	 */
+	@Override
+	public void computeAccelerations(ParticleStore particles, double G, int start, int end)
+	{
+		int numParticles = particles.getSize();
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] az = particles.getAz();
+		double[] mass = particles.getMass();
+		double[] phi = particles.getPotential();
+		boolean computePotential = this.computePotential;
+		Softening softening = this.softening;
+		double epsilonSquared = softening.getEpsilonSquared();
+		double splineRadiusSquared = softening.getSplineRadiusSquared();
+		// Tested inside the loop, but hoisted out of it by the JIT (a planar store skips the z terms entirely)
+		boolean threeDimensional = particles.isThreeDimensional();
+
+		for (int i = start; i < end; i++)
+		{
+			double accelerationX = 0.0;
+			double accelerationY = 0.0;
+			double accelerationZ = 0.0;
+			double potential = 0.0;
+
+			for (int j = 0; j < numParticles; j++)
+			{
+				// A particle does not exert a gravitational force on itself
+				if (j == i)
+					continue;
+
+				// a = G * m_j * r / |r|^3 (the force divided by the mass of the particle being accelerated), softened
+				double rx = x[j] - x[i];
+				double ry = y[j] - y[i];
+				double magnitudeSquared = rx*rx + ry*ry;
+				double rz = 0.0;
+
+				if (threeDimensional)
+				{
+					rz = z[j] - z[i];
+					magnitudeSquared += rz*rz;
+				}
+
+				double inverseMagnitude = 1.0 / Math.sqrt(magnitudeSquared + epsilonSquared);
+				double scalarPortion = G * mass[j] * inverseMagnitude * inverseMagnitude * inverseMagnitude;
+
+				if (magnitudeSquared < splineRadiusSquared)
+					scalarPortion = G * mass[j] * softening.getForceFactor(magnitudeSquared);
+
+				accelerationX += scalarPortion * rx;
+				accelerationY += scalarPortion * ry;
+
+				if (threeDimensional)
+					accelerationZ += scalarPortion * rz;
+
+				// phi = -G * m_j / |r|, softened
+				if (computePotential)
+				{
+					potential -= mass[j] * (magnitudeSquared < splineRadiusSquared
+							? softening.getPotentialFactor(magnitudeSquared) : inverseMagnitude);
+				}
+			}
+
+			ax[i] = accelerationX;
+			ay[i] = accelerationY;
+			az[i] = accelerationZ;
+
+			if (computePotential)
+				phi[i] = G * potential;
+		}
+	}
+
+	/**
+	 * Sets softening (Softening)
+	 * @param softening
+	 */
+	@Override
+	public void setSoftening(Softening softening)
+	{
+		this.softening = softening;
+	}
+
+	/**
+	 * Sets computePotential (boolean)
+	 * @param computePotential
+	 */
+	@Override
+	public void setComputePotential(boolean computePotential)
+	{
+		this.computePotential = computePotential;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,959 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes accelerations with the Fast Multipole Method, in O(n) time per step for a fixed expansion order. The
+ * particles are sorted into an adaptive quadtree whose leaves hold at most leafSize particles. Each cell summarizes
+ * its particles in a multipole expansion (upward pass), each pair of well-separated cells is coupled by translating
+ * the multipole expansion of one into a local expansion of the other, and the local expansions are passed down to
+ * the leaves (downward pass), where they are evaluated at each particle. Particles in neighbouring leaves are summed
+ * directly.
+ *
+ * The expansions are Cartesian Taylor series in x and y of the 1 / |r| potential, truncated at the given order (the
+ * force falls off as 1 / |r|^2 in the plane, so the complex Laurent series of the logarithmic potential do not
+ * apply). Plummer softening only changes the derivatives of the kernel, so it is expanded exactly; spline-softened
+ * cells are only coupled when every pair between them is beyond the spline radius, where the kernel is Newtonian.
+ * Two cells are well separated when the sum of their radii (the distance from the center of each cell to its
+ * farthest particle) is less than SEPARATION times the distance between their centers, and the truncation error
+ * then falls by about that ratio with each order.
+ *
+ * The cells of each level of the tree are processed in parallel on the pool given to prepare, and every cell only
+ * writes to its own expansions and lists, so the results do not depend on the number of threads. Only planar
+ * clusters are supported: a three-dimensional cluster is handed to a BarnesHutSolver instead.
+ * @author Rajiv Thamburaj
+ */
+public class FastMultipoleSolver implements ForceSolver
+{
+	// Instance variables
+	private int order;
+	private int leafSize;
+	private int numTerms;
+	private Softening softening = Softening.NONE;
+	private boolean computePotential;
+	private BarnesHutSolver octree;
+	private boolean threeDimensional;
+	// Exponents of x and y of each term (terms are ordered by total degree, then by the exponent of y)
+	private int[] termX;
+	private int[] termY;
+	// Translations as lists of (target term, source term, monomial or derivative term, binomial factor)
+	private int[] multipoleTarget;
+	private int[] multipoleSource;
+	private int[] multipoleMonomial;
+	private double[] multipoleFactor;
+	private int[] couplingTarget;
+	private int[] couplingSource;
+	private int[] couplingDerivative;
+	private double[] couplingFactor;
+	private int[] localTarget;
+	private int[] localSource;
+	private int[] localMonomial;
+	private double[] localFactor;
+	// Tree (the nodes are numbered level by level, the children of a node are consecutive, and each node holds the
+	// particles in [particleStart, particleEnd) of the sorted order)
+	private int numNodes;
+	private int numLevels;
+	private int[] levelStart;
+	private double[] centerX;
+	private double[] centerY;
+	private double[] halfSize;
+	// Distance from the center of each cell to its farthest particle
+	private double[] radius;
+	private int[] parent;
+	private int[] firstChild;
+	private int[] numChildren;
+	private int[] particleStart;
+	private int[] particleEnd;
+	private double[] multipole;
+	private double[] local;
+	// Cells that each cell still has to be coupled with, and the leaves that each leaf sums directly
+	private int[][] candidates;
+	private int[] numCandidates;
+	private int[][] neighbours;
+	private int[] numNeighbours;
+	// Particles in tree order, with copies of their positions and masses for the direct sums
+	private int[] sortedOrder;
+	private int[] scratchOrder;
+	private double[] sortedX;
+	private double[] sortedY;
+	private double[] sortedMass;
+	private int[] leafOf;
+	// Number of particles in each quadrant of the cell being split, and where each quadrant's particles go next
+	private final int[] quadrantCounts = new int[4];
+	private final int[] quadrantPositions = new int[4];
+	private ForkJoinPool pool;
+	private final ParticleRangeTask.Operation upward = this::upward;
+	private final ParticleRangeTask.Operation couple = this::couple;
+	// Constants
+	private static final int DEFAULT_ORDER = 6;
+	private static final int DEFAULT_LEAF_SIZE = 32;
+	private static final int MAX_ORDER = 20;
+	private static final double SEPARATION = 0.5;
+	private static final int INITIAL_NODE_CAPACITY = 64;
+	// Beyond this depth, leaves hold any number of particles (this guards against coincident positions)
+	private static final int MAX_DEPTH = 48;
+
+	/**
+	 * Constructor
+	 */
+	public FastMultipoleSolver()
+	{
+		this(DEFAULT_ORDER, DEFAULT_LEAF_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * @param order Highest degree of the expansions
+	 * @param leafSize Largest number of particles in a leaf of the tree
+	 */
+	public FastMultipoleSolver(int order, int leafSize)
+	{
+		setOrder(order);
+		setLeafSize(leafSize);
+		allocateNodes(INITIAL_NODE_CAPACITY);
+		this.levelStart = new int[MAX_DEPTH + 1];
+		this.sortedOrder = new int[0];
+	}
+
+	/**
+	 * Builds the tree and runs the upward pass, the coupling of well-separated cells, and the downward pass
+	 * @param particles
+	 * @param pool
+	 */
+	@Override
+	public void prepare(ParticleStore particles, ForkJoinPool pool)
+	{
+		this.threeDimensional = particles.isThreeDimensional();
+
+		if (this.threeDimensional)
+		{
+			if (this.octree == null)
+			{
+				this.octree = new BarnesHutSolver();
+				this.octree.setSoftening(this.softening);
+				this.octree.setComputePotential(this.computePotential);
+			}
+
+			this.octree.prepare(particles, pool);
+			return;
+		}
+
+		this.pool = pool;
+		buildTree(particles);
+
+		if (this.numNodes == 0)
+			return;
+
+		for (int level = this.numLevels - 1; level >= 0; level--)
+		{
+			forEachNode(this.upward, level);
+		}
+
+		// Every cell starts out as a candidate for the root, which passes the candidates it cannot couple with down
+		addCandidate(0, 0);
+
+		for (int level = 0; level < this.numLevels; level++)
+		{
+			forEachNode(this.couple, level);
+		}
+	}
+
+	/**
+	 * Evaluates the local expansion of each particle's leaf at the particle, and adds the particles in the
+	 * neighbouring leaves directly
+	 * @param particles
+	 * @param G
+	 * @param start
+	 * @param end
+	 */
+	@Override
+	public void computeAccelerations(ParticleStore particles, double G, int start, int end)
+	{
+		if (this.threeDimensional)
+		{
+			this.octree.computeAccelerations(particles, G, start, end);
+			return;
+		}
+
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] phi = particles.getPotential();
+		double epsilonSquared = this.softening.getEpsilonSquared();
+		double splineRadiusSquared = this.softening.getSplineRadiusSquared();
+		double[] powersX = new double[this.order + 1];
+		double[] powersY = new double[this.order + 1];
+
+		for (int i = start; i < end; i++)
+		{
+			int leaf = this.leafOf[i];
+			int offset = leaf * this.numTerms;
+			powers(x[i] - this.centerX[leaf], powersX);
+			powers(y[i] - this.centerY[leaf], powersY);
+
+			// The far field is the gradient of the local expansion (and the potential is minus its value)
+			double accelerationX = 0.0;
+			double accelerationY = 0.0;
+			double potential = 0.0;
+
+			for (int t = 1; t < this.numTerms; t++)
+			{
+				int px = this.termX[t];
+				int py = this.termY[t];
+				double coefficient = this.local[offset + t];
+
+				if (px > 0)
+					accelerationX += px * coefficient * powersX[px - 1] * powersY[py];
+				if (py > 0)
+					accelerationY += py * coefficient * powersX[px] * powersY[py - 1];
+			}
+
+			if (this.computePotential)
+			{
+				for (int t = 0; t < this.numTerms; t++)
+				{
+					potential -= this.local[offset + t] * powersX[this.termX[t]] * powersY[this.termY[t]];
+				}
+			}
+
+			for (int n = 0; n < this.numNeighbours[leaf]; n++)
+			{
+				int neighbour = this.neighbours[leaf][n];
+
+				for (int q = this.particleStart[neighbour]; q < this.particleEnd[neighbour]; q++)
+				{
+					if (this.sortedOrder[q] == i)
+						continue;
+
+					double rx = this.sortedX[q] - x[i];
+					double ry = this.sortedY[q] - y[i];
+					double magnitudeSquared = rx*rx + ry*ry;
+					double inverseMagnitude = 1.0 / Math.sqrt(magnitudeSquared + epsilonSquared);
+					double scalarPortion = this.sortedMass[q] * inverseMagnitude * inverseMagnitude * inverseMagnitude;
+
+					if (magnitudeSquared < splineRadiusSquared)
+						scalarPortion = this.sortedMass[q] * this.softening.getForceFactor(magnitudeSquared);
+
+					accelerationX += scalarPortion * rx;
+					accelerationY += scalarPortion * ry;
+
+					if (this.computePotential)
+					{
+						potential -= this.sortedMass[q] * (magnitudeSquared < splineRadiusSquared
+								? this.softening.getPotentialFactor(magnitudeSquared) : inverseMagnitude);
+					}
+				}
+			}
+
+			ax[i] = G * accelerationX;
+			ay[i] = G * accelerationY;
+
+			if (this.computePotential)
+				phi[i] = G * potential;
+		}
+	}
+
+	/**
+	 * Sorts the particles into the tree, splitting every cell with more than leafSize particles into its non-empty
+	 * quadrants, one level at a time
+	 * @param particles
+	 */
+	private void buildTree(ParticleStore particles)
+	{
+		int numParticles = particles.getSize();
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] mass = particles.getMass();
+
+		if (this.sortedOrder.length < numParticles)
+		{
+			this.sortedOrder = new int[numParticles];
+			this.scratchOrder = new int[numParticles];
+			this.sortedX = new double[numParticles];
+			this.sortedY = new double[numParticles];
+			this.sortedMass = new double[numParticles];
+			this.leafOf = new int[numParticles];
+		}
+
+		this.numNodes = 0;
+		this.numLevels = 0;
+		if (numParticles == 0)
+			return;
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < numParticles; i++)
+		{
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+			this.sortedOrder[i] = i;
+		}
+
+		double half = Math.max(maxX - minX, maxY - minY) / 2 * 1.0001 + Double.MIN_NORMAL;
+		newNode((minX + maxX) / 2, (minY + maxY) / 2, half, -1, 0, numParticles);
+
+		// The children of one level are all created while the level is split, so each level is a range of nodes
+		while (this.numLevels < MAX_DEPTH && this.levelStart[this.numLevels] < this.numNodes)
+		{
+			int end = this.numNodes;
+			boolean lastLevel = this.numLevels == MAX_DEPTH - 1;
+
+			for (int node = this.levelStart[this.numLevels]; node < end; node++)
+			{
+				if (!lastLevel && this.particleEnd[node] - this.particleStart[node] > this.leafSize)
+					subdivide(node, x, y);
+				else
+					markLeaf(node);
+			}
+
+			this.levelStart[++this.numLevels] = end;
+		}
+
+		for (int q = 0; q < numParticles; q++)
+		{
+			int i = this.sortedOrder[q];
+			this.sortedX[q] = x[i];
+			this.sortedY[q] = y[i];
+			this.sortedMass[q] = mass[i];
+		}
+	}
+
+	/**
+	 * Splits a cell into its non-empty quadrants, grouping its particles by quadrant
+	 * @param node
+	 * @param x
+	 * @param y
+	 */
+	private void subdivide(int node, double[] x, double[] y)
+	{
+		int start = this.particleStart[node];
+		int end = this.particleEnd[node];
+		double cx = this.centerX[node];
+		double cy = this.centerY[node];
+		int[] counts = this.quadrantCounts;
+		int[] positions = this.quadrantPositions;
+		Arrays.fill(counts, 0);
+
+		// A counting sort by quadrant (1 for +x, 2 for +y), through the scratch array
+		for (int q = start; q < end; q++)
+		{
+			int i = this.sortedOrder[q];
+			counts[(x[i] >= cx ? 1 : 0) + (y[i] >= cy ? 2 : 0)]++;
+		}
+
+		positions[0] = start;
+
+		for (int c = 1; c < 4; c++)
+		{
+			positions[c] = positions[c - 1] + counts[c - 1];
+		}
+
+		for (int q = start; q < end; q++)
+		{
+			int i = this.sortedOrder[q];
+			this.scratchOrder[positions[(x[i] >= cx ? 1 : 0) + (y[i] >= cy ? 2 : 0)]++] = i;
+		}
+
+		System.arraycopy(this.scratchOrder, start, this.sortedOrder, start, end - start);
+
+		double quarter = this.halfSize[node] / 2;
+		this.firstChild[node] = this.numNodes;
+
+		// Each quadrant's particles now end at its position
+		for (int c = 0; c < 4; c++)
+		{
+			if (counts[c] > 0)
+			{
+				newNode((c & 1) != 0 ? cx + quarter : cx - quarter, (c & 2) != 0 ? cy + quarter : cy - quarter, quarter,
+						node, positions[c] - counts[c], positions[c]);
+			}
+		}
+
+		this.numChildren[node] = this.numNodes - this.firstChild[node];
+	}
+
+	/**
+	 * Makes a cell a leaf, recording it as the leaf of each of its particles
+	 * @param node
+	 */
+	private void markLeaf(int node)
+	{
+		this.firstChild[node] = -1;
+		this.numChildren[node] = 0;
+
+		for (int q = this.particleStart[node]; q < this.particleEnd[node]; q++)
+		{
+			this.leafOf[this.sortedOrder[q]] = node;
+		}
+	}
+
+	/**
+	 * Finds the multipole expansions and radii of the cells in [start, end): directly from the particles for a leaf,
+	 * and by shifting the expansions of the children to the center of the cell otherwise
+	 * @param start
+	 * @param end
+	 */
+	private void upward(int start, int end)
+	{
+		double[] powersX = new double[this.order + 1];
+		double[] powersY = new double[this.order + 1];
+		double[] monomials = new double[this.numTerms];
+
+		for (int node = start; node < end; node++)
+		{
+			int offset = node * this.numTerms;
+			int firstChild = this.firstChild[node];
+			double cx = this.centerX[node];
+			double cy = this.centerY[node];
+			double cellRadius = 0.0;
+			Arrays.fill(this.multipole, offset, offset + this.numTerms, 0.0);
+
+			if (firstChild == -1)
+			{
+				// M_k = sum of m * (-d)^k over the particles, where d is the offset of a particle from the center
+				for (int q = this.particleStart[node]; q < this.particleEnd[node]; q++)
+				{
+					double dx = this.sortedX[q] - cx;
+					double dy = this.sortedY[q] - cy;
+					cellRadius = Math.max(cellRadius, Math.sqrt(dx*dx + dy*dy));
+					monomials(-dx, -dy, powersX, powersY, monomials);
+
+					for (int t = 0; t < this.numTerms; t++)
+					{
+						this.multipole[offset + t] += this.sortedMass[q] * monomials[t];
+					}
+				}
+			}
+
+			else
+			{
+				for (int child = firstChild; child < firstChild + this.numChildren[node]; child++)
+				{
+					double dx = this.centerX[child] - cx;
+					double dy = this.centerY[child] - cy;
+					int childOffset = child * this.numTerms;
+					cellRadius = Math.max(cellRadius, Math.sqrt(dx*dx + dy*dy) + this.radius[child]);
+					monomials(-dx, -dy, powersX, powersY, monomials);
+
+					for (int p = 0; p < this.multipoleTarget.length; p++)
+					{
+						this.multipole[offset + this.multipoleTarget[p]] += this.multipoleFactor[p]
+								* this.multipole[childOffset + this.multipoleSource[p]]
+								* monomials[this.multipoleMonomial[p]];
+					}
+				}
+			}
+
+			this.radius[node] = cellRadius;
+		}
+	}
+
+	/**
+	 * Finds the local expansions of the cells in [start, end). Each cell inherits the local expansion of its parent,
+	 * then goes through its candidates: a well-separated candidate is coupled into the local expansion, a larger one
+	 * is replaced by its children, and any other is passed down to the cell's children (or, for a leaf, kept as a
+	 * neighbour to be summed directly).
+	 * @param start
+	 * @param end
+	 */
+	private void couple(int start, int end)
+	{
+		double[] powersX = new double[this.order + 1];
+		double[] powersY = new double[this.order + 1];
+		double[] monomials = new double[this.numTerms];
+		double[] derivatives = new double[this.numTerms];
+
+		for (int node = start; node < end; node++)
+		{
+			int offset = node * this.numTerms;
+			int parentNode = this.parent[node];
+			boolean leaf = this.firstChild[node] == -1;
+			Arrays.fill(this.local, offset, offset + this.numTerms, 0.0);
+
+			// L_q = sum of C(n, q) * L_n * d^(n - q) over the parent's terms n >= q (d is the offset of the center)
+			if (parentNode != -1)
+			{
+				int parentOffset = parentNode * this.numTerms;
+				monomials(this.centerX[node] - this.centerX[parentNode], this.centerY[node] - this.centerY[parentNode],
+						powersX, powersY, monomials);
+
+				for (int p = 0; p < this.localTarget.length; p++)
+				{
+					this.local[offset + this.localTarget[p]] += this.localFactor[p]
+							* this.local[parentOffset + this.localSource[p]] * monomials[this.localMonomial[p]];
+				}
+			}
+
+			if (leaf)
+				this.numNeighbours[node] = 0;
+
+			for (int child = this.firstChild[node]; child < this.firstChild[node] + this.numChildren[node]; child++)
+			{
+				this.numCandidates[child] = 0;
+			}
+
+			// The list grows while it is read, as larger candidates are replaced by their children
+			for (int c = 0; c < this.numCandidates[node]; c++)
+			{
+				int candidate = this.candidates[node][c];
+				boolean candidateLeaf = this.firstChild[candidate] == -1;
+
+				if (isWellSeparated(node, candidate))
+				{
+					coupleCells(candidate, node, powersX, powersY, derivatives);
+				}
+
+				else if (leaf && candidateLeaf)
+				{
+					addNeighbour(node, candidate);
+				}
+
+				else if (!leaf && (candidateLeaf || this.halfSize[candidate] <= this.halfSize[node]))
+				{
+					int lastChild = this.firstChild[node] + this.numChildren[node];
+
+					for (int child = this.firstChild[node]; child < lastChild; child++)
+					{
+						addCandidate(child, candidate);
+					}
+				}
+
+				else
+				{
+					int firstChild = this.firstChild[candidate];
+
+					for (int child = firstChild; child < firstChild + this.numChildren[candidate]; child++)
+					{
+						addCandidate(node, child);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the multipole expansion of a source cell to the local expansion of a target cell:
+	 * L_n = sum of C(k + n, k) * M_k * T_(k + n)(R) over the terms with |k| + |n| <= order, where T are the Taylor
+	 * coefficients of the kernel at the offset R between the centers
+	 * @param source
+	 * @param target
+	 * @param powersX
+	 * @param powersY
+	 * @param derivatives Scratch space for the Taylor coefficients
+	 */
+	private void coupleCells(int source, int target, double[] powersX, double[] powersY, double[] derivatives)
+	{
+		int sourceOffset = source * this.numTerms;
+		int targetOffset = target * this.numTerms;
+		taylorCoefficients(this.centerX[target] - this.centerX[source], this.centerY[target] - this.centerY[source],
+				derivatives);
+
+		for (int p = 0; p < this.couplingTarget.length; p++)
+		{
+			this.local[targetOffset + this.couplingTarget[p]] += this.couplingFactor[p]
+					* this.multipole[sourceOffset + this.couplingSource[p]] * derivatives[this.couplingDerivative[p]];
+		}
+	}
+
+	/**
+	 * Finds the Taylor coefficients T_(i,j) = (d/dx)^i (d/dy)^j (1 / i! j!) of the (Plummer-softened) kernel
+	 * 1 / sqrt(x^2 + y^2 + eps^2) at a point, by the recurrence
+	 * n * s^2 * T_n = -(2n - 1) * (x * T_(n - e_x) + y * T_(n - e_y)) - (n - 1) * (T_(n - 2e_x) + T_(n - 2e_y))
+	 * where n is the total degree and s^2 = x^2 + y^2 + eps^2
+	 * @param x
+	 * @param y
+	 * @param derivatives Receives the coefficients, in the order of the terms
+	 */
+	private void taylorCoefficients(double x, double y, double[] derivatives)
+	{
+		double magnitudeSquared = x*x + y*y + this.softening.getEpsilonSquared();
+		double inverseSquared = 1.0 / magnitudeSquared;
+		derivatives[0] = Math.sqrt(inverseSquared);
+
+		for (int degree = 1, t = 1; degree <= this.order; degree++)
+		{
+			double scale = -inverseSquared / degree;
+
+			for (int j = 0; j <= degree; j++, t++)
+			{
+				int i = degree - j;
+				double sum = 0.0;
+
+				if (i >= 1)
+					sum += (2 * degree - 1) * x * derivatives[term(i - 1, j)];
+				if (j >= 1)
+					sum += (2 * degree - 1) * y * derivatives[term(i, j - 1)];
+				if (i >= 2)
+					sum += (degree - 1) * derivatives[term(i - 2, j)];
+				if (j >= 2)
+					sum += (degree - 1) * derivatives[term(i, j - 2)];
+
+				derivatives[t] = scale * sum;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the expansions of two cells may be coupled: the cells must be farther apart than their radii
+	 * allow, and with spline softening, every pair of their particles must be beyond the spline radius
+	 * @param node
+	 * @param other
+	 * @return Whether the cells are well separated
+	 */
+	private boolean isWellSeparated(int node, int other)
+	{
+		double dx = this.centerX[node] - this.centerX[other];
+		double dy = this.centerY[node] - this.centerY[other];
+		double distance = Math.sqrt(dx*dx + dy*dy);
+		double radii = this.radius[node] + this.radius[other];
+
+		return radii < SEPARATION * distance && distance - radii >= this.softening.getSplineRadius();
+	}
+
+	/**
+	 * Applies an operation to the nodes of one level of the tree, in parallel if there is a pool
+	 * @param operation
+	 * @param level
+	 */
+	private void forEachNode(ParticleRangeTask.Operation operation, int level)
+	{
+		int start = this.levelStart[level];
+		int end = this.levelStart[level + 1];
+
+		if (this.pool == null)
+		{
+			operation.apply(start, end);
+			return;
+		}
+
+		int grainSize = Math.max(1, (end - start) / (4 * this.pool.getParallelism()));
+		this.pool.invoke(new ParticleRangeTask(operation, start, end, grainSize));
+	}
+
+	/**
+	 * Adds a cell to the candidates of another
+	 * @param node
+	 * @param candidate
+	 */
+	private void addCandidate(int node, int candidate)
+	{
+		if (this.candidates[node] == null)
+			this.candidates[node] = new int[16];
+		else if (this.numCandidates[node] == this.candidates[node].length)
+			this.candidates[node] = Arrays.copyOf(this.candidates[node], 2 * this.numCandidates[node]);
+
+		this.candidates[node][this.numCandidates[node]++] = candidate;
+	}
+
+	/**
+	 * Adds a leaf to the neighbours of another
+	 * @param leaf
+	 * @param neighbour
+	 */
+	private void addNeighbour(int leaf, int neighbour)
+	{
+		if (this.neighbours[leaf] == null)
+			this.neighbours[leaf] = new int[16];
+		else if (this.numNeighbours[leaf] == this.neighbours[leaf].length)
+			this.neighbours[leaf] = Arrays.copyOf(this.neighbours[leaf], 2 * this.numNeighbours[leaf]);
+
+		this.neighbours[leaf][this.numNeighbours[leaf]++] = neighbour;
+	}
+
+	/**
+	 * Finds the monomials x^i * y^j of every term
+	 * @param x
+	 * @param y
+	 * @param powersX Scratch space for the powers of x
+	 * @param powersY Scratch space for the powers of y
+	 * @param monomials Receives the monomials, in the order of the terms
+	 */
+	private void monomials(double x, double y, double[] powersX, double[] powersY, double[] monomials)
+	{
+		powers(x, powersX);
+		powers(y, powersY);
+
+		for (int t = 0; t < this.numTerms; t++)
+		{
+			monomials[t] = powersX[this.termX[t]] * powersY[this.termY[t]];
+		}
+	}
+
+	/**
+	 * Finds the powers of a number up to the order
+	 * @param value
+	 * @param powers Receives value^0 to value^order
+	 */
+	private void powers(double value, double[] powers)
+	{
+		powers[0] = 1.0;
+
+		for (int k = 1; k <= this.order; k++)
+		{
+			powers[k] = powers[k - 1] * value;
+		}
+	}
+
+	/**
+	 * Finds the index of the term x^i * y^j
+	 * @param i
+	 * @param j
+	 * @return Index of the term
+	 */
+	private static int term(int i, int j)
+	{
+		int degree = i + j;
+		return degree * (degree + 1) / 2 + j;
+	}
+
+	/**
+	 * Lists the terms of the expansions and the products that make up each translation between them
+	 */
+	private void buildTranslations()
+	{
+		int p = this.order;
+		this.numTerms = (p + 1) * (p + 2) / 2;
+		this.termX = new int[this.numTerms];
+		this.termY = new int[this.numTerms];
+
+		for (int degree = 0; degree <= p; degree++)
+		{
+			for (int j = 0; j <= degree; j++)
+			{
+				this.termX[term(degree - j, j)] = degree - j;
+				this.termY[term(degree - j, j)] = j;
+			}
+		}
+
+		double[][] binomial = new double[2 * p + 1][2 * p + 1];
+
+		for (int n = 0; n <= 2 * p; n++)
+		{
+			binomial[n][0] = 1.0;
+
+			for (int k = 1; k <= n; k++)
+			{
+				binomial[n][k] = binomial[n - 1][k - 1] + (k < n ? binomial[n - 1][k] : 0.0);
+			}
+		}
+
+		int numShifts = 0;
+		int numCouplings = 0;
+
+		for (int target = 0; target < this.numTerms; target++)
+		{
+			for (int source = 0; source < this.numTerms; source++)
+			{
+				if (this.termX[source] <= this.termX[target] && this.termY[source] <= this.termY[target])
+					numShifts++;
+				if (this.termX[source] + this.termY[source] + this.termX[target] + this.termY[target] <= p)
+					numCouplings++;
+			}
+		}
+
+		this.multipoleTarget = new int[numShifts];
+		this.multipoleSource = new int[numShifts];
+		this.multipoleMonomial = new int[numShifts];
+		this.multipoleFactor = new double[numShifts];
+		this.localTarget = new int[numShifts];
+		this.localSource = new int[numShifts];
+		this.localMonomial = new int[numShifts];
+		this.localFactor = new double[numShifts];
+		this.couplingTarget = new int[numCouplings];
+		this.couplingSource = new int[numCouplings];
+		this.couplingDerivative = new int[numCouplings];
+		this.couplingFactor = new double[numCouplings];
+		int shift = 0;
+		int coupling = 0;
+
+		for (int target = 0; target < this.numTerms; target++)
+		{
+			int tx = this.termX[target];
+			int ty = this.termY[target];
+
+			for (int source = 0; source < this.numTerms; source++)
+			{
+				int sx = this.termX[source];
+				int sy = this.termY[source];
+
+				// M_k += C(k, l) * M'_l * d^(k - l), and L'_q += C(n, q) * L_n * d^(n - q), with the roles swapped
+				if (sx <= tx && sy <= ty)
+				{
+					this.multipoleTarget[shift] = target;
+					this.multipoleSource[shift] = source;
+					this.multipoleMonomial[shift] = term(tx - sx, ty - sy);
+					this.multipoleFactor[shift] = binomial[tx][sx] * binomial[ty][sy];
+					this.localTarget[shift] = source;
+					this.localSource[shift] = target;
+					this.localMonomial[shift] = term(tx - sx, ty - sy);
+					this.localFactor[shift] = binomial[tx][sx] * binomial[ty][sy];
+					shift++;
+				}
+
+				if (sx + sy + tx + ty <= p)
+				{
+					this.couplingTarget[coupling] = target;
+					this.couplingSource[coupling] = source;
+					this.couplingDerivative[coupling] = term(sx + tx, sy + ty);
+					this.couplingFactor[coupling] = binomial[sx + tx][sx] * binomial[sy + ty][sy];
+					coupling++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a node, growing the node arrays if they are full
+	 * @param cx
+	 * @param cy
+	 * @param half
+	 * @param parentNode
+	 * @param start
+	 * @param end
+	 * @return Index of the new node
+	 */
+	private int newNode(double cx, double cy, double half, int parentNode, int start, int end)
+	{
+		if (this.numNodes == this.centerX.length)
+			growNodes(2 * this.centerX.length);
+
+		int node = this.numNodes++;
+		this.centerX[node] = cx;
+		this.centerY[node] = cy;
+		this.halfSize[node] = half;
+		this.parent[node] = parentNode;
+		this.particleStart[node] = start;
+		this.particleEnd[node] = end;
+		this.firstChild[node] = -1;
+		this.numChildren[node] = 0;
+		this.numCandidates[node] = 0;
+		return node;
+	}
+
+	/**
+	 * Allocates the node arrays
+	 * @param capacity
+	 */
+	private void allocateNodes(int capacity)
+	{
+		this.centerX = new double[capacity];
+		this.centerY = new double[capacity];
+		this.halfSize = new double[capacity];
+		this.radius = new double[capacity];
+		this.parent = new int[capacity];
+		this.firstChild = new int[capacity];
+		this.numChildren = new int[capacity];
+		this.particleStart = new int[capacity];
+		this.particleEnd = new int[capacity];
+		this.multipole = new double[capacity * this.numTerms];
+		this.local = new double[capacity * this.numTerms];
+		this.candidates = new int[capacity][];
+		this.numCandidates = new int[capacity];
+		this.neighbours = new int[capacity][];
+		this.numNeighbours = new int[capacity];
+	}
+
+	/**
+	 * Grows the node arrays, keeping the nodes built so far
+	 * @param capacity
+	 */
+	private void growNodes(int capacity)
+	{
+		this.centerX = Arrays.copyOf(this.centerX, capacity);
+		this.centerY = Arrays.copyOf(this.centerY, capacity);
+		this.halfSize = Arrays.copyOf(this.halfSize, capacity);
+		this.radius = Arrays.copyOf(this.radius, capacity);
+		this.parent = Arrays.copyOf(this.parent, capacity);
+		this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+		this.numChildren = Arrays.copyOf(this.numChildren, capacity);
+		this.particleStart = Arrays.copyOf(this.particleStart, capacity);
+		this.particleEnd = Arrays.copyOf(this.particleEnd, capacity);
+		this.multipole = Arrays.copyOf(this.multipole, capacity * this.numTerms);
+		this.local = Arrays.copyOf(this.local, capacity * this.numTerms);
+		this.candidates = Arrays.copyOf(this.candidates, capacity);
+		this.numCandidates = Arrays.copyOf(this.numCandidates, capacity);
+		this.neighbours = Arrays.copyOf(this.neighbours, capacity);
+		this.numNeighbours = Arrays.copyOf(this.numNeighbours, capacity);
+	}
+
+	/**
+	 * Sets softening (Softening)
+	 * @param softening
+	 */
+	@Override
+	public void setSoftening(Softening softening)
+	{
+		this.softening = softening;
+
+		if (this.octree != null)
+			this.octree.setSoftening(softening);
+	}
+
+	/**
+	 * Sets computePotential (boolean)
+	 * @param computePotential
+	 */
+	@Override
+	public void setComputePotential(boolean computePotential)
+	{
+		this.computePotential = computePotential;
+
+		if (this.octree != null)
+			this.octree.setComputePotential(computePotential);
+	}
+
+	/**
+	 * Gets order (int)
+	 * @return Highest degree of the expansions
+	 */
+	public int getOrder()
+	{
+		return this.order;
+	}
+
+	/**
+	 * Sets order (int). Each order adds a degree to the expansions, making them more accurate and more expensive.
+	 * @param order 1 to 20
+	 */
+	public void setOrder(int order)
+	{
+		if (order < 1 || order > MAX_ORDER)
+			throw new IllegalArgumentException("The expansion order must be between 1 and " + MAX_ORDER);
+
+		this.order = order;
+		buildTranslations();
+
+		// The expansions of the nodes have one slot per term
+		if (this.centerX != null)
+		{
+			this.multipole = new double[this.centerX.length * this.numTerms];
+			this.local = new double[this.centerX.length * this.numTerms];
+		}
+	}
+
+	/**
+	 * Gets leafSize (int)
+	 * @return Largest number of particles in a leaf of the tree
+	 */
+	public int getLeafSize()
+	{
+		return this.leafSize;
+	}
+
+	/**
+	 * Sets leafSize (int). Smaller leaves shift work from the direct sums to the expansions.
+	 * @param leafSize
+	 */
+	public void setLeafSize(int leafSize)
+	{
+		if (leafSize < 1)
+			throw new IllegalArgumentException("A leaf must hold at least one particle");
+
+		this.leafSize = leafSize;
+	}
+}
@@ -0,0 +1,39 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes the gravitational accelerations of the particles in a ParticleStore. Cluster delegates its force
+ * evaluation to an implementation of this interface.
+ * @author Rajiv Thamburaj
+ */
+public interface ForceSolver
+{
+	/**
+	 * Prepares any per-step state (such as a tree) from the current particle positions. This is called once per
+	 * force evaluation, before computeAccelerations. The pool is null when the Cluster is being stepped sequentially.
+	 * @param particles
+	 * @param pool
+	 */
+	void prepare(ParticleStore particles, ForkJoinPool pool);
+
+	/**
+	 * Computes and stores the accelerations of the particles with indices in [start, end)
+	 * @param particles
+	 * @param G
+	 * @param start
+	 * @param end
+	 */
+	void computeAccelerations(ParticleStore particles, double G, int start, int end);
+
+	/**
+	 * Sets the Softening of the force between close particles (the Cluster passes on its own whenever it changes)
+	 * @param softening
+	 */
+	void setSoftening(Softening softening);
+
+	/**
+	 * Sets whether computeAccelerations also stores the potential of each particle (ParticleStore.getPotential), from
+	 * the same pair terms as the accelerations. The Cluster only asks for it on the steps where it samples diagnostics.
+	 * @param computePotential
+	 */
+	void setComputePotential(boolean computePotential);
+}
\ No newline at end of file
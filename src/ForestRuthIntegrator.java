@@ -0,0 +1,120 @@
+/**
+ * Fourth-order symplectic integrator of Forest and Ruth (Yoshida's triple-jump composition of three leapfrog steps
+ * with weights w_1, w_0, w_1, where w_1 = 1/(2 - 2^(1/3)) and w_0 = 1 - 2*w_1). It takes three force evaluations per
+ * step, but its error falls with the fourth power of the step size, so a much larger step reaches the same accuracy.
+ * @author Rajiv Thamburaj
+ */
+public class ForestRuthIntegrator implements Integrator
+{
+	// Instance variables
+	private ParticleStore particles;
+	private double kickStep;
+	private double driftStep;
+	// Operations applied to ranges of particles (created once so that stepping does not allocate)
+	private final ParticleRangeTask.Operation kick = this::kick;
+	private final ParticleRangeTask.Operation drift = this::drift;
+	// Constants
+	private static final double W1 = 1.0 / (2.0 - Math.cbrt(2.0));
+	private static final double W0 = 1.0 - 2.0 * W1;
+
+	/**
+	 * Advances every Body by dt with the sequence K(w1/2) D(w1) K((w1+w0)/2) D(w0) K((w0+w1)/2) D(w1) K(w1/2)
+	 * @param cluster
+	 * @param dt
+	 */
+	@Override
+	public void step(Cluster cluster, double dt)
+	{
+		this.particles = cluster.getParticles();
+
+		kick(cluster, W1 / 2 * dt);
+		drift(cluster, W1 * dt);
+		cluster.computeAccelerations();
+
+		kick(cluster, (W1 + W0) / 2 * dt);
+		drift(cluster, W0 * dt);
+		cluster.computeAccelerations();
+
+		kick(cluster, (W0 + W1) / 2 * dt);
+		drift(cluster, W1 * dt);
+		cluster.computeAccelerations();
+
+		kick(cluster, W1 / 2 * dt);
+	}
+
+	/**
+	 * Nothing is kept between steps
+	 */
+	@Override
+	public void reset()
+	{
+	}
+
+	/**
+	 * Kicks every velocity with the current accelerations
+	 * @param cluster
+	 * @param step
+	 */
+	private void kick(Cluster cluster, double step)
+	{
+		this.kickStep = step;
+		cluster.forEachParticle(this.kick);
+	}
+
+	/**
+	 * Drifts every position with the current velocities
+	 * @param cluster
+	 * @param step
+	 */
+	private void drift(Cluster cluster, double step)
+	{
+		this.driftStep = step;
+		cluster.forEachParticle(this.drift);
+	}
+
+	/**
+	 * Kicks the velocities of the particles in [start, end)
+	 * @param start
+	 * @param end
+	 */
+	private void kick(int start, int end)
+	{
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double step = this.kickStep;
+
+		for (int i = start; i < end; i++)
+		{
+			vx[i] += step * ax[i];
+			vy[i] += step * ay[i];
+			vz[i] += step * az[i];
+		}
+	}
+
+	/**
+	 * Drifts the positions of the particles in [start, end)
+	 * @param start
+	 * @param end
+	 */
+	private void drift(int start, int end)
+	{
+		double[] x = this.particles.getX();
+		double[] y = this.particles.getY();
+		double[] z = this.particles.getZ();
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double step = this.driftStep;
+
+		for (int i = start; i < end; i++)
+		{
+			x[i] += step * vx[i];
+			y[i] += step * vy[i];
+			z[i] += step * vz[i];
+		}
+	}
+}
@@ -3,13 +3,10 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import javax.management.JMException;
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.*;
-import org.w3c.dom.*;
 
 /**
  * Base class for this project. Extends a JFrame to build the user interface.
@@ -23,12 +20,15 @@ public final class GravitySimulator extends JFrame implements ItemListener, Chan
 	private final String configurationsFile = "ClusterConfigurations.xml";
 	private JButton startButton;
 	private JComboBox comboBox;
+	private JCheckBox diagnosticsCheckBox;
+	private JCheckBox perspectiveCheckBox;
 	// Constants
 	private final int WINDOW_WIDTH = 799;
 	private final int WINDOW_HEIGHT = 600;
-	private final int MIN_TIME_STEP = 1;
-	private final int MAX_TIME_STEP = 9;
-	private final int DEFAULT_TIME_STEP = 5;
+	// The slider sets the time scale in tenths of a simulated second per second
+	private final int MIN_TIME_SCALE = 1;
+	private final int MAX_TIME_SCALE = 20;
+	private final int DEFAULT_TIME_SCALE = 5;
 
 	/**
 	 * Constructor
@@ -44,40 +44,7 @@ public final class GravitySimulator extends JFrame implements ItemListener, Chan
 	 */
 	private void loadClusterConfigurationNames()
 	{
-		try
-		{
-			// Get the document element from the XML file
-			File file = new File(this.configurationsFile);
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document doc = db.parse(file);
-			doc.getDocumentElement().normalize();
-
-			// Create the list of nodes
-			NodeList nodeList = doc.getElementsByTagName("configuration");
-			int numNodes = nodeList.getLength();
-			this.configurationNames = new String[numNodes];
-
-			// Add each node's name element to the configurationNames array
-			for (int i = 0; i < numNodes; i++)
-			{
-				Node node = nodeList.item(i);
-
-				if (node.getNodeType() != Node.ELEMENT_NODE)
-					continue;
-
-				Element element = (Element) node;
-
-				String name = element.getElementsByTagName("name").item(0).getChildNodes().item(0).getNodeValue();
-
-				this.configurationNames[i] = name;
-			}
-		}
-
-		catch (Exception e)
-		{
-			System.out.println(e.getMessage());
-		}
+		this.configurationNames = ConfigurationLoader.loadConfigurationNames(this.configurationsFile);
 	}
 
 	/**
@@ -146,7 +113,7 @@ public final class GravitySimulator extends JFrame implements ItemListener, Chan
 		button.addActionListener(this);
 
 		// Create the slider (controls the speed of the simulation)
-		slider = new JSlider(JSlider.HORIZONTAL, this.MIN_TIME_STEP, this.MAX_TIME_STEP, this.DEFAULT_TIME_STEP);
+		slider = new JSlider(JSlider.HORIZONTAL, this.MIN_TIME_SCALE, this.MAX_TIME_SCALE, this.DEFAULT_TIME_SCALE);
 		slider.setFocusable(false);
 		constraints.fill = GridBagConstraints.HORIZONTAL;
 		constraints.anchor = GridBagConstraints.PAGE_START;
@@ -175,15 +142,52 @@ public final class GravitySimulator extends JFrame implements ItemListener, Chan
 		constraints = new GridBagConstraints();
 		checkBox.addItemListener(this);
 
+		// Create the second checkBox (controls whether the energy and momentum diagnostics are visible)
+		checkBox = new JCheckBox("Show diagnostics");
+		this.diagnosticsCheckBox = checkBox;
+		checkBox.setFocusable(false);
+		checkBox.setForeground(Color.WHITE);
+		checkBox.setSelected(true);
+		constraints.fill = GridBagConstraints.HORIZONTAL;
+		constraints.anchor = GridBagConstraints.PAGE_START;
+		constraints.gridx = 5;
+		constraints.gridy = 0;
+		constraints.weightx = 1;
+		constraints.weighty = 0;
+		constraints.insets = insets;
+		panel.add(checkBox, constraints);
+		constraints = new GridBagConstraints();
+		checkBox.addItemListener(this);
+
+		// Create the third checkBox (switches the camera of a three-dimensional cluster between perspective and
+		// orthographic projection)
+		checkBox = new JCheckBox("Perspective");
+		this.perspectiveCheckBox = checkBox;
+		checkBox.setFocusable(false);
+		checkBox.setForeground(Color.WHITE);
+		checkBox.setSelected(true);
+		constraints.fill = GridBagConstraints.HORIZONTAL;
+		constraints.anchor = GridBagConstraints.PAGE_START;
+		constraints.gridx = 6;
+		constraints.gridy = 0;
+		constraints.weightx = 1;
+		constraints.weighty = 0;
+		constraints.insets = insets;
+		panel.add(checkBox, constraints);
+		constraints = new GridBagConstraints();
+		checkBox.addItemListener(this);
+
 		// Create an instance of the Canvas class (the space where planets are painted)
 		canvas = new Canvas();
 		canvas.setConfigurationsFile(this.configurationsFile);
+		if (Boolean.getBoolean("gravity.metrics"))
+			canvas.setMetrics(createMetrics());
 		constraints.fill = GridBagConstraints.BOTH;
 		constraints.gridx = 0;
 		constraints.gridy = 1;
 		constraints.weightx = 1;
 		constraints.weighty = 1;
-		constraints.gridwidth = 5;
+		constraints.gridwidth = 7;
 		panel.add(canvas, constraints);
 
 		add(panel);
@@ -198,6 +202,27 @@ public final class GravitySimulator extends JFrame implements ItemListener, Chan
 		canvas.prepareSimulation(this.configurationNames[0]);
 	}
 
+	/**
+	 * Creates the hot-path metrics and publishes them over JMX (only done with -Dgravity.metrics=true)
+	 * @return Metrics for the Canvas to record into
+	 */
+	private SimulationMetrics createMetrics()
+	{
+		SimulationMetrics metrics = new SimulationMetrics();
+
+		try
+		{
+			metrics.register("GravitySimulator");
+		}
+
+		catch (JMException e)
+		{
+			System.out.println("Could not publish the metrics over JMX: " + e.getMessage());
+		}
+
+		return metrics;
+	}
+
 	/**
 	 * Listener for "start", "pause", and "reset" actions
 	 * @param event
@@ -236,23 +261,34 @@ public final class GravitySimulator extends JFrame implements ItemListener, Chan
 	}
 
 	/**
-	 * Listener for state changes (relating to the JSlider)
+	 * Listener for state changes (relating to the JSlider, which sets how many simulated seconds pass per second)
 	 * @param event
 	 */
 	public void stateChanged(ChangeEvent event)
 	{
 		JSlider source = (JSlider) event.getSource();
-		double timeStep = source.getValue() / 10000.0;
-		this.canvas.setTimeStep(timeStep);
+		double timeScale = source.getValue() / 10.0;
+		this.canvas.setTimeScale(timeScale);
 	}
 
 	/**
-	 * Listener for item state changes (relating to the JCheckBox)
+	 * Listener for item state changes (relating to the JCheckBoxes)
 	 * @param event
 	 */
 	public void itemStateChanged(ItemEvent event)
 	{
-		if (event.getStateChange() == ItemEvent.SELECTED)
+		if (event.getItemSelectable() == this.diagnosticsCheckBox)
+		{
+			this.canvas.setShowDiagnostics(event.getStateChange() == ItemEvent.SELECTED);
+		}
+
+		else if (event.getItemSelectable() == this.perspectiveCheckBox)
+		{
+			boolean perspective = event.getStateChange() == ItemEvent.SELECTED;
+			this.canvas.setProjection(perspective ? "perspective" : "orthographic");
+		}
+
+		else if (event.getStateChange() == ItemEvent.SELECTED)
 		{
 			this.canvas.setShowPaths(true);
 		}
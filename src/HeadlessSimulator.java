@@ -0,0 +1,570 @@
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.management.JMException;
+
+/**
+ * Runs a configuration without a user interface, stepping the Cluster as fast as possible for a fixed number of
+ * steps (or a fixed amount of simulated time), then reporting the throughput and writing out the states
+ *
+ * Usage: java HeadlessSimulator "configuration name" [options]
+ *        java HeadlessSimulator --restore PATH [options]
+ *        java HeadlessSimulator --generate TYPE [--bodies N] [--seed S] [--dimensions D] [options]
+ *   --file PATH       XML file to load the configuration from (default: ClusterConfigurations.xml)
+ *   --steps N         Number of steps to run (default: 10000)
+ *   --time T          Simulated time to run for (overrides --steps)
+ *   --dt DT           Time step (default: 0.0005)
+ *   --solver NAME     symmetric, direct, barnes-hut, fmm, pm, p3m, vector, or vector-rsqrt (default: symmetric);
+ *                     p3m adds to pm the pairs within 4.5 split scales of 1.25 cells, vector-rsqrt refines a reciprocal
+ *                     square root by Newton's method, and both vector solvers need --add-modules jdk.incubator.vector
+ *   --theta THETA     Opening angle for the barnes-hut solver (default: 0.5)
+ *   --order P         Expansion order for the fmm solver (default: 6)
+ *   --leaf-size N     Largest number of Bodies in a leaf for the fmm solver (default: 32)
+ *   --grid N          Mesh cells along each side for the pm and p3m solvers, a power of two (default: 256)
+ *   --box L           Side of a periodic box centered on the origin for the pm and p3m solvers, in which positions
+ *                     wrap around, each Body feels the nearest image of every other, and the mean density is removed
+ *                     (default: open)
+ *   --integrator NAME verlet, leapfrog, forest-ruth, hermite, or block (default: as in the configuration)
+ *   --threads N       Number of worker threads (default: 1)
+ *   --output PATH     File to write states to as CSV, with z columns for a 3D Cluster (default: none)
+ *   --every N         Write the state every N steps (default: only the final state)
+ *   --trajectory PATH Binary file to record a frame to every --every steps (default: none)
+ *   --checkpoint PATH Binary file to save the final state of the Cluster to (default: none)
+ *   --restore PATH    Checkpoint to resume from instead of loading a configuration
+ *   --generate TYPE   plummer, disk, colliding, or uniform: generate the Bodies instead of loading a configuration
+ *   --bodies N        Number of Bodies to generate (default: 10000)
+ *   --seed S          Seed to generate the Bodies from (default: 1)
+ *   --dimensions D    2 or 3: generate a planar or a three-dimensional Cluster (default: 2)
+ *   --softening NAME  none, plummer, or spline (default: as in the configuration)
+ *   --epsilon E       Softening length for --softening (default: 1)
+ *   --collisions MODE merge or bounce Bodies that touch (default: as in the configuration)
+ *   --diagnostics N   Sample energy and momentum every N steps and report their drift (default: 0, never)
+ *   --metrics NAME    Record step and force-evaluation times, publish them over JMX under NAME, and print them
+ *   --force-error N   Compare the initial accelerations of N Bodies with direct summation, and report the error
+ *   --ensemble N      Run N perturbed copies of the configuration concurrently with leapfrog and direct summation,
+ *                     writing each final state to --output as it finishes (with a member column); the solver,
+ *                     integrator, collision, diagnostics, metrics, and force-error options cannot be combined with it
+ *   --perturbation P  Standard deviation of the Gaussian offsets of the ensemble, relative to the root mean square
+ *                     radius and speed of the Cluster, drawn from --seed (default: 0.001)
+ * @author Rajiv Thamburaj
+ */
+public final class HeadlessSimulator
+{
+	// Constants
+	private static final List<String> ENSEMBLE_IGNORED_OPTIONS = Arrays.asList("--solver", "--theta", "--order",
+			"--leaf-size", "--grid", "--box", "--integrator", "--collisions", "--diagnostics", "--metrics",
+			"--force-error");
+
+	// Instance variables
+	private String configurationsFile = "ClusterConfigurations.xml";
+	private String configurationName;
+	private long numSteps = 10000;
+	private double simulatedTime = -1.0;
+	private double timeStep = 0.0005;
+	private String solverName = "symmetric";
+	private double theta = 0.5;
+	private int order = 6;
+	private int leafSize = 32;
+	private int gridSize = 256;
+	private double boxSize = 0.0;
+	private String integratorName;
+	private int threads = 1;
+	private String outputFile;
+	private long outputInterval = 0;
+	private String trajectoryFile;
+	private String checkpointFile;
+	private String restoreFile;
+	private String generatorType;
+	private int numGenerated = 10000;
+	private long seed = 1L;
+	private int dimension = 2;
+	private String softeningKernel;
+	private double softeningLength = 1.0;
+	private String collisionMode;
+	private int diagnosticsInterval = 0;
+	private String metricsName;
+	private int numErrorSamples = 0;
+	private int numMembers = 0;
+	private double perturbation = 0.001;
+
+	/**
+	 * Constructor
+	 * @param args
+	 */
+	public HeadlessSimulator(String[] args)
+	{
+		parseArguments(args);
+	}
+
+	/**
+	 * Reads the command-line options
+	 * @param args
+	 */
+	private void parseArguments(String[] args)
+	{
+		String ignoredOption = null;
+
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+
+			if (!arg.startsWith("--"))
+			{
+				this.configurationName = arg;
+				continue;
+			}
+
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+
+			String value = args[++i];
+
+			if (ENSEMBLE_IGNORED_OPTIONS.contains(arg))
+				ignoredOption = arg;
+
+			if ("--file".equals(arg))
+				this.configurationsFile = value;
+			else if ("--steps".equals(arg))
+				this.numSteps = Long.parseLong(value);
+			else if ("--time".equals(arg))
+				this.simulatedTime = Double.parseDouble(value);
+			else if ("--dt".equals(arg))
+				this.timeStep = Double.parseDouble(value);
+			else if ("--solver".equals(arg))
+				this.solverName = value;
+			else if ("--integrator".equals(arg))
+				this.integratorName = value;
+			else if ("--theta".equals(arg))
+				this.theta = Double.parseDouble(value);
+			else if ("--order".equals(arg))
+				this.order = Integer.parseInt(value);
+			else if ("--leaf-size".equals(arg))
+				this.leafSize = Integer.parseInt(value);
+			else if ("--grid".equals(arg))
+				this.gridSize = Integer.parseInt(value);
+			else if ("--box".equals(arg))
+				this.boxSize = Double.parseDouble(value);
+			else if ("--threads".equals(arg))
+				this.threads = Integer.parseInt(value);
+			else if ("--output".equals(arg))
+				this.outputFile = value;
+			else if ("--every".equals(arg))
+				this.outputInterval = Long.parseLong(value);
+			else if ("--trajectory".equals(arg))
+				this.trajectoryFile = value;
+			else if ("--checkpoint".equals(arg))
+				this.checkpointFile = value;
+			else if ("--restore".equals(arg))
+				this.restoreFile = value;
+			else if ("--generate".equals(arg))
+				this.generatorType = value;
+			else if ("--bodies".equals(arg))
+				this.numGenerated = Integer.parseInt(value);
+			else if ("--seed".equals(arg))
+				this.seed = Long.parseLong(value);
+			else if ("--dimensions".equals(arg))
+				this.dimension = Integer.parseInt(value);
+			else if ("--softening".equals(arg))
+				this.softeningKernel = value;
+			else if ("--epsilon".equals(arg))
+				this.softeningLength = Double.parseDouble(value);
+			else if ("--collisions".equals(arg))
+				this.collisionMode = value;
+			else if ("--diagnostics".equals(arg))
+				this.diagnosticsInterval = Integer.parseInt(value);
+			else if ("--metrics".equals(arg))
+				this.metricsName = value;
+			else if ("--force-error".equals(arg))
+				this.numErrorSamples = Integer.parseInt(value);
+			else if ("--ensemble".equals(arg))
+				this.numMembers = Integer.parseInt(value);
+			else if ("--perturbation".equals(arg))
+				this.perturbation = Double.parseDouble(value);
+			else
+				throw new IllegalArgumentException("Unknown option " + arg);
+		}
+
+		if (this.configurationName == null && this.restoreFile == null && this.generatorType == null)
+			throw new IllegalArgumentException("No configuration name given");
+
+		// Every frame of a trajectory holds the same Bodies
+		if ("merge".equals(this.collisionMode) && this.trajectoryFile != null)
+			throw new IllegalArgumentException("A trajectory cannot be recorded while Bodies merge");
+
+		// An ensemble only writes the final state of each member
+		if (this.numMembers > 0 && (this.trajectoryFile != null || this.checkpointFile != null))
+			throw new IllegalArgumentException("An ensemble cannot record a trajectory or a checkpoint");
+
+		// Every member is stepped by the ensemble's own leapfrog and pair pass, without collisions or diagnostics
+		if (this.numMembers > 0 && ignoredOption != null)
+			throw new IllegalArgumentException("An ensemble cannot be run with " + ignoredOption);
+
+		// A simulated time takes precedence over a step count
+		if (this.simulatedTime >= 0.0)
+			this.numSteps = (long) Math.ceil(this.simulatedTime / this.timeStep);
+	}
+
+	/**
+	 * Loads the configuration, runs the simulation, and reports the results
+	 * @throws IOException
+	 * @throws JMException
+	 */
+	public void run() throws IOException, JMException
+	{
+		Cluster cluster;
+		long firstStep = 0;
+		double startTime = 0.0;
+
+		if (this.restoreFile != null)
+		{
+			ClusterCheckpoint checkpoint = ClusterCheckpoint.read(Paths.get(this.restoreFile));
+			cluster = checkpoint.getCluster();
+			firstStep = checkpoint.getStep();
+			startTime = checkpoint.getTime();
+
+			if (this.configurationName == null)
+				this.configurationName = this.restoreFile;
+		}
+
+		else if (this.generatorType != null)
+		{
+			cluster = ClusterGenerator.generate(this.generatorType, this.numGenerated, this.seed, this.dimension);
+
+			if (this.configurationName == null)
+				this.configurationName = this.generatorType;
+		}
+
+		else
+		{
+			cluster = ConfigurationLoader.loadConfiguration(this.configurationsFile, this.configurationName);
+		}
+
+		int numBodies = cluster.getBodies().length;
+
+		if (numBodies == 0)
+			throw new IllegalArgumentException("Configuration \"" + this.configurationName + "\" not found");
+
+		ForceSolver forceSolver = ConfigurationLoader.createForceSolver(this.solverName, this.theta);
+
+		if (forceSolver instanceof FastMultipoleSolver)
+		{
+			((FastMultipoleSolver) forceSolver).setOrder(this.order);
+			((FastMultipoleSolver) forceSolver).setLeafSize(this.leafSize);
+		}
+
+		if (forceSolver instanceof ParticleMeshSolver)
+		{
+			((ParticleMeshSolver) forceSolver).setGridSize(this.gridSize);
+			((ParticleMeshSolver) forceSolver).setBoxSize(this.boxSize);
+		}
+
+		cluster.setForceSolver(forceSolver);
+
+		// The integrator named in the configuration is used unless one is given on the command line
+		if (this.integratorName != null)
+			cluster.setIntegrator(ConfigurationLoader.createIntegrator(this.integratorName));
+
+		// As is the softening, and the handling of collisions
+		if (this.softeningKernel != null)
+			cluster.setSoftening(new Softening(this.softeningKernel, this.softeningLength));
+		if (this.collisionMode != null)
+			cluster.setCollisionHandler(new CollisionHandler(this.collisionMode));
+
+		// The configuration itself may have Bodies merge, which the arguments alone do not show
+		CollisionHandler collisionHandler = cluster.getCollisionHandler();
+
+		if (collisionHandler != null && "merge".equals(collisionHandler.getMode()) && this.trajectoryFile != null)
+			throw new IllegalArgumentException("A trajectory cannot be recorded while Bodies merge");
+
+		if (this.numMembers > 0)
+		{
+			runEnsemble(cluster);
+			return;
+		}
+
+		cluster.setParallelism(this.threads);
+		cluster.setDiagnosticsInterval(this.diagnosticsInterval);
+
+		SimulationMetrics metrics = null;
+		long lastStep = firstStep + this.numSteps;
+		double endTime = startTime + this.numSteps * this.timeStep;
+		double maxEnergyDrift = 0.0;
+		double elapsedSeconds;
+
+		// The output is closed (and the trajectory cut to the frames written) and the pool shut down even if the run
+		// fails partway
+		try
+		{
+			if (this.metricsName != null)
+			{
+				metrics = new SimulationMetrics();
+				metrics.register(this.metricsName);
+			}
+
+			// A restored Cluster is already in its center-of-mass frame
+			if (this.restoreFile == null)
+				cluster.adjustForCenterOfMassVelocity();
+
+			cluster.computeInitialAccelerations();
+
+			if (this.numErrorSamples > 0)
+				reportForceError(cluster);
+
+			try (PrintWriter writer = this.outputFile != null
+					? new PrintWriter(new BufferedWriter(new FileWriter(this.outputFile))) : null;
+					TrajectoryWriter trajectory = this.trajectoryFile != null
+							? new TrajectoryWriter(Paths.get(this.trajectoryFile), cluster.getParticles()) : null)
+			{
+				if (writer != null)
+				{
+					writer.println(cluster.isThreeDimensional() ? "step,time,body,x,y,z,v_x,v_y,v_z"
+							: "step,time,body,x,y,v_x,v_y");
+					writeState(writer, cluster, firstStep, startTime, "");
+				}
+
+				if (trajectory != null)
+					trajectory.writeFrame(cluster.getParticles(), firstStep, startTime);
+
+				ClusterDiagnostics lastSample = cluster.getDiagnostics();
+				// The setup above is left out of the metrics
+				if (metrics != null)
+					cluster.setMetrics(metrics);
+
+				long startNanos = System.nanoTime();
+
+				for (long step = firstStep + 1; step <= lastStep; step++)
+				{
+					cluster.updatePositions(this.timeStep);
+
+					// A new sample is taken every diagnosticsInterval steps
+					if (cluster.getDiagnostics() != lastSample)
+					{
+						lastSample = cluster.getDiagnostics();
+						maxEnergyDrift = Math.max(maxEnergyDrift, Math.abs(lastSample.getEnergyDrift()));
+					}
+
+					if (this.outputInterval > 0 && step % this.outputInterval == 0 && step != lastStep)
+					{
+						double time = startTime + (step - firstStep) * this.timeStep;
+
+						if (writer != null)
+							writeState(writer, cluster, step, time, "");
+						if (trajectory != null)
+							trajectory.writeFrame(cluster.getParticles(), step, time);
+					}
+				}
+
+				elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+				if (writer != null)
+					writeState(writer, cluster, lastStep, endTime, "");
+				if (trajectory != null)
+					trajectory.writeFrame(cluster.getParticles(), lastStep, endTime);
+			}
+
+			if (this.checkpointFile != null)
+				new ClusterCheckpoint(cluster, lastStep, endTime).write(Paths.get(this.checkpointFile));
+		}
+
+		finally
+		{
+			cluster.setParallelism(1);
+
+			if (metrics != null)
+			{
+				cluster.setMetrics(null);
+				metrics.unregister();
+			}
+		}
+
+		System.out.println(String.format(Locale.ROOT, "%s: %d bodies, %d steps (t = %.6f) in %.3f s",
+				this.configurationName, numBodies, this.numSteps, endTime, elapsedSeconds));
+		System.out.println(String.format(Locale.ROOT, "%.1f steps/sec, %.1f body-steps/sec",
+				this.numSteps / elapsedSeconds, this.numSteps * numBodies / elapsedSeconds));
+
+		if (cluster.getBodies().length != numBodies)
+			System.out.println(cluster.getBodies().length + " bodies remain after merging");
+
+		if (metrics != null)
+			System.out.println(metrics.report());
+
+		if (this.diagnosticsInterval > 0)
+		{
+			ClusterDiagnostics diagnostics = cluster.sampleDiagnostics();
+			maxEnergyDrift = Math.max(maxEnergyDrift, Math.abs(diagnostics.getEnergyDrift()));
+			System.out.println(String.format(Locale.ROOT, "Energy drift %+.3e (max %.3e), momentum drift %.3e, "
+					+ "angular momentum drift %+.3e, 2K/|W| = %.4f", diagnostics.getEnergyDrift(), maxEnergyDrift,
+					diagnostics.getMomentumDrift(), diagnostics.getAngularMomentumDrift(), diagnostics.getVirialRatio()));
+		}
+	}
+
+	/**
+	 * Runs perturbed copies of the Cluster as an ensemble, writing out each member's final state as it finishes, and
+	 * reports the throughput
+	 * @param cluster
+	 * @throws IOException
+	 */
+	private void runEnsemble(Cluster cluster) throws IOException
+	{
+		ClusterEnsemble ensemble = ClusterEnsemble.perturb(cluster, this.numMembers, this.seed, this.perturbation);
+		ensemble.setParallelism(this.threads);
+		int numBodies = ensemble.getParticles().getSize();
+		double endTime = this.numSteps * this.timeStep;
+
+		double elapsedSeconds;
+
+		// The output is closed and the pool shut down even if a member fails
+		try (PrintWriter writer = this.outputFile != null
+				? new PrintWriter(new BufferedWriter(new FileWriter(this.outputFile))) : null)
+		{
+			ClusterEnsemble.Listener listener = null;
+
+			if (writer != null)
+			{
+				writer.println(cluster.isThreeDimensional() ? "member,step,time,body,x,y,z,v_x,v_y,v_z"
+						: "member,step,time,body,x,y,v_x,v_y");
+
+				// Members finish on the worker threads
+				listener = (member, finished) ->
+				{
+					synchronized (writer)
+					{
+						writeState(writer, finished, this.numSteps, endTime, member + ",");
+					}
+				};
+			}
+
+			long startNanos = System.nanoTime();
+			ensemble.run(this.numSteps, this.timeStep, listener);
+			elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+		}
+
+		finally
+		{
+			ensemble.setParallelism(1);
+		}
+
+		System.out.println(String.format(Locale.ROOT, "%s: %d members of %d bodies, %d steps (t = %.6f) in %.3f s",
+				this.configurationName, this.numMembers, numBodies / this.numMembers, this.numSteps, endTime,
+				elapsedSeconds));
+		System.out.println(String.format(Locale.ROOT, "%.1f member-steps/sec, %.1f body-steps/sec",
+				this.numMembers * this.numSteps / elapsedSeconds, this.numSteps * numBodies / elapsedSeconds));
+	}
+
+	/**
+	 * Compares the accelerations of evenly spaced Bodies with those found by direct summation, and prints the
+	 * relative error (the root mean square over the Bodies, and the largest)
+	 * @param cluster
+	 */
+	private void reportForceError(Cluster cluster)
+	{
+		ParticleStore particles = cluster.getParticles();
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] az = particles.getAz();
+		int numBodies = particles.getSize();
+		int numSamples = Math.min(this.numErrorSamples, numBodies);
+
+		DirectSumSolver reference = new DirectSumSolver();
+		reference.setSoftening(cluster.getSoftening());
+		reference.prepare(particles, null);
+
+		double squaredError = 0.0;
+		double squaredMagnitude = 0.0;
+		double maxError = 0.0;
+
+		for (int s = 0; s < numSamples; s++)
+		{
+			int i = (int) ((long) s * numBodies / numSamples);
+			double x = ax[i];
+			double y = ay[i];
+			double z = az[i];
+
+			// The reference is found in place, and the approximate acceleration put back afterwards
+			reference.computeAccelerations(particles, cluster.getGravitationalConstant(), i, i + 1);
+			double dx = x - ax[i];
+			double dy = y - ay[i];
+			double dz = z - az[i];
+			double error = dx*dx + dy*dy + dz*dz;
+			double magnitude = ax[i]*ax[i] + ay[i]*ay[i] + az[i]*az[i];
+
+			squaredError += error;
+			squaredMagnitude += magnitude;
+			if (magnitude > 0.0)
+				maxError = Math.max(maxError, Math.sqrt(error / magnitude));
+
+			ax[i] = x;
+			ay[i] = y;
+			az[i] = z;
+		}
+
+		System.out.println(String.format(Locale.ROOT, "Force error against direct summation (%d bodies): rms %.3e, "
+				+ "max %.3e", numSamples, Math.sqrt(squaredError / squaredMagnitude), maxError));
+	}
+
+	/**
+	 * Writes the state of every Body as CSV rows, each starting with the given prefix
+	 * @param writer
+	 * @param cluster
+	 * @param step
+	 * @param time
+	 * @param prefix
+	 */
+	private void writeState(PrintWriter writer, Cluster cluster, long step, double time, String prefix)
+	{
+		ParticleStore particles = cluster.getParticles();
+
+		if (particles.isThreeDimensional())
+		{
+			for (int i = 0; i < particles.getSize(); i++)
+			{
+				writer.println(prefix + String.format(Locale.ROOT, "%d,%.9g,%d,%.17g,%.17g,%.17g,%.17g,%.17g,%.17g", step,
+						time, i, particles.getX()[i], particles.getY()[i], particles.getZ()[i], particles.getVx()[i],
+						particles.getVy()[i], particles.getVz()[i]));
+			}
+
+			return;
+		}
+
+		for (int i = 0; i < particles.getSize(); i++)
+		{
+			writer.println(prefix + String.format(Locale.ROOT, "%d,%.9g,%d,%.17g,%.17g,%.17g,%.17g", step, time, i,
+					particles.getX()[i], particles.getY()[i], particles.getVx()[i], particles.getVy()[i]));
+		}
+	}
+
+	/**
+	 * Main method
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		try
+		{
+			new HeadlessSimulator(args).run();
+		}
+
+		catch (IllegalArgumentException e)
+		{
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java HeadlessSimulator \"configuration name\" [--file PATH] [--steps N] [--time T] "
+					+ "[--dt DT] [--solver symmetric|direct|barnes-hut|fmm|pm|p3m|vector|vector-rsqrt] "
+					+ "[--theta THETA] [--order P] [--leaf-size N] [--grid N] [--box L] "
+					+ "[--integrator verlet|leapfrog|forest-ruth|hermite|block] "
+					+ "[--threads N] [--output PATH] [--every N] "
+					+ "[--trajectory PATH] [--checkpoint PATH] [--restore PATH] "
+					+ "[--generate plummer|disk|colliding|uniform] [--bodies N] [--seed S] [--dimensions 2|3] "
+					+ "[--softening none|plummer|spline] [--epsilon E] [--collisions merge|bounce] [--diagnostics N] "
+					+ "[--metrics NAME] [--force-error N] [--ensemble N] [--perturbation P]");
+			System.exit(1);
+		}
+
+		catch (IOException | JMException e)
+		{
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
\ No newline at end of file
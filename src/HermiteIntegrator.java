@@ -0,0 +1,285 @@
+/**
+ * Fourth-order Hermite predictor-corrector integrator. Each step predicts the positions and velocities from the
+ * accelerations and jerks (the time derivatives of the accelerations), evaluates the accelerations and jerks at the
+ * predicted state, and corrects with a Hermite interpolant. It takes one force evaluation per step.
+ *
+ * The jerks cannot be found from a ForceSolver, so the forces are summed directly by this class.
+ * @author Rajiv Thamburaj
+ */
+public class HermiteIntegrator implements Integrator
+{
+	// Instance variables
+	private ParticleStore particles;
+	private double gravitationalConstant;
+	private Softening softening;
+	private double timeStep;
+	private boolean initialized;
+	// Jerk of each Body
+	private double[] jx;
+	private double[] jy;
+	private double[] jz;
+	// Predicted positions and velocities
+	private double[] px;
+	private double[] py;
+	private double[] pz;
+	private double[] pvx;
+	private double[] pvy;
+	private double[] pvz;
+	// Accelerations and jerks at the predicted state
+	private double[] newAx;
+	private double[] newAy;
+	private double[] newAz;
+	private double[] newJx;
+	private double[] newJy;
+	private double[] newJz;
+	// Operations applied to ranges of particles (created once so that stepping does not allocate)
+	private final ParticleRangeTask.Operation predict = this::predict;
+	private final ParticleRangeTask.Operation evaluate = this::evaluate;
+	private final ParticleRangeTask.Operation correct = this::correct;
+
+	/**
+	 * Advances every Body by dt
+	 * @param cluster
+	 * @param dt
+	 */
+	@Override
+	public void step(Cluster cluster, double dt)
+	{
+		this.particles = cluster.getParticles();
+		this.gravitationalConstant = cluster.getGravitationalConstant();
+		this.softening = cluster.getSoftening();
+		this.timeStep = dt;
+
+		if (!this.initialized || this.jx.length != this.particles.getSize())
+			initialize(cluster);
+
+		cluster.forEachParticle(this.predict);
+		cluster.forEachParticle(this.evaluate);
+		cluster.forEachParticle(this.correct);
+	}
+
+	/**
+	 * Discards the jerks, so that they are recomputed from the current state on the next step
+	 */
+	@Override
+	public void reset()
+	{
+		this.initialized = false;
+	}
+
+	/**
+	 * Computes the accelerations and jerks of every Body from the current state
+	 * @param cluster
+	 */
+	private void initialize(Cluster cluster)
+	{
+		int numBodies = this.particles.getSize();
+
+		this.jx = new double[numBodies];
+		this.jy = new double[numBodies];
+		this.jz = new double[numBodies];
+		this.px = this.particles.getX().clone();
+		this.py = this.particles.getY().clone();
+		this.pz = this.particles.getZ().clone();
+		this.pvx = this.particles.getVx().clone();
+		this.pvy = this.particles.getVy().clone();
+		this.pvz = this.particles.getVz().clone();
+		this.newAx = new double[numBodies];
+		this.newAy = new double[numBodies];
+		this.newAz = new double[numBodies];
+		this.newJx = new double[numBodies];
+		this.newJy = new double[numBodies];
+		this.newJz = new double[numBodies];
+
+		cluster.forEachParticle(this.evaluate);
+
+		System.arraycopy(this.newAx, 0, this.particles.getAx(), 0, numBodies);
+		System.arraycopy(this.newAy, 0, this.particles.getAy(), 0, numBodies);
+		System.arraycopy(this.newAz, 0, this.particles.getAz(), 0, numBodies);
+		System.arraycopy(this.newJx, 0, this.jx, 0, numBodies);
+		System.arraycopy(this.newJy, 0, this.jy, 0, numBodies);
+		System.arraycopy(this.newJz, 0, this.jz, 0, numBodies);
+		this.initialized = true;
+	}
+
+	/**
+	 * Predicts the positions and velocities of the particles in [start, end) at the end of the step
+	 * @param start
+	 * @param end
+	 */
+	private void predict(int start, int end)
+	{
+		double[] x = this.particles.getX();
+		double[] y = this.particles.getY();
+		double[] z = this.particles.getZ();
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double dt = this.timeStep;
+		double dt2 = dt * dt / 2;
+		double dt3 = dt2 * dt / 3;
+
+		for (int i = start; i < end; i++)
+		{
+			// s_p = s + v*dt + a*dt^2/2 + j*dt^3/6, v_p = v + a*dt + j*dt^2/2
+			this.px[i] = x[i] + vx[i] * dt + ax[i] * dt2 + this.jx[i] * dt3;
+			this.py[i] = y[i] + vy[i] * dt + ay[i] * dt2 + this.jy[i] * dt3;
+			this.pz[i] = z[i] + vz[i] * dt + az[i] * dt2 + this.jz[i] * dt3;
+			this.pvx[i] = vx[i] + ax[i] * dt + this.jx[i] * dt2;
+			this.pvy[i] = vy[i] + ay[i] * dt + this.jy[i] * dt2;
+			this.pvz[i] = vz[i] + az[i] * dt + this.jz[i] * dt2;
+		}
+	}
+
+	/**
+	 * Computes the accelerations and jerks of the particles in [start, end) at the predicted state
+	 * @param start
+	 * @param end
+	 */
+	private void evaluate(int start, int end)
+	{
+		int numBodies = this.particles.getSize();
+		double[] mass = this.particles.getMass();
+		boolean threeDimensional = this.particles.isThreeDimensional();
+
+		for (int i = start; i < end; i++)
+		{
+			computeAccelerationAndJerk(i, this.px, this.py, this.pz, this.pvx, this.pvy, this.pvz, mass,
+					this.gravitationalConstant, this.softening, numBodies, threeDimensional, this.newAx, this.newAy,
+					this.newAz, this.newJx, this.newJy, this.newJz);
+		}
+	}
+
+	/**
+	 * Applies the Hermite corrector to the particles in [start, end)
+	 * @param start
+	 * @param end
+	 */
+	private void correct(int start, int end)
+	{
+		double[] x = this.particles.getX();
+		double[] y = this.particles.getY();
+		double[] z = this.particles.getZ();
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double dt = this.timeStep;
+		double dt2 = dt * dt;
+
+		for (int i = start; i < end; i++)
+		{
+			// v_1 = v_0 + (a_0 + a_1)*dt/2 + (j_0 - j_1)*dt^2/12
+			double vx1 = vx[i] + (ax[i] + this.newAx[i]) * dt / 2 + (this.jx[i] - this.newJx[i]) * dt2 / 12;
+			double vy1 = vy[i] + (ay[i] + this.newAy[i]) * dt / 2 + (this.jy[i] - this.newJy[i]) * dt2 / 12;
+			double vz1 = vz[i] + (az[i] + this.newAz[i]) * dt / 2 + (this.jz[i] - this.newJz[i]) * dt2 / 12;
+
+			// s_1 = s_0 + (v_0 + v_1)*dt/2 + (a_0 - a_1)*dt^2/12
+			x[i] += (vx[i] + vx1) * dt / 2 + (ax[i] - this.newAx[i]) * dt2 / 12;
+			y[i] += (vy[i] + vy1) * dt / 2 + (ay[i] - this.newAy[i]) * dt2 / 12;
+			z[i] += (vz[i] + vz1) * dt / 2 + (az[i] - this.newAz[i]) * dt2 / 12;
+
+			vx[i] = vx1;
+			vy[i] = vy1;
+			vz[i] = vz1;
+			ax[i] = this.newAx[i];
+			ay[i] = this.newAy[i];
+			az[i] = this.newAz[i];
+			this.jx[i] = this.newJx[i];
+			this.jy[i] = this.newJy[i];
+			this.jz[i] = this.newJz[i];
+		}
+	}
+
+	/**
+	 * Computes the acceleration and jerk of a Body by direct summation over all other Bodies. In two dimensions the
+	 * z arrays are not read; the test of threeDimensional is hoisted out of the loop by the JIT, so the planar case
+	 * costs no more than it did before there was a third dimension.
+	 * @param i
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param vx
+	 * @param vy
+	 * @param vz
+	 * @param mass
+	 * @param G
+	 * @param softening
+	 * @param numBodies
+	 * @param threeDimensional
+	 * @param ax
+	 * @param ay
+	 * @param az
+	 * @param jx
+	 * @param jy
+	 * @param jz
+	 */
+	static void computeAccelerationAndJerk(int i, double[] x, double[] y, double[] z, double[] vx, double[] vy,
+			double[] vz, double[] mass, double G, Softening softening, int numBodies, boolean threeDimensional,
+			double[] ax, double[] ay, double[] az, double[] jx, double[] jy, double[] jz)
+	{
+		double accelerationX = 0.0;
+		double accelerationY = 0.0;
+		double accelerationZ = 0.0;
+		double jerkX = 0.0;
+		double jerkY = 0.0;
+		double jerkZ = 0.0;
+
+		for (int j = 0; j < numBodies; j++)
+		{
+			if (j == i)
+				continue;
+
+			double rx = x[j] - x[i];
+			double ry = y[j] - y[i];
+			double wx = vx[j] - vx[i];
+			double wy = vy[j] - vy[i];
+			double magnitudeSquared = rx*rx + ry*ry;
+			double radialProduct = rx*wx + ry*wy;
+			double rz = 0.0;
+			double wz = 0.0;
+
+			if (threeDimensional)
+			{
+				rz = z[j] - z[i];
+				wz = vz[j] - vz[i];
+				magnitudeSquared += rz*rz;
+				radialProduct += rz*wz;
+			}
+
+			double inverseMagnitude = 1.0 / Math.sqrt(magnitudeSquared + softening.getEpsilonSquared());
+			double scalarPortion = G * mass[j] * inverseMagnitude * inverseMagnitude * inverseMagnitude;
+			double radialVelocity = 3 * radialProduct / (magnitudeSquared + softening.getEpsilonSquared());
+
+			if (magnitudeSquared < softening.getSplineRadiusSquared())
+			{
+				scalarPortion = G * mass[j] * softening.getForceFactor(magnitudeSquared);
+				radialVelocity = -softening.getJerkFactor(magnitudeSquared) * radialProduct;
+			}
+
+			// a = G*m*r/|r|^3, j = G*m*(w/|r|^3 - 3*(r.w)*r/|r|^5) (or their softened equivalents)
+			accelerationX += scalarPortion * rx;
+			accelerationY += scalarPortion * ry;
+			jerkX += scalarPortion * (wx - radialVelocity * rx);
+			jerkY += scalarPortion * (wy - radialVelocity * ry);
+
+			if (threeDimensional)
+			{
+				accelerationZ += scalarPortion * rz;
+				jerkZ += scalarPortion * (wz - radialVelocity * rz);
+			}
+		}
+
+		ax[i] = accelerationX;
+		ay[i] = accelerationY;
+		az[i] = accelerationZ;
+		jx[i] = jerkX;
+		jy[i] = jerkY;
+		jz[i] = jerkZ;
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * Advances the state of a Cluster through time. Cluster delegates updatePositions to an implementation of this
+ * interface, using its ForceSolver (through Cluster.computeAccelerations) for the accelerations.
+ * @author Rajiv Thamburaj
+ */
+public interface Integrator
+{
+	/**
+	 * Advances every Body of the Cluster by dt
+	 * @param cluster
+	 * @param dt
+	 */
+	void step(Cluster cluster, double dt);
+
+	/**
+	 * Discards any state kept between steps (this is called whenever the state of the Bodies is changed from outside
+	 * the integrator, e.g. after the initial accelerations are computed)
+	 */
+	void reset();
+}
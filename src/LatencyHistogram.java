@@ -0,0 +1,251 @@
+import java.beans.ConstructorProperties;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations (in nanoseconds) in logarithmic buckets, eight to each power of two, so that percentiles can be
+ * read to within about 10% without keeping the individual durations. Recording is a few atomic increments and never
+ * allocates, so durations can be recorded from any thread while another reads the summary.
+ * @author Rajiv Thamburaj
+ */
+public class LatencyHistogram
+{
+	// Instance variables
+	private AtomicLongArray counts;
+	private AtomicLong count;
+	private AtomicLong total;
+	private AtomicLong max;
+	// Constants
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	/**
+	 * Constructor
+	 */
+	public LatencyHistogram()
+	{
+		this.counts = new AtomicLongArray(NUM_BUCKETS);
+		this.count = new AtomicLong();
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Records a duration
+	 * @param nanos
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.max(0L, nanos);
+
+		this.counts.incrementAndGet(bucket(value));
+		this.count.incrementAndGet();
+		this.total.addAndGet(value);
+		this.max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * Forgets every recorded duration
+	 */
+	public void reset()
+	{
+		for (int b = 0; b < NUM_BUCKETS; b++)
+		{
+			this.counts.set(b, 0L);
+		}
+
+		this.count.set(0L);
+		this.total.set(0L);
+		this.max.set(0L);
+	}
+
+	/**
+	 * Finds the bucket a duration falls in. Values below SUB_BUCKETS have a bucket each; above that, each power of two
+	 * is split into SUB_BUCKETS equal parts.
+	 * @param value
+	 * @return Index of the bucket
+	 */
+	private static int bucket(long value)
+	{
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Finds the middle of the range of durations that fall in a bucket
+	 * @param bucket
+	 * @return Representative duration in nanoseconds
+	 */
+	private static double bucketMidpoint(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + ((1L << shift) - 1) / 2.0;
+	}
+
+	/**
+	 * Estimates a percentile of the recorded durations
+	 * @param percentile Between 0 and 100
+	 * @return Duration in nanoseconds (0 if nothing has been recorded)
+	 */
+	public double getPercentile(double percentile)
+	{
+		long numRecorded = this.count.get();
+
+		if (numRecorded == 0)
+			return 0.0;
+
+		long rank = Math.max(1L, (long) Math.ceil(percentile / 100 * numRecorded));
+		long seen = 0;
+
+		for (int b = 0; b < NUM_BUCKETS; b++)
+		{
+			seen += this.counts.get(b);
+
+			if (seen >= rank)
+				return Math.min(bucketMidpoint(b), this.max.get());
+		}
+
+		return this.max.get();
+	}
+
+	/**
+	 * Gets count (long)
+	 * @return Number of recorded durations
+	 */
+	public long getCount()
+	{
+		return this.count.get();
+	}
+
+	/**
+	 * Gets total (long)
+	 * @return Sum of the recorded durations in nanoseconds
+	 */
+	public long getTotal()
+	{
+		return this.total.get();
+	}
+
+	/**
+	 * Summarizes the recorded durations in microseconds
+	 * @return Summary
+	 */
+	public Summary getSummary()
+	{
+		long numRecorded = this.count.get();
+		double mean = numRecorded > 0 ? this.total.get() / (double) numRecorded : 0.0;
+
+		return new Summary(numRecorded, mean / 1e3, getPercentile(50) / 1e3, getPercentile(90) / 1e3,
+				getPercentile(99) / 1e3, this.max.get() / 1e3);
+	}
+
+	/**
+	 * Summary of a LatencyHistogram, in microseconds (published over JMX as a composite value)
+	 */
+	public static final class Summary
+	{
+		// Instance variables
+		private long count;
+		private double meanMicros;
+		private double p50Micros;
+		private double p90Micros;
+		private double p99Micros;
+		private double maxMicros;
+
+		/**
+		 * Constructor
+		 * @param count
+		 * @param meanMicros
+		 * @param p50Micros
+		 * @param p90Micros
+		 * @param p99Micros
+		 * @param maxMicros
+		 */
+		@ConstructorProperties({ "count", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "maxMicros" })
+		public Summary(long count, double meanMicros, double p50Micros, double p90Micros, double p99Micros,
+				double maxMicros)
+		{
+			this.count = count;
+			this.meanMicros = meanMicros;
+			this.p50Micros = p50Micros;
+			this.p90Micros = p90Micros;
+			this.p99Micros = p99Micros;
+			this.maxMicros = maxMicros;
+		}
+
+		/**
+		 * Gets count (long)
+		 * @return Number of recorded durations
+		 */
+		public long getCount()
+		{
+			return this.count;
+		}
+
+		/**
+		 * Gets meanMicros (double)
+		 * @return Mean duration
+		 */
+		public double getMeanMicros()
+		{
+			return this.meanMicros;
+		}
+
+		/**
+		 * Gets p50Micros (double)
+		 * @return Median duration
+		 */
+		public double getP50Micros()
+		{
+			return this.p50Micros;
+		}
+
+		/**
+		 * Gets p90Micros (double)
+		 * @return 90th percentile of the durations
+		 */
+		public double getP90Micros()
+		{
+			return this.p90Micros;
+		}
+
+		/**
+		 * Gets p99Micros (double)
+		 * @return 99th percentile of the durations
+		 */
+		public double getP99Micros()
+		{
+			return this.p99Micros;
+		}
+
+		/**
+		 * Gets maxMicros (double)
+		 * @return Longest duration
+		 */
+		public double getMaxMicros()
+		{
+			return this.maxMicros;
+		}
+
+		/**
+		 * Formats the summary on one line
+		 * @return Count, mean, percentiles, and maximum
+		 */
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f us",
+					this.count, this.meanMicros, this.p50Micros, this.p90Micros, this.p99Micros, this.maxMicros);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Second-order symplectic leapfrog integrator in kick-drift-kick form: the velocities are kicked by half a step, the
+ * positions drift a full step, and the velocities are kicked by the second half with the new accelerations. One force
+ * evaluation per step, and no state beyond the accelerations is kept between steps.
+ * @author Rajiv Thamburaj
+ */
+public class LeapfrogIntegrator implements Integrator
+{
+	// Instance variables
+	private ParticleStore particles;
+	private double timeStep;
+	// Operations applied to ranges of particles (created once so that stepping does not allocate)
+	private final ParticleRangeTask.Operation kickAndDrift = this::kickAndDrift;
+	private final ParticleRangeTask.Operation kick = this::kick;
+
+	/**
+	 * Advances every Body by dt
+	 * @param cluster
+	 * @param dt
+	 */
+	@Override
+	public void step(Cluster cluster, double dt)
+	{
+		this.particles = cluster.getParticles();
+		this.timeStep = dt;
+
+		// v(t+dt/2) = v(t) + 0.5*dt*a(t), s(t+dt) = s(t) + dt*v(t+dt/2)
+		cluster.forEachParticle(this.kickAndDrift);
+
+		// Find the acceleration of each body (we must do this after calculating all positions)
+		cluster.computeAccelerations();
+
+		// v(t+dt) = v(t+dt/2) + 0.5*dt*a(t+dt)
+		cluster.forEachParticle(this.kick);
+	}
+
+	/**
+	 * Nothing is kept between steps
+	 */
+	@Override
+	public void reset()
+	{
+	}
+
+	/**
+	 * Applies half a velocity kick and a full position drift to the particles in [start, end)
+	 * @param start
+	 * @param end
+	 */
+	private void kickAndDrift(int start, int end)
+	{
+		double[] x = this.particles.getX();
+		double[] y = this.particles.getY();
+		double[] z = this.particles.getZ();
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double dt = this.timeStep;
+		double halfStep = dt / 2;
+
+		for (int i = start; i < end; i++)
+		{
+			vx[i] += halfStep * ax[i];
+			vy[i] += halfStep * ay[i];
+			vz[i] += halfStep * az[i];
+			x[i] += dt * vx[i];
+			y[i] += dt * vy[i];
+			z[i] += dt * vz[i];
+		}
+	}
+
+	/**
+	 * Applies half a velocity kick to the particles in [start, end)
+	 * @param start
+	 * @param end
+	 */
+	private void kick(int start, int end)
+	{
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double halfStep = this.timeStep / 2;
+
+		for (int i = start; i < end; i++)
+		{
+			vx[i] += halfStep * ax[i];
+			vy[i] += halfStep * ay[i];
+			vz[i] += halfStep * az[i];
+		}
+	}
+}
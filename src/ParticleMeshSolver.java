@@ -0,0 +1,1065 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes accelerations with the Particle-Mesh method, at a cost per step that is dominated by the mesh rather than
+ * by the number of particles. The masses are spread onto a square mesh with cloud-in-cell weights, convolved with the
+ * kernel of the force by fast Fourier transforms, differentiated on the mesh with a four-point stencil, and the
+ * gradient is interpolated back to the particles with the same weights.
+ *
+ * The force falls off as 1 / |r|^2 in the plane, so the mesh does not solve the two-dimensional Poisson equation
+ * (whose logarithmic potential would give different physics): the masses are instead convolved with the 1 / |r|
+ * kernel itself, tabulated on the mesh and transformed once for each cell size. Without a box the boundaries are
+ * open: the mesh covers the particles and is padded to twice its size so that the transforms do not wrap around
+ * (Hockney and Eastwood). With a box the boundaries are periodic: positions are taken modulo the box, each particle
+ * feels the nearest image of every other, and the mean density is removed (the mean of the mesh force is then 0).
+ *
+ * The mesh cannot resolve separations below a cell, so the plain solver softens the kernel to at least one cell. With
+ * the short-range correction (P3M) the kernel is split at a scale of splitScale cells: the mesh carries the smooth
+ * part erf(|r| / 2r_s) / |r| (with sqrt(|r|^2 + eps^2) in place of |r| under Plummer softening), and the remainder
+ * is summed directly over the pairs within SHORT_RANGE_CUTOFF split scales, found through a chaining mesh, with the
+ * softening of the Cluster. That sum grows with the density of the particles, so the correction is best kept for
+ * clustered runs that need small-scale accuracy.
+ *
+ * The mass assignment, the transforms, and the differentiation run on the pool given to prepare. The particles are
+ * sorted by mesh row and deposited in strips of rows, first the even strips and then the odd ones (which never write
+ * to the same rows), so the results do not depend on the number of threads. Only planar clusters are supported: a
+ * three-dimensional cluster is handed to a BarnesHutSolver instead.
+ * @author Rajiv Thamburaj
+ */
+public class ParticleMeshSolver implements ForceSolver
+{
+	// Instance variables
+	private int gridSize;
+	private boolean shortRange;
+	private double splitScale = DEFAULT_SPLIT_SCALE;
+	private double boxSize;
+	private Softening softening = Softening.NONE;
+	private boolean computePotential;
+	private BarnesHutSolver octree;
+	private boolean threeDimensional;
+	// Mesh (the particles occupy the first gridSize rows and columns; an open mesh is padded to twice that)
+	private int meshSize;
+	private double meshMinX;
+	private double meshMinY;
+	private double cellSize;
+	private double[] meshRe;
+	private double[] meshIm;
+	// Transform of the kernel, scaled for the inverse transform (and deconvolved for the short-range correction)
+	private double[] kernelTransform;
+	private double kernelCellSize;
+	private Softening kernelSoftening;
+	// Kernel at r = 0, which each particle's own mass adds to the mesh potential
+	private double selfPotential;
+	// Gradient of the convolved masses on the first gridSize rows and columns
+	private double[] gradientX;
+	private double[] gradientY;
+	private double[] cosTable;
+	private double[] sinTable;
+	private int[] bitReversal;
+	// Mesh node below and to the left of each particle, and the particle's offset from it in cells
+	private int numParticles;
+	private int[] nodeX;
+	private int[] nodeY;
+	private double[] offsetX;
+	private double[] offsetY;
+	// Particles sorted by mesh row, with the first particle of each row
+	private int[] rowOrder;
+	private int[] rowStart;
+	private double[] mass;
+	// Chaining mesh for the short-range correction, with copies of the positions and masses in its order
+	private int numChains;
+	private double chainMinX;
+	private double chainMinY;
+	private double chainSize;
+	private double cutoffSquared;
+	private int[] chainStart;
+	private int[] chainOrder;
+	private int[] chainOf;
+	private double[] chainX;
+	private double[] chainY;
+	private double[] chainMass;
+	// Long-range force and potential factors, tabulated in |r|^2 up to the cutoff
+	private double[] longRangeForce;
+	private double[] longRangePotential;
+	private double tableSpacing;
+	private ForkJoinPool pool;
+	private final ParticleRangeTask.Operation clear = this::clear;
+	private final ParticleRangeTask.Operation depositEven = (start, end) -> deposit(start, end, 0);
+	private final ParticleRangeTask.Operation depositOdd = (start, end) -> deposit(start, end, 1);
+	private final ParticleRangeTask.Operation forwardRows = (start, end) -> transformRows(start, end, false);
+	private final ParticleRangeTask.Operation forwardColumns = (start, end) -> transformColumns(start, end, false);
+	private final ParticleRangeTask.Operation inverseRows = (start, end) -> transformRows(start, end, true);
+	private final ParticleRangeTask.Operation inverseColumns = (start, end) -> transformColumns(start, end, true);
+	private final ParticleRangeTask.Operation convolve = this::convolve;
+	private final ParticleRangeTask.Operation differentiate = this::differentiate;
+	// Constants
+	public static final int DEFAULT_GRID_SIZE = 256;
+	private static final int MIN_GRID_SIZE = 16;
+	private static final double DEFAULT_SPLIT_SCALE = 1.25;
+	// Pairs beyond this many split scales are left to the mesh (erfc(2.25) is about 0.0015)
+	private static final double SHORT_RANGE_CUTOFF = 4.5;
+	private static final int TABLE_SIZE = 1024;
+	// Rows of particles in each deposit strip (a strip writes to one more row than it holds)
+	private static final int STRIP_ROWS = 4;
+	// Cells left empty around the particles of an open mesh, for the interpolation and the differencing stencil
+	private static final int MARGIN = 4;
+	// An open mesh rounds its cell size up to a power of this, so the kernel is only transformed again when the
+	// extent of the particles changes by more than about 9%
+	private static final double CELL_SIZE_STEPS = 8.0;
+
+	/**
+	 * Constructor
+	 */
+	public ParticleMeshSolver()
+	{
+		this(DEFAULT_GRID_SIZE, false);
+	}
+
+	/**
+	 * Constructor
+	 * @param gridSize Number of mesh cells along each side (a power of two)
+	 * @param shortRange Whether to sum the short-range part of the force directly (P3M)
+	 */
+	public ParticleMeshSolver(int gridSize, boolean shortRange)
+	{
+		setGridSize(gridSize);
+		this.shortRange = shortRange;
+		this.rowOrder = new int[0];
+	}
+
+	/**
+	 * Assigns the masses to the mesh, convolves them with the kernel, and differentiates the result
+	 * @param particles
+	 * @param pool
+	 */
+	@Override
+	public void prepare(ParticleStore particles, ForkJoinPool pool)
+	{
+		this.threeDimensional = particles.isThreeDimensional();
+
+		if (this.threeDimensional)
+		{
+			if (this.octree == null)
+			{
+				this.octree = new BarnesHutSolver();
+				this.octree.setSoftening(this.softening);
+				this.octree.setComputePotential(this.computePotential);
+			}
+
+			this.octree.prepare(particles, pool);
+			return;
+		}
+
+		this.pool = pool;
+		this.numParticles = particles.getSize();
+
+		if (this.numParticles == 0)
+			return;
+
+		placeMesh(particles);
+		int n = this.gridSize;
+		int m = this.meshSize;
+
+		if (this.kernelCellSize != this.cellSize || this.kernelSoftening != this.softening)
+			transformKernel();
+
+		locateParticles(particles);
+
+		forEachRow(this.clear, m);
+		forEachRow(this.depositEven, n / STRIP_ROWS / 2);
+		forEachRow(this.depositOdd, n / STRIP_ROWS / 2);
+
+		// The rows of an open mesh beyond the particles are empty, and only the particles' rows are needed back
+		forEachRow(this.forwardRows, n);
+		forEachRow(this.forwardColumns, m);
+		forEachRow(this.convolve, m);
+		forEachRow(this.inverseColumns, m);
+		forEachRow(this.inverseRows, n);
+		forEachRow(this.differentiate, n);
+
+		if (this.shortRange)
+			buildChains();
+	}
+
+	/**
+	 * Interpolates the mesh force at each particle, and adds the short-range correction
+	 * @param particles
+	 * @param G
+	 * @param start
+	 * @param end
+	 */
+	@Override
+	public void computeAccelerations(ParticleStore particles, double G, int start, int end)
+	{
+		if (this.threeDimensional)
+		{
+			this.octree.computeAccelerations(particles, G, start, end);
+			return;
+		}
+
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] phi = particles.getPotential();
+		double[] mass = particles.getMass();
+		double epsilonSquared = this.softening.getEpsilonSquared();
+		double splineRadiusSquared = this.softening.getSplineRadiusSquared();
+		boolean periodic = this.boxSize > 0.0;
+		int n = this.gridSize;
+		int m = this.meshSize;
+
+		for (int i = start; i < end; i++)
+		{
+			// Cloud-in-cell interpolation from the four nodes around the particle
+			int x0 = this.nodeX[i];
+			int y0 = this.nodeY[i];
+			int x1 = x0 + 1 == n ? 0 : x0 + 1;
+			int y1 = y0 + 1 == n ? 0 : y0 + 1;
+			double wx = this.offsetX[i];
+			double wy = this.offsetY[i];
+			double w00 = (1.0 - wx) * (1.0 - wy);
+			double w10 = wx * (1.0 - wy);
+			double w01 = (1.0 - wx) * wy;
+			double w11 = wx * wy;
+
+			double accelerationX = w00 * this.gradientX[y0*n + x0] + w10 * this.gradientX[y0*n + x1]
+					+ w01 * this.gradientX[y1*n + x0] + w11 * this.gradientX[y1*n + x1];
+			double accelerationY = w00 * this.gradientY[y0*n + x0] + w10 * this.gradientY[y0*n + x1]
+					+ w01 * this.gradientY[y1*n + x0] + w11 * this.gradientY[y1*n + x1];
+			double potential = 0.0;
+
+			// The mesh potential includes the particle's own (smoothed) mass, which is removed approximately
+			if (this.computePotential)
+			{
+				potential = mass[i] * this.selfPotential - (w00 * this.meshRe[y0*m + x0] + w10 * this.meshRe[y0*m + x1]
+						+ w01 * this.meshRe[y1*m + x0] + w11 * this.meshRe[y1*m + x1]);
+			}
+
+			// The pairs within the cutoff get the difference between the exact and the long-range kernels
+			if (this.shortRange)
+			{
+				double px = this.chainX[this.chainOf[i]];
+				double py = this.chainY[this.chainOf[i]];
+				int chain = chainCell(px - this.chainMinX);
+				int chainRow = chainCell(py - this.chainMinY);
+				// With fewer than three chains a side, the neighbouring chains are all of them
+				int first = this.numChains < 3 ? 0 : -1;
+				int last = this.numChains < 3 ? this.numChains - 1 : 1;
+
+				for (int dy = first; dy <= last; dy++)
+				{
+					int row = this.numChains < 3 ? dy : wrapChain(chainRow + dy);
+					if (row < 0)
+						continue;
+
+					for (int dx = first; dx <= last; dx++)
+					{
+						int column = this.numChains < 3 ? dx : wrapChain(chain + dx);
+						if (column < 0)
+							continue;
+
+						int cell = row * this.numChains + column;
+
+						for (int q = this.chainStart[cell]; q < this.chainStart[cell + 1]; q++)
+						{
+							if (this.chainOrder[q] == i)
+								continue;
+
+							double rx = this.chainX[q] - px;
+							double ry = this.chainY[q] - py;
+
+							if (periodic)
+							{
+								rx -= this.boxSize * Math.rint(rx / this.boxSize);
+								ry -= this.boxSize * Math.rint(ry / this.boxSize);
+							}
+
+							double magnitudeSquared = rx*rx + ry*ry;
+							if (magnitudeSquared >= this.cutoffSquared)
+								continue;
+
+							double inverseMagnitude = 1.0 / Math.sqrt(magnitudeSquared + epsilonSquared);
+							double scalarPortion = inverseMagnitude * inverseMagnitude * inverseMagnitude;
+
+							if (magnitudeSquared < splineRadiusSquared)
+								scalarPortion = this.softening.getForceFactor(magnitudeSquared);
+
+							// Linear interpolation in the tables of the long-range factors
+							double position = (magnitudeSquared + epsilonSquared) / this.tableSpacing;
+							int k = (int) position;
+							double fraction = position - k;
+							scalarPortion -= this.longRangeForce[k]
+									+ fraction * (this.longRangeForce[k + 1] - this.longRangeForce[k]);
+
+							accelerationX += this.chainMass[q] * scalarPortion * rx;
+							accelerationY += this.chainMass[q] * scalarPortion * ry;
+
+							if (this.computePotential)
+							{
+								double exact = magnitudeSquared < splineRadiusSquared
+										? this.softening.getPotentialFactor(magnitudeSquared) : inverseMagnitude;
+								potential -= this.chainMass[q] * (exact - this.longRangePotential[k]
+										- fraction * (this.longRangePotential[k + 1] - this.longRangePotential[k]));
+							}
+						}
+					}
+				}
+			}
+
+			ax[i] = G * accelerationX;
+			ay[i] = G * accelerationY;
+
+			if (this.computePotential)
+				phi[i] = G * potential;
+		}
+	}
+
+	/**
+	 * Finds the cell size and the corner of the mesh. A periodic mesh is the box, centered on the origin; an open
+	 * mesh is centered on the particles, with its cell size rounded up so that the kernel can usually be reused.
+	 * @param particles
+	 */
+	private void placeMesh(ParticleStore particles)
+	{
+		int n = this.gridSize;
+
+		if (this.boxSize > 0.0)
+		{
+			this.meshSize = n;
+			this.cellSize = this.boxSize / n;
+			this.meshMinX = -this.boxSize / 2;
+			this.meshMinY = -this.boxSize / 2;
+		}
+
+		else
+		{
+			double[] x = particles.getX();
+			double[] y = particles.getY();
+			double minX = Double.POSITIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+
+			for (int i = 0; i < this.numParticles; i++)
+			{
+				minX = Math.min(minX, x[i]);
+				minY = Math.min(minY, y[i]);
+				maxX = Math.max(maxX, x[i]);
+				maxY = Math.max(maxY, y[i]);
+			}
+
+			double extent = Math.max(maxX - minX, maxY - minY);
+			if (extent <= 0.0)
+				extent = 1.0;
+
+			double steps = Math.ceil(CELL_SIZE_STEPS * Math.log(extent / (n - 2 * MARGIN)) / Math.log(2.0));
+			this.meshSize = 2 * n;
+			this.cellSize = Math.pow(2.0, steps / CELL_SIZE_STEPS);
+			this.meshMinX = (minX + maxX) / 2 - n / 2 * this.cellSize;
+			this.meshMinY = (minY + maxY) / 2 - n / 2 * this.cellSize;
+		}
+
+		if (this.meshRe == null || this.meshRe.length != this.meshSize * this.meshSize)
+			allocateMesh();
+	}
+
+	/**
+	 * Allocates the mesh and the tables of the transforms for the current mesh size
+	 */
+	private void allocateMesh()
+	{
+		int m = this.meshSize;
+		this.meshRe = new double[m * m];
+		this.meshIm = new double[m * m];
+		this.kernelTransform = new double[m * m];
+		this.gradientX = new double[this.gridSize * this.gridSize];
+		this.gradientY = new double[this.gridSize * this.gridSize];
+		this.rowStart = new int[this.gridSize + 1];
+		this.cosTable = new double[m / 2];
+		this.sinTable = new double[m / 2];
+		this.bitReversal = new int[m];
+		this.kernelCellSize = 0.0;
+
+		for (int k = 0; k < m / 2; k++)
+		{
+			this.cosTable[k] = Math.cos(2 * Math.PI * k / m);
+			this.sinTable[k] = Math.sin(2 * Math.PI * k / m);
+		}
+
+		int bits = Integer.numberOfTrailingZeros(m);
+
+		for (int k = 0; k < m; k++)
+		{
+			this.bitReversal[k] = Integer.reverse(k) >>> (32 - bits);
+		}
+	}
+
+	/**
+	 * Tabulates the kernel at the separation of every pair of nodes (the shorter way around the mesh) and transforms
+	 * it. The kernel is real and even, so its transform is real.
+	 */
+	private void transformKernel()
+	{
+		int m = this.meshSize;
+		double h = this.cellSize;
+		double splitRadius = this.splitScale * h;
+		// Without the short-range correction the mesh softens the kernel to at least a cell
+		double meshSoftening = Math.max(this.softening.getLength(), h);
+
+		for (int j = 0; j < m; j++)
+		{
+			double dy = Math.min(j, m - j) * h;
+
+			for (int i = 0; i < m; i++)
+			{
+				double dx = Math.min(i, m - i) * h;
+				double magnitudeSquared = dx*dx + dy*dy;
+
+				this.meshRe[j*m + i] = this.shortRange
+						? longRangeKernel(Math.sqrt(magnitudeSquared + this.softening.getEpsilonSquared()), splitRadius)
+						: 1.0 / Math.sqrt(magnitudeSquared + meshSoftening * meshSoftening);
+				this.meshIm[j*m + i] = 0.0;
+			}
+		}
+
+		this.selfPotential = this.meshRe[0];
+		forEachRow(this.forwardRows, m);
+		forEachRow(this.forwardColumns, m);
+
+		double scale = 1.0 / ((double) m * m);
+
+		for (int j = 0; j < m; j++)
+		{
+			for (int i = 0; i < m; i++)
+			{
+				double value = this.meshRe[j*m + i] * scale;
+
+				// Assignment and interpolation each smooth the mesh by the cloud-in-cell window, which the smooth
+				// long-range kernel can afford to undo
+				if (this.shortRange)
+				{
+					double window = cloudInCellWindow(i, m) * cloudInCellWindow(j, m);
+					value /= window * window;
+				}
+
+				this.kernelTransform[j*m + i] = value;
+			}
+		}
+
+		if (this.shortRange)
+			tabulateLongRange(splitRadius);
+
+		this.kernelCellSize = this.cellSize;
+		this.kernelSoftening = this.softening;
+	}
+
+	/**
+	 * Finds the mesh node below and to the left of every particle, and sorts the particles by the row of that node
+	 * @param particles
+	 */
+	private void locateParticles(ParticleStore particles)
+	{
+		int n = this.gridSize;
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		boolean periodic = this.boxSize > 0.0;
+		this.mass = particles.getMass();
+
+		if (this.rowOrder.length < this.numParticles)
+		{
+			this.rowOrder = new int[this.numParticles];
+			this.nodeX = new int[this.numParticles];
+			this.nodeY = new int[this.numParticles];
+			this.offsetX = new double[this.numParticles];
+			this.offsetY = new double[this.numParticles];
+		}
+
+		Arrays.fill(this.rowStart, 0);
+
+		for (int i = 0; i < this.numParticles; i++)
+		{
+			double cellX = (x[i] - this.meshMinX) / this.cellSize;
+			double cellY = (y[i] - this.meshMinY) / this.cellSize;
+
+			if (periodic)
+			{
+				cellX -= n * Math.floor(cellX / n);
+				cellY -= n * Math.floor(cellY / n);
+			}
+
+			int column = (int) cellX;
+			int row = (int) cellY;
+
+			// A position just below the box can round up to the far edge
+			if (column >= n)
+			{
+				column -= n;
+				cellX -= n;
+			}
+
+			if (row >= n)
+			{
+				row -= n;
+				cellY -= n;
+			}
+
+			this.nodeX[i] = column;
+			this.nodeY[i] = row;
+			this.offsetX[i] = cellX - column;
+			this.offsetY[i] = cellY - row;
+			this.rowStart[row + 1]++;
+		}
+
+		for (int row = 0; row < n; row++)
+		{
+			this.rowStart[row + 1] += this.rowStart[row];
+		}
+
+		// A counting sort by row, which leaves rowStart pointing at the end of each row until it is shifted back
+		for (int i = 0; i < this.numParticles; i++)
+		{
+			this.rowOrder[this.rowStart[this.nodeY[i]]++] = i;
+		}
+
+		for (int row = n; row > 0; row--)
+		{
+			this.rowStart[row] = this.rowStart[row - 1];
+		}
+
+		this.rowStart[0] = 0;
+	}
+
+	/**
+	 * Zeroes the rows of the mesh in [start, end)
+	 * @param start
+	 * @param end
+	 */
+	private void clear(int start, int end)
+	{
+		int m = this.meshSize;
+		Arrays.fill(this.meshRe, start * m, end * m, 0.0);
+		Arrays.fill(this.meshIm, start * m, end * m, 0.0);
+	}
+
+	/**
+	 * Spreads the masses of the particles in every other strip of rows onto the mesh, with cloud-in-cell weights.
+	 * Strip s holds the particles whose node is in rows [s * STRIP_ROWS, (s + 1) * STRIP_ROWS), so strips of the same
+	 * parity never write to the same row (the number of strips is even, which also holds across the periodic wrap).
+	 * @param start First pair of strips
+	 * @param end Last pair of strips (exclusive)
+	 * @param parity 0 for the even strips, 1 for the odd ones
+	 */
+	private void deposit(int start, int end, int parity)
+	{
+		int n = this.gridSize;
+		int m = this.meshSize;
+
+		for (int pair = start; pair < end; pair++)
+		{
+			int strip = 2 * pair + parity;
+
+			for (int q = this.rowStart[strip * STRIP_ROWS]; q < this.rowStart[(strip + 1) * STRIP_ROWS]; q++)
+			{
+				int i = this.rowOrder[q];
+				int x0 = this.nodeX[i];
+				int y0 = this.nodeY[i];
+				// Only a periodic mesh has particles next to its last node (an open mesh keeps a margin)
+				int x1 = x0 + 1 == n ? 0 : x0 + 1;
+				int y1 = y0 + 1 == n ? 0 : y0 + 1;
+				double wx = this.offsetX[i];
+				double wy = this.offsetY[i];
+				double particleMass = this.mass[i];
+
+				this.meshRe[y0*m + x0] += particleMass * (1.0 - wx) * (1.0 - wy);
+				this.meshRe[y0*m + x1] += particleMass * wx * (1.0 - wy);
+				this.meshRe[y1*m + x0] += particleMass * (1.0 - wx) * wy;
+				this.meshRe[y1*m + x1] += particleMass * wx * wy;
+			}
+		}
+	}
+
+	/**
+	 * Transforms the rows of the mesh in [start, end) in place
+	 * @param start
+	 * @param end
+	 * @param inverse Whether to transform back (without the 1 / m^2 factor, which is in the kernel)
+	 */
+	private void transformRows(int start, int end, boolean inverse)
+	{
+		for (int row = start; row < end; row++)
+		{
+			transform(this.meshRe, this.meshIm, row * this.meshSize, inverse);
+		}
+	}
+
+	/**
+	 * Transforms the columns of the mesh in [start, end), copying each into a contiguous buffer first
+	 * @param start
+	 * @param end
+	 * @param inverse
+	 */
+	private void transformColumns(int start, int end, boolean inverse)
+	{
+		int m = this.meshSize;
+		double[] re = new double[m];
+		double[] im = new double[m];
+
+		for (int column = start; column < end; column++)
+		{
+			for (int j = 0; j < m; j++)
+			{
+				re[j] = this.meshRe[j*m + column];
+				im[j] = this.meshIm[j*m + column];
+			}
+
+			transform(re, im, 0, inverse);
+
+			for (int j = 0; j < m; j++)
+			{
+				this.meshRe[j*m + column] = re[j];
+				this.meshIm[j*m + column] = im[j];
+			}
+		}
+	}
+
+	/**
+	 * Computes the discrete Fourier transform of meshSize complex values in place, with the iterative radix-2
+	 * Cooley-Tukey algorithm
+	 * @param re Real parts
+	 * @param im Imaginary parts
+	 * @param offset Index of the first value
+	 * @param inverse Whether to use the conjugate roots of unity
+	 */
+	private void transform(double[] re, double[] im, int offset, boolean inverse)
+	{
+		int m = this.meshSize;
+
+		for (int k = 0; k < m; k++)
+		{
+			int reversed = this.bitReversal[k];
+
+			if (k < reversed)
+			{
+				double swap = re[offset + k];
+				re[offset + k] = re[offset + reversed];
+				re[offset + reversed] = swap;
+				swap = im[offset + k];
+				im[offset + k] = im[offset + reversed];
+				im[offset + reversed] = swap;
+			}
+		}
+
+		for (int length = 2; length <= m; length *= 2)
+		{
+			int half = length / 2;
+			int stride = m / length;
+
+			for (int block = offset; block < offset + m; block += length)
+			{
+				for (int k = 0; k < half; k++)
+				{
+					double wr = this.cosTable[k * stride];
+					double wi = inverse ? this.sinTable[k * stride] : -this.sinTable[k * stride];
+					int a = block + k;
+					int b = a + half;
+					double tr = re[b]*wr - im[b]*wi;
+					double ti = re[b]*wi + im[b]*wr;
+
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Multiplies the transformed masses in rows [start, end) by the transform of the kernel. A periodic mesh drops
+	 * the mean density, whose potential would be infinite.
+	 * @param start
+	 * @param end
+	 */
+	private void convolve(int start, int end)
+	{
+		for (int k = start * this.meshSize; k < end * this.meshSize; k++)
+		{
+			this.meshRe[k] *= this.kernelTransform[k];
+			this.meshIm[k] *= this.kernelTransform[k];
+		}
+
+		if (start == 0 && this.boxSize > 0.0)
+		{
+			this.meshRe[0] = 0.0;
+			this.meshIm[0] = 0.0;
+		}
+	}
+
+	/**
+	 * Differentiates the convolved masses in rows [start, end) with the four-point central difference. An open mesh
+	 * leaves the nodes within two of its edges at 0, since no particle comes near them.
+	 * @param start
+	 * @param end
+	 */
+	private void differentiate(int start, int end)
+	{
+		int n = this.gridSize;
+		int m = this.meshSize;
+		double scale = 1.0 / (12.0 * this.cellSize);
+		boolean periodic = this.boxSize > 0.0;
+		int first = periodic ? 0 : 2;
+		int last = periodic ? n : n - 2;
+
+		for (int j = start; j < end; j++)
+		{
+			if (j < first || j >= last)
+			{
+				Arrays.fill(this.gradientX, j * n, (j + 1) * n, 0.0);
+				Arrays.fill(this.gradientY, j * n, (j + 1) * n, 0.0);
+				continue;
+			}
+
+			int up = (j + 1) % n;
+			int up2 = (j + 2) % n;
+			int down = (j - 1 + n) % n;
+			int down2 = (j - 2 + n) % n;
+
+			for (int i = 0; i < n; i++)
+			{
+				if (i < first || i >= last)
+				{
+					this.gradientX[j*n + i] = 0.0;
+					this.gradientY[j*n + i] = 0.0;
+					continue;
+				}
+
+				int right = (i + 1) % n;
+				int left = (i - 1 + n) % n;
+
+				this.gradientX[j*n + i] = scale * (8.0 * (this.meshRe[j*m + right] - this.meshRe[j*m + left])
+						- this.meshRe[j*m + (i + 2) % n] + this.meshRe[j*m + (i - 2 + n) % n]);
+				this.gradientY[j*n + i] = scale * (8.0 * (this.meshRe[up*m + i] - this.meshRe[down*m + i])
+						- this.meshRe[up2*m + i] + this.meshRe[down2*m + i]);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the particles into a chaining mesh whose cells are at least the cutoff wide, so that every pair within
+	 * the cutoff is in the same or neighbouring cells
+	 */
+	private void buildChains()
+	{
+		double cutoff = Math.sqrt(this.cutoffSquared);
+		double extent = this.gridSize * this.cellSize;
+
+		this.numChains = Math.max(1, (int) (extent / cutoff));
+		this.chainSize = extent / this.numChains;
+		this.chainMinX = this.meshMinX;
+		this.chainMinY = this.meshMinY;
+
+		int numCells = this.numChains * this.numChains;
+
+		if (this.chainStart == null || this.chainStart.length != numCells + 1)
+			this.chainStart = new int[numCells + 1];
+		if (this.chainOrder == null || this.chainOrder.length < this.numParticles)
+		{
+			this.chainOrder = new int[this.numParticles];
+			this.chainOf = new int[this.numParticles];
+			this.chainX = new double[this.numParticles];
+			this.chainY = new double[this.numParticles];
+			this.chainMass = new double[this.numParticles];
+		}
+
+		Arrays.fill(this.chainStart, 0);
+
+		// The cell of each particle follows from its mesh node, which is already inside a periodic box
+		for (int i = 0; i < this.numParticles; i++)
+		{
+			int cell = chainCell((this.nodeY[i] + this.offsetY[i]) * this.cellSize) * this.numChains
+					+ chainCell((this.nodeX[i] + this.offsetX[i]) * this.cellSize);
+			this.chainOf[i] = cell;
+			this.chainStart[cell + 1]++;
+		}
+
+		for (int cell = 0; cell < numCells; cell++)
+		{
+			this.chainStart[cell + 1] += this.chainStart[cell];
+		}
+
+		for (int i = 0; i < this.numParticles; i++)
+		{
+			int q = this.chainStart[this.chainOf[i]]++;
+			this.chainOrder[q] = i;
+			this.chainOf[i] = q;
+			this.chainX[q] = this.meshMinX + (this.nodeX[i] + this.offsetX[i]) * this.cellSize;
+			this.chainY[q] = this.meshMinY + (this.nodeY[i] + this.offsetY[i]) * this.cellSize;
+			this.chainMass[q] = this.mass[i];
+		}
+
+		for (int cell = numCells; cell > 0; cell--)
+		{
+			this.chainStart[cell] = this.chainStart[cell - 1];
+		}
+
+		this.chainStart[0] = 0;
+	}
+
+	/**
+	 * Finds the chaining cell along one axis
+	 * @param offset Distance from the corner of the mesh
+	 * @return Index of the cell
+	 */
+	private int chainCell(double offset)
+	{
+		return Math.min(this.numChains - 1, Math.max(0, (int) (offset / this.chainSize)));
+	}
+
+	/**
+	 * Wraps a chaining cell index around a periodic box
+	 * @param cell
+	 * @return Index in [0, numChains), or -1 past the edge of an open mesh
+	 */
+	private int wrapChain(int cell)
+	{
+		if (cell >= 0 && cell < this.numChains)
+			return cell;
+		if (this.boxSize <= 0.0)
+			return -1;
+
+		return cell < 0 ? cell + this.numChains : cell - this.numChains;
+	}
+
+	/**
+	 * Tabulates the long-range force and potential factors up to the cutoff, for the short-range correction. The
+	 * cutoff reaches at least the spline radius, beyond which the spline kernel is Newtonian, and a Plummer-softened
+	 * kernel is split at sqrt(|r|^2 + eps^2), so that the tables are indexed by |r|^2 + eps^2.
+	 * @param splitRadius
+	 */
+	private void tabulateLongRange(double splitRadius)
+	{
+		double cutoff = Math.max(SHORT_RANGE_CUTOFF * splitRadius, this.softening.getSplineRadius());
+		this.cutoffSquared = cutoff * cutoff;
+		this.tableSpacing = (this.cutoffSquared + this.softening.getEpsilonSquared()) / TABLE_SIZE;
+
+		if (this.longRangeForce == null)
+		{
+			this.longRangeForce = new double[TABLE_SIZE + 2];
+			this.longRangePotential = new double[TABLE_SIZE + 2];
+		}
+
+		for (int k = 0; k < TABLE_SIZE + 2; k++)
+		{
+			double magnitude = Math.sqrt(k * this.tableSpacing);
+			this.longRangePotential[k] = longRangeKernel(magnitude, splitRadius);
+			this.longRangeForce[k] = longRangeForceFactor(magnitude, splitRadius);
+		}
+	}
+
+	/**
+	 * Finds the long-range part of the kernel, erf(|r| / 2r_s) / |r|
+	 * @param magnitude |r|
+	 * @param splitRadius r_s
+	 * @return Long-range potential factor
+	 */
+	private static double longRangeKernel(double magnitude, double splitRadius)
+	{
+		double u = magnitude / (2 * splitRadius);
+
+		// The series avoids dividing 0 by 0
+		if (u < 0.2)
+			return 2.0 / Math.sqrt(Math.PI) * (1.0 - u * u / 3.0 + u * u * u * u / 10.0) / (2 * splitRadius);
+
+		return erf(u) / magnitude;
+	}
+
+	/**
+	 * Finds the factor f of the long-range acceleration m * f * r, (erf(u) - 2u exp(-u^2) / sqrt(pi)) / |r|^3 with
+	 * u = |r| / 2r_s
+	 * @param magnitude |r|
+	 * @param splitRadius r_s
+	 * @return Long-range force factor
+	 */
+	private static double longRangeForceFactor(double magnitude, double splitRadius)
+	{
+		double u = magnitude / (2 * splitRadius);
+		double scale = 2 * splitRadius;
+
+		// The two terms cancel at short range, where the series is used instead
+		if (u < 0.2)
+			return 2.0 / Math.sqrt(Math.PI) * (2.0 / 3.0 - 0.4 * u * u + u * u * u * u / 7.0) / (scale * scale * scale);
+
+		return (erf(u) - 2.0 / Math.sqrt(Math.PI) * u * Math.exp(-u * u)) / (magnitude * magnitude * magnitude);
+	}
+
+	/**
+	 * Finds the error function of a non-negative number, from the Chebyshev fit to erfc in Numerical Recipes
+	 * (fractional error below 1.2e-7)
+	 * @param x
+	 * @return erf(x)
+	 */
+	private static double erf(double x)
+	{
+		double t = 1.0 / (1.0 + 0.5 * x);
+		double complement = t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+				+ t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 + t * (-0.82215223
+				+ t * 0.17087277)))))))));
+		return 1.0 - complement;
+	}
+
+	/**
+	 * Finds the factor by which cloud-in-cell assignment scales one frequency along one axis, sinc^2(pi * k / m)
+	 * @param k Frequency index
+	 * @param m Mesh size
+	 * @return Window factor
+	 */
+	private static double cloudInCellWindow(int k, int m)
+	{
+		int frequency = Math.min(k, m - k);
+		if (frequency == 0)
+			return 1.0;
+
+		double argument = Math.PI * frequency / m;
+		double sinc = Math.sin(argument) / argument;
+		return sinc * sinc;
+	}
+
+	/**
+	 * Applies an operation to the rows [0, count) of the mesh (or to the strips of the deposit), in parallel if there
+	 * is a pool
+	 * @param operation
+	 * @param count
+	 */
+	private void forEachRow(ParticleRangeTask.Operation operation, int count)
+	{
+		if (this.pool == null)
+		{
+			operation.apply(0, count);
+			return;
+		}
+
+		int grainSize = Math.max(1, count / (4 * this.pool.getParallelism()));
+		this.pool.invoke(new ParticleRangeTask(operation, 0, count, grainSize));
+	}
+
+	/**
+	 * Sets softening (Softening). The mesh kernel is rebuilt on the next step.
+	 * @param softening
+	 */
+	@Override
+	public void setSoftening(Softening softening)
+	{
+		this.softening = softening;
+
+		if (this.octree != null)
+			this.octree.setSoftening(softening);
+	}
+
+	/**
+	 * Sets computePotential (boolean)
+	 * @param computePotential
+	 */
+	@Override
+	public void setComputePotential(boolean computePotential)
+	{
+		this.computePotential = computePotential;
+
+		if (this.octree != null)
+			this.octree.setComputePotential(computePotential);
+	}
+
+	/**
+	 * Gets gridSize (int)
+	 * @return Number of mesh cells along each side
+	 */
+	public int getGridSize()
+	{
+		return this.gridSize;
+	}
+
+	/**
+	 * Sets gridSize (int). The cost of a step grows as gridSize^2 * log(gridSize), and the plain mesh resolves
+	 * nothing finer than a cell.
+	 * @param gridSize A power of two, at least 16
+	 */
+	public void setGridSize(int gridSize)
+	{
+		if (gridSize < MIN_GRID_SIZE || Integer.bitCount(gridSize) != 1)
+			throw new IllegalArgumentException("The grid size must be a power of two, at least " + MIN_GRID_SIZE);
+
+		this.gridSize = gridSize;
+		this.meshRe = null;
+	}
+
+	/**
+	 * Gets boxSize (double)
+	 * @return Side of the periodic box (0 for open boundaries)
+	 */
+	public double getBoxSize()
+	{
+		return this.boxSize;
+	}
+
+	/**
+	 * Sets boxSize (double). A positive size makes the boundaries periodic, with the box centered on the origin.
+	 * @param boxSize Side of the box, or 0 for open boundaries
+	 */
+	public void setBoxSize(double boxSize)
+	{
+		if (boxSize < 0.0 || Double.isNaN(boxSize) || Double.isInfinite(boxSize))
+			throw new IllegalArgumentException("The box size must be positive (or 0 for open boundaries)");
+
+		this.boxSize = boxSize;
+		this.meshRe = null;
+	}
+
+	/**
+	 * Checks whether the boundaries are periodic
+	 * @return Whether there is a box
+	 */
+	public boolean isPeriodic()
+	{
+		return this.boxSize > 0.0;
+	}
+
+	/**
+	 * Gets shortRange (boolean)
+	 * @return Whether the short-range part of the force is summed directly (P3M)
+	 */
+	public boolean isShortRange()
+	{
+		return this.shortRange;
+	}
+
+	/**
+	 * Sets shortRange (boolean)
+	 * @param shortRange
+	 */
+	public void setShortRange(boolean shortRange)
+	{
+		this.shortRange = shortRange;
+		this.kernelCellSize = 0.0;
+	}
+
+	/**
+	 * Gets splitScale (double)
+	 * @return Scale r_s at which the kernel is split for the short-range correction, in cells
+	 */
+	public double getSplitScale()
+	{
+		return this.splitScale;
+	}
+
+	/**
+	 * Sets splitScale (double). A larger scale smooths the mesh force more and moves work to the pair sums.
+	 * @param splitScale
+	 */
+	public void setSplitScale(double splitScale)
+	{
+		if (!(splitScale > 0.0) || Double.isInfinite(splitScale))
+			throw new IllegalArgumentException("The split scale must be positive");
+
+		this.splitScale = splitScale;
+		this.kernelCellSize = 0.0;
+	}
+}
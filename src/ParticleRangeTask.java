@@ -0,0 +1,58 @@
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies an operation to a range of particle indices on a ForkJoinPool, splitting the range in half until each
+ * piece is no larger than the grain size. Every particle is processed by exactly one call, so operations that only
+ * write to the particles in their own range give the same result regardless of how the work is split.
+ * @author Rajiv Thamburaj
+ */
+public class ParticleRangeTask extends RecursiveAction
+{
+	/**
+	 * An operation on the particles with indices in [start, end)
+	 */
+	public interface Operation
+	{
+		void apply(int start, int end);
+	}
+
+	// Instance variables
+	private Operation operation;
+	private int start;
+	private int end;
+	private int grainSize;
+	// Constants
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor
+	 * @param operation
+	 * @param start
+	 * @param end
+	 * @param grainSize
+	 */
+	public ParticleRangeTask(Operation operation, int start, int end, int grainSize)
+	{
+		this.operation = operation;
+		this.start = start;
+		this.end = end;
+		this.grainSize = grainSize;
+	}
+
+	/**
+	 * Applies the operation directly, or splits the range and forks both halves
+	 */
+	@Override
+	protected void compute()
+	{
+		if (this.end - this.start <= this.grainSize)
+		{
+			this.operation.apply(this.start, this.end);
+			return;
+		}
+
+		int middle = (this.start + this.end) >>> 1;
+		invokeAll(new ParticleRangeTask(this.operation, this.start, middle, this.grainSize),
+				new ParticleRangeTask(this.operation, middle, this.end, this.grainSize));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,205 @@
+/**
+ * Stores the state of a group of particles in contiguous primitive arrays (structure-of-arrays layout), so that
+ * the integrator can step the system without allocating objects. Every store has z-components, which stay at 0 in a
+ * two-dimensional store; the force solvers only read them when the store is three-dimensional.
+ * @author Rajiv Thamburaj
+ */
+public class ParticleStore
+{
+	// Instance variables
+	private int size;
+	private int dimension;
+	private double[] x;
+	private double[] y;
+	private double[] z;
+	private double[] vx;
+	private double[] vy;
+	private double[] vz;
+	private double[] ax;
+	private double[] ay;
+	private double[] az;
+	private double[] mass;
+	// Gravitational potential at each particle (only filled in when diagnostics are sampled)
+	private double[] potential;
+
+	/**
+	 * Constructor (for a two-dimensional store)
+	 * @param size
+	 */
+	public ParticleStore(int size)
+	{
+		this(size, 2);
+	}
+
+	/**
+	 * Constructor
+	 * @param size
+	 * @param dimension 2 or 3
+	 */
+	public ParticleStore(int size, int dimension)
+	{
+		if (dimension != 2 && dimension != 3)
+			throw new IllegalArgumentException("Particles move in 2 or 3 dimensions, not " + dimension);
+
+		this.size = size;
+		this.dimension = dimension;
+		this.x = new double[size];
+		this.y = new double[size];
+		this.z = new double[size];
+		this.vx = new double[size];
+		this.vy = new double[size];
+		this.vz = new double[size];
+		this.ax = new double[size];
+		this.ay = new double[size];
+		this.az = new double[size];
+		this.mass = new double[size];
+		this.potential = new double[size];
+	}
+
+	/**
+	 * Copies the state of a single particle from another store
+	 * @param index
+	 * @param source
+	 * @param sourceIndex
+	 */
+	public void copyParticle(int index, ParticleStore source, int sourceIndex)
+	{
+		this.x[index] = source.x[sourceIndex];
+		this.y[index] = source.y[sourceIndex];
+		this.z[index] = source.z[sourceIndex];
+		this.vx[index] = source.vx[sourceIndex];
+		this.vy[index] = source.vy[sourceIndex];
+		this.vz[index] = source.vz[sourceIndex];
+		this.ax[index] = source.ax[sourceIndex];
+		this.ay[index] = source.ay[sourceIndex];
+		this.az[index] = source.az[sourceIndex];
+		this.mass[index] = source.mass[sourceIndex];
+		this.potential[index] = source.potential[sourceIndex];
+	}
+
+	/**
+	 * Gets size (int)
+	 * @return Number of particles in the store
+	 */
+	public int getSize()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Gets dimension (int)
+	 * @return Number of dimensions the particles move in (2 or 3)
+	 */
+	public int getDimension()
+	{
+		return this.dimension;
+	}
+
+	/**
+	 * Checks whether the particles move in three dimensions
+	 * @return Whether the dimension is 3
+	 */
+	public boolean isThreeDimensional()
+	{
+		return this.dimension == 3;
+	}
+
+	/**
+	 * Gets x (double[])
+	 * @return x-components of the particle positions
+	 */
+	public double[] getX()
+	{
+		return this.x;
+	}
+
+	/**
+	 * Gets y (double[])
+	 * @return y-components of the particle positions
+	 */
+	public double[] getY()
+	{
+		return this.y;
+	}
+
+	/**
+	 * Gets z (double[])
+	 * @return z-components of the particle positions (all 0 in a two-dimensional store)
+	 */
+	public double[] getZ()
+	{
+		return this.z;
+	}
+
+	/**
+	 * Gets vx (double[])
+	 * @return x-components of the particle velocities
+	 */
+	public double[] getVx()
+	{
+		return this.vx;
+	}
+
+	/**
+	 * Gets vy (double[])
+	 * @return y-components of the particle velocities
+	 */
+	public double[] getVy()
+	{
+		return this.vy;
+	}
+
+	/**
+	 * Gets vz (double[])
+	 * @return z-components of the particle velocities (all 0 in a two-dimensional store)
+	 */
+	public double[] getVz()
+	{
+		return this.vz;
+	}
+
+	/**
+	 * Gets ax (double[])
+	 * @return x-components of the particle accelerations
+	 */
+	public double[] getAx()
+	{
+		return this.ax;
+	}
+
+	/**
+	 * Gets ay (double[])
+	 * @return y-components of the particle accelerations
+	 */
+	public double[] getAy()
+	{
+		return this.ay;
+	}
+
+	/**
+	 * Gets az (double[])
+	 * @return z-components of the particle accelerations (all 0 in a two-dimensional store)
+	 */
+	public double[] getAz()
+	{
+		return this.az;
+	}
+
+	/**
+	 * Gets mass (double[])
+	 * @return Masses of the particles
+	 */
+	public double[] getMass()
+	{
+		return this.mass;
+	}
+
+	/**
+	 * Gets potential (double[])
+	 * @return Gravitational potential at each particle (G times the sum of -m * g(|r|) over the other particles)
+	 */
+	public double[] getPotential()
+	{
+		return this.potential;
+	}
+}
\ No newline at end of file
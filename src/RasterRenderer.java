@@ -0,0 +1,451 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Draws the Bodies of a Cluster straight into the pixels of an image, for clusters too large to paint as Java2D shapes.
+ * Bodies at least POINT_DIAMETER pixels across are filled in as discs in their own colors; smaller Bodies are counted
+ * into a density buffer instead, and each pixel they fall on is colored from a heat palette by the logarithm of its
+ * count, so that dense regions stay visible however many Bodies overlap. The image is transparent wherever there is no
+ * Body, and is painted with a single drawImage call, so the cost of painting grows with the number of Bodies and
+ * pixels, not with the number of shapes. The Bodies of a three-dimensional Cluster are rendered from their projected
+ * positions, with their diameters scaled by the perspective and their discs filled from the farthest to the nearest.
+ *
+ * The work can be split across the common ForkJoinPool: the Bodies are counted in chunks, each into a density buffer
+ * of its own, and the image is then colored in horizontal stripes, each of which is only written by one task. The
+ * image is therefore the same whether or not the work is split.
+ * @author Rajiv Thamburaj
+ */
+public class RasterRenderer
+{
+	// Instance variables
+	private int width;
+	private int height;
+	private BufferedImage image;
+	private int[] pixels;
+	private int parallelism;
+	// Per chunk of Bodies: the density of its point Bodies, and the indices of its disc Bodies (in order)
+	private int[][] densities;
+	private int[][] discs;
+	private int[] numDiscs;
+	// Highest density in each stripe of rows
+	private int[] stripeMaxima;
+	// Palette index for each density, up to the highest density of the frame
+	private int[] levels;
+	private int[] palette;
+	// The frame being rendered
+	private Body[] bodies;
+	private double[] xs;
+	private double[] ys;
+	private double[] fromX;
+	private double[] fromY;
+	private double[] scale;
+	private long[] order;
+	private double alpha;
+	private int numBodies;
+	private int maxDensity;
+	// Constants
+	// Bodies smaller than this (in pixels) are drawn as points
+	private static final double POINT_DIAMETER = 3.0;
+	// Discs smaller than this (in pixels) are too small for a border
+	private static final double BORDER_DIAMETER = 5.0;
+	private static final int BORDER = Color.LIGHT_GRAY.getRGB();
+	private static final int PALETTE_SIZE = 256;
+	private static final Color[] HEAT = { new Color(50, 60, 170), new Color(150, 40, 170), new Color(230, 50, 40),
+			new Color(255, 170, 0), new Color(255, 255, 120), Color.WHITE };
+	private static final int STRIPES_PER_TASK = 4;
+	private static final int MIN_BODIES_PER_CHUNK = 4096;
+
+	/**
+	 * Constructor
+	 * @param width
+	 * @param height
+	 */
+	public RasterRenderer(int width, int height)
+	{
+		this.width = Math.max(1, width);
+		this.height = Math.max(1, height);
+		this.image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB_PRE);
+		this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+		this.levels = new int[1];
+		this.palette = createPalette();
+		setParallelism(1);
+	}
+
+	/**
+	 * Spreads the heat colors evenly over the palette
+	 * @return Opaque colors from the faintest (a single point) to the densest
+	 */
+	private static int[] createPalette()
+	{
+		int[] palette = new int[PALETTE_SIZE];
+
+		for (int i = 0; i < PALETTE_SIZE; i++)
+		{
+			double position = i * (HEAT.length - 1) / (double) (PALETTE_SIZE - 1);
+			int k = Math.min((int) position, HEAT.length - 2);
+			double t = position - k;
+			int red = (int) Math.round(HEAT[k].getRed() + t * (HEAT[k + 1].getRed() - HEAT[k].getRed()));
+			int green = (int) Math.round(HEAT[k].getGreen() + t * (HEAT[k + 1].getGreen() - HEAT[k].getGreen()));
+			int blue = (int) Math.round(HEAT[k].getBlue() + t * (HEAT[k + 1].getBlue() - HEAT[k].getBlue()));
+			palette[i] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+		}
+
+		return palette;
+	}
+
+	/**
+	 * Renders a frame, with the Bodies at positions interpolated between two sets (in Canvas coordinates, with the
+	 * origin at the center of the image and y pointing up)
+	 * @param bodies
+	 * @param xs x-components of the positions at alpha = 1
+	 * @param ys y-components of the positions at alpha = 1
+	 * @param fromX x-components of the positions at alpha = 0 (may be xs)
+	 * @param fromY y-components of the positions at alpha = 0 (may be ys)
+	 * @param scale Factor each diameter is multiplied by (null to render the Bodies at their own size)
+	 * @param order Order to fill the discs in, with the index of a Body in the lower 32 bits of each element (null to
+	 * fill them in the order of the Bodies)
+	 * @param alpha
+	 * @param numBodies
+	 * @return Rendered image, which stays valid until the next call
+	 */
+	public BufferedImage render(Body[] bodies, double[] xs, double[] ys, double[] fromX, double[] fromY,
+			double[] scale, long[] order, double alpha, int numBodies)
+	{
+		this.bodies = bodies;
+		this.xs = xs;
+		this.ys = ys;
+		this.fromX = fromX;
+		this.fromY = fromY;
+		this.scale = scale;
+		this.order = order;
+		this.alpha = alpha;
+		this.numBodies = numBodies;
+
+		int numChunks = Math.max(1, Math.min(this.parallelism, numBodies / MIN_BODIES_PER_CHUNK));
+		int numStripes = this.stripeMaxima.length;
+
+		forEach((start, end) -> countChunks(start, end, numChunks), numChunks);
+
+		// The palette levels depend on the highest density of the whole frame
+		forEach((start, end) -> mergeStripes(start, end, numChunks), numStripes);
+		this.maxDensity = 0;
+
+		for (int s = 0; s < numStripes; s++)
+		{
+			this.maxDensity = Math.max(this.maxDensity, this.stripeMaxima[s]);
+		}
+
+		computeLevels();
+		forEach((start, end) -> colorStripes(start, end, numChunks), numStripes);
+
+		// Let go of the frame
+		this.bodies = null;
+		this.xs = this.ys = this.fromX = this.fromY = this.scale = null;
+		this.order = null;
+		return this.image;
+	}
+
+	/**
+	 * Applies an operation to every index below count, on the common ForkJoinPool if the work is to be split
+	 * @param operation
+	 * @param count
+	 */
+	private void forEach(ParticleRangeTask.Operation operation, int count)
+	{
+		if (this.parallelism > 1 && count > 1)
+			ForkJoinPool.commonPool().invoke(new ParticleRangeTask(operation, 0, count, 1));
+		else
+			operation.apply(0, count);
+	}
+
+	/**
+	 * Counts the point Bodies of some chunks into their density buffers, and lists their disc Bodies (the chunks are
+	 * taken from the paint order, if there is one, so that the lists are in that order)
+	 * @param startChunk
+	 * @param endChunk
+	 * @param numChunks
+	 */
+	private void countChunks(int startChunk, int endChunk, int numChunks)
+	{
+		for (int c = startChunk; c < endChunk; c++)
+		{
+			int start = (int) ((long) this.numBodies * c / numChunks);
+			int end = (int) ((long) this.numBodies * (c + 1) / numChunks);
+			int[] density = this.densities[c];
+			int[] chunkDiscs = this.discs[c];
+			int count = 0;
+			double halfWidth = this.width / 2;
+			double halfHeight = this.height / 2;
+
+			for (int k = start; k < end; k++)
+			{
+				int i = this.order != null ? (int) this.order[k] : k;
+				double diameter = getDiameter(i);
+				double x = getX(i);
+				double y = getY(i);
+
+				// A Body behind a perspective Camera has no position on screen
+				if (Double.isNaN(x) || Double.isNaN(y))
+					continue;
+
+				if (diameter >= POINT_DIAMETER)
+				{
+					if (count == chunkDiscs.length)
+						chunkDiscs = this.discs[c] = Arrays.copyOf(chunkDiscs, Math.max(16, 2 * count));
+
+					chunkDiscs[count++] = i;
+					continue;
+				}
+
+				// The same pixel as the center of the shape Canvas would paint
+				int px = (int) Math.floor(x + halfWidth);
+				int py = (int) Math.floor(halfHeight - y);
+
+				if (px >= 0 && px < this.width && py >= 0 && py < this.height)
+					density[py * this.width + px]++;
+			}
+
+			this.numDiscs[c] = count;
+		}
+	}
+
+	/**
+	 * Adds the density buffers of all chunks into the first one, for some stripes, and finds the highest density of
+	 * each stripe
+	 * @param startStripe
+	 * @param endStripe
+	 * @param numChunks
+	 */
+	private void mergeStripes(int startStripe, int endStripe, int numChunks)
+	{
+		int[] total = this.densities[0];
+
+		for (int s = startStripe; s < endStripe; s++)
+		{
+			int start = stripeTop(s) * this.width;
+			int end = stripeTop(s + 1) * this.width;
+			int max = 0;
+
+			for (int c = 1; c < numChunks; c++)
+			{
+				int[] density = this.densities[c];
+
+				for (int p = start; p < end; p++)
+				{
+					total[p] += density[p];
+					density[p] = 0;
+				}
+			}
+
+			for (int p = start; p < end; p++)
+			{
+				max = Math.max(max, total[p]);
+			}
+
+			this.stripeMaxima[s] = max;
+		}
+	}
+
+	/**
+	 * Maps each density up to the highest one to a palette index, by its logarithm
+	 */
+	private void computeLevels()
+	{
+		if (this.levels.length <= this.maxDensity)
+			this.levels = new int[Math.max(this.maxDensity + 1, 2 * this.levels.length)];
+
+		double scale = (PALETTE_SIZE - 1) / Math.log(this.maxDensity + 1.0);
+
+		for (int d = 1; d <= this.maxDensity; d++)
+		{
+			this.levels[d] = this.maxDensity > 1 ? (int) (Math.log(d) * scale) : PALETTE_SIZE - 1;
+		}
+	}
+
+	/**
+	 * Colors the pixels of some stripes from their densities (clearing the densities for the next frame), and fills in
+	 * the parts of the discs that fall within them
+	 * @param startStripe
+	 * @param endStripe
+	 * @param numChunks
+	 */
+	private void colorStripes(int startStripe, int endStripe, int numChunks)
+	{
+		int[] density = this.densities[0];
+
+		for (int s = startStripe; s < endStripe; s++)
+		{
+			int top = stripeTop(s);
+			int bottom = stripeTop(s + 1);
+
+			for (int p = top * this.width; p < bottom * this.width; p++)
+			{
+				int d = density[p];
+				this.pixels[p] = d == 0 ? 0 : this.palette[this.levels[d]];
+				density[p] = 0;
+			}
+
+			// Discs are filled in the order they were listed in, so later Bodies cover earlier ones as they do in Canvas
+			for (int c = 0; c < numChunks; c++)
+			{
+				int[] chunkDiscs = this.discs[c];
+
+				for (int k = 0; k < this.numDiscs[c]; k++)
+				{
+					fillDisc(chunkDiscs[k], top, bottom);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the first row of a stripe
+	 * @param stripe
+	 * @return Index of the row (the height of the image for the stripe after the last)
+	 */
+	private int stripeTop(int stripe)
+	{
+		return (int) ((long) this.height * stripe / this.stripeMaxima.length);
+	}
+
+	/**
+	 * Fills in the rows of a disc Body between top (inclusive) and bottom (exclusive)
+	 * @param i Index of the Body
+	 * @param top
+	 * @param bottom
+	 */
+	private void fillDisc(int i, int top, int bottom)
+	{
+		double diameter = getDiameter(i);
+		double radius = diameter / 2;
+		double centerX = getX(i) + this.width / 2;
+		double centerY = this.height / 2 - getY(i);
+		int firstRow = Math.max(top, (int) Math.ceil(centerY - radius - 0.5));
+		int lastRow = Math.min(bottom - 1, (int) Math.floor(centerY + radius - 0.5));
+
+		if (firstRow > lastRow)
+			return;
+
+		int color = 0xFF000000 | this.bodies[i].getColor().getRGB();
+		boolean border = diameter >= BORDER_DIAMETER;
+		double innerRadius = radius - 1.0;
+
+		for (int row = firstRow; row <= lastRow; row++)
+		{
+			// Pixels whose centers lie inside the circle, and inside the circle one pixel smaller for the fill
+			double dy = row + 0.5 - centerY;
+			double outer = Math.sqrt(Math.max(0.0, radius * radius - dy * dy));
+			int start = Math.max(0, (int) Math.ceil(centerX - outer - 0.5));
+			int end = Math.min(this.width - 1, (int) Math.floor(centerX + outer - 0.5));
+			int offset = row * this.width;
+
+			if (!border || Math.abs(dy) > innerRadius)
+			{
+				fillSpan(offset, start, end, border ? BORDER : color);
+				continue;
+			}
+
+			double inner = Math.sqrt(innerRadius * innerRadius - dy * dy);
+			int innerStart = Math.max(start, (int) Math.ceil(centerX - inner - 0.5));
+			int innerEnd = Math.min(end, (int) Math.floor(centerX + inner - 0.5));
+
+			fillSpan(offset, start, innerStart - 1, BORDER);
+			fillSpan(offset, innerStart, innerEnd, color);
+			fillSpan(offset, innerEnd + 1, end, BORDER);
+		}
+	}
+
+	/**
+	 * Sets the pixels of a row between two columns (inclusive) to a color
+	 * @param offset Index of the first pixel of the row
+	 * @param start
+	 * @param end
+	 * @param color
+	 */
+	private void fillSpan(int offset, int start, int end, int color)
+	{
+		for (int column = start; column <= end; column++)
+		{
+			this.pixels[offset + column] = color;
+		}
+	}
+
+	/**
+	 * Gets the diameter of a Body on screen
+	 * @param i
+	 * @return Diameter in pixels, scaled by the perspective
+	 */
+	private double getDiameter(int i)
+	{
+		double diameter = this.bodies[i].getDiameter();
+		return this.scale != null ? diameter * this.scale[i] : diameter;
+	}
+
+	/**
+	 * Gets the x-component of the interpolated position of a Body
+	 * @param i
+	 * @return x-component
+	 */
+	private double getX(int i)
+	{
+		return this.alpha < 1.0 ? this.fromX[i] + this.alpha * (this.xs[i] - this.fromX[i]) : this.xs[i];
+	}
+
+	/**
+	 * Gets the y-component of the interpolated position of a Body
+	 * @param i
+	 * @return y-component
+	 */
+	private double getY(int i)
+	{
+		return this.alpha < 1.0 ? this.fromY[i] + this.alpha * (this.ys[i] - this.fromY[i]) : this.ys[i];
+	}
+
+	/**
+	 * Gets width (int)
+	 * @return Width of the image in pixels
+	 */
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+	/**
+	 * Gets height (int)
+	 * @return Height of the image in pixels
+	 */
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+	/**
+	 * Gets parallelism (int)
+	 * @return Number of tasks the work is split into
+	 */
+	public int getParallelism()
+	{
+		return this.parallelism;
+	}
+
+	/**
+	 * Sets parallelism (int). A parallelism of 1 renders on the calling thread; otherwise the work is split into this
+	 * many chunks of Bodies on the common ForkJoinPool. Each chunk needs a density buffer the size of the image.
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+
+		// Every stripe goes through all of the discs, so there are only a few stripes per task
+		this.parallelism = parallelism;
+		this.stripeMaxima = new int[parallelism > 1 ? Math.min(this.height, STRIPES_PER_TASK * parallelism) : 1];
+		this.densities = new int[parallelism][this.width * this.height];
+		this.discs = new int[parallelism][16];
+		this.numDiscs = new int[parallelism];
+	}
+}
@@ -0,0 +1,313 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of hot-path metrics: step, force-evaluation, and paint latencies, dropped frames, and the bytes allocated
+ * per step and per paint. A Cluster (or Canvas) only records into a SimulationMetrics once one has been set on it,
+ * so the only cost while metrics are disabled is a null check per step. The metrics can be published over JMX
+ * under the domain "GravitySimulator" and read with any JMX client.
+ * @author Rajiv Thamburaj
+ */
+public class SimulationMetrics implements SimulationMetricsMXBean
+{
+	// Instance variables
+	private LatencyHistogram stepLatency;
+	private LatencyHistogram forceEvaluationLatency;
+	private LatencyHistogram forcePrepareLatency;
+	private LatencyHistogram paintLatency;
+	private LatencyHistogram frameInterval;
+	private AtomicLong droppedFrames;
+	private AtomicLong stepAllocatedBytes;
+	private AtomicLong paintAllocatedBytes;
+	private volatile long resetNanos;
+	private ObjectName objectName;
+	// Constants
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+	/**
+	 * Constructor
+	 */
+	public SimulationMetrics()
+	{
+		this.stepLatency = new LatencyHistogram();
+		this.forceEvaluationLatency = new LatencyHistogram();
+		this.forcePrepareLatency = new LatencyHistogram();
+		this.paintLatency = new LatencyHistogram();
+		this.frameInterval = new LatencyHistogram();
+		this.droppedFrames = new AtomicLong();
+		this.stepAllocatedBytes = new AtomicLong();
+		this.paintAllocatedBytes = new AtomicLong();
+		this.resetNanos = System.nanoTime();
+	}
+
+	/**
+	 * Finds the JVM's per-thread allocation counter, if it has one
+	 * @return Thread MXBean that can count allocated bytes (null if there is none)
+	 */
+	private static com.sun.management.ThreadMXBean allocationCounter()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return null;
+
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+
+		if (!counter.isThreadAllocatedMemorySupported())
+			return null;
+
+		counter.setThreadAllocatedMemoryEnabled(true);
+		return counter;
+	}
+
+	/**
+	 * Gets the number of bytes allocated by the calling thread so far
+	 * @return Allocated bytes (-1 if the JVM cannot measure it)
+	 */
+	public static long currentThreadAllocatedBytes()
+	{
+		return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1L;
+	}
+
+	/**
+	 * Publishes the metrics over JMX
+	 * @param name Name that tells this registry apart from others in the same JVM
+	 * @throws JMException
+	 */
+	public void register(String name) throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		this.objectName = new ObjectName("GravitySimulator:type=SimulationMetrics,name=" + ObjectName.quote(name));
+		server.registerMBean(this, this.objectName);
+	}
+
+	/**
+	 * Withdraws the metrics from JMX (if they were published)
+	 * @throws JMException
+	 */
+	public void unregister() throws JMException
+	{
+		if (this.objectName == null)
+			return;
+
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+		this.objectName = null;
+	}
+
+	/**
+	 * Records a step
+	 * @param nanos Duration of the step
+	 * @param allocatedBytes Bytes allocated by the stepping thread during the step (negative if unknown)
+	 */
+	public void recordStep(long nanos, long allocatedBytes)
+	{
+		this.stepLatency.record(nanos);
+
+		if (allocatedBytes > 0)
+			this.stepAllocatedBytes.addAndGet(allocatedBytes);
+	}
+
+	/**
+	 * Records a force evaluation
+	 * @param prepareNanos Duration of ForceSolver.prepare
+	 * @param totalNanos Duration of the whole evaluation (including prepare)
+	 */
+	public void recordForceEvaluation(long prepareNanos, long totalNanos)
+	{
+		this.forcePrepareLatency.record(prepareNanos);
+		this.forceEvaluationLatency.record(totalNanos);
+	}
+
+	/**
+	 * Records a paint
+	 * @param nanos Duration of the paint
+	 * @param allocatedBytes Bytes allocated by the painting thread during the paint (negative if unknown)
+	 */
+	public void recordPaint(long nanos, long allocatedBytes)
+	{
+		this.paintLatency.record(nanos);
+
+		if (allocatedBytes > 0)
+			this.paintAllocatedBytes.addAndGet(allocatedBytes);
+	}
+
+	/**
+	 * Records the time between two repaint timer events, counting the frames that were skipped in between
+	 * @param intervalNanos Time since the previous event
+	 * @param frameNanos Time the timer is meant to take between events
+	 */
+	public void recordFrame(long intervalNanos, long frameNanos)
+	{
+		this.frameInterval.record(intervalNanos);
+
+		// An event that comes more than half a frame late has missed the frame it was meant for
+		long missed = (intervalNanos + frameNanos / 2) / frameNanos - 1;
+
+		if (missed > 0)
+			this.droppedFrames.addAndGet(missed);
+	}
+
+	/**
+	 * Formats the metrics for printing
+	 * @return One line per metric (the painting metrics are left out if nothing has been painted)
+	 */
+	public String report()
+	{
+		StringBuilder report = new StringBuilder();
+		String newline = System.lineSeparator();
+
+		report.append(String.format(Locale.ROOT, "Steps: %d (%.1f/s)", getSteps(), getStepsPerSecond()));
+		report.append(newline).append("Step latency: ").append(getStepLatency());
+		report.append(newline).append("Force evaluation: ").append(getForceEvaluationLatency());
+		report.append(newline).append("Force prepare: ").append(getForcePrepareLatency());
+		report.append(newline).append(String.format(Locale.ROOT, "Allocated per step: %.1f bytes",
+				getAllocatedBytesPerStep()));
+
+		if (this.paintLatency.getCount() > 0)
+		{
+			report.append(newline).append("Paint latency: ").append(getPaintLatency());
+			report.append(newline).append("Frame interval: ").append(getFrameInterval());
+			report.append(newline).append("Dropped frames: ").append(getDroppedFrames());
+			report.append(newline).append(String.format(Locale.ROOT, "Allocated per paint: %.1f bytes",
+					getAllocatedBytesPerPaint()));
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Divides an allocation total by a count
+	 * @param bytes
+	 * @param count
+	 * @return Mean allocation (-1 if the JVM cannot measure it)
+	 */
+	private static double perEvent(long bytes, long count)
+	{
+		if (THREADS == null)
+			return -1.0;
+
+		return count > 0 ? bytes / (double) count : 0.0;
+	}
+
+	/**
+	 * Gets the number of steps taken since the metrics were reset
+	 * @return Number of steps
+	 */
+	@Override
+	public long getSteps()
+	{
+		return this.stepLatency.getCount();
+	}
+
+	/**
+	 * Gets the rate of steps since the metrics were reset
+	 * @return Steps per second of wall-clock time
+	 */
+	@Override
+	public double getStepsPerSecond()
+	{
+		return getSteps() / ((System.nanoTime() - this.resetNanos) / 1e9);
+	}
+
+	/**
+	 * Gets stepLatency (LatencyHistogram.Summary)
+	 * @return Summary of the step durations
+	 */
+	@Override
+	public LatencyHistogram.Summary getStepLatency()
+	{
+		return this.stepLatency.getSummary();
+	}
+
+	/**
+	 * Gets forceEvaluationLatency (LatencyHistogram.Summary)
+	 * @return Summary of the force-evaluation durations
+	 */
+	@Override
+	public LatencyHistogram.Summary getForceEvaluationLatency()
+	{
+		return this.forceEvaluationLatency.getSummary();
+	}
+
+	/**
+	 * Gets forcePrepareLatency (LatencyHistogram.Summary)
+	 * @return Summary of the ForceSolver.prepare durations (the tree build for Barnes-Hut)
+	 */
+	@Override
+	public LatencyHistogram.Summary getForcePrepareLatency()
+	{
+		return this.forcePrepareLatency.getSummary();
+	}
+
+	/**
+	 * Gets paintLatency (LatencyHistogram.Summary)
+	 * @return Summary of the paint durations
+	 */
+	@Override
+	public LatencyHistogram.Summary getPaintLatency()
+	{
+		return this.paintLatency.getSummary();
+	}
+
+	/**
+	 * Gets frameInterval (LatencyHistogram.Summary)
+	 * @return Summary of the times between repaint timer events
+	 */
+	@Override
+	public LatencyHistogram.Summary getFrameInterval()
+	{
+		return this.frameInterval.getSummary();
+	}
+
+	/**
+	 * Gets droppedFrames (long)
+	 * @return Number of frames the repaint timer was too late to deliver
+	 */
+	@Override
+	public long getDroppedFrames()
+	{
+		return this.droppedFrames.get();
+	}
+
+	/**
+	 * Gets the bytes allocated per step (double)
+	 * @return Mean allocation of the stepping thread per step (-1 if the JVM cannot measure it)
+	 */
+	@Override
+	public double getAllocatedBytesPerStep()
+	{
+		return perEvent(this.stepAllocatedBytes.get(), this.stepLatency.getCount());
+	}
+
+	/**
+	 * Gets the bytes allocated per paint (double)
+	 * @return Mean allocation of the painting thread per paint (-1 if the JVM cannot measure it)
+	 */
+	@Override
+	public double getAllocatedBytesPerPaint()
+	{
+		return perEvent(this.paintAllocatedBytes.get(), this.paintLatency.getCount());
+	}
+
+	/**
+	 * Forgets everything recorded so far
+	 */
+	@Override
+	public void reset()
+	{
+		this.stepLatency.reset();
+		this.forceEvaluationLatency.reset();
+		this.forcePrepareLatency.reset();
+		this.paintLatency.reset();
+		this.frameInterval.reset();
+		this.droppedFrames.set(0L);
+		this.stepAllocatedBytes.set(0L);
+		this.paintAllocatedBytes.set(0L);
+		this.resetNanos = System.nanoTime();
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Management interface of SimulationMetrics, as seen over JMX (e.g. in JConsole or VisualVM). The latency summaries
+ * appear as composite values in microseconds.
+ * @author Rajiv Thamburaj
+ */
+public interface SimulationMetricsMXBean
+{
+	/**
+	 * Gets the number of steps taken since the metrics were reset
+	 * @return Number of steps
+	 */
+	long getSteps();
+
+	/**
+	 * Gets the rate of steps since the metrics were reset
+	 * @return Steps per second of wall-clock time
+	 */
+	double getStepsPerSecond();
+
+	/**
+	 * Gets the latency of Cluster.updatePositions
+	 * @return Summary of the step durations
+	 */
+	LatencyHistogram.Summary getStepLatency();
+
+	/**
+	 * Gets the latency of the force evaluations (every ForceSolver pass, of which a step may make several)
+	 * @return Summary of the force-evaluation durations
+	 */
+	LatencyHistogram.Summary getForceEvaluationLatency();
+
+	/**
+	 * Gets the latency of ForceSolver.prepare, which is the tree build for the Barnes-Hut solver (and the pair sums
+	 * for the symmetric direct-sum solver)
+	 * @return Summary of the preparation durations
+	 */
+	LatencyHistogram.Summary getForcePrepareLatency();
+
+	/**
+	 * Gets the latency of Canvas.paintComponent
+	 * @return Summary of the paint durations
+	 */
+	LatencyHistogram.Summary getPaintLatency();
+
+	/**
+	 * Gets the time between repaint timer events
+	 * @return Summary of the frame intervals
+	 */
+	LatencyHistogram.Summary getFrameInterval();
+
+	/**
+	 * Gets the number of frames the repaint timer was too late to deliver
+	 * @return Number of dropped frames
+	 */
+	long getDroppedFrames();
+
+	/**
+	 * Gets the bytes allocated by the stepping thread per step
+	 * @return Mean allocation per step (-1 if the JVM cannot measure it)
+	 */
+	double getAllocatedBytesPerStep();
+
+	/**
+	 * Gets the bytes allocated by the painting thread per frame
+	 * @return Mean allocation per paint (-1 if the JVM cannot measure it)
+	 */
+	double getAllocatedBytesPerPaint();
+
+	/**
+	 * Forgets everything recorded so far
+	 */
+	void reset();
+}
@@ -0,0 +1,153 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Steps a Cluster on a thread of its own, publishing snapshots of the positions to a SnapshotBuffer so that the
+ * view never has to touch (or wait for) the Cluster itself. The Cluster is always stepped by the same time step, and
+ * is kept in line with the wall clock by an accumulator: the real time that passes is scaled to simulated time and
+ * added to the accumulator, and the Cluster takes as many steps as it takes to use it up. The simulated speed
+ * therefore depends only on the time scale (simulated seconds per second), not on how long each step takes, and the
+ * snapshots (published at a rate of their own) are stamped with the time they are due on screen so that the view can
+ * interpolate between them.
+ * @author Rajiv Thamburaj
+ */
+public class SimulationThread extends Thread
+{
+	// Instance variables
+	private Cluster cluster;
+	private SnapshotBuffer snapshots;
+	private long step;
+	private volatile boolean running;
+	private volatile double timeStep;
+	private volatile double timeScale;
+	private volatile double snapshotsPerSecond;
+	// Constants
+	// If the thread falls further behind than this, it stops trying to catch up (e.g. after the machine was busy)
+	private static final long MAX_LAG_NANOS = 250000000L;
+
+	/**
+	 * Constructor
+	 * @param cluster
+	 * @param snapshots
+	 * @param step
+	 */
+	public SimulationThread(Cluster cluster, SnapshotBuffer snapshots, long step)
+	{
+		super("Simulation");
+		setDaemon(true);
+
+		this.cluster = cluster;
+		this.snapshots = snapshots;
+		this.step = step;
+		this.running = true;
+	}
+
+	/**
+	 * Steps the Cluster until stopSimulation is called, taking a step whenever the accumulator holds a whole time step
+	 */
+	@Override
+	public void run()
+	{
+		long previousTime = System.nanoTime();
+		long nextSnapshotTime = previousTime;
+		// Simulated time that has passed on the wall clock but not yet in the Cluster
+		double accumulator = 0.0;
+
+		while (this.running)
+		{
+			double timeStep = this.timeStep;
+			double timeScale = this.timeScale;
+			long now = System.nanoTime();
+			long dueTime = now;
+
+			// A non-positive time scale runs the physics as fast as possible
+			if (timeScale > 0.0)
+			{
+				accumulator += (now - previousTime) / 1e9 * timeScale;
+
+				// Steps that cost more real time than they simulate would otherwise leave the thread further behind
+				// with every step, so whatever it cannot catch up on is dropped
+				accumulator = Math.min(accumulator, MAX_LAG_NANOS / 1e9 * timeScale);
+
+				if (accumulator < timeStep)
+				{
+					previousTime = now;
+					LockSupport.parkNanos((long) ((timeStep - accumulator) / timeScale * 1e9));
+					continue;
+				}
+
+				// The state after the step was due when the wall clock passed it, which may have been a while ago
+				accumulator -= timeStep;
+				dueTime = now - (long) (accumulator / timeScale * 1e9);
+			}
+
+			previousTime = now;
+			this.cluster.updatePositions(timeStep);
+			this.step++;
+
+			if (System.nanoTime() - nextSnapshotTime >= 0)
+			{
+				this.snapshots.publish(this.cluster, this.step, dueTime);
+				nextSnapshotTime = System.nanoTime() + (long) (1e9 / this.snapshotsPerSecond);
+			}
+		}
+
+		// Make sure the view ends up showing the state the simulation stopped in
+		this.snapshots.publish(this.cluster, this.step);
+	}
+
+	/**
+	 * Stops the thread and waits for it to finish its current step
+	 */
+	public void stopSimulation()
+	{
+		this.running = false;
+		LockSupport.unpark(this);
+
+		try
+		{
+			join();
+		}
+
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets step (long)
+	 * @return Number of steps the Cluster has taken
+	 */
+	public long getStep()
+	{
+		return this.step;
+	}
+
+	/**
+	 * Sets timeStep (double)
+	 * @param timeStep
+	 */
+	public void setTimeStep(double timeStep)
+	{
+		this.timeStep = timeStep;
+	}
+
+	/**
+	 * Sets timeScale (double). This is the number of simulated seconds per second of real time; a non-positive scale
+	 * steps as fast as possible.
+	 * @param timeScale
+	 */
+	public void setTimeScale(double timeScale)
+	{
+		this.timeScale = timeScale;
+	}
+
+	/**
+	 * Sets snapshotsPerSecond (double)
+	 * @param snapshotsPerSecond
+	 */
+	public void setSnapshotsPerSecond(double snapshotsPerSecond)
+	{
+		this.snapshotsPerSecond = snapshotsPerSecond;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer that hands ClusterSnapshots from the simulation thread to the painting thread. The writer
+ * always has a buffer of its own to fill, the reader always has the latest complete buffer to paint, and the third
+ * buffer is swapped between them through a single atomic variable, so neither side ever waits for the other.
+ *
+ * There must be only one writing thread and one reading thread at a time.
+ * @author Rajiv Thamburaj
+ */
+public class SnapshotBuffer
+{
+	// Instance variables
+	private ClusterSnapshot[] buffers;
+	private int writeIndex;
+	private int readIndex;
+	// Index of the buffer in the middle, plus FRESH_BIT when it holds a snapshot the reader has not taken yet
+	private AtomicInteger middle;
+	// Constants
+	private static final int INDEX_MASK = 3;
+	private static final int FRESH_BIT = 4;
+
+	/**
+	 * Constructor
+	 * @param size
+	 */
+	public SnapshotBuffer(int size)
+	{
+		this.buffers = new ClusterSnapshot[3];
+
+		for (int i = 0; i < 3; i++)
+		{
+			this.buffers[i] = new ClusterSnapshot(size);
+		}
+
+		this.writeIndex = 0;
+		this.readIndex = 1;
+		this.middle = new AtomicInteger(2);
+	}
+
+	/**
+	 * Copies the state of a Cluster into the writer's buffer and publishes it (called by the writing thread)
+	 * @param cluster
+	 * @param step
+	 */
+	public void publish(Cluster cluster, long step)
+	{
+		publish(cluster, step, System.nanoTime());
+	}
+
+	/**
+	 * Copies the state of a Cluster into the writer's buffer and publishes it (called by the writing thread)
+	 * @param cluster
+	 * @param step
+	 * @param dueTime Value of System.nanoTime at which the state is due on screen
+	 */
+	public void publish(Cluster cluster, long step, long dueTime)
+	{
+		this.buffers[this.writeIndex].copyFrom(cluster, step, dueTime);
+
+		// Swap the completed buffer into the middle, and take whichever buffer was there for the next write
+		int previous = this.middle.getAndSet(this.writeIndex | FRESH_BIT);
+		this.writeIndex = previous & INDEX_MASK;
+	}
+
+	/**
+	 * Gets the latest complete snapshot (called by the reading thread). The snapshot stays valid until the next call.
+	 * @return Latest published ClusterSnapshot
+	 */
+	public ClusterSnapshot getLatest()
+	{
+		if ((this.middle.get() & FRESH_BIT) != 0)
+		{
+			int previous = this.middle.getAndSet(this.readIndex);
+			this.readIndex = previous & INDEX_MASK;
+		}
+
+		return this.buffers[this.readIndex];
+	}
+}
\ No newline at end of file
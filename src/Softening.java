@@ -0,0 +1,169 @@
+/**
+ * Softens the gravitational force between close particles, so that near-collisions do not produce the huge
+ * accelerations that would otherwise force a tiny time step. The acceleration of a particle due to another of mass m
+ * at separation r is G * m * f(|r|) * r, where f is given by the kernel:
+ *
+ *   none     f = 1 / |r|^3 (Newtonian)
+ *   plummer  f = 1 / (|r|^2 + eps^2)^(3/2) (every pair is softened a little)
+ *   spline   the cubic spline kernel of Monaghan and Lattanzio (as in GADGET), which is exactly Newtonian beyond
+ *            h = 2.8 * eps and whose potential at r = 0 matches that of a Plummer kernel with the same eps
+ * @author Rajiv Thamburaj
+ */
+public final class Softening
+{
+	// Instance variables
+	private String kernel;
+	private double length;
+	private double epsilonSquared;
+	private double splineRadius;
+	private double splineRadiusSquared;
+	// Constants
+	public static final Softening NONE = new Softening("none", 0.0);
+	private static final double SPLINE_RADIUS_PER_LENGTH = 2.8;
+
+	/**
+	 * Constructor
+	 * @param kernel none, plummer, or spline
+	 * @param length Softening length eps
+	 */
+	public Softening(String kernel, double length)
+	{
+		if (length < 0.0 || Double.isNaN(length))
+			throw new IllegalArgumentException("The softening length must not be negative");
+
+		this.kernel = kernel;
+		this.length = length;
+
+		if ("plummer".equals(kernel))
+			this.epsilonSquared = length * length;
+		else if ("spline".equals(kernel))
+			this.splineRadius = SPLINE_RADIUS_PER_LENGTH * length;
+		else if (!"none".equals(kernel))
+			throw new IllegalArgumentException("Unknown softening kernel " + kernel);
+
+		this.splineRadiusSquared = this.splineRadius * this.splineRadius;
+	}
+
+	/**
+	 * Finds the factor f(|r|) of the acceleration G * m * f(|r|) * r. Force kernels compute the Plummer (and Newtonian)
+	 * factor 1 / (|r|^2 + eps^2)^(3/2) inline, and only call this for pairs closer than the spline radius.
+	 * @param magnitudeSquared |r|^2
+	 * @return f(|r|)
+	 */
+	public double getForceFactor(double magnitudeSquared)
+	{
+		// Plummer and Newtonian pairs (and spline pairs beyond h) share a single branch
+		if (magnitudeSquared >= this.splineRadiusSquared)
+		{
+			double inverseMagnitude = 1.0 / Math.sqrt(magnitudeSquared + this.epsilonSquared);
+			return inverseMagnitude * inverseMagnitude * inverseMagnitude;
+		}
+
+		double h = this.splineRadius;
+		double u = Math.sqrt(magnitudeSquared) / h;
+		return splineForce(u) / (h * h * h);
+	}
+
+	/**
+	 * Finds the factor k(|r|) of the jerk G * m * f(|r|) * (w + k(|r|) * (r.w) * r), where w is the relative velocity
+	 * (for the Newtonian kernel, k = -3 / |r|^2)
+	 * @param magnitudeSquared |r|^2
+	 * @return k(|r|)
+	 */
+	public double getJerkFactor(double magnitudeSquared)
+	{
+		if (magnitudeSquared >= this.splineRadiusSquared)
+			return -3.0 / (magnitudeSquared + this.epsilonSquared);
+
+		// k = f'(|r|) / (|r| * f(|r|)), written in terms of u = |r| / h
+		double h = this.splineRadius;
+		double u = Math.sqrt(magnitudeSquared) / h;
+		double derivative = u < 0.5 ? 96.0 * u - 76.8 : (-48.0 + 76.8 * u - 32.0 * u * u + 0.2 / (u * u * u * u)) / u;
+		return derivative / (h * h * splineForce(u));
+	}
+
+	/**
+	 * Finds the factor g(|r|) of the potential energy -G * m1 * m2 * g(|r|) of a pair (for the Newtonian kernel,
+	 * g = 1 / |r|). As with getForceFactor, kernels compute the Plummer factor inline.
+	 * @param magnitudeSquared |r|^2
+	 * @return g(|r|)
+	 */
+	public double getPotentialFactor(double magnitudeSquared)
+	{
+		if (magnitudeSquared >= this.splineRadiusSquared)
+			return 1.0 / Math.sqrt(magnitudeSquared + this.epsilonSquared);
+
+		double h = this.splineRadius;
+		double u = Math.sqrt(magnitudeSquared) / h;
+		double potential = u < 0.5 ? -2.8 + u * u * (16.0 / 3.0 + u * u * (6.4 * u - 9.6))
+				: -3.2 + 1.0 / (15.0 * u) + u * u * (32.0 / 3.0 + u * (-16.0 + u * (9.6 - 32.0 / 15.0 * u)));
+		return -potential / h;
+	}
+
+	/**
+	 * Finds h^3 * f(|r|) for the spline kernel inside h
+	 * @param u |r| / h
+	 * @return Scaled force factor
+	 */
+	private static double splineForce(double u)
+	{
+		if (u < 0.5)
+			return 32.0 / 3.0 + u * u * (32.0 * u - 38.4);
+
+		return 64.0 / 3.0 - 48.0 * u + 38.4 * u * u - 32.0 / 3.0 * u * u * u - 1.0 / (15.0 * u * u * u);
+	}
+
+	/**
+	 * Checks whether the force between close particles is modified at all
+	 * @return Whether the kernel is anything other than Newtonian
+	 */
+	public boolean isSoftened()
+	{
+		return this.epsilonSquared > 0.0 || this.splineRadius > 0.0;
+	}
+
+	/**
+	 * Gets kernel (String)
+	 * @return Name of the kernel (none, plummer, or spline)
+	 */
+	public String getKernel()
+	{
+		return this.kernel;
+	}
+
+	/**
+	 * Gets length (double)
+	 * @return Softening length eps
+	 */
+	public double getLength()
+	{
+		return this.length;
+	}
+
+	/**
+	 * Gets epsilonSquared (double)
+	 * @return eps^2 for the Plummer kernel (0 otherwise)
+	 */
+	public double getEpsilonSquared()
+	{
+		return this.epsilonSquared;
+	}
+
+	/**
+	 * Gets splineRadius (double)
+	 * @return Radius h inside which the spline kernel departs from Newtonian (0 for the other kernels)
+	 */
+	public double getSplineRadius()
+	{
+		return this.splineRadius;
+	}
+
+	/**
+	 * Gets splineRadiusSquared (double)
+	 * @return h^2 (pairs with |r|^2 below this need getForceFactor; 0 for the other kernels)
+	 */
+	public double getSplineRadiusSquared()
+	{
+		return this.splineRadiusSquared;
+	}
+}
@@ -1,5 +1,7 @@
 /**
- * Performs operations on elements of vector spaces
+ * Performs operations on elements of vector spaces of any dimension. Every SpaceVector keeps its components in an
+ * array, which escape analysis cannot eliminate; code that only needs two or three dimensions should use Vec2 or
+ * Vec3 instead (toVec2 and toVec3 convert).
  * @author Rajiv Thamburaj
  */
 public class SpaceVector
@@ -14,13 +16,18 @@ public class SpaceVector
 	 */
 	public SpaceVector(double ... initialComponents)
 	{
-		this.dimension = initialComponents.length;
-		this.components = new double[this.dimension];
+		this(initialComponents.clone(), initialComponents.length);
+	}
 
-		for (int i = 0; i < this.dimension; i++)
-		{
-			this.components[i] = initialComponents[i];
-		}
+	/**
+	 * Constructor (takes over the given array rather than copying it)
+	 * @param components
+	 * @param dimension
+	 */
+	private SpaceVector(double[] components, int dimension)
+	{
+		this.components = components;
+		this.dimension = dimension;
 	}
 
 	/**
@@ -30,36 +37,44 @@ public class SpaceVector
 	@Override
 	public String toString()
 	{
-		String vector = "[";
+		StringBuilder vector = new StringBuilder("[");
 
 		// Loop through all components
 		for (int i = 0; i < this.dimension; i++)
 		{
-			if (i == this.dimension - 1)
-				vector += this.components[i];
-			else
-				vector += this.components[i] + ", ";
+			if (i > 0)
+				vector.append(", ");
+
+			vector.append(this.components[i]);
 		}
 
-		vector += "]";
-		return vector;
+		return vector.append(']').toString();
 	}
 
 	/**
 	 * Gets the magnitude of the SpaceVector
+	 * @return Norm
 	 */
 	public double getNorm()
+	{
+		// |v| = sqrt(v_1^2 + v_2^2 + ... + v_n^2)
+		return Math.sqrt(normSquared());
+	}
+
+	/**
+	 * Gets the square of the magnitude of the SpaceVector (which needs no square root)
+	 * @return Squared norm
+	 */
+	public double normSquared()
 	{
 		double normSquared = 0.0;
 
 		for (int i = 0; i < this.dimension; i++)
 		{
-			normSquared += Math.pow(this.components[i], 2.0);
+			normSquared += this.components[i] * this.components[i];
 		}
 
-		// |v| = sqrt(v_1^2 + v_2^2 + ... + v_n^2)
-		double norm = Math.sqrt(normSquared);
-		return norm;
+		return normSquared;
 	}
 
 	/**
@@ -88,8 +103,7 @@ public class SpaceVector
 	 */
 	public SpaceVector scalarProduct(double scalar)
 	{
-		int dimension = this.dimension;
-		double[] newComponents = new double[dimension];
+		double[] newComponents = new double[this.dimension];
 
 		// Multiply each component by the scalar
 		for (int i = 0; i < this.dimension; i++)
@@ -97,8 +111,7 @@ public class SpaceVector
 			newComponents[i] = this.components[i] * scalar;
 		}
 
-		SpaceVector newVector = new SpaceVector(newComponents);
-		return newVector;
+		return new SpaceVector(newComponents, this.dimension);
 	}
 
 	/**
@@ -108,17 +121,45 @@ public class SpaceVector
 	 */
 	public SpaceVector add(SpaceVector otherVector)
 	{
-		int dimension = this.dimension;
-		double[] newComponents = new double[dimension];
+		double[] newComponents = new double[this.dimension];
+		double[] otherComponents = otherVector.components;
+
+		for (int i = 0; i < this.dimension; i++)
+		{
+			newComponents[i] = this.components[i] + otherComponents[i];
+		}
+
+		return new SpaceVector(newComponents, this.dimension);
+	}
 
-		for (int i = 0; i < dimension; i++)
+	/**
+	 * Adds two SpaceVectors (without the array that the variable-arity add needs)
+	 * @param u
+	 * @param v
+	 * @return SpaceVector corresponding to the sum of the arguments
+	 */
+	public static SpaceVector add(SpaceVector u, SpaceVector v)
+	{
+		return u.add(v);
+	}
+
+	/**
+	 * Adds three SpaceVectors (without the array that the variable-arity add needs)
+	 * @param u
+	 * @param v
+	 * @param w
+	 * @return SpaceVector corresponding to the sum of the arguments
+	 */
+	public static SpaceVector add(SpaceVector u, SpaceVector v, SpaceVector w)
+	{
+		double[] newComponents = new double[u.dimension];
+
+		for (int i = 0; i < u.dimension; i++)
 		{
-			double currentSum = this.getComponents()[i] + otherVector.getComponents()[i];
-			newComponents[i] = currentSum;
+			newComponents[i] = u.components[i] + v.components[i] + w.components[i];
 		}
 
-		SpaceVector sum = new SpaceVector(newComponents);
-		return sum;
+		return new SpaceVector(newComponents, u.dimension);
 	}
 
 	/**
@@ -128,24 +169,37 @@ public class SpaceVector
 	 */
 	public static SpaceVector add(SpaceVector ... vectors)
 	{
-		int dimension = vectors[0].getDimension();
+		int dimension = vectors[0].dimension;
 		double[] newComponents = new double[dimension];
 
-		// Add the SpaceVectors by summing components
-		for (int i = 0; i < dimension; i++)
+		// Add the SpaceVectors one at a time, so that each one's components are read in order
+		for (SpaceVector vector : vectors)
 		{
-			double currentSum = 0.0;
-
-			for (int j = 0; j < vectors.length; j++)
+			for (int i = 0; i < dimension; i++)
 			{
-				currentSum += vectors[j].getComponents()[i];
+				newComponents[i] += vector.components[i];
 			}
-
-			newComponents[i] = currentSum;
 		}
 
-		SpaceVector sum = new SpaceVector(newComponents);
-		return sum;
+		return new SpaceVector(newComponents, dimension);
+	}
+
+	/**
+	 * Converts the SpaceVector to a Vec2
+	 * @return Vec2 with the first two components
+	 */
+	public Vec2 toVec2()
+	{
+		return new Vec2(this.components[0], this.components[1]);
+	}
+
+	/**
+	 * Converts the SpaceVector to a Vec3
+	 * @return Vec3 with the first three components (the third is 0 for a two-dimensional SpaceVector)
+	 */
+	public Vec3 toVec3()
+	{
+		return new Vec3(this.components[0], this.components[1], this.dimension > 2 ? this.components[2] : 0.0);
 	}
 
 	/**
@@ -0,0 +1,372 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes accelerations by direct summation, visiting each unordered pair of particles once and applying equal and
+ * opposite forces to both (Newton's third law). This halves the number of pair evaluations compared to
+ * DirectSumSolver and takes a single square root per pair.
+ *
+ * The pairs are grouped into square tiles of particles, and the tiles are dealt out to a fixed number of stripes,
+ * each with its own accumulator arrays. The stripes can run on separate threads, and their accumulators are summed
+ * in stripe order, so the results do not depend on how many threads are used. The same pass can be run over a slice
+ * of a store with accumulators supplied by the caller (see ClusterEnsemble).
+ * @author Rajiv Thamburaj
+ */
+public class SymmetricDirectSumSolver implements ForceSolver
+{
+	// Instance variables
+	private ParticleStore particles;
+	private int numStripes;
+	private double[][] stripeAx;
+	private double[][] stripeAy;
+	private double[][] stripeAz;
+	private double[][] stripePotential;
+	private Softening softening = Softening.NONE;
+	private boolean computePotential;
+	private final ParticleRangeTask.Operation accumulateStripes = this::accumulateStripes;
+	// Constants
+	private static final int TILE_SIZE = 256;
+	private static final int MAX_STRIPES = 16;
+
+	/**
+	 * Constructor
+	 */
+	public SymmetricDirectSumSolver()
+	{
+		this.stripeAx = new double[0][];
+		this.stripeAy = new double[0][];
+		this.stripeAz = new double[0][];
+		this.stripePotential = new double[0][];
+	}
+
+	/**
+	 * Sums the pairwise accelerations (and potentials, if asked for) divided by G into the stripe accumulators
+	 * @param particles
+	 * @param pool
+	 */
+	@Override
+	public void prepare(ParticleStore particles, ForkJoinPool pool)
+	{
+		int numParticles = particles.getSize();
+
+		// The number of stripes depends only on the size of the cluster (never on the number of threads)
+		this.numStripes = numStripes(numParticles);
+		this.particles = particles;
+
+		if (this.stripeAx.length < this.numStripes || (this.numStripes > 0 && this.stripeAx[0].length < numParticles))
+		{
+			this.stripeAx = new double[this.numStripes][numParticles];
+			this.stripeAy = new double[this.numStripes][numParticles];
+			this.stripeAz = new double[this.numStripes][];
+			this.stripePotential = new double[this.numStripes][];
+		}
+
+		// Neither are the z accumulators until the particles leave the plane
+		if (particles.isThreeDimensional() && this.stripeAz[0] == null)
+		{
+			for (int s = 0; s < this.stripeAz.length; s++)
+			{
+				this.stripeAz[s] = new double[this.stripeAx[s].length];
+			}
+		}
+
+		// The potential accumulators are only needed once diagnostics are sampled
+		if (this.computePotential && this.stripePotential[0] == null)
+		{
+			for (int s = 0; s < this.stripePotential.length; s++)
+			{
+				this.stripePotential[s] = new double[this.stripeAx[s].length];
+			}
+		}
+
+		if (pool == null)
+			accumulateStripes(0, this.numStripes);
+		else
+			pool.invoke(new ParticleRangeTask(this.accumulateStripes, 0, this.numStripes, 1));
+	}
+
+	/**
+	 * Sums the stripe accumulators for the particles in [start, end)
+	 * @param particles
+	 * @param G
+	 * @param start
+	 * @param end
+	 */
+	@Override
+	public void computeAccelerations(ParticleStore particles, double G, int start, int end)
+	{
+		sumStripes(particles, G, start, end, this.numStripes, this.stripeAx, this.stripeAy, this.stripeAz,
+				this.computePotential ? this.stripePotential : null, 0);
+	}
+
+	/**
+	 * Finds the accelerations of the particles in [first, last) of a store due to each other alone, on the calling
+	 * thread. The pairs are summed in exactly the same order as by a solver given a store of just those particles, so
+	 * the results are the same to the last bit (this is how ClusterEnsemble steps each of its members).
+	 * @param particles
+	 * @param G
+	 * @param first
+	 * @param last
+	 * @param softening
+	 * @param stripeAx x accumulators, at least numStripes(last - first) of at least last - first elements
+	 * @param stripeAy y accumulators, likewise
+	 * @param stripeAz z accumulators, likewise (only used if the particles are three-dimensional)
+	 */
+	static void computeAccelerations(ParticleStore particles, double G, int first, int last, Softening softening,
+			double[][] stripeAx, double[][] stripeAy, double[][] stripeAz)
+	{
+		int numStripes = numStripes(last - first);
+		boolean threeDimensional = particles.isThreeDimensional();
+
+		for (int s = 0; s < numStripes; s++)
+		{
+			accumulateStripe(particles, first, last, s, numStripes, softening, stripeAx[s], stripeAy[s],
+					threeDimensional ? stripeAz[s] : null, null, first);
+		}
+
+		sumStripes(particles, G, first, last, numStripes, stripeAx, stripeAy, stripeAz, null, first);
+	}
+
+	/**
+	 * Finds the number of stripes the pairs of some particles are dealt out to
+	 * @param numParticles
+	 * @return Number of stripes
+	 */
+	static int numStripes(int numParticles)
+	{
+		int numTiles = (numParticles + TILE_SIZE - 1) / TILE_SIZE;
+		return Math.max(1, Math.min(MAX_STRIPES, numTiles));
+	}
+
+	/**
+	 * Computes the contributions of the stripes in [start, end)
+	 * @param start
+	 * @param end
+	 */
+	private void accumulateStripes(int start, int end)
+	{
+		int numParticles = this.particles.getSize();
+
+		for (int s = start; s < end; s++)
+		{
+			double[] az = this.particles.isThreeDimensional() ? this.stripeAz[s] : null;
+			double[] phi = this.computePotential ? this.stripePotential[s] : null;
+			accumulateStripe(this.particles, 0, numParticles, s, this.numStripes, this.softening, this.stripeAx[s],
+					this.stripeAy[s], az, phi, 0);
+		}
+	}
+
+	/**
+	 * Sums the stripe accumulators of the particles in [start, end), multiplied by G, into the store
+	 * @param particles
+	 * @param G
+	 * @param start
+	 * @param end
+	 * @param numStripes
+	 * @param stripeAx
+	 * @param stripeAy
+	 * @param stripeAz
+	 * @param stripePotential Potential accumulators (null if the potential is not being computed)
+	 * @param offset Index in the store of the particle held by the first element of the accumulators
+	 */
+	private static void sumStripes(ParticleStore particles, double G, int start, int end, int numStripes,
+			double[][] stripeAx, double[][] stripeAy, double[][] stripeAz, double[][] stripePotential, int offset)
+	{
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] az = particles.getAz();
+		double[] phi = particles.getPotential();
+		boolean threeDimensional = particles.isThreeDimensional();
+
+		for (int i = start; i < end; i++)
+		{
+			double accelerationX = 0.0;
+			double accelerationY = 0.0;
+
+			for (int s = 0; s < numStripes; s++)
+			{
+				accelerationX += stripeAx[s][i - offset];
+				accelerationY += stripeAy[s][i - offset];
+			}
+
+			ax[i] = G * accelerationX;
+			ay[i] = G * accelerationY;
+
+			if (threeDimensional)
+			{
+				double accelerationZ = 0.0;
+
+				for (int s = 0; s < numStripes; s++)
+				{
+					accelerationZ += stripeAz[s][i - offset];
+				}
+
+				az[i] = G * accelerationZ;
+			}
+
+			if (stripePotential != null)
+			{
+				double potential = 0.0;
+
+				for (int s = 0; s < numStripes; s++)
+				{
+					potential += stripePotential[s][i - offset];
+				}
+
+				phi[i] = G * potential;
+			}
+		}
+	}
+
+	/**
+	 * Computes the contribution of a stripe of the pairs of the particles in [first, last)
+	 * @param particles
+	 * @param first
+	 * @param last
+	 * @param stripe
+	 * @param numStripes
+	 * @param softening
+	 * @param ax
+	 * @param ay
+	 * @param az z accumulators (null if the particles move in a plane)
+	 * @param phi Potential accumulators (null if the potential is not being computed)
+	 * @param offset Index in the store of the particle held by the first element of the accumulators
+	 */
+	private static void accumulateStripe(ParticleStore particles, int first, int last, int stripe, int numStripes,
+			Softening softening, double[] ax, double[] ay, double[] az, double[] phi, int offset)
+	{
+		int numTiles = (last - first + TILE_SIZE - 1) / TILE_SIZE;
+		Arrays.fill(ax, first - offset, last - offset, 0.0);
+		Arrays.fill(ay, first - offset, last - offset, 0.0);
+
+		if (az != null)
+			Arrays.fill(az, first - offset, last - offset, 0.0);
+
+		if (phi != null)
+			Arrays.fill(phi, first - offset, last - offset, 0.0);
+
+		// Rows of tiles are dealt out cyclically, which balances the triangular pair loop across stripes
+		for (int row = stripe; row < numTiles; row += numStripes)
+		{
+			for (int column = row; column < numTiles; column++)
+			{
+				accumulateTile(particles, first, last, row, column, softening, ax, ay, az, phi, offset);
+			}
+		}
+	}
+
+	/**
+	 * Adds the pairwise accelerations between the particles of two tiles (or within one tile, if row == column)
+	 * @param particles
+	 * @param first Index of the first particle of the first tile
+	 * @param last
+	 * @param row
+	 * @param column
+	 * @param softening
+	 * @param ax
+	 * @param ay
+	 * @param az z accumulators (null if the particles move in a plane)
+	 * @param phi Potential accumulators (null if the potential is not being computed)
+	 * @param offset Index in the store of the particle held by the first element of the accumulators
+	 */
+	private static void accumulateTile(ParticleStore particles, int first, int last, int row, int column,
+			Softening softening, double[] ax, double[] ay, double[] az, double[] phi, int offset)
+	{
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		boolean threeDimensional = az != null;
+		double[] mass = particles.getMass();
+		double epsilonSquared = softening.getEpsilonSquared();
+		double splineRadiusSquared = softening.getSplineRadiusSquared();
+		int rowEnd = Math.min(last, first + (row + 1) * TILE_SIZE);
+		int columnEnd = Math.min(last, first + (column + 1) * TILE_SIZE);
+
+		for (int i = first + row * TILE_SIZE; i < rowEnd; i++)
+		{
+			double xi = x[i];
+			double yi = y[i];
+			double zi = z[i];
+			double mi = mass[i];
+			double accelerationX = 0.0;
+			double accelerationY = 0.0;
+			double accelerationZ = 0.0;
+			double potential = 0.0;
+
+			// Within a tile, only the pairs with j > i are visited
+			for (int j = (row == column ? i + 1 : first + column * TILE_SIZE); j < columnEnd; j++)
+			{
+				// r / |r|^3 is shared by both particles: a_i += m_j * r / |r|^3 and a_j -= m_i * r / |r|^3
+				double rx = x[j] - xi;
+				double ry = y[j] - yi;
+				double magnitudeSquared = rx*rx + ry*ry;
+				double rz = 0.0;
+
+				if (threeDimensional)
+				{
+					rz = z[j] - zi;
+					magnitudeSquared += rz*rz;
+				}
+
+				double inverseMagnitude = 1.0 / Math.sqrt(magnitudeSquared + epsilonSquared);
+				double inverseCube = inverseMagnitude * inverseMagnitude * inverseMagnitude;
+
+				if (magnitudeSquared < splineRadiusSquared)
+					inverseCube = softening.getForceFactor(magnitudeSquared);
+
+				double fx = rx * inverseCube;
+				double fy = ry * inverseCube;
+
+				accelerationX += mass[j] * fx;
+				accelerationY += mass[j] * fy;
+				ax[j - offset] -= mi * fx;
+				ay[j - offset] -= mi * fy;
+
+				if (threeDimensional)
+				{
+					double fz = rz * inverseCube;
+					accelerationZ += mass[j] * fz;
+					az[j - offset] -= mi * fz;
+				}
+
+				// phi_i -= m_j / |r| and phi_j -= m_i / |r|, softened
+				if (phi != null)
+				{
+					double inverse = magnitudeSquared < splineRadiusSquared
+							? softening.getPotentialFactor(magnitudeSquared) : inverseMagnitude;
+					potential -= mass[j] * inverse;
+					phi[j - offset] -= mi * inverse;
+				}
+			}
+
+			ax[i - offset] += accelerationX;
+			ay[i - offset] += accelerationY;
+
+			if (threeDimensional)
+				az[i - offset] += accelerationZ;
+
+			if (phi != null)
+				phi[i - offset] += potential;
+		}
+	}
+
+	/**
+	 * Sets softening (Softening)
+	 * @param softening
+	 */
+	@Override
+	public void setSoftening(Softening softening)
+	{
+		this.softening = softening;
+	}
+
+	/**
+	 * Sets computePotential (boolean)
+	 * @param computePotential
+	 */
+	@Override
+	public void setComputePotential(boolean computePotential)
+	{
+		this.computePotential = computePotential;
+	}
+}
\ No newline at end of file
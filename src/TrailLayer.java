@@ -0,0 +1,384 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Off-screen image of the motion paths of the Bodies, kept from frame to frame. Rather than tracing every path in full
+ * on every frame, each new set of positions fades the whole image a little and adds one segment per Body (from the
+ * position added before), so the older parts of the paths slowly disappear. Each pixel remembers the color it was
+ * drawn with, when, and which fade table shades it by its age, so a segment fades out over exactly the length of its
+ * Body's path however long that is (repeatedly scaling 8-bit channels would wipe out any segment within 255
+ * positions). Bodies follow the length of the layer unless they have one of their own (Body.setTrailLength), and a
+ * table is kept for each different length. The cost of adding positions depends on the number of Bodies and pixels
+ * but not on the length of the paths, and painting the paths is a single drawImage call. Only the rectangle that the
+ * paths cover is faded and painted.
+ * @author Rajiv Thamburaj
+ */
+public class TrailLayer
+{
+	// Instance variables
+	private int width;
+	private int height;
+	private BufferedImage image;
+	private int[] pixels;
+	private int length;
+	// Color each pixel was last drawn with (0 if clear), the number of the position it was drawn at, and its fade
+	private int[] colors;
+	private int[] drawnAt;
+	private short[] fadeIndex;
+	// Number of positions added so far (ages are differences of these, so they survive wrapping around)
+	private int numAppended;
+	// Fraction of its color a pixel keeps at each age, out of 256 (reaching 0 at the full length), for each length in
+	// use: the first is the length of the layer, and the others are the lengths of Bodies with their own
+	private int[][] fades;
+	private int numFades;
+	// The positions added last, which the next segments start from
+	private Body[] lastBodies;
+	private double[] lastX;
+	private double[] lastY;
+	// Bounds of the pixels that may not be clear (left and top inclusive, right and bottom exclusive)
+	private int dirtyLeft;
+	private int dirtyTop;
+	private int dirtyRight;
+	private int dirtyBottom;
+	// Part of the segment being drawn that lies inside the image (from 0 at its start to 1 at its end)
+	private double clipStart;
+	private double clipEnd;
+	// Constants
+	// The fade is exponential, down to this fraction at the full length, and shifted down to reach 0 there
+	private static final double FADED = 0.1;
+
+	/**
+	 * Constructor
+	 * @param width
+	 * @param height
+	 * @param length Number of positions a segment takes to fade away
+	 */
+	public TrailLayer(int width, int height, int length)
+	{
+		this.width = Math.max(1, width);
+		this.height = Math.max(1, height);
+		this.image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB_PRE);
+		this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+		this.colors = new int[this.width * this.height];
+		this.drawnAt = new int[this.width * this.height];
+		this.fadeIndex = new short[this.width * this.height];
+		this.fades = new int[][] { new int[0] };
+		this.numFades = 1;
+		this.lastX = new double[0];
+		this.lastY = new double[0];
+		setLength(length);
+	}
+
+	/**
+	 * Fades the paths and extends the path of every Body to a new position (in Canvas coordinates, with the origin at
+	 * the center of the image and y pointing up). The paths only continue from the last positions if the Bodies are
+	 * the same; otherwise (e.g. after some of them have merged) new paths are started, and the old ones fade away.
+	 * Each segment fades with the trail length of its Body.
+	 * @param bodies
+	 * @param xs
+	 * @param ys
+	 * @param numBodies
+	 */
+	public void append(Body[] bodies, double[] xs, double[] ys, int numBodies)
+	{
+		if (bodies == this.lastBodies)
+		{
+			this.numAppended++;
+			fadePixels();
+
+			int originX = this.width / 2;
+			int originY = this.height / 2;
+			// Neighbouring Bodies usually share a length, so the fade is only looked up when the length changes
+			int lastLength = Body.SHARED_TRAIL_LENGTH;
+			int fade = 0;
+
+			for (int i = 0; i < numBodies; i++)
+			{
+				int length = bodies[i].getTrailLength();
+
+				if (length != lastLength)
+				{
+					fade = findFade(length);
+					lastLength = length;
+				}
+
+				if (this.fades[fade].length == 0)
+					continue;
+
+				int color = 0xFF000000 | bodies[i].getColor().getRGB();
+				drawSegment(this.lastX[i] + originX, originY - this.lastY[i], xs[i] + originX, originY - ys[i], color,
+						fade);
+			}
+		}
+
+		if (this.lastX.length != numBodies)
+		{
+			this.lastX = new double[numBodies];
+			this.lastY = new double[numBodies];
+		}
+
+		System.arraycopy(xs, 0, this.lastX, 0, numBodies);
+		System.arraycopy(ys, 0, this.lastY, 0, numBodies);
+		this.lastBodies = bodies;
+	}
+
+	/**
+	 * Erases the paths, so that the next positions start new ones
+	 */
+	public void clear()
+	{
+		for (int row = this.dirtyTop; row < this.dirtyBottom; row++)
+		{
+			Arrays.fill(this.pixels, row * this.width + this.dirtyLeft, row * this.width + this.dirtyRight, 0);
+			Arrays.fill(this.colors, row * this.width + this.dirtyLeft, row * this.width + this.dirtyRight, 0);
+		}
+
+		this.dirtyLeft = this.dirtyTop = this.dirtyRight = this.dirtyBottom = 0;
+		this.lastBodies = null;
+
+		// No pixel is shaded by the tables of the Bodies' own lengths any more
+		Arrays.fill(this.fades, 1, this.numFades, null);
+		this.numFades = 1;
+	}
+
+	/**
+	 * Paints the paths
+	 * @param g2d
+	 * @param x Where the left edge of the image goes
+	 * @param y Where the top edge of the image goes
+	 */
+	public void paint(Graphics2D g2d, int x, int y)
+	{
+		if (this.dirtyLeft >= this.dirtyRight || this.dirtyTop >= this.dirtyBottom)
+			return;
+
+		g2d.drawImage(this.image, x + this.dirtyLeft, y + this.dirtyTop, x + this.dirtyRight, y + this.dirtyBottom,
+				this.dirtyLeft, this.dirtyTop, this.dirtyRight, this.dirtyBottom, null);
+	}
+
+	/**
+	 * Shades every pixel by its fade for its age, scaling every channel of the color it was drawn with (the image is
+	 * premultiplied, so the colors fade with the alpha), and shrinks the dirty rectangle to the pixels that have not
+	 * faded away
+	 */
+	private void fadePixels()
+	{
+		int left = this.dirtyRight;
+		int top = this.dirtyBottom;
+		int right = this.dirtyLeft;
+		int bottom = this.dirtyTop;
+		// Unless some Body has a length of its own, every pixel is shaded by the first table
+		int[] shared = this.numFades == 1 ? this.fades[0] : null;
+
+		for (int row = this.dirtyTop; row < this.dirtyBottom; row++)
+		{
+			int offset = row * this.width;
+
+			for (int column = this.dirtyLeft; column < this.dirtyRight; column++)
+			{
+				int color = this.colors[offset + column];
+
+				if (color == 0)
+					continue;
+
+				int[] table = shared != null ? shared : this.fades[this.fadeIndex[offset + column]];
+				int age = this.numAppended - this.drawnAt[offset + column];
+				int fade = age < table.length ? table[age] : 0;
+
+				// Red and blue, then alpha and green, two channels to a multiplication
+				int redBlue = (((color & 0x00FF00FF) * fade) >>> 8) & 0x00FF00FF;
+				int alphaGreen = (((color >>> 8) & 0x00FF00FF) * fade) & 0xFF00FF00;
+				int pixel = alphaGreen | redBlue;
+				this.pixels[offset + column] = pixel;
+
+				if (pixel == 0)
+					this.colors[offset + column] = 0;
+
+				if (pixel != 0)
+				{
+					left = Math.min(left, column);
+					right = Math.max(right, column + 1);
+					top = Math.min(top, row);
+					bottom = row + 1;
+				}
+			}
+		}
+
+		this.dirtyLeft = left;
+		this.dirtyTop = top;
+		this.dirtyRight = Math.max(left, right);
+		this.dirtyBottom = Math.max(top, bottom);
+	}
+
+	/**
+	 * Draws a line between two points (in pixels), clipped to the image. A segment with an end that is not a number
+	 * (a Body behind a perspective Camera) fails every clipping test, and is not drawn.
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @param color
+	 * @param fade Index of the fade table that shades the segment
+	 */
+	private void drawSegment(double x0, double y0, double x1, double y1, int color, int fade)
+	{
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double right = Math.nextDown((double) this.width);
+		double bottom = Math.nextDown((double) this.height);
+
+		// A segment that leaves the image (e.g. of a Body thrown far away) is cut short rather than stepped through
+		this.clipStart = 0.0;
+		this.clipEnd = 1.0;
+
+		if (!clip(-dx, x0) || !clip(dx, right - x0) || !clip(-dy, y0) || !clip(dy, bottom - y0))
+			return;
+
+		double start = this.clipStart;
+		double end = this.clipEnd;
+		double startX = x0 + start * dx;
+		double startY = y0 + start * dy;
+		double endX = x0 + end * dx;
+		double endY = y0 + end * dy;
+		int numSteps = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)) * (end - start));
+		double stepX = numSteps > 0 ? (endX - startX) / numSteps : 0.0;
+		double stepY = numSteps > 0 ? (endY - startY) / numSteps : 0.0;
+
+		if (this.dirtyLeft >= this.dirtyRight || this.dirtyTop >= this.dirtyBottom)
+		{
+			this.dirtyLeft = this.dirtyTop = Integer.MAX_VALUE;
+			this.dirtyRight = this.dirtyBottom = 0;
+		}
+
+		// Both ends are inside the image after clipping
+		this.dirtyLeft = Math.min(this.dirtyLeft, (int) Math.min(startX, endX));
+		this.dirtyTop = Math.min(this.dirtyTop, (int) Math.min(startY, endY));
+		this.dirtyRight = Math.max(this.dirtyRight, (int) Math.max(startX, endX) + 1);
+		this.dirtyBottom = Math.max(this.dirtyBottom, (int) Math.max(startY, endY) + 1);
+
+		for (int s = 0; s <= numSteps; s++)
+		{
+			int px = (int) (startX + s * stepX);
+			int py = (int) (startY + s * stepY);
+
+			if (px >= 0 && px < this.width && py >= 0 && py < this.height)
+			{
+				this.pixels[py * this.width + px] = color;
+				this.colors[py * this.width + px] = color;
+				this.drawnAt[py * this.width + px] = this.numAppended;
+				this.fadeIndex[py * this.width + px] = (short) fade;
+			}
+		}
+	}
+
+	/**
+	 * Narrows the visible part of the segment to one side of an edge of the image (a step of the Liang-Barsky
+	 * algorithm, where the segment is inside the edge wherever p * t <= q)
+	 * @param p
+	 * @param q
+	 * @return Whether any of the segment is still visible
+	 */
+	private boolean clip(double p, double q)
+	{
+		if (p == 0.0)
+			return q >= 0.0;
+
+		double t = q / p;
+
+		if (p < 0.0)
+			this.clipStart = Math.max(this.clipStart, t);
+		else
+			this.clipEnd = Math.min(this.clipEnd, t);
+
+		return this.clipStart <= this.clipEnd;
+	}
+
+	/**
+	 * Gets image (BufferedImage)
+	 * @return Image of the paths, to be painted over the background
+	 */
+	public BufferedImage getImage()
+	{
+		return this.image;
+	}
+
+	/**
+	 * Gets width (int)
+	 * @return Width of the image in pixels
+	 */
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+	/**
+	 * Gets height (int)
+	 * @return Height of the image in pixels
+	 */
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+	/**
+	 * Sets length (int). This is the number of positions it takes a segment to fade away (0 for no paths), for every
+	 * Body without a length of its own. The paths already drawn are shaded again with the new length.
+	 * @param length
+	 */
+	public void setLength(int length)
+	{
+		if (length < 0)
+			throw new IllegalArgumentException("The length of the paths must not be negative");
+
+		this.length = length;
+		this.fades[0] = createFade(length);
+		fadePixels();
+	}
+
+	/**
+	 * Finds the fade table for the trail length of a Body, creating it if no Body has used the length before
+	 * @param length
+	 * @return Index of the table
+	 */
+	private int findFade(int length)
+	{
+		if (length == Body.SHARED_TRAIL_LENGTH)
+			return 0;
+
+		for (int f = 1; f < this.numFades; f++)
+		{
+			if (this.fades[f].length == length)
+				return f;
+		}
+
+		if (this.numFades > Short.MAX_VALUE)
+			throw new IllegalStateException("Too many different path lengths");
+
+		if (this.numFades == this.fades.length)
+			this.fades = Arrays.copyOf(this.fades, 2 * this.numFades);
+
+		this.fades[this.numFades] = createFade(length);
+		return this.numFades++;
+	}
+
+	/**
+	 * Creates the fade table for a length. A new segment is drawn at full strength, and its pixels are shaded from age
+	 * 1 on.
+	 * @param length
+	 * @return Fraction of its color a pixel keeps at each age below the length, out of 256
+	 */
+	private static int[] createFade(int length)
+	{
+		int[] fade = new int[length];
+
+		for (int age = 0; age < length; age++)
+		{
+			double kept = (Math.pow(FADED, (double) age / length) - FADED) / (1.0 - FADED);
+			fade[age] = (int) Math.round(256 * kept);
+		}
+
+		return fade;
+	}
+}
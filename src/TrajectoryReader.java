@@ -0,0 +1,171 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the frames of a trajectory recorded by TrajectoryWriter, for replaying a run or restarting it from any frame
+ * @author Rajiv Thamburaj
+ */
+public class TrajectoryReader implements Closeable
+{
+	// Instance variables
+	private FileChannel channel;
+	private ByteBuffer frame;
+	private int numBodies;
+	private int dimension;
+	private long numFrames;
+	private double[] mass;
+	private long step;
+	private double time;
+
+	/**
+	 * Constructor
+	 * @param path
+	 * @throws IOException
+	 */
+	public TrajectoryReader(Path path) throws IOException
+	{
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		ByteBuffer header = ByteBuffer.allocate(TrajectoryWriter.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(header, 0);
+
+		if (header.getInt() != TrajectoryWriter.MAGIC)
+			throw new IOException(path + " is not a trajectory");
+
+		int version = header.getInt();
+
+		if (version != 1 && version != TrajectoryWriter.VERSION)
+			throw new IOException(path + " has an unsupported trajectory version");
+
+		this.numBodies = header.getInt();
+		this.dimension = header.getInt();
+		this.numFrames = header.getLong();
+
+		// Version 1 reserved the dimension field, and was always planar
+		if (version == 1)
+			this.dimension = 2;
+		if (this.dimension != 2 && this.dimension != 3)
+			throw new IOException(path + " has an unsupported dimension");
+
+		ByteBuffer masses = ByteBuffer.allocate(8 * this.numBodies).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(masses, TrajectoryWriter.HEADER_BYTES);
+		this.mass = new double[this.numBodies];
+		masses.asDoubleBuffer().get(this.mass);
+
+		this.frame = ByteBuffer.allocateDirect((int) TrajectoryWriter.frameBytes(this.numBodies, this.dimension))
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Reads a frame into a ParticleStore (positions, velocities, and masses; the accelerations must be recomputed).
+	 * The store must have the dimension of the trajectory.
+	 * @param index
+	 * @param particles
+	 * @throws IOException
+	 */
+	public void readFrame(long index, ParticleStore particles) throws IOException
+	{
+		if (index < 0 || index >= this.numFrames)
+			throw new IndexOutOfBoundsException("Frame " + index + " of " + this.numFrames);
+		if (particles.getSize() != this.numBodies)
+			throw new IllegalArgumentException("The trajectory has " + this.numBodies + " bodies");
+		if (particles.getDimension() != this.dimension)
+			throw new IllegalArgumentException("The trajectory has " + this.dimension + " dimensions");
+
+		long offset = TrajectoryWriter.headerBytes(this.numBodies)
+				+ index * TrajectoryWriter.frameBytes(this.numBodies, this.dimension);
+		this.frame.clear();
+		readFully(this.frame, offset);
+
+		this.step = this.frame.getLong();
+		this.time = this.frame.getDouble();
+
+		DoubleBuffer doubles = this.frame.asDoubleBuffer();
+		boolean threeDimensional = this.dimension == 3;
+
+		doubles.get(particles.getX(), 0, this.numBodies).get(particles.getY(), 0, this.numBodies);
+		if (threeDimensional)
+			doubles.get(particles.getZ(), 0, this.numBodies);
+		doubles.get(particles.getVx(), 0, this.numBodies).get(particles.getVy(), 0, this.numBodies);
+		if (threeDimensional)
+			doubles.get(particles.getVz(), 0, this.numBodies);
+		System.arraycopy(this.mass, 0, particles.getMass(), 0, this.numBodies);
+	}
+
+	/**
+	 * Fills a buffer from the given position in the file
+	 * @param buffer
+	 * @param position
+	 * @throws IOException
+	 */
+	private void readFully(ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			if (this.channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("Unexpected end of trajectory");
+		}
+
+		buffer.flip();
+	}
+
+	/**
+	 * Closes the file
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		this.channel.close();
+	}
+
+	/**
+	 * Gets numBodies (int)
+	 * @return Number of Bodies in each frame
+	 */
+	public int getNumBodies()
+	{
+		return this.numBodies;
+	}
+
+	/**
+	 * Gets dimension (int)
+	 * @return 2 for a planar trajectory, 3 for a three-dimensional one
+	 */
+	public int getDimension()
+	{
+		return this.dimension;
+	}
+
+	/**
+	 * Gets numFrames (long)
+	 * @return Number of frames in the trajectory
+	 */
+	public long getNumFrames()
+	{
+		return this.numFrames;
+	}
+
+	/**
+	 * Gets step (long)
+	 * @return Step of the last frame read
+	 */
+	public long getStep()
+	{
+		return this.step;
+	}
+
+	/**
+	 * Gets time (double)
+	 * @return Simulated time of the last frame read
+	 */
+	public double getTime()
+	{
+		return this.time;
+	}
+}
@@ -0,0 +1,182 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the trajectory of a Cluster by appending frames to a memory-mapped file. Each frame is copied into a
+ * staging buffer with a few bulk array copies, and once the buffer holds a region of whole frames, the region is
+ * mapped at the end of the file and copied in, to be written to disk by the operating system in the background, so
+ * recording does not stall the thread that steps the Cluster. Each mapping covers exactly the frames copied into it,
+ * so the file never has to be truncated while it is mapped (which some systems, such as Windows, do not allow), and
+ * trajectories of any size can be written. The layout (little-endian) is:
+ *
+ *   int    magic ("GSTR")
+ *   int    version
+ *   int    number of Bodies (n)
+ *   int    dimension (2 or 3)
+ *   long   number of frames
+ *   double[n] mass
+ *   frames, each: long step, double time, double[n] x, y, [z,] v_x, v_y, [v_z]
+ *
+ * The z columns are only recorded for a three-dimensional Cluster (version 1 files were always planar, with a
+ * reserved 0 in place of the dimension).
+ * See TrajectoryReader for replaying a trajectory or restarting from one of its frames.
+ * @author Rajiv Thamburaj
+ */
+public class TrajectoryWriter implements Closeable
+{
+	// Instance variables
+	private FileChannel channel;
+	private MappedByteBuffer header;
+	private MappedByteBuffer region;
+	private ByteBuffer staging;
+	private DoubleBuffer stagingDoubles;
+	private int numBodies;
+	private boolean threeDimensional;
+	private long frameBytes;
+	private long framesPerRegion;
+	private long numFrames;
+	// Number of frames copied into the file (the others are still in the staging buffer)
+	private long numMapped;
+	// Constants
+	static final int MAGIC = 0x47535452;
+	static final int VERSION = 2;
+	static final int HEADER_BYTES = 24;
+	private static final long REGION_BYTES = 4L << 20;
+
+	/**
+	 * Constructor (creates the file, replacing any existing file)
+	 * @param path
+	 * @param particles
+	 * @throws IOException
+	 */
+	public TrajectoryWriter(Path path, ParticleStore particles) throws IOException
+	{
+		this.numBodies = particles.getSize();
+		this.threeDimensional = particles.isThreeDimensional();
+		this.frameBytes = frameBytes(this.numBodies, particles.getDimension());
+		this.framesPerRegion = Math.max(1, REGION_BYTES / this.frameBytes);
+		this.staging = ByteBuffer.allocateDirect((int) (this.framesPerRegion * this.frameBytes))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		this.stagingDoubles = this.staging.asDoubleBuffer();
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+		this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, headerBytes(this.numBodies));
+		this.header.order(ByteOrder.LITTLE_ENDIAN);
+		this.header.putInt(MAGIC).putInt(VERSION).putInt(this.numBodies).putInt(particles.getDimension())
+				.putLong(0L);
+		this.header.asDoubleBuffer().put(particles.getMass(), 0, this.numBodies);
+	}
+
+	/**
+	 * Appends the current state of the particles as a frame
+	 * @param particles
+	 * @param step
+	 * @param time
+	 * @throws IOException
+	 */
+	public void writeFrame(ParticleStore particles, long step, double time) throws IOException
+	{
+		// Every frame has the same layout, so Bodies cannot come and go (e.g. by merging) while recording
+		if (particles.getSize() != this.numBodies)
+			throw new IllegalArgumentException("The trajectory was started with " + this.numBodies + " Bodies, not "
+					+ particles.getSize());
+		if (particles.isThreeDimensional() != this.threeDimensional)
+			throw new IllegalArgumentException("The trajectory was started in " + (this.threeDimensional ? 3 : 2)
+					+ " dimensions");
+
+		int position = (int) ((this.numFrames - this.numMapped) * this.frameBytes);
+		this.staging.putLong(position, step);
+		this.staging.putDouble(position + 8, time);
+
+		this.stagingDoubles.position((position + 16) / 8);
+		this.stagingDoubles.put(particles.getX(), 0, this.numBodies);
+		this.stagingDoubles.put(particles.getY(), 0, this.numBodies);
+		if (this.threeDimensional)
+			this.stagingDoubles.put(particles.getZ(), 0, this.numBodies);
+		this.stagingDoubles.put(particles.getVx(), 0, this.numBodies);
+		this.stagingDoubles.put(particles.getVy(), 0, this.numBodies);
+		if (this.threeDimensional)
+			this.stagingDoubles.put(particles.getVz(), 0, this.numBodies);
+
+		this.numFrames++;
+
+		// Copy the frames into the file once they fill a region
+		if (this.numFrames - this.numMapped == this.framesPerRegion)
+			mapFrames();
+	}
+
+	/**
+	 * Maps a region at the end of the file for the frames in the staging buffer, and copies them into it
+	 * @throws IOException
+	 */
+	private void mapFrames() throws IOException
+	{
+		long numStaged = this.numFrames - this.numMapped;
+
+		if (numStaged == 0)
+			return;
+
+		long offset = headerBytes(this.numBodies) + this.numMapped * this.frameBytes;
+		this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, offset, numStaged * this.frameBytes);
+		this.staging.clear().limit((int) (numStaged * this.frameBytes));
+		this.region.put(this.staging);
+		this.staging.clear();
+
+		// The frame count is only advanced once the frames are in the file
+		this.numMapped = this.numFrames;
+		this.header.putLong(16, this.numMapped);
+	}
+
+	/**
+	 * Copies the remaining frames into the file and flushes it
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		mapFrames();
+
+		this.header.force();
+		if (this.region != null)
+			this.region.force();
+
+		this.channel.close();
+	}
+
+	/**
+	 * Finds the size of the header for a number of Bodies
+	 * @param numBodies
+	 * @return Size of the header in bytes
+	 */
+	static long headerBytes(int numBodies)
+	{
+		return HEADER_BYTES + 8L * numBodies;
+	}
+
+	/**
+	 * Finds the size of a frame for a number of Bodies
+	 * @param numBodies
+	 * @param dimension
+	 * @return Size of a frame in bytes
+	 */
+	static long frameBytes(int numBodies, int dimension)
+	{
+		return 16 + 16L * dimension * numBodies;
+	}
+
+	/**
+	 * Gets numFrames (long)
+	 * @return Number of frames written so far
+	 */
+	public long getNumFrames()
+	{
+		return this.numFrames;
+	}
+}
\ No newline at end of file
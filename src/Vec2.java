@@ -0,0 +1,334 @@
+/**
+ * Immutable two-dimensional vector. Unlike a SpaceVector, a Vec2 is just two final doubles, so the JIT can keep the
+ * temporaries of an expression such as a.subtract(b).scale(s) in registers instead of allocating them (escape
+ * analysis cannot do that for the array inside a SpaceVector). Sums of many terms are cheaper in a Vec2.Accumulator,
+ * which is updated in place.
+ * @author Rajiv Thamburaj
+ */
+public final class Vec2
+{
+	// Instance variables
+	private final double x;
+	private final double y;
+	// Constants
+	public static final Vec2 ZERO = new Vec2(0.0, 0.0);
+
+	/**
+	 * Constructor
+	 * @param x
+	 * @param y
+	 */
+	public Vec2(double x, double y)
+	{
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * Adds a Vec2 to this Vec2
+	 * @param other
+	 * @return Sum
+	 */
+	public Vec2 add(Vec2 other)
+	{
+		return new Vec2(this.x + other.x, this.y + other.y);
+	}
+
+	/**
+	 * Subtracts a Vec2 from this Vec2
+	 * @param other
+	 * @return Difference (this - other)
+	 */
+	public Vec2 subtract(Vec2 other)
+	{
+		return new Vec2(this.x - other.x, this.y - other.y);
+	}
+
+	/**
+	 * Multiplies the Vec2 by a scalar
+	 * @param scalar
+	 * @return Scalar product
+	 */
+	public Vec2 scale(double scalar)
+	{
+		return new Vec2(this.x * scalar, this.y * scalar);
+	}
+
+	/**
+	 * Adds a multiple of a Vec2 to this Vec2
+	 * @param other
+	 * @param scalar
+	 * @return this + scalar * other
+	 */
+	public Vec2 addScaled(Vec2 other, double scalar)
+	{
+		return new Vec2(this.x + scalar * other.x, this.y + scalar * other.y);
+	}
+
+	/**
+	 * Negates the Vec2
+	 * @return Negative Vec2
+	 */
+	public Vec2 negative()
+	{
+		return new Vec2(-this.x, -this.y);
+	}
+
+	/**
+	 * Finds the dot product with another Vec2
+	 * @param other
+	 * @return Dot product
+	 */
+	public double dot(Vec2 other)
+	{
+		return this.x * other.x + this.y * other.y;
+	}
+
+	/**
+	 * Gets the square of the magnitude of the Vec2 (which needs no square root)
+	 * @return Squared norm
+	 */
+	public double normSquared()
+	{
+		return this.x * this.x + this.y * this.y;
+	}
+
+	/**
+	 * Gets the magnitude of the Vec2
+	 * @return Norm
+	 */
+	public double getNorm()
+	{
+		return Math.sqrt(normSquared());
+	}
+
+	/**
+	 * Gets the reciprocal of the magnitude of the Vec2
+	 * @return 1 / norm (infinite for the zero vector)
+	 */
+	public double inverseNorm()
+	{
+		return 1.0 / Math.sqrt(normSquared());
+	}
+
+	/**
+	 * Normalizes the Vec2
+	 * @return Vec2 of length 1 in the same direction
+	 */
+	public Vec2 normalized()
+	{
+		return scale(inverseNorm());
+	}
+
+	/**
+	 * Converts the Vec2 to a SpaceVector
+	 * @return SpaceVector with the same components
+	 */
+	public SpaceVector toSpaceVector()
+	{
+		return new SpaceVector(this.x, this.y);
+	}
+
+	/**
+	 * Gets x (double)
+	 * @return First component
+	 */
+	public double getX()
+	{
+		return this.x;
+	}
+
+	/**
+	 * Gets y (double)
+	 * @return Second component
+	 */
+	public double getY()
+	{
+		return this.y;
+	}
+
+	/**
+	 * Compares the components with those of another Vec2
+	 * @param other
+	 * @return Whether the other object is a Vec2 with the same components
+	 */
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof Vec2))
+			return false;
+
+		Vec2 vector = (Vec2) other;
+		return Double.compare(this.x, vector.x) == 0 && Double.compare(this.y, vector.y) == 0;
+	}
+
+	/**
+	 * Hashes the components
+	 * @return Hash code
+	 */
+	@Override
+	public int hashCode()
+	{
+		return 31 * Double.hashCode(this.x) + Double.hashCode(this.y);
+	}
+
+	/**
+	 * Converts the Vec2 to a String of the form "[x, y]"
+	 * @return String corresponding to the Vec2
+	 */
+	@Override
+	public String toString()
+	{
+		return "[" + this.x + ", " + this.y + "]";
+	}
+
+	/**
+	 * Mutable two-dimensional vector for summing many terms (e.g. the forces on a Body) without creating a Vec2 for
+	 * each partial sum
+	 */
+	public static final class Accumulator
+	{
+		// Instance variables
+		private double x;
+		private double y;
+
+		/**
+		 * Constructor (starts at zero)
+		 */
+		public Accumulator()
+		{
+		}
+
+		/**
+		 * Sets the components
+		 * @param x
+		 * @param y
+		 * @return This Accumulator
+		 */
+		public Accumulator set(double x, double y)
+		{
+			this.x = x;
+			this.y = y;
+			return this;
+		}
+
+		/**
+		 * Sets the components back to zero
+		 * @return This Accumulator
+		 */
+		public Accumulator reset()
+		{
+			return set(0.0, 0.0);
+		}
+
+		/**
+		 * Adds a Vec2
+		 * @param vector
+		 * @return This Accumulator
+		 */
+		public Accumulator add(Vec2 vector)
+		{
+			this.x += vector.x;
+			this.y += vector.y;
+			return this;
+		}
+
+		/**
+		 * Adds a multiple of a Vec2
+		 * @param vector
+		 * @param scalar
+		 * @return This Accumulator
+		 */
+		public Accumulator addScaled(Vec2 vector, double scalar)
+		{
+			return addScaled(vector.x, vector.y, scalar);
+		}
+
+		/**
+		 * Adds a multiple of a vector given by its components
+		 * @param x
+		 * @param y
+		 * @param scalar
+		 * @return This Accumulator
+		 */
+		public Accumulator addScaled(double x, double y, double scalar)
+		{
+			this.x += scalar * x;
+			this.y += scalar * y;
+			return this;
+		}
+
+		/**
+		 * Adds a multiple of a vector with a fused multiply-add (Math.fma), which rounds once instead of twice. This
+		 * is only fast on processors with FMA instructions; elsewhere the JVM falls back to a slow exact computation,
+		 * so addScaled is the one to use in loops.
+		 * @param x
+		 * @param y
+		 * @param scalar
+		 * @return This Accumulator
+		 */
+		public Accumulator fma(double x, double y, double scalar)
+		{
+			this.x = Math.fma(scalar, x, this.x);
+			this.y = Math.fma(scalar, y, this.y);
+			return this;
+		}
+
+		/**
+		 * Multiplies the components by a scalar
+		 * @param scalar
+		 * @return This Accumulator
+		 */
+		public Accumulator scale(double scalar)
+		{
+			this.x *= scalar;
+			this.y *= scalar;
+			return this;
+		}
+
+		/**
+		 * Gets the square of the magnitude of the sum
+		 * @return Squared norm
+		 */
+		public double normSquared()
+		{
+			return this.x * this.x + this.y * this.y;
+		}
+
+		/**
+		 * Gets the reciprocal of the magnitude of the sum
+		 * @return 1 / norm (infinite for the zero vector)
+		 */
+		public double inverseNorm()
+		{
+			return 1.0 / Math.sqrt(normSquared());
+		}
+
+		/**
+		 * Gets x (double)
+		 * @return First component of the sum
+		 */
+		public double getX()
+		{
+			return this.x;
+		}
+
+		/**
+		 * Gets y (double)
+		 * @return Second component of the sum
+		 */
+		public double getY()
+		{
+			return this.y;
+		}
+
+		/**
+		 * Copies the sum into a Vec2
+		 * @return Vec2 with the current components
+		 */
+		public Vec2 toVec2()
+		{
+			return new Vec2(this.x, this.y);
+		}
+	}
+}
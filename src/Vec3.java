@@ -0,0 +1,372 @@
+/**
+ * Immutable three-dimensional vector, the counterpart of Vec2 for three dimensions (three final doubles, so the JIT
+ * can eliminate the temporaries of an expression). Sums of many terms are cheaper in a Vec3.Accumulator.
+ * @author Rajiv Thamburaj
+ */
+public final class Vec3
+{
+	// Instance variables
+	private final double x;
+	private final double y;
+	private final double z;
+	// Constants
+	public static final Vec3 ZERO = new Vec3(0.0, 0.0, 0.0);
+
+	/**
+	 * Constructor
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	public Vec3(double x, double y, double z)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**
+	 * Adds a Vec3 to this Vec3
+	 * @param other
+	 * @return Sum
+	 */
+	public Vec3 add(Vec3 other)
+	{
+		return new Vec3(this.x + other.x, this.y + other.y, this.z + other.z);
+	}
+
+	/**
+	 * Subtracts a Vec3 from this Vec3
+	 * @param other
+	 * @return Difference (this - other)
+	 */
+	public Vec3 subtract(Vec3 other)
+	{
+		return new Vec3(this.x - other.x, this.y - other.y, this.z - other.z);
+	}
+
+	/**
+	 * Multiplies the Vec3 by a scalar
+	 * @param scalar
+	 * @return Scalar product
+	 */
+	public Vec3 scale(double scalar)
+	{
+		return new Vec3(this.x * scalar, this.y * scalar, this.z * scalar);
+	}
+
+	/**
+	 * Adds a multiple of a Vec3 to this Vec3
+	 * @param other
+	 * @param scalar
+	 * @return this + scalar * other
+	 */
+	public Vec3 addScaled(Vec3 other, double scalar)
+	{
+		return new Vec3(this.x + scalar * other.x, this.y + scalar * other.y, this.z + scalar * other.z);
+	}
+
+	/**
+	 * Negates the Vec3
+	 * @return Negative Vec3
+	 */
+	public Vec3 negative()
+	{
+		return new Vec3(-this.x, -this.y, -this.z);
+	}
+
+	/**
+	 * Finds the dot product with another Vec3
+	 * @param other
+	 * @return Dot product
+	 */
+	public double dot(Vec3 other)
+	{
+		return this.x * other.x + this.y * other.y + this.z * other.z;
+	}
+
+	/**
+	 * Finds the cross product with another Vec3
+	 * @param other
+	 * @return this x other
+	 */
+	public Vec3 cross(Vec3 other)
+	{
+		return new Vec3(this.y * other.z - this.z * other.y, this.z * other.x - this.x * other.z,
+				this.x * other.y - this.y * other.x);
+	}
+
+	/**
+	 * Gets the square of the magnitude of the Vec3 (which needs no square root)
+	 * @return Squared norm
+	 */
+	public double normSquared()
+	{
+		return this.x * this.x + this.y * this.y + this.z * this.z;
+	}
+
+	/**
+	 * Gets the magnitude of the Vec3
+	 * @return Norm
+	 */
+	public double getNorm()
+	{
+		return Math.sqrt(normSquared());
+	}
+
+	/**
+	 * Gets the reciprocal of the magnitude of the Vec3
+	 * @return 1 / norm (infinite for the zero vector)
+	 */
+	public double inverseNorm()
+	{
+		return 1.0 / Math.sqrt(normSquared());
+	}
+
+	/**
+	 * Normalizes the Vec3
+	 * @return Vec3 of length 1 in the same direction
+	 */
+	public Vec3 normalized()
+	{
+		return scale(inverseNorm());
+	}
+
+	/**
+	 * Converts the Vec3 to a SpaceVector
+	 * @return SpaceVector with the same components
+	 */
+	public SpaceVector toSpaceVector()
+	{
+		return new SpaceVector(this.x, this.y, this.z);
+	}
+
+	/**
+	 * Gets x (double)
+	 * @return First component
+	 */
+	public double getX()
+	{
+		return this.x;
+	}
+
+	/**
+	 * Gets y (double)
+	 * @return Second component
+	 */
+	public double getY()
+	{
+		return this.y;
+	}
+
+	/**
+	 * Gets z (double)
+	 * @return Third component
+	 */
+	public double getZ()
+	{
+		return this.z;
+	}
+
+	/**
+	 * Compares the components with those of another Vec3
+	 * @param other
+	 * @return Whether the other object is a Vec3 with the same components
+	 */
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof Vec3))
+			return false;
+
+		Vec3 vector = (Vec3) other;
+		return Double.compare(this.x, vector.x) == 0 && Double.compare(this.y, vector.y) == 0
+				&& Double.compare(this.z, vector.z) == 0;
+	}
+
+	/**
+	 * Hashes the components
+	 * @return Hash code
+	 */
+	@Override
+	public int hashCode()
+	{
+		return 31 * (31 * Double.hashCode(this.x) + Double.hashCode(this.y)) + Double.hashCode(this.z);
+	}
+
+	/**
+	 * Converts the Vec3 to a String of the form "[x, y, z]"
+	 * @return String corresponding to the Vec3
+	 */
+	@Override
+	public String toString()
+	{
+		return "[" + this.x + ", " + this.y + ", " + this.z + "]";
+	}
+
+	/**
+	 * Mutable three-dimensional vector for summing many terms without creating a Vec3 for each partial sum
+	 */
+	public static final class Accumulator
+	{
+		// Instance variables
+		private double x;
+		private double y;
+		private double z;
+
+		/**
+		 * Constructor (starts at zero)
+		 */
+		public Accumulator()
+		{
+		}
+
+		/**
+		 * Sets the components
+		 * @param x
+		 * @param y
+		 * @param z
+		 * @return This Accumulator
+		 */
+		public Accumulator set(double x, double y, double z)
+		{
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			return this;
+		}
+
+		/**
+		 * Sets the components back to zero
+		 * @return This Accumulator
+		 */
+		public Accumulator reset()
+		{
+			return set(0.0, 0.0, 0.0);
+		}
+
+		/**
+		 * Adds a Vec3
+		 * @param vector
+		 * @return This Accumulator
+		 */
+		public Accumulator add(Vec3 vector)
+		{
+			this.x += vector.x;
+			this.y += vector.y;
+			this.z += vector.z;
+			return this;
+		}
+
+		/**
+		 * Adds a multiple of a Vec3
+		 * @param vector
+		 * @param scalar
+		 * @return This Accumulator
+		 */
+		public Accumulator addScaled(Vec3 vector, double scalar)
+		{
+			return addScaled(vector.x, vector.y, vector.z, scalar);
+		}
+
+		/**
+		 * Adds a multiple of a vector given by its components
+		 * @param x
+		 * @param y
+		 * @param z
+		 * @param scalar
+		 * @return This Accumulator
+		 */
+		public Accumulator addScaled(double x, double y, double z, double scalar)
+		{
+			this.x += scalar * x;
+			this.y += scalar * y;
+			this.z += scalar * z;
+			return this;
+		}
+
+		/**
+		 * Adds a multiple of a vector with a fused multiply-add (Math.fma), which rounds once instead of twice (see
+		 * Vec2.Accumulator.fma about its cost)
+		 * @param x
+		 * @param y
+		 * @param z
+		 * @param scalar
+		 * @return This Accumulator
+		 */
+		public Accumulator fma(double x, double y, double z, double scalar)
+		{
+			this.x = Math.fma(scalar, x, this.x);
+			this.y = Math.fma(scalar, y, this.y);
+			this.z = Math.fma(scalar, z, this.z);
+			return this;
+		}
+
+		/**
+		 * Multiplies the components by a scalar
+		 * @param scalar
+		 * @return This Accumulator
+		 */
+		public Accumulator scale(double scalar)
+		{
+			this.x *= scalar;
+			this.y *= scalar;
+			this.z *= scalar;
+			return this;
+		}
+
+		/**
+		 * Gets the square of the magnitude of the sum
+		 * @return Squared norm
+		 */
+		public double normSquared()
+		{
+			return this.x * this.x + this.y * this.y + this.z * this.z;
+		}
+
+		/**
+		 * Gets the reciprocal of the magnitude of the sum
+		 * @return 1 / norm (infinite for the zero vector)
+		 */
+		public double inverseNorm()
+		{
+			return 1.0 / Math.sqrt(normSquared());
+		}
+
+		/**
+		 * Gets x (double)
+		 * @return First component of the sum
+		 */
+		public double getX()
+		{
+			return this.x;
+		}
+
+		/**
+		 * Gets y (double)
+		 * @return Second component of the sum
+		 */
+		public double getY()
+		{
+			return this.y;
+		}
+
+		/**
+		 * Gets z (double)
+		 * @return Third component of the sum
+		 */
+		public double getZ()
+		{
+			return this.z;
+		}
+
+		/**
+		 * Copies the sum into a Vec3
+		 * @return Vec3 with the current components
+		 */
+		public Vec3 toVec3()
+		{
+			return new Vec3(this.x, this.y, this.z);
+		}
+	}
+}
@@ -0,0 +1,261 @@
+import java.util.concurrent.ForkJoinPool;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Computes accelerations by direct summation (like DirectSumSolver), processing as many partner particles at once
+ * as fit in the widest SIMD register of the machine (e.g. 4 with AVX2, 8 with AVX-512) through the incubating
+ * Vector API. The JVM must be started with --add-modules jdk.incubator.vector; ConfigurationLoader.createForceSolver
+ * falls back to the scalar solver when the module is missing.
+ *
+ * By default 1 / |r| is found with a square root and a division. With fastInverseSqrt, it is instead found from
+ * an initial guess taken from the bits of |r|^2, refined by Newton's method (a relative error of about 1e-12).
+ * Plummer softening is applied in every lane; the spline kernel is applied afterwards to the few lanes that hold
+ * partners closer than its radius.
+ * @author Rajiv Thamburaj
+ */
+public class VectorDirectSumSolver implements ForceSolver
+{
+	// Instance variables
+	private boolean fastInverseSqrt;
+	private Softening softening = Softening.NONE;
+	private boolean computePotential;
+	// Constants
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	// Initial guess for 1 / sqrt(x): MAGIC - (bits of x) / 2 is within about 3.5% for any positive double
+	private static final long MAGIC = 0x5FE6EB50C7B537A9L;
+	private static final int NEWTON_ITERATIONS = 4;
+
+	/**
+	 * Constructor
+	 */
+	public VectorDirectSumSolver()
+	{
+		this(false);
+	}
+
+	/**
+	 * Constructor
+	 * @param fastInverseSqrt
+	 */
+	public VectorDirectSumSolver(boolean fastInverseSqrt)
+	{
+		this.fastInverseSqrt = fastInverseSqrt;
+	}
+
+	/**
+	 * Nothing needs to be prepared for direct summation
+	 * @param particles
+	 * @param pool
+	 */
+	@Override
+	public void prepare(ParticleStore particles, ForkJoinPool pool)
+	{
+	}
+
+	/**
+	 * Finds the acceleration of each particle in [start, end) due to all other particles
+	 * @param particles
+	 * @param G
+	 * @param start
+	 * @param end
+	 */
+	@Override
+	public void computeAccelerations(ParticleStore particles, double G, int start, int end)
+	{
+		int numParticles = particles.getSize();
+		int bound = SPECIES.loopBound(numParticles);
+		double[] x = particles.getX();
+		double[] y = particles.getY();
+		double[] z = particles.getZ();
+		double[] ax = particles.getAx();
+		double[] ay = particles.getAy();
+		double[] az = particles.getAz();
+		double[] mass = particles.getMass();
+		double[] phi = particles.getPotential();
+		boolean computePotential = this.computePotential;
+		Softening softening = this.softening;
+		double epsilonSquared = softening.getEpsilonSquared();
+		double splineRadiusSquared = softening.getSplineRadiusSquared();
+		boolean threeDimensional = particles.isThreeDimensional();
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+
+		for (int i = start; i < end; i++)
+		{
+			DoubleVector xi = DoubleVector.broadcast(SPECIES, x[i]);
+			DoubleVector yi = DoubleVector.broadcast(SPECIES, y[i]);
+			DoubleVector zi = DoubleVector.broadcast(SPECIES, z[i]);
+			DoubleVector sumX = DoubleVector.zero(SPECIES);
+			DoubleVector sumY = DoubleVector.zero(SPECIES);
+			DoubleVector sumZ = DoubleVector.zero(SPECIES);
+			DoubleVector sumPotential = DoubleVector.zero(SPECIES);
+
+			for (int j = 0; j < bound; j += SPECIES.length())
+			{
+				// a += m_j * r / |r|^3, for a whole register of partners at once
+				DoubleVector rx = DoubleVector.fromArray(SPECIES, x, j).sub(xi);
+				DoubleVector ry = DoubleVector.fromArray(SPECIES, y, j).sub(yi);
+				DoubleVector magnitudeSquared = rx.fma(rx, ry.mul(ry));
+				DoubleVector rz = zero;
+
+				// The JIT compiles separate copies of the loop for planar and spatial stores
+				if (threeDimensional)
+				{
+					rz = DoubleVector.fromArray(SPECIES, z, j).sub(zi);
+					magnitudeSquared = rz.fma(rz, magnitudeSquared);
+				}
+
+				DoubleVector inverseMagnitude = inverseSqrt(magnitudeSquared.add(epsilonSquared));
+				DoubleVector forceFactor = inverseMagnitude.mul(inverseMagnitude).mul(inverseMagnitude);
+
+				if (splineRadiusSquared > 0.0)
+					forceFactor = applySpline(forceFactor, magnitudeSquared, splineRadiusSquared, false);
+
+				// A particle does not exert a gravitational force on itself (the only partner at r = 0)
+				VectorMask<Double> self = magnitudeSquared.compare(VectorOperators.EQ, 0.0);
+				DoubleVector partnerMass = DoubleVector.fromArray(SPECIES, mass, j);
+				DoubleVector scalarPortion = partnerMass.mul(forceFactor).blend(0.0, self);
+
+				sumX = rx.fma(scalarPortion, sumX);
+				sumY = ry.fma(scalarPortion, sumY);
+
+				if (threeDimensional)
+					sumZ = rz.fma(scalarPortion, sumZ);
+
+				// phi -= m_j / |r|, softened
+				if (computePotential)
+				{
+					DoubleVector potentialFactor = inverseMagnitude;
+
+					if (splineRadiusSquared > 0.0)
+						potentialFactor = applySpline(potentialFactor, magnitudeSquared, splineRadiusSquared, true);
+
+					sumPotential = sumPotential.sub(partnerMass.mul(potentialFactor).blend(0.0, self));
+				}
+			}
+
+			double accelerationX = sumX.reduceLanes(VectorOperators.ADD);
+			double accelerationY = sumY.reduceLanes(VectorOperators.ADD);
+			double accelerationZ = threeDimensional ? sumZ.reduceLanes(VectorOperators.ADD) : 0.0;
+			double potential = sumPotential.reduceLanes(VectorOperators.ADD);
+
+			// The partners that do not fill a whole register are summed one at a time
+			for (int j = bound; j < numParticles; j++)
+			{
+				if (j == i)
+					continue;
+
+				double rx = x[j] - x[i];
+				double ry = y[j] - y[i];
+				double rz = z[j] - z[i];
+				double magnitudeSquared = rx*rx + ry*ry + rz*rz;
+				double inverseMagnitude = 1.0 / Math.sqrt(magnitudeSquared + epsilonSquared);
+				double scalarPortion = mass[j] * inverseMagnitude * inverseMagnitude * inverseMagnitude;
+
+				if (magnitudeSquared < splineRadiusSquared)
+					scalarPortion = mass[j] * softening.getForceFactor(magnitudeSquared);
+
+				accelerationX += scalarPortion * rx;
+				accelerationY += scalarPortion * ry;
+				accelerationZ += scalarPortion * rz;
+
+				if (computePotential)
+				{
+					potential -= mass[j] * (magnitudeSquared < splineRadiusSquared
+							? softening.getPotentialFactor(magnitudeSquared) : inverseMagnitude);
+				}
+			}
+
+			ax[i] = G * accelerationX;
+			ay[i] = G * accelerationY;
+			az[i] = G * accelerationZ;
+
+			if (computePotential)
+				phi[i] = G * potential;
+		}
+	}
+
+	/**
+	 * Replaces the force (or potential) factor with the spline kernel in the lanes closer than its radius (rarely any)
+	 * @param factor
+	 * @param magnitudeSquared
+	 * @param splineRadiusSquared
+	 * @param potential Whether the factors are potential factors rather than force factors
+	 * @return Force (or potential) factors
+	 */
+	private DoubleVector applySpline(DoubleVector factor, DoubleVector magnitudeSquared, double splineRadiusSquared,
+			boolean potential)
+	{
+		VectorMask<Double> close = magnitudeSquared.compare(VectorOperators.LT, splineRadiusSquared);
+
+		if (!close.anyTrue())
+			return factor;
+
+		for (int lane = 0; lane < SPECIES.length(); lane++)
+		{
+			if (!close.laneIsSet(lane))
+				continue;
+
+			double r2 = magnitudeSquared.lane(lane);
+			double spline = potential ? this.softening.getPotentialFactor(r2) : this.softening.getForceFactor(r2);
+			factor = factor.withLane(lane, spline);
+		}
+
+		return factor;
+	}
+
+	/**
+	 * Finds 1 / sqrt(v) in each lane
+	 * @param v
+	 * @return Reciprocal square roots
+	 */
+	private DoubleVector inverseSqrt(DoubleVector v)
+	{
+		if (!this.fastInverseSqrt)
+			return v.broadcast(1.0).div(v.lanewise(VectorOperators.SQRT));
+
+		LongVector bits = v.reinterpretAsLongs();
+		DoubleVector estimate = bits.broadcast(MAGIC).sub(bits.lanewise(VectorOperators.LSHR, 1)).reinterpretAsDoubles();
+		DoubleVector halfV = v.mul(0.5);
+
+		// y = y * (1.5 - 0.5 * v * y^2) roughly squares the relative error each time
+		for (int k = 0; k < NEWTON_ITERATIONS; k++)
+		{
+			estimate = estimate.mul(halfV.mul(estimate).mul(estimate).neg().add(1.5));
+		}
+
+		return estimate;
+	}
+
+	/**
+	 * Sets softening (Softening)
+	 * @param softening
+	 */
+	@Override
+	public void setSoftening(Softening softening)
+	{
+		this.softening = softening;
+	}
+
+	/**
+	 * Sets computePotential (boolean)
+	 * @param computePotential
+	 */
+	@Override
+	public void setComputePotential(boolean computePotential)
+	{
+		this.computePotential = computePotential;
+	}
+
+	/**
+	 * Gets fastInverseSqrt (boolean)
+	 * @return Whether 1 / |r| is found by Newton's method rather than a square root and a division
+	 */
+	public boolean getFastInverseSqrt()
+	{
+		return this.fastInverseSqrt;
+	}
+}
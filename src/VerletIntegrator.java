@@ -0,0 +1,121 @@
+/**
+ * Velocity Verlet integrator, in its textbook form: the positions are advanced with the current velocities and
+ * accelerations, then the velocities are advanced with the average of the old and new accelerations. This is
+ * equivalent to LeapfrogIntegrator in exact arithmetic, but rounds differently (the old accelerations are kept in
+ * an array that is reused between steps).
+ * @author Rajiv Thamburaj
+ */
+public class VerletIntegrator implements Integrator
+{
+	// Instance variables
+	private ParticleStore particles;
+	private double timeStep;
+	private double[] oldAx;
+	private double[] oldAy;
+	private double[] oldAz;
+	// Operations applied to ranges of particles (created once so that stepping does not allocate)
+	private final ParticleRangeTask.Operation updatePositions = this::updatePositions;
+	private final ParticleRangeTask.Operation updateVelocities = this::updateVelocities;
+
+	/**
+	 * Constructor
+	 */
+	public VerletIntegrator()
+	{
+		this.oldAx = new double[0];
+		this.oldAy = new double[0];
+		this.oldAz = new double[0];
+	}
+
+	/**
+	 * Updates the position of each Body with Verlet integration by calculating velocities and accelerations
+	 * @param cluster
+	 * @param dt
+	 */
+	@Override
+	public void step(Cluster cluster, double dt)
+	{
+		this.particles = cluster.getParticles();
+		this.timeStep = dt;
+
+		int numBodies = this.particles.getSize();
+		if (this.oldAx.length != numBodies)
+		{
+			this.oldAx = new double[numBodies];
+			this.oldAy = new double[numBodies];
+			this.oldAz = new double[numBodies];
+		}
+
+		// First, find and update the position of each body
+		cluster.forEachParticle(this.updatePositions);
+
+		// Next, find the acceleration of each body (we must do this after calculating all positions)
+		cluster.computeAccelerations();
+
+		// Finally, update the velocity of each body
+		cluster.forEachParticle(this.updateVelocities);
+	}
+
+	/**
+	 * Nothing is kept between steps
+	 */
+	@Override
+	public void reset()
+	{
+	}
+
+	/**
+	 * Advances the positions of the particles in [start, end), keeping their current accelerations
+	 * @param start
+	 * @param end
+	 */
+	private void updatePositions(int start, int end)
+	{
+		double[] x = this.particles.getX();
+		double[] y = this.particles.getY();
+		double[] z = this.particles.getZ();
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double dt = this.timeStep;
+
+		for (int i = start; i < end; i++)
+		{
+			// s(t+dt) = s(t) + dt*v(t) + 0.5*dt^2*a(t)
+			x[i] += dt * vx[i] + dt * dt / 2 * ax[i];
+			y[i] += dt * vy[i] + dt * dt / 2 * ay[i];
+			z[i] += dt * vz[i] + dt * dt / 2 * az[i];
+
+			this.oldAx[i] = ax[i];
+			this.oldAy[i] = ay[i];
+			this.oldAz[i] = az[i];
+		}
+	}
+
+	/**
+	 * Advances the velocities of the particles in [start, end)
+	 * @param start
+	 * @param end
+	 */
+	private void updateVelocities(int start, int end)
+	{
+		double[] vx = this.particles.getVx();
+		double[] vy = this.particles.getVy();
+		double[] vz = this.particles.getVz();
+		double[] ax = this.particles.getAx();
+		double[] ay = this.particles.getAy();
+		double[] az = this.particles.getAz();
+		double halfStep = this.timeStep / 2;
+
+		for (int i = start; i < end; i++)
+		{
+			// v(t+dt) = v(t) + 0.5*dt*[a(t) + a(t+dt)]
+			vx[i] += halfStep * (this.oldAx[i] + ax[i]);
+			vy[i] += halfStep * (this.oldAy[i] + ay[i]);
+			vz[i] += halfStep * (this.oldAz[i] + az[i]);
+		}
+	}
+}